@@ -0,0 +1,70 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.spi;
+
+import java.util.BitSet;
+import org.gephi.graph.api.Graph;
+
+/**
+ * {@link NodeFilter} or {@link EdgeFilter} that can also return the elements
+ * it keeps as a set, for instance from an index, instead of being evaluated
+ * on each element.
+ * <p>
+ * The filter system calls {@link #filter(Graph, BitSet)} after
+ * <code>init()</code> and before <code>finish()</code>, and falls back on
+ * <code>evaluate()</code> if it returns <code>false</code>.
+ *
+ * @see SetOperator
+ */
+public interface SetFilter extends Filter {
+
+    /**
+     * Sets in <code>elements</code> the store ids of the nodes or edges of
+     * <code>graph</code> the filter keeps.
+     *
+     * @param graph the graph to filter
+     * @param elements the set to fill, empty
+     * @return <code>true</code> if the set was filled, <code>false</code> if
+     * the elements should be evaluated one by one instead, in which case the
+     * set is left empty
+     */
+    public boolean filter(Graph graph, BitSet elements);
+}
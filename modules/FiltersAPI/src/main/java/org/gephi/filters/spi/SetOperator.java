@@ -0,0 +1,65 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.spi;
+
+import java.util.BitSet;
+import org.gephi.graph.api.Graph;
+
+/**
+ * Operator that can also combine its inputs as sets of nodes and edges, so that
+ * the filter system doesn't create a graph view for each input.
+ * <p>
+ * The sets are indexed by the store id of the nodes and edges of the main
+ * graph. The edges of a set only join nodes of the same set, and the combined
+ * sets should keep that property.
+ */
+public interface SetOperator extends Operator {
+
+    /**
+     * Combines the node and edge sets of the inputs, in the order of the
+     * inputs, into the first sets. The sets may be modified.
+     *
+     * @param graph the main graph, the sets are subsets of
+     * @param nodes the node sets of the inputs
+     * @param edges the edge sets of the inputs
+     */
+    public void filter(Graph graph, BitSet[] nodes, BitSet[] edges);
+}
@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import org.gephi.filters.api.FilterLibrary;
@@ -75,6 +76,9 @@ public class FilterModelImpl implements FilterModel {
     private GraphView currentResult;
     private boolean autoRefresh;
     private final FilterAutoRefreshor autoRefreshor;
+    private final FilterResultCache resultCache;
+    //Parallel filter evaluations of this workspace, created when first needed
+    private ForkJoinPool pool;
     //Listeners
     private List<ChangeListener> listeners;
 
@@ -87,6 +91,7 @@ public class FilterModelImpl implements FilterModel {
 
         graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel(workspace);
         autoRefreshor = new FilterAutoRefreshor(this, graphModel);
+        resultCache = new FilterResultCache(graphModel);
     }
 
     @Override
@@ -272,6 +277,21 @@ public class FilterModelImpl implements FilterModel {
         return autoRefreshor;
     }
 
+    public FilterResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Returns the pool evaluating the filters of this workspace in parallel.
+     * It is shut down when the model is destroyed.
+     */
+    public synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = FilterProcessor.createPool();
+        }
+        return pool;
+    }
+
     public void setFilterThread(FilterThread filterThread) {
         this.filterThread = filterThread;
     }
@@ -303,6 +323,12 @@ public class FilterModelImpl implements FilterModel {
             filterThread.setRunning(false);
         }
         autoRefreshor.setRunning(false);
+        resultCache.destroy();
+        synchronized (this) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
         currentResult = null;
         listeners = null;
         for (Query q : queries) {
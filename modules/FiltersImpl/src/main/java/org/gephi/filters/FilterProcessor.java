@@ -42,49 +42,111 @@
 package org.gephi.filters;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.gephi.filters.api.Range;
 import org.gephi.filters.spi.*;
 import org.gephi.graph.api.*;
 
 /**
+ * Executes queries, from the leaves to the root.
+ * <p>
+ * Leaves with a node or edge filter are evaluated on the main graph into sets
+ * of node and edge store ids, and {@link SetOperator operators} combine these
+ * sets without graph views. A view is created from the sets only when a query
+ * needs a graph as input, and for the final result.
+ * <p>
+ * Node and edge filters marked {@link ParallelSafe} are evaluated in parallel
+ * chunks on large graphs, and {@link SetFilter set filters} fill their sets
+ * directly. The chunks run on the pool given to the processor, or else on a
+ * pool created for one {@link #process(AbstractQueryImpl, GraphModel)} call.
+ * <p>
+ * With a {@link FilterResultCache}, the subqueries whose result is cached are
+ * not processed again, and the results of the others evaluated into sets are
+ * added to the cache.
  *
  * @author Mathieu Bastian
  */
 public class FilterProcessor {
 
+    private static final int PARALLEL_THRESHOLD = 10000;
+    private static final int MIN_CHUNK = 1024;
+    private static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private final FilterResultCache cache;
+    private final ForkJoinPool pool;
+    //Pool of the current process() call when none was given
+    private ForkJoinPool ownPool;
+
+    public FilterProcessor() {
+        this(null);
+    }
+
+    public FilterProcessor(FilterResultCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * @param cache the cache of subquery results, or <code>null</code>
+     * @param pool the pool for parallel evaluations, owned by the caller, or
+     * <code>null</code> to create one for each
+     * {@link #process(AbstractQueryImpl, GraphModel)} call that needs it
+     */
+    public FilterProcessor(FilterResultCache cache, ForkJoinPool pool) {
+        this.cache = cache;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a new pool sized for parallel filter evaluations.
+     */
+    static ForkJoinPool createPool() {
+        return new ForkJoinPool(THREAD_COUNT);
+    }
+
     public Graph process(AbstractQueryImpl query, GraphModel graphModel) {
         Graph graph = graphModel.getGraph();
 
         graph.writeLock();
         try {
             List<GraphView> views = new ArrayList<>();
+            Map<AbstractQueryImpl, ElementSets> sets = new IdentityHashMap<>();
             query = simplifyQuery(query);
-            AbstractQueryImpl[] tree = getTree(query, true);
+            if (cache != null) {
+                cache.validate();
+            }
+            AbstractQueryImpl[] tree = getTree(query, true, sets);
             for (int i = 0; i < tree.length; i++) {
                 AbstractQueryImpl q = tree[tree.length - i - 1];
-                Graph[] input;
-                if (q.getChildrenCount() > 0) {
-                    input = new Graph[q.getChildrenCount()];
-                    for (int j = 0; j < input.length; j++) {
-                        input[j] = q.getChildAt(j).getResult();
-                    }
-                } else {
-                    //Leaves
-                    GraphView newView = graphModel.copyView(graphModel.getGraph().getView());
-                    views.add(newView);
-                    input = new Graph[]{graphModel.getGraph(newView)};    //duplicate root
+                if (sets.containsKey(q)) {
+                    continue;   //Cached
                 }
                 //PROCESS
                 if (q instanceof OperatorQueryImpl && !((OperatorQueryImpl) q).isSimple()) {
                     OperatorQueryImpl operatorQuery = (OperatorQueryImpl) q;
                     Operator op = (Operator) operatorQuery.getFilter();
-                    Subgraph[] inputSG = new Subgraph[input.length];
-                    for (int j = 0; j < inputSG.length; j++) {
-                        inputSG[j] = (Subgraph) input[j];
+                    if (op instanceof SetOperator && hasSets(q, sets)) {
+                        BitSet[] nodes = new BitSet[q.getChildrenCount()];
+                        BitSet[] edges = new BitSet[q.getChildrenCount()];
+                        for (int j = 0; j < nodes.length; j++) {
+                            ElementSets childSets = sets.remove(q.getChildAt(j));
+                            nodes[j] = childSets.nodes;
+                            edges[j] = childSets.edges;
+                        }
+                        ((SetOperator) op).filter(graph, nodes, edges);
+                        sets.put(q, new ElementSets(nodes[0], edges[0]));
+                        cacheResult(q, sets);
+                    } else {
+                        Subgraph[] inputSG = new Subgraph[q.getChildrenCount()];
+                        for (int j = 0; j < inputSG.length; j++) {
+                            inputSG[j] = (Subgraph) getResult(q.getChildAt(j), sets, graphModel, views);
+                        }
+                        q.setResult(op.filter(inputSG));
                     }
-                    q.setResult(op.filter(inputSG));
                 } else if (q instanceof OperatorQueryImpl && ((OperatorQueryImpl) q).isSimple()) {
                     OperatorQueryImpl operatorQuery = (OperatorQueryImpl) q;
                     Operator op = (Operator) operatorQuery.getFilter();
@@ -102,6 +164,20 @@ public class FilterProcessor {
                 } else {
                     FilterQueryImpl filterQuery = (FilterQueryImpl) q;
                     Filter filter = filterQuery.getFilter();
+                    if (q.getChildrenCount() == 0 && (filter instanceof NodeFilter ^ filter instanceof EdgeFilter)) {
+                        sets.put(q, evaluate(filter, graph));
+                        cacheResult(q, sets);
+                        continue;
+                    }
+                    Graph[] input;
+                    if (q.getChildrenCount() > 0) {
+                        input = new Graph[]{getResult(q.getChildAt(0), sets, graphModel, views)};
+                    } else {
+                        //Leaves
+                        GraphView newView = graphModel.copyView(graphModel.getGraph().getView());
+                        views.add(newView);
+                        input = new Graph[]{graphModel.getGraph(newView)};    //duplicate root
+                    }
                     if (filter instanceof NodeFilter && filter instanceof EdgeFilter) {
                         processNodeFilter((NodeFilter) filter, input[0]);
                         processEdgeFilter((EdgeFilter) filter, input[0]);
@@ -120,7 +196,7 @@ public class FilterProcessor {
                     }
                 }
             }
-            Graph finalResult = tree[0].result;
+            Graph finalResult = getResult(tree[0], sets, graphModel, views);
 
             //Destroy intermediate views
             GraphView finalView = finalResult.getView();
@@ -134,15 +210,122 @@ public class FilterProcessor {
         } finally {
             graph.writeUnlock();
             graph.readUnlockAll();
+            if (ownPool != null) {
+                ownPool.shutdown();
+                ownPool = null;
+            }
+        }
+    }
+
+    /**
+     * Adds the sets of <code>query</code> to the cache. Results computed on
+     * views aren't cached, as their filters may do more than filtering.
+     */
+    private void cacheResult(AbstractQueryImpl query, Map<AbstractQueryImpl, ElementSets> sets) {
+        if (cache != null) {
+            cache.put(query, sets.get(query));
+        }
+    }
+
+    private boolean hasSets(AbstractQueryImpl query, Map<AbstractQueryImpl, ElementSets> sets) {
+        for (int i = 0; i < query.getChildrenCount(); i++) {
+            if (!sets.containsKey(query.getChildAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the result of <code>query</code> as a graph, creating its view
+     * if the query was evaluated into sets.
+     */
+    private Graph getResult(AbstractQueryImpl query, Map<AbstractQueryImpl, ElementSets> sets, GraphModel graphModel, List<GraphView> views) {
+        ElementSets querySets = sets.remove(query);
+        if (querySets != null) {
+            Graph graph = graphModel.getGraph();
+            GraphView view = graphModel.createView();
+            views.add(view);
+            Graph result = graphModel.getGraph(view);
+            List<Node> nodes = new ArrayList<>(querySets.nodes.cardinality());
+            for (Node n : graph.getNodes()) {
+                if (querySets.nodes.get(n.getStoreId())) {
+                    nodes.add(n);
+                }
+            }
+            List<Edge> edges = new ArrayList<>(querySets.edges.cardinality());
+            for (Edge e : graph.getEdges()) {
+                if (querySets.edges.get(e.getStoreId())) {
+                    edges.add(e);
+                }
+            }
+            result.addAllNodes(nodes);
+            result.addAllEdges(edges);
+            query.setResult(result);
+        }
+        return query.getResult();
+    }
+
+    /**
+     * Evaluates a node or edge filter on all the elements of
+     * <code>graph</code>. Edges are kept if the filter keeps them and both
+     * their nodes.
+     */
+    private ElementSets evaluate(Filter filter, Graph graph) {
+        BitSet nodes = new BitSet();
+        if (filter instanceof NodeFilter && init(filter, graph)) {
+            NodeFilter nodeFilter = (NodeFilter) filter;
+            if (!(filter instanceof SetFilter && ((SetFilter) filter).filter(graph, nodes))) {
+                Node[] all = graph.getNodes().toArray();
+                boolean[] kept = evaluate(nodeFilter, graph, all);
+                for (int i = 0; i < all.length; i++) {
+                    if (kept[i]) {
+                        nodes.set(all[i].getStoreId());
+                    }
+                }
+            }
+            nodeFilter.finish();
+        } else {
+            for (Node n : graph.getNodes()) {
+                nodes.set(n.getStoreId());
+            }
         }
+
+        BitSet edges = new BitSet();
+        EdgeFilter edgeFilter = filter instanceof EdgeFilter && init(filter, graph) ? (EdgeFilter) filter : null;
+        if (edgeFilter instanceof SetFilter && ((SetFilter) edgeFilter).filter(graph, edges)) {
+            if (filter instanceof NodeFilter) {
+                for (Edge e : graph.getEdges()) {
+                    if (!nodes.get(e.getSource().getStoreId()) || !nodes.get(e.getTarget().getStoreId())) {
+                        edges.clear(e.getStoreId());
+                    }
+                }
+            }
+        } else {
+            Edge[] all = graph.getEdges().toArray();
+            boolean[] kept = edgeFilter != null ? evaluate(edgeFilter, graph, all) : null;
+            for (int i = 0; i < all.length; i++) {
+                Edge e = all[i];
+                if (nodes.get(e.getSource().getStoreId()) && nodes.get(e.getTarget().getStoreId())
+                        && (kept == null || kept[i])) {
+                    edges.set(e.getStoreId());
+                }
+            }
+        }
+        if (edgeFilter != null) {
+            edgeFilter.finish();
+        }
+        return new ElementSets(nodes, edges);
     }
 
     private void processNodeFilter(NodeFilter nodeFilter, Graph graph) {
         if (init(nodeFilter, graph)) {
             List<Node> nodesToRemove = new ArrayList<>();
-            for (Node n : graph.getNodes()) {
-                if (!nodeFilter.evaluate(graph, n)) {
-                    nodesToRemove.add(n);
+            Node[] all = graph.getNodes().toArray();
+            boolean[] kept = evaluate(nodeFilter, graph, all);
+            for (int i = 0; i < all.length; i++) {
+                if (!kept[i]) {
+                    nodesToRemove.add(all[i]);
                 }
             }
 
@@ -156,9 +339,11 @@ public class FilterProcessor {
     private void processEdgeFilter(EdgeFilter edgeFilter, Graph graph) {
         if (init(edgeFilter, graph)) {
             List<Edge> edgesToRemove = new ArrayList<>();
-            for (Edge e : graph.getEdges()) {
-                if (!edgeFilter.evaluate(graph, e)) {
-                    edgesToRemove.add(e);
+            Edge[] all = graph.getEdges().toArray();
+            boolean[] kept = evaluate(edgeFilter, graph, all);
+            for (int i = 0; i < all.length; i++) {
+                if (!kept[i]) {
+                    edgesToRemove.add(all[i]);
                 }
             }
 
@@ -169,9 +354,31 @@ public class FilterProcessor {
         }
     }
 
+    /**
+     * Evaluates an initialized filter on <code>elements</code> and returns
+     * whether each element is kept. Filters marked {@link ParallelSafe} are
+     * evaluated in parallel chunks when there are enough elements.
+     */
+    private <K extends Element> boolean[] evaluate(ElementFilter<K> filter, Graph graph, K[] elements) {
+        boolean[] kept = new boolean[elements.length];
+        ForkJoinPool evaluationPool = null;
+        if (filter instanceof ParallelSafe && THREAD_COUNT > 1 && elements.length >= PARALLEL_THRESHOLD) {
+            evaluationPool = getPool();
+        }
+        if (evaluationPool != null) {
+            int chunk = Math.max(MIN_CHUNK, elements.length / (THREAD_COUNT * 4));
+            evaluationPool.invoke(new EvaluateTask<>(filter, graph, elements, kept, 0, elements.length, chunk));
+        } else {
+            for (int i = 0; i < elements.length; i++) {
+                kept[i] = filter.evaluate(graph, elements[i]);
+            }
+        }
+        return kept;
+    }
+
     private AbstractQueryImpl simplifyQuery(AbstractQueryImpl query) {
         AbstractQueryImpl copy = query.copy();
-        for (AbstractQueryImpl q : getTree(copy, false)) {
+        for (AbstractQueryImpl q : getTree(copy, false, null)) {
             if (q instanceof OperatorQueryImpl && q.getChildrenCount() > 0) {
                 boolean canSimplify = true;
                 for (AbstractQueryImpl child : q.children) {
@@ -187,13 +394,21 @@ public class FilterProcessor {
         return copy;
     }
 
-    private AbstractQueryImpl[] getTree(AbstractQueryImpl query, boolean ignoreSimple) {
+    /**
+     * Returns the subqueries of <code>query</code>, parents first. When
+     * <code>sets</code> is given, the subqueries found in the cache are put in
+     * it and their own subqueries are skipped.
+     */
+    private AbstractQueryImpl[] getTree(AbstractQueryImpl query, boolean ignoreSimple, Map<AbstractQueryImpl, ElementSets> sets) {
         ArrayList<AbstractQueryImpl> tree = new ArrayList<>();
         int pointer = 0;
         tree.add(query);
         while (pointer < tree.size()) {
             AbstractQueryImpl q = tree.get(pointer++);
-            if (q.children.size() > 0) {
+            ElementSets cached = cache != null && sets != null ? cache.get(q) : null;
+            if (cached != null) {
+                sets.put(q, cached);
+            } else if (q.children.size() > 0) {
                 if (!(q instanceof OperatorQueryImpl && ((OperatorQueryImpl) q).isSimple())) {
                     tree.addAll(q.children);
                 }
@@ -202,6 +417,20 @@ public class FilterProcessor {
         return tree.toArray(new AbstractQueryImpl[0]);
     }
 
+    /**
+     * Returns the pool given to the processor, or <code>null</code> if it was
+     * shut down, or else the pool of the current process() call.
+     */
+    private ForkJoinPool getPool() {
+        if (pool != null) {
+            return pool.isShutdown() ? null : pool;
+        }
+        if (ownPool == null) {
+            ownPool = createPool();
+        }
+        return ownPool;
+    }
+
     public boolean init(Filter filter, Graph graph) {
         boolean res = true;
 
@@ -275,6 +504,59 @@ public class FilterProcessor {
         return res;
     }
 
+    /**
+     * Nodes and edges of a query result, by store id. Edges only join nodes of
+     * the set.
+     */
+    static class ElementSets {
+
+        final BitSet nodes;
+        final BitSet edges;
+
+        ElementSets(BitSet nodes, BitSet edges) {
+            this.nodes = nodes;
+            this.edges = edges;
+        }
+
+        ElementSets copy() {
+            return new ElementSets((BitSet) nodes.clone(), (BitSet) edges.clone());
+        }
+    }
+
+    private static class EvaluateTask<K extends Element> extends RecursiveAction {
+
+        private final ElementFilter<K> filter;
+        private final Graph graph;
+        private final K[] elements;
+        private final boolean[] kept;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        EvaluateTask(ElementFilter<K> filter, Graph graph, K[] elements, boolean[] kept, int from, int to, int chunk) {
+            this.filter = filter;
+            this.graph = graph;
+            this.elements = elements;
+            this.kept = kept;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                for (int i = from; i < to; i++) {
+                    kept[i] = filter.evaluate(graph, elements[i]);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluateTask<>(filter, graph, elements, kept, from, middle, chunk),
+                        new EvaluateTask<>(filter, graph, elements, kept, middle, to, chunk));
+            }
+        }
+    }
+
     private static class NumberComparator implements Comparator<Number> {
 
         public boolean superior(Number a, Number b) {
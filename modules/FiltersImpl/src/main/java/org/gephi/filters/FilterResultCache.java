@@ -0,0 +1,262 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.gephi.filters.FilterProcessor.ElementSets;
+import org.gephi.filters.spi.Filter;
+import org.gephi.filters.spi.FilterProperty;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.ColumnObserver;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.Table;
+
+/**
+ * Results of the subqueries last processed on a graph model, so that
+ * processing a query again only recomputes the subqueries whose filters or
+ * parameters changed.
+ * <p>
+ * Only the subqueries evaluated into sets are cached: leaves with a node or
+ * edge filter, and {@link org.gephi.filters.spi.SetOperator set operators}
+ * combining such results. Other filters may have effects besides their
+ * result, such as setting the time interval of their view, which a cached
+ * result would skip.
+ * <p>
+ * A result is stored as the sets of node and edge store ids of the main graph
+ * and is found by a key made of the filter, the values of its properties and
+ * the keys of its subqueries. All the results are dropped when the graph
+ * structure or an attribute column changes. The least recently used results
+ * are evicted when the sets take more than the maximum size.
+ * <p>
+ * The cache is used by {@link FilterProcessor} while it holds the graph write
+ * lock.
+ */
+public class FilterResultCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private final GraphModel graphModel;
+    private final long maxBytes;
+    private final LinkedHashMap<QueryKey, ElementSets> results;
+    private final Map<Column, ColumnObserver> columnObservers;
+    private GraphObserver graphObserver;
+    private long bytes;
+
+    public FilterResultCache(GraphModel graphModel) {
+        this(graphModel, DEFAULT_MAX_BYTES);
+    }
+
+    public FilterResultCache(GraphModel graphModel, long maxBytes) {
+        this.graphModel = graphModel;
+        this.maxBytes = maxBytes;
+        this.results = new LinkedHashMap<>(16, 0.75f, true);
+        this.columnObservers = new HashMap<>();
+    }
+
+    /**
+     * Drops all the results if the graph or its attributes changed since the
+     * last call.
+     */
+    public synchronized void validate() {
+        boolean changed = false;
+        if (graphObserver == null) {
+            graphObserver = graphModel.createGraphObserver(graphModel.getGraph(), false);
+        } else if (graphObserver.hasGraphChanged()) {
+            changed = true;
+        }
+        changed |= validateColumns(graphModel.getNodeTable());
+        changed |= validateColumns(graphModel.getEdgeTable());
+        if (changed) {
+            clear();
+        }
+    }
+
+    private boolean validateColumns(Table table) {
+        boolean changed = false;
+        Set<Column> columns = new HashSet<>();
+        for (Column column : table) {
+            columns.add(column);
+            ColumnObserver observer = columnObservers.get(column);
+            if (observer == null) {
+                columnObservers.put(column, column.createColumnObserver(false));
+            } else if (observer.hasColumnChanged()) {
+                changed = true;
+            }
+        }
+        for (Iterator<Map.Entry<Column, ColumnObserver>> itr = columnObservers.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<Column, ColumnObserver> entry = itr.next();
+            if (entry.getKey().getTable() == table && !columns.contains(entry.getKey())) {
+                itr.remove();
+                if (!entry.getValue().isDestroyed()) {
+                    entry.getValue().destroy();
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns a copy of the result of <code>query</code>, or
+     * <code>null</code> if it is not cached.
+     */
+    synchronized ElementSets get(AbstractQueryImpl query) {
+        ElementSets sets = results.get(getKey(query));
+        return sets != null ? sets.copy() : null;
+    }
+
+    /**
+     * Stores a copy of the result of <code>query</code>, evicting the least
+     * recently used results if needed.
+     */
+    synchronized void put(AbstractQueryImpl query, ElementSets sets) {
+        long size = getSize(sets);
+        if (size > maxBytes) {
+            return;
+        }
+        ElementSets previous = results.put(getKey(query), sets.copy());
+        bytes += size;
+        if (previous != null) {
+            bytes -= getSize(previous);
+        }
+        for (Iterator<ElementSets> itr = results.values().iterator(); bytes > maxBytes && itr.hasNext();) {
+            bytes -= getSize(itr.next());
+            itr.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        bytes = 0;
+    }
+
+    public synchronized void destroy() {
+        clear();
+        if (graphObserver != null && !graphObserver.isDestroyed()) {
+            graphObserver.destroy();
+        }
+        graphObserver = null;
+        for (ColumnObserver observer : columnObservers.values()) {
+            if (!observer.isDestroyed()) {
+                observer.destroy();
+            }
+        }
+        columnObservers.clear();
+    }
+
+    private static long getSize(ElementSets sets) {
+        return (sets.nodes.size() + sets.edges.size()) / 8;
+    }
+
+    private static QueryKey getKey(AbstractQueryImpl query) {
+        Filter filter = query.getFilter();
+        FilterProperty[] properties = filter.getProperties();
+        Object[] values = new Object[properties != null ? properties.length : 0];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = copyValue(properties[i].getValue());
+        }
+        QueryKey[] children = new QueryKey[query.getChildrenCount()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = getKey(query.getChildAt(i));
+        }
+        return new QueryKey(filter, values, children);
+    }
+
+    /**
+     * Copies the collections and arrays a filter may modify in place.
+     */
+    private static Object copyValue(Object value) {
+        if (value instanceof Set) {
+            return new HashSet<>((Set<?>) value);
+        } else if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        } else if (value instanceof Object[]) {
+            return ((Object[]) value).clone();
+        }
+        return value;
+    }
+
+    private static final class QueryKey {
+
+        private final Filter filter;
+        private final Object[] values;
+        private final QueryKey[] children;
+        private final int hashCode;
+
+        QueryKey(Filter filter, Object[] values, QueryKey[] children) {
+            this.filter = filter;
+            this.values = values;
+            this.children = children;
+            int hash = System.identityHashCode(filter);
+            hash = 31 * hash + Arrays.deepHashCode(values);
+            hash = 31 * hash + Arrays.hashCode(children);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return filter == other.filter
+                    && hashCode == other.hashCode
+                    && Arrays.deepEquals(values, other.values)
+                    && Arrays.equals(children, other.children);
+        }
+    }
+}
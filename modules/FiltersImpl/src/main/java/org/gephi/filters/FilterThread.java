@@ -144,7 +144,7 @@ public class FilterThread extends Thread {
     }
 
     private void filter(AbstractQueryImpl query) {
-        FilterProcessor processor = new FilterProcessor();
+        FilterProcessor processor = new FilterProcessor(model.getResultCache(), model.getPool());
         GraphModel graphModel = model.getGraphModel();
         Graph result = processor.process((AbstractQueryImpl) query, graphModel);
         if (running) {
@@ -161,7 +161,7 @@ public class FilterThread extends Thread {
     }
 
     private void select(AbstractQueryImpl query) {
-        FilterProcessor processor = new FilterProcessor();
+        FilterProcessor processor = new FilterProcessor(model.getResultCache(), model.getPool());
         GraphModel graphModel = model.getGraphModel();
         Graph result = processor.process((AbstractQueryImpl) query, graphModel);
         if (running) {
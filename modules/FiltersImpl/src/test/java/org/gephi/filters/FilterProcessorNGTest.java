@@ -0,0 +1,242 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.gephi.filters.spi.ComplexFilter;
+import org.gephi.filters.spi.FilterProperty;
+import org.gephi.filters.spi.NodeFilter;
+import org.gephi.filters.spi.ParallelSafe;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class FilterProcessorNGTest {
+
+    @Test
+    public void testLeafResultCached() {
+        GraphModel graphModel = createGraphModel(10);
+        FilterResultCache cache = new FilterResultCache(graphModel);
+        EvenNodeFilter even = new EvenNodeFilter();
+        FilterQueryImpl query = new FilterQueryImpl(null, even);
+
+        Set<Object> first = getIds(new FilterProcessor(cache).process(query, graphModel));
+        Set<Object> second = getIds(new FilterProcessor(cache).process(query, graphModel));
+
+        assertEquals(first, getIds(0, 2, 4, 6, 8));
+        assertEquals(second, first);
+        assertEquals(even.initCount, 1);
+        cache.destroy();
+    }
+
+    @Test
+    public void testLeafResultDroppedOnGraphChange() {
+        GraphModel graphModel = createGraphModel(10);
+        FilterResultCache cache = new FilterResultCache(graphModel);
+        EvenNodeFilter even = new EvenNodeFilter();
+        FilterQueryImpl query = new FilterQueryImpl(null, even);
+
+        new FilterProcessor(cache).process(query, graphModel);
+        graphModel.getGraph().addNode(graphModel.factory().newNode("10"));
+        Set<Object> result = getIds(new FilterProcessor(cache).process(query, graphModel));
+
+        assertEquals(result, getIds(0, 2, 4, 6, 8, 10));
+        assertEquals(even.initCount, 2);
+        cache.destroy();
+    }
+
+    @Test
+    public void testComplexFilterProcessedAgain() {
+        GraphModel graphModel = createGraphModel(10);
+        FilterResultCache cache = new FilterResultCache(graphModel);
+        EvenNodeFilter even = new EvenNodeFilter();
+        RemoveFirstFilter removeFirst = new RemoveFirstFilter();
+        FilterQueryImpl query = new FilterQueryImpl(null, removeFirst);
+        query.addSubQuery(new FilterQueryImpl(null, even));
+
+        Graph first = new FilterProcessor(cache).process(query, graphModel);
+        Graph second = new FilterProcessor(cache).process(query, graphModel);
+
+        assertEquals(getIds(first), getIds(2, 4, 6, 8));
+        assertEquals(getIds(second), getIds(first));
+        assertEquals(removeFirst.filterCount, 2);
+        assertSame(removeFirst.lastResult, second);
+        assertEquals(even.initCount, 1);
+        cache.destroy();
+    }
+
+    @Test
+    public void testParallelEvaluation() {
+        GraphModel graphModel = createGraphModel(20000);
+        FilterQueryImpl query = new FilterQueryImpl(null, new ParallelEvenNodeFilter());
+
+        Graph result = new FilterProcessor().process(query, graphModel);
+
+        assertEquals(result.getNodeCount(), 10000);
+        for (Node n : result.getNodes()) {
+            assertEquals(Integer.parseInt((String) n.getId()) % 2, 0);
+        }
+    }
+
+    @Test
+    public void testParallelEvaluationOnGivenPool() {
+        GraphModel graphModel = createGraphModel(20000);
+        FilterQueryImpl query = new FilterQueryImpl(null, new ParallelEvenNodeFilter());
+        ForkJoinPool pool = FilterProcessor.createPool();
+
+        Set<Object> first = getIds(new FilterProcessor(null, pool).process(query, graphModel));
+        assertFalse(pool.isShutdown());
+
+        //Once the owner shut the pool down, filters are evaluated sequentially
+        pool.shutdown();
+        Set<Object> second = getIds(new FilterProcessor(null, pool).process(query, graphModel));
+
+        assertEquals(first.size(), 10000);
+        assertEquals(second, first);
+    }
+
+    private static GraphModel createGraphModel(int nodeCount) {
+        GraphModel graphModel = GraphModel.Factory.newInstance();
+        Graph graph = graphModel.getGraph();
+        Node previous = null;
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = graphModel.factory().newNode(String.valueOf(i));
+            graph.addNode(node);
+            if (previous != null) {
+                graph.addEdge(graphModel.factory().newEdge(previous, node));
+            }
+            previous = node;
+        }
+        return graphModel;
+    }
+
+    private static Set<Object> getIds(Graph graph) {
+        Set<Object> ids = new HashSet<>();
+        for (Node n : graph.getNodes()) {
+            ids.add(n.getId());
+        }
+        return ids;
+    }
+
+    private static Set<Object> getIds(int... ids) {
+        Set<Object> set = new HashSet<>();
+        for (int id : ids) {
+            set.add(String.valueOf(id));
+        }
+        return set;
+    }
+
+    /**
+     * Keeps the nodes whose id is an even number.
+     */
+    private static class EvenNodeFilter implements NodeFilter {
+
+        private int initCount;
+
+        @Override
+        public boolean init(Graph graph) {
+            initCount++;
+            return true;
+        }
+
+        @Override
+        public boolean evaluate(Graph graph, Node node) {
+            return Integer.parseInt((String) node.getId()) % 2 == 0;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public String getName() {
+            return "Even";
+        }
+
+        @Override
+        public FilterProperty[] getProperties() {
+            return new FilterProperty[0];
+        }
+    }
+
+    private static class ParallelEvenNodeFilter extends EvenNodeFilter implements ParallelSafe {
+    }
+
+    /**
+     * Removes the node with the lowest id from its input, and remembers its
+     * result.
+     */
+    private static class RemoveFirstFilter implements ComplexFilter {
+
+        private int filterCount;
+        private Graph lastResult;
+
+        @Override
+        public Graph filter(Graph graph) {
+            filterCount++;
+            Node first = null;
+            for (Node n : graph.getNodes().toArray()) {
+                if (first == null || Integer.parseInt((String) n.getId()) < Integer.parseInt((String) first.getId())) {
+                    first = n;
+                }
+            }
+            if (first != null) {
+                graph.removeNode(first);
+            }
+            lastResult = graph;
+            return graph;
+        }
+
+        @Override
+        public String getName() {
+            return "Remove first";
+        }
+
+        @Override
+        public FilterProperty[] getProperties() {
+            return new FilterProperty[0];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters;
+
+import java.util.BitSet;
+import org.gephi.filters.plugin.operator.INTERSECTIONBuilder.IntersectionOperator;
+import org.gephi.filters.plugin.operator.MASKBuilderEdge.MaskEdgeOperator;
+import org.gephi.filters.plugin.operator.NOTBuilderEdge.NotOperatorEdge;
+import org.gephi.filters.plugin.operator.NOTBuilderNode.NOTOperatorNode;
+import org.gephi.filters.plugin.operator.UNIONBuilder.UnionOperator;
+import org.gephi.filters.spi.SetOperator;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+import static org.testng.Assert.*;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the operators combine node and edge sets the same way as they
+ * combine graph views.
+ */
+public class SetOperatorNGTest {
+
+    private GraphModel graphModel;
+    private Node[] nodes;
+    private Edge[] edges;
+
+    @BeforeMethod
+    public void setUp() {
+        graphModel = GraphModel.Factory.newInstance();
+        Graph graph = graphModel.getDirectedGraph();
+        nodes = new Node[6];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = graphModel.factory().newNode(String.valueOf(i));
+            graph.addNode(nodes[i]);
+        }
+        //A directed cycle with two chords, a mutual edge and a self-loop
+        int[][] pairs = {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 0}, {0, 2}, {3, 1}, {1, 0}, {4, 4}};
+        edges = new Edge[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            edges[i] = graphModel.factory().newEdge(nodes[pairs[i][0]], nodes[pairs[i][1]]);
+            graph.addEdge(edges[i]);
+        }
+    }
+
+    @Test
+    public void testIntersectionNodes() {
+        assertSameResult(new IntersectionOperator(), nodeInput(0, 1, 2, 3), nodeInput(1, 2, 3, 4));
+        assertSameResult(new IntersectionOperator(), nodeInput(0, 1, 2), nodeInput(1, 2, 3), nodeInput(2, 3));
+        assertSameResult(new IntersectionOperator(), nodeInput(0, 1), nodeInput(4, 5));
+    }
+
+    @Test
+    public void testIntersectionEdges() {
+        assertSameResult(new IntersectionOperator(), edgeInput(0, 1, 2, 6, 9), edgeInput(1, 2, 3, 8, 9));
+        assertSameResult(new IntersectionOperator(), edgeInput(0, 1), edgeInput(2, 3));
+    }
+
+    @Test
+    public void testUnionNodes() {
+        assertSameResult(new UnionOperator(), nodeInput(0, 1), nodeInput(2, 3));
+        assertSameResult(new UnionOperator(), nodeInput(0, 1, 2), nodeInput(2, 3, 4), nodeInput(5));
+    }
+
+    @Test
+    public void testUnionEdges() {
+        assertSameResult(new UnionOperator(), edgeInput(0, 1), edgeInput(1, 7, 9));
+        assertSameResult(new UnionOperator(), edgeInput(), edgeInput(8));
+    }
+
+    @Test
+    public void testNotNodes() {
+        assertSameResult(new NOTOperatorNode(), nodeInput(0, 1, 2));
+        assertSameResult(new NOTOperatorNode(), nodeInput(4));
+        assertSameResult(new NOTOperatorNode(), nodeInput());
+    }
+
+    @Test
+    public void testNotEdges() {
+        assertSameResult(new NotOperatorEdge(), edgeInput(0, 1, 2, 9));
+        assertSameResult(new NotOperatorEdge(), edgeInput());
+        assertSameResult(new NotOperatorEdge(), nodeInput(0, 1, 2));
+    }
+
+    @Test
+    public void testMaskNodes() {
+        for (MaskEdgeOperator.EdgesOptions option : MaskEdgeOperator.EdgesOptions.values()) {
+            MaskEdgeOperator operator = new MaskEdgeOperator();
+            operator.setOption(option.name());
+            assertSameResult(operator, nodeInput(0, 1, 4));
+            assertSameResult(operator, nodeInput(3));
+        }
+    }
+
+    @Test
+    public void testMaskEdges() {
+        for (MaskEdgeOperator.EdgesOptions option : MaskEdgeOperator.EdgesOptions.values()) {
+            MaskEdgeOperator operator = new MaskEdgeOperator();
+            operator.setOption(option.name());
+            assertSameResult(operator, edgeInput(0, 3, 9));
+        }
+    }
+
+    /**
+     * Applies <code>operator</code> to the sets and to views of the inputs,
+     * and compares the results.
+     */
+    private void assertSameResult(SetOperator operator, Input... inputs) {
+        BitSet[] nodeSets = new BitSet[inputs.length];
+        BitSet[] edgeSets = new BitSet[inputs.length];
+        Subgraph[] graphs = new Subgraph[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            nodeSets[i] = (BitSet) inputs[i].nodes.clone();
+            edgeSets[i] = (BitSet) inputs[i].edges.clone();
+            graphs[i] = inputs[i].createGraph();
+        }
+
+        operator.filter(graphModel.getGraph(), nodeSets, edgeSets);
+        Graph expected = operator.filter(graphs);
+
+        assertEquals(nodeSets[0], getStoreIds(expected.getNodes().toArray()));
+        assertEquals(edgeSets[0], getStoreIds(expected.getEdges().toArray()));
+    }
+
+    /**
+     * Returns the input a node filter keeps, the given nodes and the edges
+     * between them.
+     */
+    private Input nodeInput(int... indices) {
+        Input input = new Input();
+        for (int i : indices) {
+            input.nodes.set(nodes[i].getStoreId());
+        }
+        for (Edge e : edges) {
+            if (input.nodes.get(e.getSource().getStoreId()) && input.nodes.get(e.getTarget().getStoreId())) {
+                input.edges.set(e.getStoreId());
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Returns the input an edge filter keeps, all the nodes and the given
+     * edges.
+     */
+    private Input edgeInput(int... indices) {
+        Input input = new Input();
+        for (Node n : nodes) {
+            input.nodes.set(n.getStoreId());
+        }
+        for (int i : indices) {
+            input.edges.set(edges[i].getStoreId());
+        }
+        return input;
+    }
+
+    private static BitSet getStoreIds(Element[] elements) {
+        BitSet set = new BitSet();
+        for (Element element : elements) {
+            set.set(element.getStoreId());
+        }
+        return set;
+    }
+
+    private class Input {
+
+        private final BitSet nodes = new BitSet();
+        private final BitSet edges = new BitSet();
+
+        Subgraph createGraph() {
+            Subgraph graph = graphModel.getGraph(graphModel.createView());
+            for (Node n : SetOperatorNGTest.this.nodes) {
+                if (nodes.get(n.getStoreId())) {
+                    graph.addNode(n);
+                }
+            }
+            for (Edge e : SetOperatorNGTest.this.edges) {
+                if (edges.get(e.getStoreId())) {
+                    graph.addEdge(e);
+                }
+            }
+            return graph;
+        }
+    }
+}
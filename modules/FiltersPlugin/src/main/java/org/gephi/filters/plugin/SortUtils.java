@@ -0,0 +1,145 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin;
+
+/**
+ * Sorting helpers for the filters that index primitive values.
+ */
+public final class SortUtils {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private SortUtils() {
+    }
+
+    /**
+     * Returns the indices <code>0</code> to <code>size - 1</code> sorted by
+     * ascending keys, equal keys keeping their order. Keys are compared like
+     * {@link Double#compare(double, double)}.
+     *
+     * @param keys the keys
+     * @param size the number of keys to sort
+     * @return the sorted indices
+     */
+    public static int[] sortedOrder(double[] keys, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(order, new int[size], keys, 0, size);
+        return order;
+    }
+
+    /**
+     * Returns the index of the first value of <code>sorted</code> not lower
+     * than <code>key</code>, or its length.
+     *
+     * @param sorted values in ascending order
+     * @param key the key
+     * @return the index
+     */
+    public static int lowerIndex(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(sorted[mid], key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first value of <code>sorted</code> greater
+     * than <code>key</code>, or its length.
+     *
+     * @param sorted values in ascending order
+     * @param key the key
+     * @return the index
+     */
+    public static int upperIndex(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(sorted[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void sort(int[] order, int[] buffer, double[] keys, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int o = order[i];
+                int j = i - 1;
+                while (j >= from && Double.compare(keys[order[j]], keys[o]) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = o;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(order, buffer, keys, from, mid);
+        sort(order, buffer, keys, mid, to);
+        if (Double.compare(keys[order[mid - 1]], keys[order[mid]]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && Double.compare(keys[buffer[i]], keys[buffer[j]]) <= 0)) {
+                order[k] = buffer[i++];
+            } else {
+                order[k] = buffer[j++];
+            }
+        }
+    }
+}
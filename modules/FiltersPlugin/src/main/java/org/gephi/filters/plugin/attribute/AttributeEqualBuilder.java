@@ -130,7 +130,7 @@ public class AttributeEqualBuilder implements CategoryBuilder {
         }
     }
 
-    public static abstract class EqualStringFilter<K extends Element> extends AbstractAttributeFilter<K> {
+    public static abstract class EqualStringFilter<K extends Element> extends AbstractAttributeFilter<K> implements ParallelSafe {
 
         private String pattern;
         private boolean useRegex;
@@ -227,7 +227,7 @@ public class AttributeEqualBuilder implements CategoryBuilder {
         }
     }
 
-    public static abstract class EqualNumberFilter<K extends Element> extends AbstractAttributeFilter<K> implements RangeFilter {
+    public static abstract class EqualNumberFilter<K extends Element> extends AbstractAttributeFilter<K> implements RangeFilter, ParallelSafe {
 
         private Number match;
         private Range range;
@@ -352,7 +352,7 @@ public class AttributeEqualBuilder implements CategoryBuilder {
         }
     }
 
-    public static abstract class EqualBooleanFilter<K extends Element> extends AbstractAttributeFilter<K> {
+    public static abstract class EqualBooleanFilter<K extends Element> extends AbstractAttributeFilter<K> implements ParallelSafe {
 
         private boolean match = false;
 
@@ -42,6 +42,7 @@
 package org.gephi.filters.plugin.attribute;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import javax.swing.JPanel;
 import org.gephi.filters.api.FilterLibrary;
@@ -113,11 +114,18 @@ public class AttributeRangeBuilder implements CategoryBuilder {
             }
             return null;
         }
+
+        @Override
+        public void destroy(Filter filter) {
+            ((AttributeRangeFilter) filter).destroyIndex();
+        }
     }
 
-    public static abstract class AttributeRangeFilter<K extends Element> extends AbstractAttributeFilter<K> implements RangeFilter {
+    public static abstract class AttributeRangeFilter<K extends Element> extends AbstractAttributeFilter<K> implements RangeFilter, ParallelSafe, SetFilter {
 
         private Range range;
+        //Sorted values of the column in the main graph, kept between refreshes
+        private ColumnRangeIndex index;
 
         public AttributeRangeFilter(Column column) {
             super(NbBundle.getMessage(AttributeRangeBuilder.class, "AttributeRangeBuilder.name"),
@@ -138,6 +146,23 @@ public class AttributeRangeBuilder implements CategoryBuilder {
                     return false;
                 }
             }
+            if (!column.isDynamic() && graph.getView().isMainView()) {
+                if (index != null && !index.isValid(graph)) {
+                    destroyIndex();
+                }
+                if (index == null) {
+                    index = new ColumnRangeIndex(graph, column);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean filter(Graph graph, BitSet elements) {
+            if (index == null || index.getView() != graph.getView() || range == null) {
+                return false;
+            }
+            index.fill(range, elements);
             return true;
         }
 
@@ -157,6 +182,9 @@ public class AttributeRangeBuilder implements CategoryBuilder {
 
         @Override
         public Number[] getValues(Graph graph) {
+            if (index != null && index.getView() == graph.getView()) {
+                return index.getValues();
+            }
             List<Number> vals = new ArrayList<>();
             if (AttributeUtils.isNodeColumn(column)) {
                 for (Element n : graph.getNodes()) {
@@ -189,6 +217,13 @@ public class AttributeRangeBuilder implements CategoryBuilder {
             this.range = range;
         }
 
+        private void destroyIndex() {
+            if (index != null) {
+                index.destroy();
+                index = null;
+            }
+        }
+
         public static class Node extends AttributeRangeFilter<org.gephi.graph.api.Node> implements NodeFilter {
 
             public Node(Column column) {
@@ -0,0 +1,169 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin.attribute;
+
+import java.util.BitSet;
+import org.gephi.filters.api.Range;
+import org.gephi.filters.plugin.SortUtils;
+import org.gephi.graph.api.AttributeUtils;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.ColumnObserver;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.GraphView;
+
+/**
+ * Values of a static number column sorted in primitive arrays, so that the
+ * elements in a range are found with two binary searches.
+ * <p>
+ * The index is built for the nodes or edges of one graph and observes the
+ * graph and the column, so it can tell when it must be built again.
+ */
+class ColumnRangeIndex {
+
+    private final Column column;
+    private final GraphView view;
+    private final GraphObserver graphObserver;
+    private final ColumnObserver columnObserver;
+    //Whether the double values compare like the column values
+    private final boolean exact;
+    private final double[] values;
+    private final Number[] numbers;
+    private final int[] storeIds;
+
+    ColumnRangeIndex(Graph graph, Column column) {
+        this.column = column;
+        this.view = graph.getView();
+        graphObserver = graph.getModel().createGraphObserver(graph, false);
+        if (graphObserver.isNew()) {
+            graphObserver.hasGraphChanged();
+        }
+        columnObserver = column.createColumnObserver(false);
+        Class type = column.getTypeClass();
+        exact = type.equals(Double.class) || type.equals(Float.class)
+                || type.equals(Integer.class) || type.equals(Short.class) || type.equals(Byte.class);
+
+        Iterable<? extends Element> elements;
+        int count;
+        if (AttributeUtils.isNodeColumn(column)) {
+            elements = graph.getNodes();
+            count = graph.getNodeCount();
+        } else {
+            elements = graph.getEdges();
+            count = graph.getEdgeCount();
+        }
+        double[] keys = new double[count];
+        Number[] nums = new Number[count];
+        int[] ids = new int[count];
+        int size = 0;
+        for (Element element : elements) {
+            Object value = element.getAttribute(column, view);
+            if (value != null) {
+                nums[size] = (Number) value;
+                keys[size] = nums[size].doubleValue();
+                ids[size] = element.getStoreId();
+                size++;
+            }
+        }
+
+        int[] order = SortUtils.sortedOrder(keys, size);
+        values = new double[size];
+        numbers = new Number[size];
+        storeIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = keys[order[i]];
+            numbers[i] = nums[order[i]];
+            storeIds[i] = ids[order[i]];
+        }
+    }
+
+    /**
+     * Returns whether the index is up to date for <code>graph</code>. Once it
+     * returned <code>false</code>, the index should be destroyed.
+     */
+    boolean isValid(Graph graph) {
+        return graph.getView() == view
+                && !graphObserver.isDestroyed()
+                && !graphObserver.hasGraphChanged()
+                && !columnObserver.hasColumnChanged();
+    }
+
+    GraphView getView() {
+        return view;
+    }
+
+    /**
+     * Returns the non-null values of the column, in ascending order.
+     */
+    Number[] getValues() {
+        return numbers.clone();
+    }
+
+    /**
+     * Sets in <code>set</code> the store ids of the elements whose value is in
+     * <code>range</code>.
+     */
+    void fill(Range range, BitSet set) {
+        double lower = range.getLowerDouble();
+        double upper = range.getUpperDouble();
+        int from = exact && !range.isLeftInclusive()
+                ? SortUtils.upperIndex(values, lower) : SortUtils.lowerIndex(values, lower);
+        int to = exact && !range.isRightInclusive()
+                ? SortUtils.lowerIndex(values, upper) : SortUtils.upperIndex(values, upper);
+        for (int i = from; i < to; i++) {
+            if (!exact && (Double.compare(values[i], lower) == 0 || Double.compare(values[i], upper) == 0)
+                    && !range.isInRange(numbers[i])) {
+                continue;   //Rounded to a bound, compare the actual value
+            }
+            set.set(storeIds[i]);
+        }
+    }
+
+    void destroy() {
+        if (!graphObserver.isDestroyed()) {
+            graphObserver.destroy();
+        }
+        if (!columnObserver.isDestroyed()) {
+            columnObserver.destroy();
+        }
+    }
+}
@@ -53,15 +53,12 @@ import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
 import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.Element;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Interval;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.TimeRepresentation;
-import org.gephi.graph.api.types.IntervalSet;
-import org.gephi.graph.api.types.TimestampSet;
 import org.gephi.project.api.Workspace;
 import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
@@ -140,6 +137,7 @@ public class DynamicRangeBuilder implements CategoryBuilder {
 
         @Override
         public void destroy(Filter filter) {
+            ((DynamicRangeFilter) filter).destroy();
         }
     }
 
@@ -150,6 +148,8 @@ public class DynamicRangeBuilder implements CategoryBuilder {
         private Interval visibleInterval;
         private Range range = new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
         private boolean keepNull = true;
+        //Time intervals of the main graph, kept between refreshes
+        private TimeIntervalIndex index;
 
         public DynamicRangeFilter(GraphModel graphModel) {
             this.timeRepresentation = graphModel.getConfiguration().getTimeRepresentation();
@@ -159,9 +159,18 @@ public class DynamicRangeBuilder implements CategoryBuilder {
         public Graph filter(Graph graph) {
             visibleInterval = new Interval(range.getLowerDouble(), range.getUpperDouble());
 
+            Graph mainGraph = graph.getModel().getGraph();
+            if (index != null && !index.isValid(mainGraph)) {
+                destroy();
+            }
+            if (index == null) {
+                index = new TimeIntervalIndex(mainGraph, timeRepresentation.equals(TimeRepresentation.INTERVAL));
+            }
+            index.setWindow(visibleInterval.getLow(), visibleInterval.getHigh());
+
             List<Node> toRemoveNodes = new ArrayList<>();
             for (Node n : graph.getNodes()) {
-                if (!evaluateElement(n)) {
+                if (!index.contains(n, keepNull)) {
                     toRemoveNodes.add(n);
                 }
             }
@@ -169,7 +178,7 @@ public class DynamicRangeBuilder implements CategoryBuilder {
 
             List<Edge> toRemoveEdge = new ArrayList<>();
             for (Edge e : graph.getEdges()) {
-                if (!evaluateElement(e)) {
+                if (!index.contains(e, keepNull)) {
                     toRemoveEdge.add(e);
                 }
             }
@@ -180,33 +189,6 @@ public class DynamicRangeBuilder implements CategoryBuilder {
             return graph;
         }
 
-        private boolean evaluateElement(Element element) {
-            if (timeRepresentation.equals(TimeRepresentation.INTERVAL)) {
-                IntervalSet timeSet = (IntervalSet) element.getAttribute("timeset");
-                if (timeSet != null) {
-                    for (Interval i : timeSet.toArray()) {
-                        if (visibleInterval.compareTo(i) == 0) {
-                            return true;
-                        }
-                    }
-                } else if (keepNull) {
-                    return true;
-                }
-            } else {
-                TimestampSet timeSet = (TimestampSet) element.getAttribute("timeset");
-                if (timeSet != null) {
-                    for (double t : timeSet.toPrimitiveArray()) {
-                        if (visibleInterval.compareTo(t) == 0) {
-                            return true;
-                        }
-                    }
-                } else if (keepNull) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
         @Override
         public String getName() {
             return NbBundle.getMessage(DynamicRangeBuilder.class, "DynamicRangeBuilder.name");
@@ -248,6 +230,10 @@ public class DynamicRangeBuilder implements CategoryBuilder {
         }
 
         public void destroy() {
+            if (index != null) {
+                index.destroy();
+                index = null;
+            }
         }
     }
 }
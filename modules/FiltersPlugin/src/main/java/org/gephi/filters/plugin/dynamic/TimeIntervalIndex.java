@@ -0,0 +1,299 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin.dynamic;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.gephi.filters.plugin.SortUtils;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.ColumnObserver;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.types.IntervalSet;
+import org.gephi.graph.api.types.TimestampSet;
+
+/**
+ * Time intervals of the nodes and edges of a graph, sorted by start and by
+ * end, and the elements overlapping a time window.
+ * <p>
+ * When the window moves, only the intervals whose start or end lies between
+ * the old and the new bounds are visited, so that playing the timeline costs
+ * the elements entering and leaving the window instead of all the elements.
+ * Timestamps are indexed as intervals of zero length. Bounds are inclusive.
+ */
+class TimeIntervalIndex {
+
+    private final GraphView view;
+    private final GraphObserver graphObserver;
+    private final List<ColumnObserver> columnObservers = new ArrayList<>();
+    //Owners are node store ids, then edge store ids shifted by edgeOffset
+    private final int edgeOffset;
+    //Intervals sorted by start
+    private final double[] starts;
+    private final double[] startsEnd;
+    private final int[] startsOwner;
+    //Intervals sorted by end
+    private final double[] ends;
+    private final double[] endsStart;
+    private final int[] endsOwner;
+    //Number of intervals of each owner overlapping the window
+    private final int[] counts;
+    private final BitSet nodes = new BitSet();
+    private final BitSet edges = new BitSet();
+    private final BitSet nullNodes = new BitSet();
+    private final BitSet nullEdges = new BitSet();
+    private boolean positioned;
+    private double low;
+    private double high;
+
+    TimeIntervalIndex(Graph graph, boolean intervals) {
+        GraphModel graphModel = graph.getModel();
+        view = graph.getView();
+        graphObserver = graphModel.createGraphObserver(graph, false);
+        if (graphObserver.isNew()) {
+            graphObserver.hasGraphChanged();
+        }
+        for (Column column : new Column[]{graphModel.getNodeTable().getColumn("timeset"), graphModel.getEdgeTable().getColumn("timeset")}) {
+            if (column != null) {
+                columnObservers.add(column.createColumnObserver(false));
+            }
+        }
+
+        Node[] nodeArray = graph.getNodes().toArray();
+        Edge[] edgeArray = graph.getEdges().toArray();
+        int maxNodeId = -1;
+        for (Node n : nodeArray) {
+            maxNodeId = Math.max(maxNodeId, n.getStoreId());
+        }
+        int maxEdgeId = -1;
+        for (Edge e : edgeArray) {
+            maxEdgeId = Math.max(maxEdgeId, e.getStoreId());
+        }
+        edgeOffset = maxNodeId + 1;
+        counts = new int[edgeOffset + maxEdgeId + 1];
+
+        //Collect the time sets and count their intervals
+        Element[][] elements = new Element[][]{nodeArray, edgeArray};
+        Object[][] timeSets = new Object[][]{new Object[nodeArray.length], new Object[edgeArray.length]};
+        int size = 0;
+        for (int k = 0; k < 2; k++) {
+            BitSet nulls = k == 0 ? nullNodes : nullEdges;
+            for (int i = 0; i < elements[k].length; i++) {
+                Object timeSet = elements[k][i].getAttribute("timeset");
+                if (timeSet == null) {
+                    nulls.set(elements[k][i].getStoreId());
+                } else {
+                    timeSets[k][i] = timeSet;
+                    size += intervals ? ((IntervalSet) timeSet).size() : ((TimestampSet) timeSet).size();
+                }
+            }
+        }
+
+        double[] lows = new double[size];
+        double[] highs = new double[size];
+        int[] owners = new int[size];
+        int index = 0;
+        for (int k = 0; k < 2; k++) {
+            int offset = k == 0 ? 0 : edgeOffset;
+            for (int i = 0; i < elements[k].length; i++) {
+                Object timeSet = timeSets[k][i];
+                if (timeSet == null) {
+                    continue;
+                }
+                int owner = offset + elements[k][i].getStoreId();
+                if (intervals) {
+                    for (Interval interval : ((IntervalSet) timeSet).toArray()) {
+                        lows[index] = interval.getLow();
+                        highs[index] = interval.getHigh();
+                        owners[index++] = owner;
+                    }
+                } else {
+                    for (double t : ((TimestampSet) timeSet).toPrimitiveArray()) {
+                        lows[index] = t;
+                        highs[index] = t;
+                        owners[index++] = owner;
+                    }
+                }
+            }
+        }
+
+        starts = new double[index];
+        startsEnd = new double[index];
+        startsOwner = new int[index];
+        int[] order = SortUtils.sortedOrder(lows, index);
+        for (int i = 0; i < index; i++) {
+            starts[i] = lows[order[i]];
+            startsEnd[i] = highs[order[i]];
+            startsOwner[i] = owners[order[i]];
+        }
+        ends = new double[index];
+        endsStart = new double[index];
+        endsOwner = new int[index];
+        order = SortUtils.sortedOrder(highs, index);
+        for (int i = 0; i < index; i++) {
+            ends[i] = highs[order[i]];
+            endsStart[i] = lows[order[i]];
+            endsOwner[i] = owners[order[i]];
+        }
+    }
+
+    /**
+     * Returns whether the index is up to date for <code>graph</code>. Once it
+     * returned <code>false</code>, the index should be destroyed.
+     */
+    boolean isValid(Graph graph) {
+        if (graph.getView() != view || graphObserver.isDestroyed() || graphObserver.hasGraphChanged()) {
+            return false;
+        }
+        for (ColumnObserver observer : columnObservers) {
+            if (observer.hasColumnChanged()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the window to <code>[low, high]</code>, updating the elements
+     * overlapping it.
+     */
+    void setWindow(double low, double high) {
+        if (!positioned) {
+            this.low = low;
+            this.high = high;
+            for (int i = 0, to = SortUtils.upperIndex(starts, high); i < to; i++) {
+                if (Double.compare(startsEnd[i], low) >= 0) {
+                    increment(startsOwner[i]);
+                }
+            }
+            positioned = true;
+            return;
+        }
+
+        //Move the upper bound, intervals starting in between enter or leave
+        if (Double.compare(high, this.high) > 0) {
+            for (int i = SortUtils.upperIndex(starts, this.high), to = SortUtils.upperIndex(starts, high); i < to; i++) {
+                if (Double.compare(startsEnd[i], this.low) >= 0) {
+                    increment(startsOwner[i]);
+                }
+            }
+        } else if (Double.compare(high, this.high) < 0) {
+            for (int i = SortUtils.upperIndex(starts, high), to = SortUtils.upperIndex(starts, this.high); i < to; i++) {
+                if (Double.compare(startsEnd[i], this.low) >= 0) {
+                    decrement(startsOwner[i]);
+                }
+            }
+        }
+        this.high = high;
+
+        //Move the lower bound, intervals ending in between leave or enter
+        if (Double.compare(low, this.low) > 0) {
+            for (int i = SortUtils.lowerIndex(ends, this.low), to = SortUtils.lowerIndex(ends, low); i < to; i++) {
+                if (Double.compare(endsStart[i], high) <= 0) {
+                    decrement(endsOwner[i]);
+                }
+            }
+        } else if (Double.compare(low, this.low) < 0) {
+            for (int i = SortUtils.lowerIndex(ends, low), to = SortUtils.lowerIndex(ends, this.low); i < to; i++) {
+                if (Double.compare(endsStart[i], high) <= 0) {
+                    increment(endsOwner[i]);
+                }
+            }
+        }
+        this.low = low;
+    }
+
+    /**
+     * Returns whether <code>node</code> overlaps the window, or has no time
+     * set and <code>keepNull</code> is <code>true</code>.
+     */
+    boolean contains(Node node, boolean keepNull) {
+        int id = node.getStoreId();
+        return nodes.get(id) || (keepNull && nullNodes.get(id));
+    }
+
+    /**
+     * Returns whether <code>edge</code> overlaps the window, or has no time
+     * set and <code>keepNull</code> is <code>true</code>.
+     */
+    boolean contains(Edge edge, boolean keepNull) {
+        int id = edge.getStoreId();
+        return edges.get(id) || (keepNull && nullEdges.get(id));
+    }
+
+    void destroy() {
+        if (!graphObserver.isDestroyed()) {
+            graphObserver.destroy();
+        }
+        for (ColumnObserver observer : columnObservers) {
+            if (!observer.isDestroyed()) {
+                observer.destroy();
+            }
+        }
+    }
+
+    private void increment(int owner) {
+        if (counts[owner]++ == 0) {
+            if (owner < edgeOffset) {
+                nodes.set(owner);
+            } else {
+                edges.set(owner - edgeOffset);
+            }
+        }
+    }
+
+    private void decrement(int owner) {
+        if (--counts[owner] == 0) {
+            if (owner < edgeOffset) {
+                nodes.clear(owner);
+            } else {
+                edges.clear(owner - edgeOffset);
+            }
+        }
+    }
+}
@@ -101,7 +101,7 @@ public class EdgeTypeBuilder implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class EdgeTypeFilter extends AbstractFilter implements EdgeFilter {
+    public static class EdgeTypeFilter extends AbstractFilter implements EdgeFilter, ParallelSafe {
 
         private final GraphModel graphModel;
         private Integer type;
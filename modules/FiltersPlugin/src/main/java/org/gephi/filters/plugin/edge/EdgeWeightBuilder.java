@@ -102,7 +102,7 @@ public class EdgeWeightBuilder implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class EdgeWeightFilter extends AbstractFilter implements RangeFilter, EdgeFilter {
+    public static class EdgeWeightFilter extends AbstractFilter implements RangeFilter, EdgeFilter, ParallelSafe {
 
         private Range range;
 
@@ -92,7 +92,7 @@ public class SelfLoopFilterBuilder implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class SelfLoopFilter implements EdgeFilter {
+    public static class SelfLoopFilter implements EdgeFilter, ParallelSafe {
 
         @Override
         public boolean init(Graph graph) {
@@ -101,9 +101,11 @@ public class DegreeRangeBuilder implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class DegreeRangeFilter extends AbstractFilter implements RangeFilter, NodeFilter {
+    public static class DegreeRangeFilter extends AbstractFilter implements RangeFilter, NodeFilter, ParallelSafe {
 
         private Range range;
+        //Degrees by node store id, read without locking the graph
+        private int[] degrees;
 
         public DegreeRangeFilter() {
             super(NbBundle.getMessage(DegreeRangeBuilder.class, "DegreeRangeBuilder.name"));
@@ -113,17 +115,30 @@ public class DegreeRangeBuilder implements FilterBuilder {
 
         @Override
         public boolean init(Graph graph) {
-            return graph.getNodeCount() != 0;
+            if (graph.getNodeCount() == 0) {
+                return false;
+            }
+            Node[] nodes = graph.getNodes().toArray();
+            int maxStoreId = -1;
+            for (Node n : nodes) {
+                maxStoreId = Math.max(maxStoreId, n.getStoreId());
+            }
+            degrees = new int[maxStoreId + 1];
+            for (Node n : nodes) {
+                degrees[n.getStoreId()] = graph.getDegree(n);
+            }
+            return true;
         }
 
         @Override
         public boolean evaluate(Graph graph, Node node) {
-            int degree = graph.getDegree(node);
+            int degree = degrees[node.getStoreId()];
             return range.isInRange(degree);
         }
 
         @Override
         public void finish() {
+            degrees = null;
         }
 
         @Override
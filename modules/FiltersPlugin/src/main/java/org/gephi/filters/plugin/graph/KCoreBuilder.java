@@ -41,6 +41,10 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.filters.plugin.graph;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
 import javax.swing.Icon;
 import javax.swing.JPanel;
 import org.gephi.filters.api.FilterLibrary;
@@ -49,9 +53,11 @@ import org.gephi.filters.spi.ComplexFilter;
 import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
+import org.gephi.graph.api.Column;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
 import org.gephi.project.api.Workspace;
+import org.gephi.statistics.plugin.Coreness;
 import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle;
@@ -109,16 +115,37 @@ public class KCoreBuilder implements FilterBuilder {
 
         @Override
         public Graph filter(Graph graph) {
-            int removed = 0;
-            do {
-                removed = 0;
+            //The coreness of the whole graph bounds the coreness in the filtered graph
+            Column corenessCol = graph.getModel().getNodeTable().getColumn(Coreness.CORENESS);
+            if (corenessCol != null && Coreness.isUpToDate(graph)) {
                 for (Node n : graph.getNodes().toArray()) {
-                    if (graph.getDegree(n) < k) {
+                    Integer coreness = (Integer) n.getAttribute(corenessCol);
+                    if (coreness != null && coreness < k) {
                         graph.removeNode(n);
-                        removed++;
                     }
                 }
-            } while (removed > 0);
+            }
+
+            //Remove nodes whose degree is below k, then check their neighbors
+            Deque<Node> queue = new ArrayDeque<>();
+            Set<Node> queued = new HashSet<>();
+            for (Node n : graph.getNodes()) {
+                if (graph.getDegree(n) < k) {
+                    queue.add(n);
+                    queued.add(n);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Node n = queue.poll();
+                Node[] neighbors = graph.getNeighbors(n).toArray();
+                graph.removeNode(n);
+                for (Node neighbor : neighbors) {
+                    if (!queued.contains(neighbor) && graph.getDegree(neighbor) < k) {
+                        queue.add(neighbor);
+                        queued.add(neighbor);
+                    }
+                }
+            }
             return graph;
         }
 
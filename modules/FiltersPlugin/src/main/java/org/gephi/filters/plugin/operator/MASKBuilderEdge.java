@@ -42,6 +42,7 @@ Portions Copyrighted 2011 Gephi Consortium.
 package org.gephi.filters.plugin.operator;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import javax.swing.Icon;
 import javax.swing.JPanel;
@@ -50,7 +51,7 @@ import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
 import org.gephi.filters.spi.NodeFilter;
-import org.gephi.filters.spi.Operator;
+import org.gephi.filters.spi.SetOperator;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
@@ -106,7 +107,7 @@ public class MASKBuilderEdge implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class MaskEdgeOperator implements Operator {
+    public static class MaskEdgeOperator implements SetOperator {
 
         public enum EdgesOptions {
 
@@ -189,6 +190,41 @@ public class MASKBuilderEdge implements FilterBuilder {
             return graph;
         }
 
+        @Override
+        public void filter(Graph graph, BitSet[] nodes, BitSet[] edges) {
+            if (nodes.length > 1) {
+                throw new IllegalArgumentException("Filter accepts a single graph in parameter");
+            }
+            BitSet nodeSet = nodes[0];
+            BitSet edgeSet = edges[0];
+            edgeSet.clear();
+            for (Edge e : graph.getEdges()) {
+                boolean source = nodeSet.get(e.getSource().getStoreId());
+                boolean target = nodeSet.get(e.getTarget().getStoreId());
+                boolean keep = false;
+                switch (option) {
+                    case SOURCE:
+                        keep = source;
+                        break;
+                    case TARGET:
+                        keep = target;
+                        break;
+                    case BOTH:
+                        keep = source && target;
+                        break;
+                    case ANY:
+                        keep = source || target;
+                        break;
+                }
+                if (keep) {
+                    edgeSet.set(e.getStoreId());
+                }
+            }
+            for (Node n : graph.getNodes()) {
+                nodeSet.set(n.getStoreId());
+            }
+        }
+
         @Override
         public Graph filter(Graph graph, Filter[] filters) {
             if (filters.length > 1) {
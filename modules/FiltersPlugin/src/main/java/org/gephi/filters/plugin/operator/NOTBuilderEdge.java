@@ -42,6 +42,7 @@
 package org.gephi.filters.plugin.operator;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import javax.swing.Icon;
 import javax.swing.JPanel;
@@ -50,7 +51,7 @@ import org.gephi.filters.spi.EdgeFilter;
 import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
-import org.gephi.filters.spi.Operator;
+import org.gephi.filters.spi.SetOperator;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
@@ -100,7 +101,7 @@ public class NOTBuilderEdge implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class NotOperatorEdge implements Operator {
+    public static class NotOperatorEdge implements SetOperator {
 
         @Override
         public int getInputCount() {
@@ -142,6 +143,20 @@ public class NOTBuilderEdge implements FilterBuilder {
             return graph;
         }
 
+        @Override
+        public void filter(Graph graph, BitSet[] nodes, BitSet[] edges) {
+            if (nodes.length > 1) {
+                throw new IllegalArgumentException("Not Filter accepts a single graph in parameter");
+            }
+            BitSet nodeSet = nodes[0];
+            BitSet edgeSet = edges[0];
+            for (Edge e : graph.getEdges()) {
+                if (nodeSet.get(e.getSource().getStoreId()) && nodeSet.get(e.getTarget().getStoreId())) {
+                    edgeSet.flip(e.getStoreId());
+                }
+            }
+        }
+
         @Override
         public Graph filter(Graph graph, Filter[] filters) {
             if (filters.length > 1) {
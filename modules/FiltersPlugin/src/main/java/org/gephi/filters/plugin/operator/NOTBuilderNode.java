@@ -42,6 +42,7 @@
 package org.gephi.filters.plugin.operator;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import javax.swing.Icon;
 import javax.swing.JPanel;
@@ -50,7 +51,7 @@ import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
 import org.gephi.filters.spi.NodeFilter;
-import org.gephi.filters.spi.Operator;
+import org.gephi.filters.spi.SetOperator;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
@@ -100,7 +101,7 @@ public class NOTBuilderNode implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class NOTOperatorNode implements Operator {
+    public static class NOTOperatorNode implements SetOperator {
 
         @Override
         public int getInputCount() {
@@ -148,6 +149,24 @@ public class NOTBuilderNode implements FilterBuilder {
             return graph;
         }
 
+        @Override
+        public void filter(Graph graph, BitSet[] nodes, BitSet[] edges) {
+            if (nodes.length > 1) {
+                throw new IllegalArgumentException("Not Filter accepts a single graph in parameter");
+            }
+            BitSet nodeSet = nodes[0];
+            BitSet edgeSet = edges[0];
+            for (Node n : graph.getNodes()) {
+                nodeSet.flip(n.getStoreId());
+            }
+            edgeSet.clear();
+            for (Edge e : graph.getEdges()) {
+                if (nodeSet.get(e.getSource().getStoreId()) && nodeSet.get(e.getTarget().getStoreId())) {
+                    edgeSet.set(e.getStoreId());
+                }
+            }
+        }
+
         @Override
         public Graph filter(Graph graph, Filter[] filters) {
             if (filters.length > 1) {
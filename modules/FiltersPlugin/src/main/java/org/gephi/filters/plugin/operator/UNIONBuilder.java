@@ -42,6 +42,7 @@ Portions Copyrighted 2011 Gephi Consortium.
 package org.gephi.filters.plugin.operator;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import javax.swing.Icon;
@@ -52,7 +53,7 @@ import org.gephi.filters.spi.Filter;
 import org.gephi.filters.spi.FilterBuilder;
 import org.gephi.filters.spi.FilterProperty;
 import org.gephi.filters.spi.NodeFilter;
-import org.gephi.filters.spi.Operator;
+import org.gephi.filters.spi.SetOperator;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
@@ -102,7 +103,7 @@ public class UNIONBuilder implements FilterBuilder {
     public void destroy(Filter filter) {
     }
 
-    public static class UnionOperator implements Operator {
+    public static class UnionOperator implements SetOperator {
 
         @Override
         public int getInputCount() {
@@ -129,6 +130,14 @@ public class UNIONBuilder implements FilterBuilder {
             return subGraph;
         }
 
+        @Override
+        public void filter(Graph graph, BitSet[] nodes, BitSet[] edges) {
+            for (int i = 1; i < nodes.length; i++) {
+                nodes[0].or(nodes[i]);
+                edges[0].or(edges[i]);
+            }
+        }
+
         @Override
         public Graph filter(Graph graph, Filter[] filters) {
             List<NodeFilter> nodeFilters = new ArrayList<>();
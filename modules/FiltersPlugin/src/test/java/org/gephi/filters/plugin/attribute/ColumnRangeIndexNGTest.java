@@ -0,0 +1,201 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin.attribute;
+
+import java.util.BitSet;
+import org.gephi.filters.api.Range;
+import org.gephi.filters.plugin.attribute.AttributeRangeBuilder.AttributeRangeFilter;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ColumnRangeIndexNGTest {
+
+    //Above 2^53, consecutive longs round to the same double
+    private static final long BIG = 1L << 53;
+
+    @Test
+    public void testFillExactBounds() {
+        Graph graph = createGraph(Integer.class, 1, 3, 3, 5, 7, null);
+        Column column = getColumn(graph);
+        ColumnRangeIndex index = new ColumnRangeIndex(graph, column);
+
+        for (int lower = 0; lower <= 8; lower++) {
+            for (int upper = lower; upper <= 8; upper++) {
+                for (Range range : createRanges(lower, upper)) {
+                    assertEquals(fill(index, range), bruteForce(graph, column, range), toString(range));
+                }
+            }
+        }
+        index.destroy();
+    }
+
+    @Test
+    public void testFillNonExactBounds() {
+        Graph graph = createGraph(Long.class, BIG, BIG + 1, BIG + 2, BIG + 3, BIG + 4, null);
+        Column column = getColumn(graph);
+        ColumnRangeIndex index = new ColumnRangeIndex(graph, column);
+
+        for (long lower = BIG - 1; lower <= BIG + 5; lower++) {
+            for (long upper = lower; upper <= BIG + 5; upper++) {
+                for (Range range : createRanges(lower, upper)) {
+                    assertEquals(fill(index, range), bruteForce(graph, column, range), toString(range));
+                }
+            }
+        }
+
+        //BIG + 1 rounds to BIG, BIG + 3 rounds to BIG + 4
+        assertEquals(fill(index, new Range(BIG + 1, BIG + 3)).cardinality(), 3);
+        assertEquals(fill(index, new Range(BIG + 1, BIG + 3, false, false)).cardinality(), 1);
+        index.destroy();
+    }
+
+    @Test
+    public void testFillInclusiveMinMax() {
+        Graph graph = createGraph(Double.class, 1.5, 2.0, 2.5, 4.0, null);
+        Column column = getColumn(graph);
+        ColumnRangeIndex index = new ColumnRangeIndex(graph, column);
+
+        assertEquals(fill(index, new Range(1.5, 4.0)).cardinality(), 4);
+        assertEquals(fill(index, new Range(1.5, 4.0, false, true)).cardinality(), 3);
+        assertEquals(fill(index, new Range(1.5, 4.0, true, false)).cardinality(), 3);
+        assertEquals(fill(index, new Range(1.5, 4.0, false, false)).cardinality(), 2);
+        assertEquals(fill(index, new Range(1.5, 1.5)).cardinality(), 1);
+        assertEquals(fill(index, new Range(4.0, 4.0)).cardinality(), 1);
+        index.destroy();
+    }
+
+    @Test
+    public void testFillNoMatch() {
+        Graph graph = createGraph(Integer.class, 1, 3, 3, 5, 7, null);
+        Column column = getColumn(graph);
+        ColumnRangeIndex index = new ColumnRangeIndex(graph, column);
+
+        assertTrue(fill(index, new Range(4, 4)).isEmpty());
+        assertTrue(fill(index, new Range(3, 3, false, false)).isEmpty());
+        assertTrue(fill(index, new Range(3, 5, false, false)).isEmpty());
+        assertTrue(fill(index, new Range(8, 10)).isEmpty());
+        assertTrue(fill(index, new Range(-5, 0)).isEmpty());
+        index.destroy();
+    }
+
+    @Test
+    public void testRebuildOnValueUpdate() {
+        Graph graph = createGraph(Integer.class, 1, 3, 3, 5, 7, null);
+        Column column = getColumn(graph);
+        AttributeRangeFilter filter = new AttributeRangeFilter.Node(column);
+        filter.setRange(new Range(2, 5));
+
+        assertTrue(filter.init(graph));
+        BitSet before = new BitSet();
+        assertTrue(filter.filter(graph, before));
+        assertEquals(before, bruteForce(graph, column, filter.getRange()));
+
+        ColumnRangeIndex index = new ColumnRangeIndex(graph, column);
+        assertTrue(index.isValid(graph));
+        Node node = graph.getNode("0");
+        node.setAttribute(column, 4);
+        assertFalse(index.isValid(graph));
+        index.destroy();
+
+        assertTrue(filter.init(graph));
+        BitSet after = new BitSet();
+        assertTrue(filter.filter(graph, after));
+        assertEquals(after, bruteForce(graph, column, filter.getRange()));
+        assertTrue(after.get(node.getStoreId()));
+        assertEquals(after.cardinality(), before.cardinality() + 1);
+    }
+
+    private static Range[] createRanges(Number lower, Number upper) {
+        return new Range[]{
+            new Range(lower, upper, true, true),
+            new Range(lower, upper, false, true),
+            new Range(lower, upper, true, false),
+            new Range(lower, upper, false, false)};
+    }
+
+    private static BitSet fill(ColumnRangeIndex index, Range range) {
+        BitSet set = new BitSet();
+        index.fill(range, set);
+        return set;
+    }
+
+    private static BitSet bruteForce(Graph graph, Column column, Range range) {
+        BitSet set = new BitSet();
+        for (Node n : graph.getNodes()) {
+            Object value = n.getAttribute(column);
+            if (value != null && range.isInRange((Number) value)) {
+                set.set(n.getStoreId());
+            }
+        }
+        return set;
+    }
+
+    private static String toString(Range range) {
+        return (range.isLeftInclusive() ? "[" : "(") + range.getLowerBound() + ", "
+                + range.getUpperBound() + (range.isRightInclusive() ? "]" : ")");
+    }
+
+    private static Column getColumn(Graph graph) {
+        return graph.getModel().getNodeTable().getColumn("value");
+    }
+
+    /**
+     * Returns a graph with one node per value, with ids from 0, and a
+     * <code>value</code> column of type <code>type</code>.
+     */
+    private static Graph createGraph(Class type, Object... values) {
+        GraphModel graphModel = GraphModel.Factory.newInstance();
+        Column column = graphModel.getNodeTable().addColumn("value", type);
+        Graph graph = graphModel.getGraph();
+        for (int i = 0; i < values.length; i++) {
+            Node node = graphModel.factory().newNode(String.valueOf(i));
+            if (values[i] != null) {
+                node.setAttribute(column, values[i]);
+            }
+            graph.addNode(node);
+        }
+        return graph;
+    }
+}
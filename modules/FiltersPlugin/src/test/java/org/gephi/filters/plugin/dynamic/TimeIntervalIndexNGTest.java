@@ -0,0 +1,178 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin.dynamic;
+
+import java.util.Random;
+import org.gephi.graph.api.Configuration;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.TimeRepresentation;
+import org.gephi.graph.api.types.IntervalSet;
+import org.gephi.graph.api.types.TimestampSet;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class TimeIntervalIndexNGTest {
+
+    //Forward steps, backward steps, then jumps, degenerate and covering windows
+    private static final double[][] WINDOWS = {
+        {0, 10}, {1, 11}, {2, 12}, {5, 15}, {5, 20}, {8, 20},
+        {6, 18}, {4, 16}, {3, 13}, {3, 9}, {0, 9},
+        {60, 70}, {10, 25}, {85, 100}, {40, 40}, {-10, 200}, {30, 30.5}, {0, 10}};
+
+    @Test
+    public void testSetWindowIntervals() {
+        Graph graph = createGraph(TimeRepresentation.INTERVAL);
+        TimeIntervalIndex index = new TimeIntervalIndex(graph, true);
+
+        for (double[] window : WINDOWS) {
+            index.setWindow(window[0], window[1]);
+            assertWindow(graph, index, window[0], window[1]);
+        }
+        index.destroy();
+    }
+
+    @Test
+    public void testSetWindowTimestamps() {
+        Graph graph = createGraph(TimeRepresentation.TIMESTAMP);
+        TimeIntervalIndex index = new TimeIntervalIndex(graph, false);
+
+        for (double[] window : WINDOWS) {
+            index.setWindow(window[0], window[1]);
+            assertWindow(graph, index, window[0], window[1]);
+        }
+        index.destroy();
+    }
+
+    @Test
+    public void testSetWindowRandomMoves() {
+        Graph graph = createGraph(TimeRepresentation.INTERVAL);
+        TimeIntervalIndex index = new TimeIntervalIndex(graph, true);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            double low = random.nextInt(110) - 5;
+            double high = low + random.nextInt(30);
+            index.setWindow(low, high);
+            assertWindow(graph, index, low, high);
+        }
+        index.destroy();
+    }
+
+    private static void assertWindow(Graph graph, TimeIntervalIndex index, double low, double high) {
+        String window = "[" + low + ", " + high + "]";
+        for (Node n : graph.getNodes()) {
+            Object timeSet = n.getAttribute("timeset");
+            assertEquals(index.contains(n, false), timeSet != null && overlaps(timeSet, low, high), window + " node " + n.getId());
+            assertEquals(index.contains(n, true), timeSet == null || overlaps(timeSet, low, high), window + " node " + n.getId());
+        }
+        for (Edge e : graph.getEdges()) {
+            Object timeSet = e.getAttribute("timeset");
+            assertEquals(index.contains(e, false), timeSet != null && overlaps(timeSet, low, high), window + " edge " + e.getId());
+            assertEquals(index.contains(e, true), timeSet == null || overlaps(timeSet, low, high), window + " edge " + e.getId());
+        }
+    }
+
+    private static boolean overlaps(Object timeSet, double low, double high) {
+        if (timeSet instanceof IntervalSet) {
+            for (Interval interval : ((IntervalSet) timeSet).toArray()) {
+                if (interval.getLow() <= high && interval.getHigh() >= low) {
+                    return true;
+                }
+            }
+        } else {
+            for (double t : ((TimestampSet) timeSet).toPrimitiveArray()) {
+                if (t >= low && t <= high) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a random graph over times 0 to 100, where a few elements have
+     * no time set and the others up to four disjoint intervals or
+     * timestamps, with integer bounds so that windows hit them exactly.
+     */
+    private static Graph createGraph(TimeRepresentation timeRepresentation) {
+        Configuration config = new Configuration();
+        config.setTimeRepresentation(timeRepresentation);
+        GraphModel graphModel = GraphModel.Factory.newInstance(config);
+        Graph graph = graphModel.getGraph();
+        Random random = new Random(42);
+        Node[] nodes = new Node[40];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = graphModel.factory().newNode(String.valueOf(i));
+            addTimes(nodes[i], random, timeRepresentation);
+            graph.addNode(nodes[i]);
+        }
+        for (int i = 0; i < 80; i++) {
+            Node source = nodes[random.nextInt(nodes.length)];
+            Node target = nodes[random.nextInt(nodes.length)];
+            if (graph.getEdge(source, target) == null) {
+                Edge edge = graphModel.factory().newEdge(source, target);
+                addTimes(edge, random, timeRepresentation);
+                graph.addEdge(edge);
+            }
+        }
+        return graph;
+    }
+
+    private static void addTimes(Element element, Random random, TimeRepresentation timeRepresentation) {
+        int count = random.nextInt(5);
+        int time = random.nextInt(20);
+        for (int i = 0; i < count && time <= 100; i++) {
+            if (timeRepresentation.equals(TimeRepresentation.INTERVAL)) {
+                int length = random.nextInt(15);
+                element.addInterval(new Interval(time, time + length));
+                time += length + 1 + random.nextInt(20);
+            } else {
+                element.addTimestamp(time);
+                time += 1 + random.nextInt(20);
+            }
+        }
+    }
+}
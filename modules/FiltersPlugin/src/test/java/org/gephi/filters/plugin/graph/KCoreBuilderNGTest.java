@@ -0,0 +1,118 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.filters.plugin.graph;
+
+import org.gephi.filters.plugin.graph.KCoreBuilder.KCoreFilter;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+import org.gephi.statistics.plugin.Coreness;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class KCoreBuilderNGTest {
+
+    @Test
+    public void testKCore() {
+        GraphModel graphModel = generateCliqueWithTail();
+
+        assertEquals(filter(graphModel, 3).getNodeCount(), 4);
+        assertEquals(filter(graphModel, 1).getNodeCount(), 6);
+        assertEquals(filter(graphModel, 4).getNodeCount(), 0);
+    }
+
+    @Test
+    public void testKCoreWithCoreness() {
+        GraphModel graphModel = generateCliqueWithTail();
+        new Coreness().execute(graphModel.getGraph());
+
+        assertTrue(Coreness.isUpToDate(graphModel.getGraph()));
+        assertEquals(filter(graphModel, 3).getNodeCount(), 4);
+        assertEquals(filter(graphModel, 1).getNodeCount(), 6);
+    }
+
+    @Test
+    public void testKCoreWithOutdatedCoreness() {
+        GraphModel graphModel = generateCliqueWithTail();
+        new Coreness().execute(graphModel.getGraph());
+
+        //Nodes 4 and 5 join the clique after the coreness was computed
+        Graph graph = graphModel.getGraph();
+        for (String id : new String[]{"4", "5"}) {
+            for (Node n : graph.getNodes().toArray()) {
+                if (!n.getId().equals(id) && graph.getEdge(graph.getNode(id), n) == null
+                        && graph.getEdge(n, graph.getNode(id)) == null) {
+                    graph.addEdge(graphModel.factory().newEdge(graph.getNode(id), n, false));
+                }
+            }
+        }
+
+        assertFalse(Coreness.isUpToDate(graph));
+        assertEquals(filter(graphModel, 5).getNodeCount(), 6);
+    }
+
+    private static Subgraph filter(GraphModel graphModel, int k) {
+        Subgraph graph = graphModel.getGraph(graphModel.createView());
+        graph.fill();
+        KCoreFilter filter = new KCoreFilter();
+        filter.setK(k);
+        return (Subgraph) filter.filter(graph);
+    }
+
+    private static GraphModel generateCliqueWithTail() {
+        GraphModel graphModel = GraphModel.Factory.newInstance();
+        Graph graph = graphModel.getUndirectedGraph();
+        Node[] nodes = new Node[6];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = graphModel.factory().newNode(String.valueOf(i));
+            graph.addNode(nodes[i]);
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = i + 1; j < 4; j++) {
+                graph.addEdge(graphModel.factory().newEdge(nodes[i], nodes[j], false));
+            }
+        }
+        graph.addEdge(graphModel.factory().newEdge(nodes[3], nodes[4], false));
+        graph.addEdge(graphModel.factory().newEdge(nodes[4], nodes[5], false));
+        return graphModel;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.api;
+
+/**
+ * Metrics of one iteration of a {@link LayoutRunner}.
+ * <p>
+ * Displacements are measured from the node positions in the graph, every
+ * {@link LayoutRunner#getSampleInterval() sample interval} iterations. On the
+ * other iterations, the displacement and energy are <code>NaN</code>.
+ *
+ * @see LayoutIterationListener
+ */
+public final class LayoutIteration {
+
+    private final long index;
+    private final long durationNanos;
+    private final long elapsedNanos;
+    private final double meanDisplacement;
+    private final double maxDisplacement;
+    private final double energy;
+
+    LayoutIteration(long index, long durationNanos, long elapsedNanos, double meanDisplacement, double maxDisplacement, double energy) {
+        this.index = index;
+        this.durationNanos = durationNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.meanDisplacement = meanDisplacement;
+        this.maxDisplacement = maxDisplacement;
+        this.energy = energy;
+    }
+
+    /**
+     * Returns the number of this iteration, starting at 1.
+     *
+     * @return the iteration number
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the time spent in this iteration's <code>goAlgo()</code>.
+     *
+     * @return the iteration duration, in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the time elapsed since the run started, initialization
+     * included.
+     *
+     * @return the elapsed time, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns whether the displacements were measured at this iteration.
+     *
+     * @return <code>true</code> if the displacement and energy are known
+     */
+    public boolean isSampled() {
+        return !Double.isNaN(meanDisplacement);
+    }
+
+    /**
+     * Returns the mean distance the nodes moved per iteration since the last
+     * sample.
+     *
+     * @return the mean displacement per iteration, or <code>NaN</code>
+     */
+    public double getMeanDisplacement() {
+        return meanDisplacement;
+    }
+
+    /**
+     * Returns the largest distance a node moved per iteration since the last
+     * sample.
+     *
+     * @return the maximum displacement per iteration, or <code>NaN</code>
+     */
+    public double getMaxDisplacement() {
+        return maxDisplacement;
+    }
+
+    /**
+     * Returns the kinetic energy of the layout, the sum of the squared
+     * displacements per iteration of all nodes since the last sample.
+     *
+     * @return the energy, or <code>NaN</code>
+     */
+    public double getEnergy() {
+        return energy;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutIteration{" + "index=" + index + ", durationNanos=" + durationNanos + ", meanDisplacement=" + meanDisplacement + ", maxDisplacement=" + maxDisplacement + ", energy=" + energy + '}';
+    }
+}
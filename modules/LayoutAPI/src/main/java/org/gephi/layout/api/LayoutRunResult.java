@@ -0,0 +1,136 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.api;
+
+/**
+ * Outcome of a {@link LayoutRunner} run.
+ */
+public final class LayoutRunResult {
+
+    /**
+     * Why the run stopped.
+     */
+    public enum Status {
+
+        /**
+         * The displacement or energy went under its threshold.
+         */
+        CONVERGED,
+        /**
+         * The maximum number of iterations was reached.
+         */
+        MAX_ITERATIONS,
+        /**
+         * The time budget was spent.
+         */
+        TIME_BUDGET,
+        /**
+         * The layout's <code>canAlgo()</code> returned <code>false</code>.
+         */
+        FINISHED,
+        /**
+         * The run was cancelled.
+         */
+        CANCELLED
+    }
+    private final Status status;
+    private final long iterations;
+    private final long elapsedNanos;
+    private final LayoutIteration lastSample;
+
+    LayoutRunResult(Status status, long iterations, long elapsedNanos, LayoutIteration lastSample) {
+        this.status = status;
+        this.iterations = iterations;
+        this.elapsedNanos = elapsedNanos;
+        this.lastSample = lastSample;
+    }
+
+    /**
+     * Returns why the run stopped.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns whether the layout converged.
+     *
+     * @return <code>true</code> if the status is {@link Status#CONVERGED}
+     */
+    public boolean isConverged() {
+        return status == Status.CONVERGED;
+    }
+
+    /**
+     * Returns the number of iterations run.
+     *
+     * @return the iteration count
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the total duration of the run, <code>initAlgo()</code> and
+     * <code>endAlgo()</code> included.
+     *
+     * @return the duration, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the last iteration whose displacements were measured.
+     *
+     * @return the last sampled iteration, or <code>null</code> if none was
+     */
+    public LayoutIteration getLastSample() {
+        return lastSample;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutRunResult{" + "status=" + status + ", iterations=" + iterations + ", elapsedNanos=" + elapsedNanos + '}';
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.api;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.spi.DeferredPositionsLayout;
+import org.gephi.layout.spi.Layout;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+
+/**
+ * Runs a layout in the calling thread until it converges, a number of
+ * iterations or a time budget is reached, or the layout finishes.
+ * <p>
+ * Unlike the {@link LayoutController}, the runner doesn't need a workspace
+ * nor a user interface and can be used on any graph model, for instance in
+ * batch jobs:
+ * <pre>
+ * LayoutRunner runner = new LayoutRunner(layout, graphModel);
+ * runner.setMaxIterations(10000);
+ * runner.setTimeBudget(60000);
+ * runner.setDisplacementThreshold(0.01);
+ * LayoutRunResult result = runner.run();
+ * </pre>
+ * Convergence is detected from the node positions in the visible graph,
+ * sampled every {@link #setSampleInterval(int) sample interval} iterations:
+ * the layout has converged when the mean displacement or the energy per
+ * iteration stays under its threshold for
+ * {@link #setConvergenceSamples(int) some samples} in a row. Layouts that
+ * write positions to the graph only every few iterations, as told by
+ * {@link DeferredPositionsLayout}, are sampled at a multiple of their
+ * interval. Without any limit or threshold, the layout runs until it finishes
+ * by itself or the run is cancelled.
+ *
+ * @see LayoutIterationListener
+ */
+public final class LayoutRunner implements LongTask {
+
+    private final Layout layout;
+    private final GraphModel graphModel;
+    private final List<LayoutIterationListener> listeners = new CopyOnWriteArrayList<>();
+    private long maxIterations;
+    private long timeBudget;
+    private double displacementThreshold;
+    private double energyThreshold;
+    private int sampleInterval = 1;
+    private int convergenceSamples = 1;
+    private volatile boolean cancelled;
+    private ProgressTicket progressTicket;
+    //Last sample
+    private Node[] sampledNodes;
+    private float[] sampledX;
+    private float[] sampledY;
+
+    /**
+     * Creates a runner for <code>layout</code>, which is given
+     * <code>graphModel</code> here. Some layouts reset their properties to
+     * defaults suited to the graph when given a graph model, so properties
+     * should be set after creating the runner.
+     *
+     * @param layout the layout to run
+     * @param graphModel the graph model to lay out
+     */
+    public LayoutRunner(Layout layout, GraphModel graphModel) {
+        if (layout == null || graphModel == null) {
+            throw new NullPointerException();
+        }
+        this.layout = layout;
+        this.graphModel = graphModel;
+        layout.setGraphModel(graphModel);
+    }
+
+    /**
+     * Runs the layout, from <code>initAlgo()</code> to <code>endAlgo()</code>.
+     * The layout is ended even if it fails.
+     *
+     * @return the result of the run
+     */
+    public LayoutRunResult run() {
+        cancelled = false;
+        long start = System.nanoTime();
+        if (layout.getBuilder() != null) {
+            Progress.setDisplayName(progressTicket, layout.getBuilder().getName());
+        }
+        Progress.start(progressTicket);
+
+        LayoutRunResult.Status status = LayoutRunResult.Status.FINISHED;
+        long i = 0;
+        LayoutIteration lastSample = null;
+        try {
+            layout.initAlgo();
+            int interval = getEffectiveSampleInterval();
+            sample();
+            int samplesUnderThreshold = 0;
+            while (true) {
+                if (cancelled) {
+                    status = LayoutRunResult.Status.CANCELLED;
+                    break;
+                }
+                if (!layout.canAlgo()) {
+                    status = LayoutRunResult.Status.FINISHED;
+                    break;
+                }
+                long iterationStart = System.nanoTime();
+                layout.goAlgo();
+                long now = System.nanoTime();
+                i++;
+
+                LayoutIteration iteration;
+                if (i % interval == 0) {
+                    iteration = measure(i, interval, now - iterationStart, now - start);
+                    if (iteration.isSampled()) {
+                        lastSample = iteration;
+                        if (isUnderThreshold(iteration)) {
+                            samplesUnderThreshold++;
+                        } else {
+                            samplesUnderThreshold = 0;
+                        }
+                    }
+                } else {
+                    iteration = new LayoutIteration(i, now - iterationStart, now - start, Double.NaN, Double.NaN, Double.NaN);
+                }
+                for (LayoutIterationListener listener : listeners) {
+                    listener.iterationDone(iteration);
+                }
+
+                if (samplesUnderThreshold >= convergenceSamples) {
+                    status = LayoutRunResult.Status.CONVERGED;
+                    break;
+                }
+                if (maxIterations > 0 && i >= maxIterations) {
+                    status = LayoutRunResult.Status.MAX_ITERATIONS;
+                    break;
+                }
+                if (timeBudget > 0 && now - start >= timeBudget * 1000000L) {
+                    status = LayoutRunResult.Status.TIME_BUDGET;
+                    break;
+                }
+            }
+        } finally {
+            layout.endAlgo();
+            sampledNodes = null;
+            sampledX = null;
+            sampledY = null;
+            Progress.finish(progressTicket);
+        }
+        return new LayoutRunResult(status, i, System.nanoTime() - start, lastSample);
+    }
+
+    private boolean isUnderThreshold(LayoutIteration iteration) {
+        return (displacementThreshold > 0 && iteration.getMeanDisplacement() < displacementThreshold)
+                || (energyThreshold > 0 && iteration.getEnergy() < energyThreshold);
+    }
+
+    /**
+     * Returns the sample interval rounded up to a multiple of the interval at
+     * which the layout writes positions, so that every sample sees the
+     * positions of its own iteration.
+     */
+    private int getEffectiveSampleInterval() {
+        if (layout instanceof DeferredPositionsLayout) {
+            Integer updateInterval = ((DeferredPositionsLayout) layout).getPositionsUpdateInterval();
+            if (updateInterval != null && updateInterval > 1) {
+                return (sampleInterval + updateInterval - 1) / updateInterval * updateInterval;
+            }
+        }
+        return sampleInterval;
+    }
+
+    /**
+     * Reads the positions, and returns the displacements per iteration since
+     * the previous sample, <code>interval</code> iterations ago. The
+     * displacements are unknown when the nodes have changed in between.
+     */
+    private LayoutIteration measure(long index, int interval, long duration, long elapsed) {
+        Node[] previousNodes = sampledNodes;
+        float[] previousX = sampledX;
+        float[] previousY = sampledY;
+        sample();
+
+        Node[] nodes = sampledNodes;
+        double mean = Double.NaN;
+        double max = Double.NaN;
+        double energy = Double.NaN;
+        if (previousNodes != null && previousNodes.length == nodes.length && nodes.length > 0) {
+            double sum = 0;
+            double squareSum = 0;
+            double maxSquare = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] != previousNodes[i]) {
+                    return new LayoutIteration(index, duration, elapsed, Double.NaN, Double.NaN, Double.NaN);
+                }
+                double xDist = (sampledX[i] - previousX[i]) / (double) interval;
+                double yDist = (sampledY[i] - previousY[i]) / (double) interval;
+                double square = xDist * xDist + yDist * yDist;
+                sum += Math.sqrt(square);
+                squareSum += square;
+                maxSquare = Math.max(maxSquare, square);
+            }
+            mean = sum / nodes.length;
+            max = Math.sqrt(maxSquare);
+            energy = squareSum;
+        }
+        return new LayoutIteration(index, duration, elapsed, mean, max, energy);
+    }
+
+    private void sample() {
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            Node[] nodes = graph.getNodes().toArray();
+            float[] x = new float[nodes.length];
+            float[] y = new float[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                x[i] = nodes[i].x();
+                y[i] = nodes[i].y();
+            }
+            sampledNodes = nodes;
+            sampledX = x;
+            sampledY = y;
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        cancelled = true;
+        if (layout instanceof LongTask) {
+            ((LongTask) layout).cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progressTicket = progressTicket;
+        if (layout instanceof LongTask) {
+            ((LongTask) layout).setProgressTicket(progressTicket);
+        }
+    }
+
+    /**
+     * Adds a listener notified after each iteration.
+     *
+     * @param listener the listener to add
+     */
+    public void addIterationListener(LayoutIterationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with
+     * {@link #addIterationListener(LayoutIterationListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeIterationListener(LayoutIterationListener listener) {
+        listeners.remove(listener);
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public GraphModel getGraphModel() {
+        return graphModel;
+    }
+
+    public long getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Sets the number of iterations after which the run stops.
+     *
+     * @param maxIterations the maximum number of iterations, or zero for no
+     * limit
+     */
+    public void setMaxIterations(long maxIterations) {
+        this.maxIterations = Math.max(0, maxIterations);
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the time after which the run stops. The current iteration is
+     * always completed, so a run may take a little more than its budget.
+     *
+     * @param timeBudget the time budget in milliseconds, or zero for no
+     * limit
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = Math.max(0, timeBudget);
+    }
+
+    public double getDisplacementThreshold() {
+        return displacementThreshold;
+    }
+
+    /**
+     * Sets the mean displacement per iteration under which the layout is
+     * considered converged.
+     *
+     * @param displacementThreshold the threshold, or zero to ignore the
+     * displacement
+     */
+    public void setDisplacementThreshold(double displacementThreshold) {
+        this.displacementThreshold = Math.max(0, displacementThreshold);
+    }
+
+    public double getEnergyThreshold() {
+        return energyThreshold;
+    }
+
+    /**
+     * Sets the energy under which the layout is considered converged.
+     *
+     * @param energyThreshold the threshold, or zero to ignore the energy
+     * @see LayoutIteration#getEnergy()
+     */
+    public void setEnergyThreshold(double energyThreshold) {
+        this.energyThreshold = Math.max(0, energyThreshold);
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Sets every how many iterations the node positions are read to measure
+     * the displacements. For a {@link DeferredPositionsLayout}, the interval
+     * is rounded up to a multiple of its positions update interval.
+     *
+     * @param sampleInterval the number of iterations, at least one
+     */
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    public int getConvergenceSamples() {
+        return convergenceSamples;
+    }
+
+    /**
+     * Sets how many samples in a row must be under the thresholds for the
+     * layout to be considered converged.
+     *
+     * @param convergenceSamples the number of samples, at least one
+     */
+    public void setConvergenceSamples(int convergenceSamples) {
+        this.convergenceSamples = Math.max(1, convergenceSamples);
+    }
+}
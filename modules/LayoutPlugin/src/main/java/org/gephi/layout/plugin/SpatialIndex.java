@@ -0,0 +1,243 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over axis-aligned boxes, to find the boxes overlapping each
+ * other without testing every pair, as overlap removal layouts need.
+ * <p>
+ * Boxes are given by index, and each box is registered in every cell it
+ * covers. The cell size follows the mean box size, widened when the boxes
+ * are scattered so that the number of cells stays in proportion with the
+ * number of boxes. The index can be {@link #build(float[], float[], float[], float[], int) rebuilt}
+ * at every iteration and keeps its arrays as long as they are large enough.
+ * It refers to the arrays of boxes, which should not change until the next
+ * build.
+ * <p>
+ * Queries don't modify the index and can run from several threads at once,
+ * between two builds.
+ */
+public final class SpatialIndex {
+
+    private int count;
+    private float[] minX;
+    private float[] minY;
+    private float[] maxX;
+    private float[] maxY;
+    //Grid
+    private float originX;
+    private float originY;
+    private float cellSize;
+    private int columns;
+    private int rows;
+    //Cells covered by each box
+    private int[] firstColumns = new int[0];
+    private int[] firstRows = new int[0];
+    private int[] lastColumns = new int[0];
+    private int[] lastRows = new int[0];
+    //Boxes of each cell
+    private int[] cellStarts = new int[1];
+    private int[] cellBoxes = new int[0];
+
+    /**
+     * Receives the boxes found by
+     * {@link SpatialIndex#forEachOverlap(int, Visitor)}.
+     */
+    public interface Visitor {
+
+        /**
+         * Called for each box overlapping the queried box.
+         *
+         * @param box the queried box
+         * @param other a box overlapping it
+         */
+        void visit(int box, int other);
+    }
+
+    /**
+     * Indexes <code>count</code> boxes, box <code>i</code> going from
+     * <code>(minX[i], minY[i])</code> to <code>(maxX[i], maxY[i])</code>.
+     *
+     * @param minX the left of the boxes
+     * @param minY the bottom of the boxes
+     * @param maxX the right of the boxes
+     * @param maxY the top of the boxes
+     * @param count the number of boxes
+     */
+    public void build(float[] minX, float[] minY, float[] maxX, float[] maxY, int count) {
+        this.count = count;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        if (firstColumns.length < count) {
+            int capacity = Math.max(count, firstColumns.length * 3 / 2);
+            firstColumns = new int[capacity];
+            firstRows = new int[capacity];
+            lastColumns = new int[capacity];
+            lastRows = new int[capacity];
+        }
+
+        // Bounds and mean box size
+        float left = Float.POSITIVE_INFINITY;
+        float bottom = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY;
+        float top = Float.NEGATIVE_INFINITY;
+        double extentSum = 0;
+        for (int i = 0; i < count; i++) {
+            left = Math.min(left, minX[i]);
+            bottom = Math.min(bottom, minY[i]);
+            right = Math.max(right, maxX[i]);
+            top = Math.max(top, maxY[i]);
+            extentSum += Math.max(maxX[i] - minX[i], maxY[i] - minY[i]);
+        }
+        if (count == 0) {
+            left = bottom = right = top = 0;
+        }
+        originX = left;
+        originY = bottom;
+        cellSize = (float) Math.max(2 * extentSum / Math.max(1, count), 1e-6);
+        long cellCount;
+        do {
+            columns = (int) Math.min(Integer.MAX_VALUE, (long) ((right - left) / cellSize) + 1);
+            rows = (int) Math.min(Integer.MAX_VALUE, (long) ((top - bottom) / cellSize) + 1);
+            cellCount = (long) columns * rows;
+            if (cellCount > 4L * count + 16) {
+                cellSize *= 2;
+            }
+        } while (cellCount > 4L * count + 16);
+
+        // Boxes sorted by cell
+        int cells = columns * rows;
+        if (cellStarts.length < cells + 1) {
+            cellStarts = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStarts, 0, cells + 1, 0);
+        }
+        long entries = 0;
+        for (int i = 0; i < count; i++) {
+            firstColumns[i] = column(minX[i]);
+            firstRows[i] = row(minY[i]);
+            lastColumns[i] = column(maxX[i]);
+            lastRows[i] = row(maxY[i]);
+            for (int r = firstRows[i]; r <= lastRows[i]; r++) {
+                for (int c = firstColumns[i]; c <= lastColumns[i]; c++) {
+                    cellStarts[r * columns + c + 1]++;
+                }
+            }
+            entries += (long) (lastRows[i] - firstRows[i] + 1) * (lastColumns[i] - firstColumns[i] + 1);
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        if (cellBoxes.length < entries) {
+            cellBoxes = new int[(int) Math.max(entries, cellBoxes.length * 3L / 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            for (int r = firstRows[i]; r <= lastRows[i]; r++) {
+                for (int c = firstColumns[i]; c <= lastColumns[i]; c++) {
+                    cellBoxes[cellStarts[r * columns + c]++] = i;
+                }
+            }
+        }
+        // Starts were moved to the ends of the cells, shift them back
+        for (int c = cells; c > 0; c--) {
+            cellStarts[c] = cellStarts[c - 1];
+        }
+        cellStarts[0] = 0;
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - originX) / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - originY) / cellSize)));
+    }
+
+    /**
+     * Returns the number of indexed boxes.
+     *
+     * @return the box count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns whether two indexed boxes overlap. Boxes touching on an edge
+     * overlap.
+     *
+     * @param box a box
+     * @param other another box
+     * @return <code>true</code> if the boxes overlap
+     */
+    public boolean overlaps(int box, int other) {
+        return minX[box] <= maxX[other] && minX[other] <= maxX[box]
+                && minY[box] <= maxY[other] && minY[other] <= maxY[box];
+    }
+
+    /**
+     * Calls <code>visitor</code> once for every other box overlapping
+     * <code>box</code>, in an order that only depends on the boxes.
+     *
+     * @param box the box
+     * @param visitor the visitor
+     */
+    public void forEachOverlap(int box, Visitor visitor) {
+        for (int r = firstRows[box]; r <= lastRows[box]; r++) {
+            for (int c = firstColumns[box]; c <= lastColumns[box]; c++) {
+                int cell = r * columns + c;
+                for (int p = cellStarts[cell]; p < cellStarts[cell + 1]; p++) {
+                    int other = cellBoxes[p];
+                    // Boxes sharing several cells are only visited in the first one
+                    if (other != box && overlaps(box, other)
+                            && c == Math.max(firstColumns[box], firstColumns[other])
+                            && r == Math.max(firstRows[box], firstRows[other])) {
+                        visitor.visit(box, other);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -77,6 +77,8 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
     private float barnesHutTheta;
     private float convergenceThreshold;
     private boolean adaptiveCooling;
+    private boolean multilevel;
+    private YifanHuMultilevel hierarchy;
     private Displacement displacement;
     private double energy0;
     private double energy;
@@ -140,6 +142,7 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
         setBarnesHutTheta(1.2f);
         setAdaptiveCooling(true);
         setConvergenceThreshold(1e-4f);
+        setMultilevel(false);
     }
 
     public float getAverageEdgeLength(Graph graph) {
@@ -204,6 +207,13 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
                     "YifanHu.convergenceThreshold.name",
                     NbBundle.getMessage(getClass(), "YifanHu.convergenceThreshold.desc"),
                     "getConvergenceThreshold", "setConvergenceThreshold"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Boolean.class,
+                    NbBundle.getMessage(getClass(), "YifanHu.multilevel.name"),
+                    YIFANHU_CATEGORY,
+                    "YifanHu.multilevel.name",
+                    NbBundle.getMessage(getClass(), "YifanHu.multilevel.desc"),
+                    "isMultilevel", "setMultilevel"));
             properties.add(LayoutProperty.createProperty(
                     this, Integer.class,
                     NbBundle.getMessage(getClass(), "YifanHu.quadTreeMaxLevel.name"),
@@ -240,6 +250,13 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
             progress = 0;
             setConverged(false);
             setStep(initialStep);
+            hierarchy = null;
+            if (isMultilevel()) {
+                hierarchy = YifanHuMultilevel.build(graph);
+                if (hierarchy != null) {
+                    hierarchy.start(this);
+                }
+            }
         } finally {
             graph.readUnlockAll();
         }
@@ -247,6 +264,7 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
 
     @Override
     public void endAlgo() {
+        hierarchy = null;
         graph.readLock();
         try {
             for (Node n : graph.getNodes()) {
@@ -262,6 +280,15 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
         graph = graphModel.getGraphVisible();
         graph.readLock();
         try {
+            // Lay out the coarse levels first
+            if (hierarchy != null) {
+                hierarchy.step(this);
+                if (hierarchy.isDone()) {
+                    hierarchy = null;
+                }
+                return;
+            }
+
             Node[] nodes = graph.getNodes().toArray();
             for (Node n : nodes) {
                 if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceVector)) {
@@ -392,6 +419,21 @@ public class YifanHuLayout extends AbstractLayout implements Layout {
         this.adaptiveCooling = adaptiveCooling;
     }
 
+    /**
+     * @return whether the graph is laid out from coarsened versions first
+     */
+    public Boolean isMultilevel() {
+        return multilevel;
+    }
+
+    /**
+     * @param multilevel whether to lay out coarsened versions of the graph
+     * first
+     */
+    public void setMultilevel(Boolean multilevel) {
+        this.multilevel = multilevel;
+    }
+
     /**
      * @return the stepRatio
      */
@@ -0,0 +1,616 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.force.yifanHu;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * Coarsening hierarchy of a graph for the multilevel mode of
+ * {@link YifanHuLayout}.
+ * <p>
+ * Each level is built from the previous one by heavy-edge matching: every
+ * node is merged with the unmatched neighbor sharing the heaviest edge,
+ * relative to their masses. Coarsening stops when a level is small enough or
+ * when matching no longer shrinks the graph. The coarsest level starts from
+ * the mean position of its nodes, and each level is laid out with Hu's
+ * spring and electrical forces, Barnes-Hut approximated, before its
+ * positions are prolonged to the finer level. The natural spring length of
+ * a level grows by <code>sqrt(7/4)</code> per level, as in Hu's paper.
+ * <p>
+ * The finest level is the graph itself and is not laid out here: once the
+ * first coarse level is done, its positions are written to the nodes and the
+ * layout carries on with its usual algorithm.
+ */
+final class YifanHuMultilevel {
+
+    //Levels smaller than this are not coarsened further
+    private static final int COARSEST_SIZE = 50;
+    //Coarsening stops when a level keeps more than this ratio of nodes
+    private static final double MIN_REDUCTION = 0.75;
+    //Iterations after which a level is considered laid out
+    private static final int MAX_LEVEL_ITERATIONS = 300;
+    private static final double LEVEL_GROWTH = Math.sqrt(7.0 / 4.0);
+    private final Node[] nodes;
+    private final Level[] levels;
+    private final Random random = new Random(42);
+    //Current level and its cooling state
+    private int current;
+    private float optimalDistance;
+    private float step;
+    private int progress;
+    private int iterations;
+    private double energy0;
+    private double energy;
+    private float[] forceX = new float[0];
+    private float[] forceY = new float[0];
+    private final QuadTreeArrays tree = new QuadTreeArrays();
+
+    private YifanHuMultilevel(Node[] nodes, Level[] levels) {
+        this.nodes = nodes;
+        this.levels = levels;
+    }
+
+    /**
+     * Builds the hierarchy of <code>graph</code>, which should be read
+     * locked.
+     *
+     * @param graph the graph
+     * @return the hierarchy, or <code>null</code> if the graph is too small
+     * to be coarsened
+     */
+    static YifanHuMultilevel build(Graph graph) {
+        Node[] nodes = graph.getNodes().toArray();
+        int n = nodes.length;
+        if (n <= COARSEST_SIZE) {
+            return null;
+        }
+        int maxStoreId = 0;
+        for (Node node : nodes) {
+            maxStoreId = Math.max(maxStoreId, node.getStoreId());
+        }
+        int[] indexByStoreId = new int[maxStoreId + 1];
+        for (int i = 0; i < n; i++) {
+            indexByStoreId[nodes[i].getStoreId()] = i;
+        }
+
+        //Finest level, from the edges in both directions
+        Level finest = new Level(n);
+        int[] degrees = new int[n + 1];
+        Edge[] edges = graph.getEdges().toArray();
+        for (Edge edge : edges) {
+            int source = indexByStoreId[edge.getSource().getStoreId()];
+            int target = indexByStoreId[edge.getTarget().getStoreId()];
+            if (source != target) {
+                degrees[source + 1]++;
+                degrees[target + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            degrees[i + 1] += degrees[i];
+        }
+        int[] neighbors = new int[degrees[n]];
+        int[] next = Arrays.copyOf(degrees, n);
+        for (Edge edge : edges) {
+            int source = indexByStoreId[edge.getSource().getStoreId()];
+            int target = indexByStoreId[edge.getTarget().getStoreId()];
+            if (source != target) {
+                neighbors[next[source]++] = target;
+                neighbors[next[target]++] = source;
+            }
+        }
+        float[] ones = new float[neighbors.length];
+        Arrays.fill(ones, 1f);
+        int[] identity = identity(n + 1);
+        finest.merge(degrees, neighbors, ones, identity, identity, identity);
+        for (int i = 0; i < n; i++) {
+            finest.mass[i] = 1;
+            finest.x[i] = nodes[i].x();
+            finest.y[i] = nodes[i].y();
+        }
+
+        //Coarser levels
+        Level[] levels = new Level[]{finest};
+        Random random = new Random(42);
+        while (levels[levels.length - 1].size > COARSEST_SIZE) {
+            Level fine = levels[levels.length - 1];
+            Level coarse = fine.coarsen(random);
+            if (coarse.size > MIN_REDUCTION * fine.size) {
+                break;
+            }
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = coarse;
+        }
+        if (levels.length == 1) {
+            return null;
+        }
+        return new YifanHuMultilevel(nodes, levels);
+    }
+
+    /**
+     * Returns whether all the coarse levels are laid out.
+     *
+     * @return <code>true</code> when the layout should go on with the graph
+     */
+    boolean isDone() {
+        return current == 0;
+    }
+
+    /**
+     * Starts at the coarsest level.
+     *
+     * @param layout the layout whose settings are used
+     */
+    void start(YifanHuLayout layout) {
+        startLevel(levels.length - 1, layout);
+    }
+
+    private void startLevel(int level, YifanHuLayout layout) {
+        current = level;
+        double growth = Math.pow(LEVEL_GROWTH, level);
+        optimalDistance = (float) (layout.getOptimalDistance() * growth);
+        step = (float) (layout.getInitialStep() * growth);
+        progress = 0;
+        iterations = 0;
+        energy = Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Runs one iteration on the current level, and prolongs its positions to
+     * the finer level once it has converged. When the finer level is the
+     * graph, the positions are written to the nodes.
+     *
+     * @param layout the layout whose settings are used
+     */
+    void step(YifanHuLayout layout) {
+        Level level = levels[current];
+        iterate(level, layout);
+        iterations++;
+        if (Math.abs((energy - energy0) / energy) < layout.getConvergenceThreshold()
+                || iterations >= MAX_LEVEL_ITERATIONS) {
+            Level fine = levels[current - 1];
+            prolong(level, fine);
+            startLevel(current - 1, layout);
+            writePositions();
+        }
+    }
+
+    /**
+     * Places the nodes at the position of their level ancestor. Fixed nodes
+     * are not moved.
+     */
+    private void writePositions() {
+        Level level = levels[current];
+        for (int i = 0; i < nodes.length; i++) {
+            int ancestor = i;
+            for (int l = 0; l < current; l++) {
+                ancestor = levels[l].parents[ancestor];
+            }
+            Node node = nodes[i];
+            if (!node.isFixed()) {
+                node.setX(level.x[ancestor]);
+                node.setY(level.y[ancestor]);
+            }
+        }
+    }
+
+    /**
+     * Places every fine node at the position of its coarse node, the two
+     * nodes of a matched pair a little apart from each other.
+     */
+    private void prolong(Level coarse, Level fine) {
+        float spread = optimalDistance / (float) LEVEL_GROWTH * 0.1f;
+        boolean[] placed = new boolean[coarse.size];
+        for (int i = 0; i < fine.size; i++) {
+            int parent = fine.parents[i];
+            float x = coarse.x[parent];
+            float y = coarse.y[parent];
+            if (placed[parent]) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                x += spread * Math.cos(angle);
+                y += spread * Math.sin(angle);
+            }
+            placed[parent] = true;
+            fine.x[i] = x;
+            fine.y[i] = y;
+        }
+    }
+
+    /**
+     * One iteration of Hu's algorithm, as in {@link YifanHuLayout#goAlgo()}
+     * with a step displacement.
+     */
+    private void iterate(Level level, YifanHuLayout layout) {
+        int n = level.size;
+        float[] x = level.x;
+        float[] y = level.y;
+        if (forceX.length < n) {
+            forceX = new float[n];
+            forceY = new float[n];
+        }
+        float[] fx = forceX;
+        float[] fy = forceY;
+        Arrays.fill(fx, 0, n, 0f);
+        Arrays.fill(fy, 0, n, 0f);
+
+        // Electrical force, Fr = -C*K*K*(n2-n1)/||n2-n1||, using Barnes-Hut
+        float strength = layout.getRelativeStrength() * optimalDistance * optimalDistance;
+        tree.build(x, y, n, layout.getQuadTreeMaxLevel());
+        float theta = layout.getBarnesHutTheta();
+        for (int i = 0; i < n; i++) {
+            tree.addElectricalForce(i, x, y, strength, theta, fx, fy);
+        }
+
+        // Spring force, Fa = (n2 - n1) * ||n2 - n1|| / K
+        for (int i = 0; i < n; i++) {
+            for (int k = level.offsets[i], end = level.offsets[i + 1]; k < end; k++) {
+                int j = level.neighbors[k];
+                if (j > i) {
+                    float xDist = x[j] - x[i];
+                    float yDist = y[j] - y[i];
+                    float factor = (float) Math.hypot(xDist, yDist) / optimalDistance;
+                    fx[i] += xDist * factor;
+                    fy[i] += yDist * factor;
+                    fx[j] -= xDist * factor;
+                    fy[j] -= yDist * factor;
+                }
+            }
+        }
+
+        // Calculate energy and move nodes a step in the direction of their force
+        energy0 = energy;
+        energy = 0;
+        for (int i = 0; i < n; i++) {
+            float norm = (float) Math.hypot(fx[i], fy[i]);
+            energy += norm;
+            float newX = x[i] + fx[i] / norm * step;
+            float newY = y[i] + fy[i] / norm * step;
+            if (!Float.isInfinite(newX) && !Float.isNaN(newX)) {
+                x[i] = newX;
+            }
+            if (!Float.isInfinite(newY) && !Float.isNaN(newY)) {
+                y[i] = newY;
+            }
+        }
+
+        // Cooling
+        float stepRatio = layout.getStepRatio();
+        if (layout.isAdaptiveCooling()) {
+            if (energy < energy0) {
+                progress++;
+                if (progress >= 5) {
+                    progress = 0;
+                    step /= stepRatio;
+                }
+            } else {
+                progress = 0;
+                step *= stepRatio;
+            }
+        } else {
+            step *= stepRatio;
+        }
+    }
+
+    private static int[] identity(int n) {
+        int[] array = new int[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = i;
+        }
+        return array;
+    }
+
+    /**
+     * One level of the hierarchy, with its adjacency, without duplicate edges,
+     * in compressed rows.
+     */
+    private static final class Level {
+
+        private final int size;
+        private int[] offsets;
+        private int[] neighbors;
+        private float[] weights;
+        private final float[] mass;
+        private final float[] x;
+        private final float[] y;
+        //Node of the coarser level each node is merged in
+        private int[] parents;
+
+        Level(int size) {
+            this.size = size;
+            this.mass = new float[size];
+            this.x = new float[size];
+            this.y = new float[size];
+        }
+
+        /**
+         * Builds the adjacency of this level from the edges of the members
+         * of each node, merging parallel edges and dropping self-loops. The
+         * finest level is built from itself, each node being its own
+         * member.
+         */
+        private void merge(int[] fineOffsets, int[] fineNeighbors, float[] fineWeights, int[] fineParents, int[] memberOffsets, int[] members) {
+            offsets = new int[size + 1];
+            int[] rowNeighbors = new int[Math.max(16, fineNeighbors.length / 2)];
+            float[] rowWeights = new float[rowNeighbors.length];
+            int[] positions = new int[size];
+            Arrays.fill(positions, -1);
+            int cursor = 0;
+            for (int c = 0; c < size; c++) {
+                int rowStart = cursor;
+                for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                    int member = members[m];
+                    for (int k = fineOffsets[member]; k < fineOffsets[member + 1]; k++) {
+                        int other = fineParents[fineNeighbors[k]];
+                        if (other == c) {
+                            continue;
+                        }
+                        int position = positions[other];
+                        if (position >= rowStart) {
+                            rowWeights[position] += fineWeights[k];
+                        } else {
+                            if (cursor == rowNeighbors.length) {
+                                rowNeighbors = Arrays.copyOf(rowNeighbors, cursor * 2);
+                                rowWeights = Arrays.copyOf(rowWeights, cursor * 2);
+                            }
+                            positions[other] = cursor;
+                            rowNeighbors[cursor] = other;
+                            rowWeights[cursor] = fineWeights[k];
+                            cursor++;
+                        }
+                    }
+                }
+                offsets[c + 1] = cursor;
+            }
+            neighbors = Arrays.copyOf(rowNeighbors, cursor);
+            weights = Arrays.copyOf(rowWeights, cursor);
+        }
+
+        /**
+         * Matches every node with the unmatched neighbor of heaviest edge
+         * weight divided by the product of the masses, visiting the nodes in
+         * random order, and returns the level of the merged pairs.
+         */
+        Level coarsen(Random random) {
+            int[] order = identity(size);
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            int[] matches = new int[size];
+            Arrays.fill(matches, -1);
+            for (int u : order) {
+                if (matches[u] != -1) {
+                    continue;
+                }
+                int best = u;
+                float bestScore = 0;
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = neighbors[k];
+                    if (matches[v] == -1) {
+                        float score = weights[k] / (mass[u] * mass[v]);
+                        if (score > bestScore) {
+                            bestScore = score;
+                            best = v;
+                        }
+                    }
+                }
+                matches[u] = best;
+                matches[best] = u;
+            }
+
+            //Number the pairs in the order of their first node
+            parents = new int[size];
+            Arrays.fill(parents, -1);
+            int count = 0;
+            for (int u = 0; u < size; u++) {
+                if (parents[u] == -1) {
+                    parents[u] = count;
+                    parents[matches[u]] = count;
+                    count++;
+                }
+            }
+            int[] memberOffsets = new int[count + 1];
+            int[] members = new int[size];
+            for (int u = 0; u < size; u++) {
+                memberOffsets[parents[u] + 1]++;
+            }
+            for (int c = 0; c < count; c++) {
+                memberOffsets[c + 1] += memberOffsets[c];
+            }
+            int[] next = Arrays.copyOf(memberOffsets, count);
+            for (int u = 0; u < size; u++) {
+                members[next[parents[u]]++] = u;
+            }
+
+            Level coarse = new Level(count);
+            coarse.merge(offsets, neighbors, weights, parents, memberOffsets, members);
+            for (int u = 0; u < size; u++) {
+                int c = parents[u];
+                coarse.mass[c] += mass[u];
+                coarse.x[c] += mass[u] * x[u];
+                coarse.y[c] += mass[u] * y[u];
+            }
+            for (int c = 0; c < count; c++) {
+                coarse.x[c] /= coarse.mass[c];
+                coarse.y[c] /= coarse.mass[c];
+            }
+            return coarse;
+        }
+    }
+
+    /**
+     * Quadtree on the positions of a level, with the same splitting as
+     * {@link org.gephi.layout.plugin.force.quadtree.QuadTree}: cells split
+     * in four until the maximum level, where nodes are aggregated.
+     */
+    private static final class QuadTreeArrays {
+
+        private int count;
+        private int[] firstChild = new int[0];
+        private int[] mass = new int[0];
+        private float[] centerX = new float[0];
+        private float[] centerY = new float[0];
+        private float[] posX = new float[0];
+        private float[] posY = new float[0];
+        private float[] sizes = new float[0];
+        private int[] depths = new int[0];
+        private int[] stack = new int[64];
+
+        void build(float[] x, float[] y, int n, int maxLevel) {
+            float minX = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY;
+            float minY = Float.POSITIVE_INFINITY;
+            float maxY = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            count = 0;
+            newCell(minX, minY, Math.max(maxY - minY, maxX - minX), 0);
+            for (int i = 0; i < n; i++) {
+                add(x[i], y[i], maxLevel);
+            }
+        }
+
+        private int newCell(float x, float y, float size, int depth) {
+            if (count == firstChild.length) {
+                int capacity = Math.max(64, count * 2);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                mass = Arrays.copyOf(mass, capacity);
+                centerX = Arrays.copyOf(centerX, capacity);
+                centerY = Arrays.copyOf(centerY, capacity);
+                posX = Arrays.copyOf(posX, capacity);
+                posY = Arrays.copyOf(posY, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+            firstChild[count] = -1;
+            mass[count] = 0;
+            centerX[count] = 0;
+            centerY[count] = 0;
+            posX[count] = x;
+            posY[count] = y;
+            sizes[count] = size;
+            depths[count] = depth;
+            return count++;
+        }
+
+        private void add(float x, float y, int maxLevel) {
+            int cell = 0;
+            while (true) {
+                if (mass[cell] == 1 && firstChild[cell] == -1 && depths[cell] < maxLevel) {
+                    //Split, and move the single node down
+                    float half = sizes[cell] / 2;
+                    int depth = depths[cell] + 1;
+                    int first = newCell(posX[cell] + half, posY[cell] + half, half, depth);
+                    newCell(posX[cell], posY[cell] + half, half, depth);
+                    newCell(posX[cell], posY[cell], half, depth);
+                    newCell(posX[cell] + half, posY[cell], half, depth);
+                    firstChild[cell] = first;
+                    int child = childOf(cell, centerX[cell], centerY[cell]);
+                    mass[child] = 1;
+                    centerX[child] = centerX[cell];
+                    centerY[child] = centerY[cell];
+                }
+                centerX[cell] = (mass[cell] * centerX[cell] + x) / (mass[cell] + 1);
+                centerY[cell] = (mass[cell] * centerY[cell] + y) / (mass[cell] + 1);
+                mass[cell]++;
+                if (firstChild[cell] == -1) {
+                    return;
+                }
+                cell = childOf(cell, x, y);
+            }
+        }
+
+        private int childOf(int cell, float x, float y) {
+            float half = sizes[cell] / 2;
+            boolean right = x >= posX[cell] + half;
+            boolean top = y >= posY[cell] + half;
+            int first = firstChild[cell];
+            if (top) {
+                return right ? first : first + 1;
+            }
+            return right ? first + 3 : first + 2;
+        }
+
+        void addElectricalForce(int i, float[] x, float[] y, float strength, float theta, float[] fx, float[] fy) {
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int cell = stack[--top];
+                if (mass[cell] <= 0) {
+                    continue;
+                }
+                float xDist = centerX[cell] - x[i];
+                float yDist = centerY[cell] - y[i];
+                float distance = (float) Math.hypot(xDist, yDist);
+                boolean leaf = firstChild[cell] == -1;
+                if (leaf || distance * theta > sizes[cell]) {
+                    if (leaf && distance < 1e-8) {
+                        // this is probably the case where the cell has only the node.
+                        continue;
+                    }
+                    float scale = -strength / (distance * distance);
+                    if (Float.isNaN(scale) || Float.isInfinite(scale)) {
+                        scale = -1;
+                    }
+                    fx[i] += xDist * scale * mass[cell];
+                    fy[i] += yDist * scale * mass[cell];
+                } else {
+                    if (top + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    int first = firstChild[cell];
+                    for (int c = 0; c < 4; c++) {
+                        stack[top++] = first + c;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import java.util.Arrays;
+
+/**
+ * Barnes Hut optimization over the arrays of {@link ForceAtlas2Engine}.
+ * Regions are split in four at their mass center, and stored in flat arrays
+ * rebuilt in place at every iteration.
+ * <p>
+ * The children of a region are consecutive, and every node belongs to the
+ * range <code>[start, end)</code> of the node order of its regions.
+ */
+final class BarnesHutTree {
+
+    //Node indices, grouped by region
+    private int[] order = new int[0];
+    //Regions
+    private int regionCount;
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[] firstChilds = new int[0];
+    private int[] childCounts = new int[0];
+    private double[] masses = new double[0];
+    private double[] massCentersX = new double[0];
+    private double[] massCentersY = new double[0];
+    private double[] sizes = new double[0];
+
+    /**
+     * Rebuilds the regions of the <code>nodeCount</code> first nodes, reusing
+     * the arrays of the previous build.
+     *
+     * @param x node x positions
+     * @param y node y positions
+     * @param mass node masses
+     * @param nodeCount the number of nodes
+     */
+    void build(float[] x, float[] y, double[] mass, int nodeCount) {
+        if (order.length < nodeCount) {
+            order = new int[nodeCount];
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            order[i] = i;
+        }
+        regionCount = 0;
+        if (nodeCount == 0) {
+            return;
+        }
+        ensureRegionCapacity(2 * nodeCount);
+        addRegion(0, nodeCount, x, y, mass);
+
+        //Regions are split in creation order, so that children stay consecutive
+        for (int r = 0; r < regionCount; r++) {
+            int start = starts[r];
+            int end = ends[r];
+            if (end - start < 2) {
+                continue;
+            }
+            double centerX = massCentersX[r];
+            double centerY = massCentersY[r];
+            int middle = partition(start, end, x, centerX);
+            int left = partition(start, middle, y, centerY);
+            int right = partition(middle, end, y, centerY);
+
+            firstChilds[r] = regionCount;
+            int count = end - start;
+            //Top left, bottom left, bottom right and top right
+            addQuadrant(start, left, count, x, y, mass);
+            addQuadrant(left, middle, count, x, y, mass);
+            addQuadrant(right, end, count, x, y, mass);
+            addQuadrant(middle, right, count, x, y, mass);
+            childCounts[r] = regionCount - firstChilds[r];
+        }
+    }
+
+    /**
+     * Adds the repulsion of the regions on node <code>n</code> to
+     * <code>dx</code> and <code>dy</code>, going down the regions too close to
+     * approximate. When <code>batch</code> isn't <code>null</code>, the nodes
+     * and regions repulsing <code>n</code> are added to it instead, in the
+     * same order.
+     *
+     * @param n the node index
+     * @param engine the engine the tree was built for
+     * @param theta the Barnes Hut theta
+     * @param stack a work array, possibly grown and returned
+     * @param batch the batch to fill, or <code>null</code>
+     * @return the work array, to reuse in the next call
+     */
+    int[] applyRepulsion(int n, ForceAtlas2Engine engine, double theta, int[] stack, RepulsionBatch batch) {
+        if (regionCount == 0) {
+            return stack;
+        }
+        float[] x = engine.getX();
+        float[] y = engine.getY();
+        double[] mass = engine.getMass();
+        float[] nodeSizes = engine.getSize();
+        double squaredTheta = theta * theta;
+        int size = 0;
+        stack[size++] = 0;
+        while (size > 0) {
+            int r = stack[--size];
+            if (ends[r] - starts[r] < 2) {
+                //Regions used to push both nodes of a close pair, and each
+                //node reaches the other, so the force counts twice
+                int other = order[starts[r]];
+                if (batch == null) {
+                    engine.repulseNode(n, other, 2);
+                } else {
+                    batch.addNode(x[n] - x[other], y[n] - y[other], 2 * mass[other], nodeSizes[other]);
+                }
+            } else {
+                double xDist = x[n] - massCentersX[r];
+                double yDist = y[n] - massCentersY[r];
+                boolean far;
+                if (batch == null) {
+                    double distance = Math.sqrt(xDist * xDist + yDist * yDist);
+                    far = distance * theta > sizes[r];
+                } else {
+                    //Same test up to rounding, without the square root
+                    far = (xDist * xDist + yDist * yDist) * squaredTheta > sizes[r] * sizes[r];
+                }
+                if (far) {
+                    if (batch == null) {
+                        engine.repulseRegion(n, masses[r], massCentersX[r], massCentersY[r]);
+                    } else {
+                        batch.addRegion(xDist, yDist, masses[r]);
+                    }
+                } else {
+                    int childCount = childCounts[r];
+                    if (size + childCount > stack.length) {
+                        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + childCount));
+                    }
+                    //Reversed, so that children are visited in order
+                    for (int c = firstChilds[r] + childCount - 1; c >= firstChilds[r]; c--) {
+                        stack[size++] = c;
+                    }
+                }
+            }
+        }
+        return stack;
+    }
+
+    private void addQuadrant(int start, int end, int parentCount, float[] x, float[] y, double[] mass) {
+        if (end - start == parentCount) {
+            //All the nodes are on the same side, one region per node
+            for (int i = start; i < end; i++) {
+                addRegion(i, i + 1, x, y, mass);
+            }
+        } else if (end > start) {
+            addRegion(start, end, x, y, mass);
+        }
+    }
+
+    private void addRegion(int start, int end, float[] x, float[] y, double[] mass) {
+        if (regionCount == starts.length) {
+            ensureRegionCapacity(regionCount * 2);
+        }
+        int r = regionCount++;
+        starts[r] = start;
+        ends[r] = end;
+        firstChilds[r] = 0;
+        childCounts[r] = 0;
+        if (end - start > 1) {
+            double regionMass = 0;
+            double massSumX = 0;
+            double massSumY = 0;
+            for (int i = start; i < end; i++) {
+                int n = order[i];
+                regionMass += mass[n];
+                massSumX += x[n] * mass[n];
+                massSumY += y[n] * mass[n];
+            }
+            double centerX = massSumX / regionMass;
+            double centerY = massSumY / regionMass;
+
+            double size = Double.MIN_VALUE;
+            for (int i = start; i < end; i++) {
+                int n = order[i];
+                double distance = Math.sqrt((x[n] - centerX) * (x[n] - centerX) + (y[n] - centerY) * (y[n] - centerY));
+                size = Math.max(size, 2 * distance);
+            }
+            masses[r] = regionMass;
+            massCentersX[r] = centerX;
+            massCentersY[r] = centerY;
+            sizes[r] = size;
+        }
+    }
+
+    /**
+     * Moves the nodes of <code>[start, end)</code> below <code>pivot</code>
+     * first.
+     *
+     * @return the index of the first node not below <code>pivot</code>
+     */
+    private int partition(int start, int end, float[] positions, double pivot) {
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (positions[order[i]] < pivot) {
+                i++;
+            } else {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j--] = tmp;
+            }
+        }
+        return i;
+    }
+
+    private void ensureRegionCapacity(int capacity) {
+        if (starts.length < capacity) {
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            firstChilds = Arrays.copyOf(firstChilds, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            masses = Arrays.copyOf(masses, capacity);
+            massCentersX = Arrays.copyOf(massCentersX, capacity);
+            massCentersY = Arrays.copyOf(massCentersY, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+    }
+}
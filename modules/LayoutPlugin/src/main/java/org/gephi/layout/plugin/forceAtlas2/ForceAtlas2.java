@@ -41,23 +41,17 @@
  */
 package org.gephi.layout.plugin.forceAtlas2;
 
-import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.layout.plugin.forceAtlas2.ForceFactory.AttractionForce;
-import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
-import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.DeferredPositionsLayout;
 import org.gephi.layout.spi.LayoutBuilder;
 import org.gephi.layout.spi.LayoutProperty;
 import org.openide.util.NbBundle;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import org.gephi.graph.api.Interval;
+import java.util.concurrent.ForkJoinPool;
 import org.gephi.layout.plugin.AbstractLayout;
 import org.openide.util.Exceptions;
 
@@ -66,17 +60,14 @@ import org.openide.util.Exceptions;
  *
  * @author Mathieu Jacomy
  */
-public class ForceAtlas2 implements Layout {
+public class ForceAtlas2 implements DeferredPositionsLayout {
 
     private GraphModel graphModel;
-    private Graph graph;
     private final ForceAtlas2Builder layoutBuilder;
     private double edgeWeightInfluence;
     private double jitterTolerance;
     private double scalingRatio;
     private double gravity;
-    private double speed;
-    private double speedEfficiency;
     private boolean outboundAttractionDistribution;
     private boolean adjustSizes;
     private boolean barnesHutOptimize;
@@ -84,230 +75,44 @@ public class ForceAtlas2 implements Layout {
     private boolean linLogMode;
     private boolean strongGravityMode;
     private int threadCount;
-    private int currentThreadCount;
-    private Region rootRegion;
-    double outboundAttCompensation = 1;
-    private ExecutorService pool;
+    private int positionsUpdateInterval;
+    private boolean batchKernels;
+    private volatile ForceAtlas2Engine engine;
+    private ForkJoinPool pool;
 
     public ForceAtlas2(ForceAtlas2Builder layoutBuilder) {
         this.layoutBuilder = layoutBuilder;
-        this.threadCount = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        this.threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
     public void initAlgo() {
         AbstractLayout.ensureSafeLayoutNodePositions(graphModel);
-        
-        speed = 1.;
-        speedEfficiency = 1.;
 
-        graph = graphModel.getGraphVisible();
-
-        graph.readLock();
-        try {
-            Node[] nodes = graph.getNodes().toArray();
-
-            // Initialise layout data
-            for (Node n : nodes) {
-                if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceAtlas2LayoutData)) {
-                    ForceAtlas2LayoutData nLayout = new ForceAtlas2LayoutData();
-                    n.setLayoutData(nLayout);
-                }
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                nLayout.mass = 1 + graph.getDegree(n);
-                nLayout.old_dx = 0;
-                nLayout.old_dy = 0;
-                nLayout.dx = 0;
-                nLayout.dy = 0;
-            }
-
-            pool = Executors.newFixedThreadPool(threadCount);
-            currentThreadCount = threadCount;
-        } finally {
-            graph.readUnlockAll();
-        }
-    }
-    
-    private double getEdgeWeight(Edge edge, boolean isDynamicWeight, Interval interval) {
-        if (isDynamicWeight) {
-            return edge.getWeight(interval);
-        } else {
-            return edge.getWeight();
-        }
+        engine = new ForceAtlas2Engine(this, graphModel, batchKernels);
+        pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
     }
 
-
     @Override
     public void goAlgo() {
         // Initialize graph data
         if (graphModel == null) {
             return;
         }
-        graph = graphModel.getGraphVisible();
-        graph.readLock();
-        boolean isDynamicWeight = graphModel.getEdgeTable().getColumn("weight").isDynamic();
-        Interval interval = graph.getView().getTimeInterval();
-        
-        try {
-            Node[] nodes = graph.getNodes().toArray();
-            Edge[] edges = graph.getEdges().toArray();
-
-            // Initialise layout data
-            for (Node n : nodes) {
-                if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceAtlas2LayoutData)) {
-                    ForceAtlas2LayoutData nLayout = new ForceAtlas2LayoutData();
-                    n.setLayoutData(nLayout);
-                }
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                nLayout.mass = 1 + graph.getDegree(n);
-                nLayout.old_dx = nLayout.dx;
-                nLayout.old_dy = nLayout.dy;
-                nLayout.dx = 0;
-                nLayout.dy = 0;
-            }
-
-            // If Barnes Hut active, initialize root region
-            if (isBarnesHutOptimize()) {
-                rootRegion = new Region(nodes);
-                rootRegion.buildSubRegions();
-            }
-
-            // If outboundAttractionDistribution active, compensate.
-            if (isOutboundAttractionDistribution()) {
-                outboundAttCompensation = 0;
-                for (Node n : nodes) {
-                    ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                    outboundAttCompensation += nLayout.mass;
-                }
-                outboundAttCompensation /= nodes.length;
-            }
-
-            // Repulsion (and gravity)
-            // NB: Muti-threaded
-            RepulsionForce Repulsion = ForceFactory.builder.buildRepulsion(isAdjustSizes(), getScalingRatio());
-
-            int taskCount = 8 * currentThreadCount;  // The threadPool Executor Service will manage the fetching of tasks and threads.
-            // We make more tasks than threads because some tasks may need more time to compute.
-            ArrayList<Future> threads = new ArrayList();
-            for (int t = taskCount; t > 0; t--) {
-                int from = (int) Math.floor(nodes.length * (t - 1) / taskCount);
-                int to = (int) Math.floor(nodes.length * t / taskCount);
-                Future future = pool.submit(new NodesThread(nodes, from, to, isBarnesHutOptimize(), getBarnesHutTheta(), getGravity(), (isStrongGravityMode()) ? (ForceFactory.builder.getStrongGravity(getScalingRatio())) : (Repulsion), getScalingRatio(), rootRegion, Repulsion));
-                threads.add(future);
-            }
-            for (Future future : threads) {
-                try {
-                    future.get();
-                } catch (Exception e) {
-                    throw new RuntimeException("Unable to layout " + this.getClass().getSimpleName() + ".", e);
-                }
-            }
-
-            // Attraction
-            AttractionForce Attraction = ForceFactory.builder.buildAttraction(isLinLogMode(), isOutboundAttractionDistribution(), isAdjustSizes(), 1 * ((isOutboundAttractionDistribution()) ? (outboundAttCompensation) : (1)));
-            if (getEdgeWeightInfluence() == 0) {
-                for (Edge e : edges) {
-                    Attraction.apply(e.getSource(), e.getTarget(), 1);
-                }
-            } else if (getEdgeWeightInfluence() == 1) {
-                for (Edge e : edges) {
-                    Attraction.apply(e.getSource(), e.getTarget(), getEdgeWeight(e, isDynamicWeight, interval));
-                }
-            } else {
-                for (Edge e : edges) {
-                    Attraction.apply(e.getSource(), e.getTarget(), Math.pow(getEdgeWeight(e, isDynamicWeight, interval), getEdgeWeightInfluence()));
-                }
-            }
-
-            // Auto adjust speed
-            double totalSwinging = 0d;  // How much irregular movement
-            double totalEffectiveTraction = 0d;  // Hom much useful movement
-            for (Node n : nodes) {
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                if (!n.isFixed()) {
-                    double swinging = Math.sqrt(Math.pow(nLayout.old_dx - nLayout.dx, 2) + Math.pow(nLayout.old_dy - nLayout.dy, 2));
-                    totalSwinging += nLayout.mass * swinging;   // If the node has a burst change of direction, then it's not converging.
-                    totalEffectiveTraction += nLayout.mass * 0.5 * Math.sqrt(Math.pow(nLayout.old_dx + nLayout.dx, 2) + Math.pow(nLayout.old_dy + nLayout.dy, 2));
-                }
-            }
-            // We want that swingingMovement < tolerance * convergenceMovement
-
-            // Optimize jitter tolerance
-            // The 'right' jitter tolerance for this network. Bigger networks need more tolerance. Denser networks need less tolerance. Totally empiric.
-            double estimatedOptimalJitterTolerance = 0.05 * Math.sqrt(nodes.length);
-            double minJT = Math.sqrt(estimatedOptimalJitterTolerance);
-            double maxJT = 10;
-            double jt = jitterTolerance * Math.max(minJT, Math.min(maxJT, estimatedOptimalJitterTolerance * totalEffectiveTraction / Math.pow(nodes.length, 2)));
-
-            double minSpeedEfficiency = 0.05;
-
-            // Protection against erratic behavior
-            if (totalSwinging / totalEffectiveTraction > 2.0) {
-                if (speedEfficiency > minSpeedEfficiency) {
-                    speedEfficiency *= 0.5;
-                }
-                jt = Math.max(jt, jitterTolerance);
-            }
-
-            double targetSpeed = jt * speedEfficiency * totalEffectiveTraction / totalSwinging;
-
-            // Speed efficiency is how the speed really corresponds to the swinging vs. convergence tradeoff
-            // We adjust it slowly and carefully
-            if (totalSwinging > jt * totalEffectiveTraction) {
-                if (speedEfficiency > minSpeedEfficiency) {
-                    speedEfficiency *= 0.7;
-                }
-            } else if (speed < 1000) {
-                speedEfficiency *= 1.3;
-            }
-
-            // But the speed shoudn't rise too much too quickly, since it would make the convergence drop dramatically.
-            double maxRise = 0.5;   // Max rise: 50%
-            speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
-
-            // Apply forces
-            if (isAdjustSizes()) {
-                // If nodes overlap prevention is active, it's not possible to trust the swinging mesure.
-                for (Node n : nodes) {
-                    ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                    if (!n.isFixed()) {
-
-                        // Adaptive auto-speed: the speed of each node is lowered
-                        // when the node swings.
-                        double swinging = nLayout.mass * Math.sqrt((nLayout.old_dx - nLayout.dx) * (nLayout.old_dx - nLayout.dx) + (nLayout.old_dy - nLayout.dy) * (nLayout.old_dy - nLayout.dy));
-                        double factor = 0.1 * speed / (1f + Math.sqrt(speed * swinging));
-
-                        double df = Math.sqrt(Math.pow(nLayout.dx, 2) + Math.pow(nLayout.dy, 2));
-                        factor = Math.min(factor * df, 10.) / df;
-
-                        double x = n.x() + nLayout.dx * factor;
-                        double y = n.y() + nLayout.dy * factor;
-
-                        n.setX((float) x);
-                        n.setY((float) y);
-                    }
-                }
-            } else {
-                for (Node n : nodes) {
-                    ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                    if (!n.isFixed()) {
-
-                        // Adaptive auto-speed: the speed of each node is lowered
-                        // when the node swings.
-                        double swinging = nLayout.mass * Math.sqrt((nLayout.old_dx - nLayout.dx) * (nLayout.old_dx - nLayout.dx) + (nLayout.old_dy - nLayout.dy) * (nLayout.old_dy - nLayout.dy));
-                        //double factor = speed / (1f + Math.sqrt(speed * swinging));
-                        double factor = speed / (1f + Math.sqrt(speed * swinging));
-
-                        double x = n.x() + nLayout.dx * factor;
-                        double y = n.y() + nLayout.dy * factor;
-
-                        n.setX((float) x);
-                        n.setY((float) y);
-                    }
-                }
-            }
-        } finally {
-            graph.readUnlockAll();
+        engine.step(pool);
+    }
+
+    /**
+     * Asks for the node positions to be written at the end of the next
+     * iteration, when they are only written every few iterations. Can be
+     * called from any thread.
+     *
+     * @see #setPositionsUpdateInterval(Integer)
+     */
+    public void requestPositionsUpdate() {
+        ForceAtlas2Engine e = engine;
+        if (e != null) {
+            e.requestPositions();
         }
     }
 
@@ -318,14 +123,21 @@ public class ForceAtlas2 implements Layout {
 
     @Override
     public void endAlgo() {
+        Graph graph = graphModel.getGraphVisible();
         graph.readLock();
         try {
+            engine.writePositions();
             for (Node n : graph.getNodes()) {
                 n.setLayoutData(null);
             }
-            pool.shutdown();
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
         } finally {
             graph.readUnlockAll();
+            engine.destroy();
+            engine = null;
         }
     }
 
@@ -426,6 +238,22 @@ public class ForceAtlas2 implements Layout {
                     NbBundle.getMessage(getClass(), "ForceAtlas2.threads.desc"),
                     "getThreadsCount", "setThreadsCount"));
 
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(getClass(), "ForceAtlas2.positionsUpdateInterval.name"),
+                    FORCEATLAS2_PERFORMANCE,
+                    "ForceAtlas2.positionsUpdateInterval.name",
+                    NbBundle.getMessage(getClass(), "ForceAtlas2.positionsUpdateInterval.desc"),
+                    "getPositionsUpdateInterval", "setPositionsUpdateInterval"));
+
+            properties.add(LayoutProperty.createProperty(
+                    this, Boolean.class,
+                    NbBundle.getMessage(getClass(), "ForceAtlas2.batchKernels.name"),
+                    FORCEATLAS2_PERFORMANCE,
+                    "ForceAtlas2.batchKernels.name",
+                    NbBundle.getMessage(getClass(), "ForceAtlas2.batchKernels.desc"),
+                    "isBatchKernels", "setBatchKernels"));
+
         } catch (Exception e) {
             Exceptions.printStackTrace(e);
         }
@@ -464,6 +292,12 @@ public class ForceAtlas2 implements Layout {
             setBarnesHutOptimize(false);
         }
         setBarnesHutTheta(1.2);
+        if (nodesCount >= 100000) {
+            setPositionsUpdateInterval(5);
+        } else {
+            setPositionsUpdateInterval(1);
+        }
+        setBatchKernels(false);
         setThreadsCount(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
     }
 
@@ -543,6 +377,29 @@ public class ForceAtlas2 implements Layout {
         this.threadCount = Math.max(1, threadCount);
     }
 
+    @Override
+    public Integer getPositionsUpdateInterval() {
+        return positionsUpdateInterval;
+    }
+
+    public void setPositionsUpdateInterval(Integer positionsUpdateInterval) {
+        this.positionsUpdateInterval = Math.max(1, positionsUpdateInterval);
+    }
+
+    public Boolean isBatchKernels() {
+        return batchKernels;
+    }
+
+    /**
+     * Sets whether the repulsion is summed in batches, which is faster but
+     * changes results by rounding. Applies from the next run.
+     *
+     * @param batchKernels whether to sum the repulsion in batches
+     */
+    public void setBatchKernels(Boolean batchKernels) {
+        this.batchKernels = batchKernels;
+    }
+
     public Boolean isOutboundAttractionDistribution() {
         return outboundAttractionDistribution;
     }
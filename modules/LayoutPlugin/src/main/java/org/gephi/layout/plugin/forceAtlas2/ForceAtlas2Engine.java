@@ -0,0 +1,698 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+
+/**
+ * Runs the ForceAtlas2 iterations on a copy of the visible graph held in
+ * primitive arrays, indexed by node, instead of reading the nodes and their
+ * layout data at every iteration.
+ * <p>
+ * The copy is rebuilt when the visible graph structure changes. Positions are
+ * written back to the nodes every
+ * {@link ForceAtlas2#getPositionsUpdateInterval()} iterations, or at the next
+ * iteration after {@link #requestPositions()}. Nodes moved from outside since
+ * the last write keep their new position, and fixed states and sizes are read
+ * again at the same time.
+ * <p>
+ * An iteration makes two parallel passes over chunks of nodes: one computing
+ * the forces and the swinging of each node, one moving the nodes. Each node
+ * only receives its own forces, attraction included, so results don't
+ * depend on the thread count.
+ * <p>
+ * With {@link ForceAtlas2#isBatchKernels() batch kernels}, the repulsion is
+ * summed in tight loops over primitive arrays, see {@link RepulsionBatch},
+ * instead of one call per pair. It is faster, mostly without Barnes Hut, but
+ * results change by rounding.
+ */
+final class ForceAtlas2Engine {
+
+    //Nodes per task
+    private static final int CHUNK_SIZE = 256;
+    private final ForceAtlas2 layout;
+    private final GraphModel graphModel;
+    private GraphView view;
+    private GraphObserver observer;
+    //Nodes
+    private Node[] nodes = new Node[0];
+    private int nodeCount;
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] size = new float[0];
+    private double[] mass = new double[0];
+    private boolean[] fixed = new boolean[0];
+    private double[] dx = new double[0];
+    private double[] dy = new double[0];
+    private double[] oldDx = new double[0];
+    private double[] oldDy = new double[0];
+    //Positions last written to the nodes
+    private float[] writtenX = new float[0];
+    private float[] writtenY = new float[0];
+    //Edges
+    private int[] edgeSources = new int[0];
+    private int[] edgeTargets = new int[0];
+    private double[] edgeWeights = new double[0];
+    private double[] weights = new double[0];
+    private double weightsInfluence = Double.NaN;
+    //Edges of every node, self-loops excepted
+    private int[] incidenceOffsets = new int[1];
+    private int[] incidentEdges = new int[0];
+    private double massSum;
+    //Barnes Hut
+    private final BarnesHutTree tree = new BarnesHutTree();
+    //Swinging and traction of every chunk, summed in chunk order
+    private double[] chunkSwinging = new double[0];
+    private double[] chunkTraction = new double[0];
+    //Settings of the current iteration
+    private boolean adjustSizes;
+    private boolean barnesHutOptimize;
+    private double barnesHutTheta;
+    private double scalingRatio;
+    private double gravity;
+    private boolean strongGravityMode;
+    private boolean linLogMode;
+    private boolean outboundAttractionDistribution;
+    private double attractionCoefficient;
+    //Sum the repulsion in batches, see RepulsionBatch
+    private final boolean batchKernels;
+    //State
+    private double speed = 1.;
+    private double speedEfficiency = 1.;
+    private int iteration;
+    private volatile boolean positionsRequested;
+
+    ForceAtlas2Engine(ForceAtlas2 layout, GraphModel graphModel, boolean batchKernels) {
+        this.layout = layout;
+        this.graphModel = graphModel;
+        this.batchKernels = batchKernels;
+    }
+
+    /**
+     * Runs one iteration.
+     *
+     * @param pool the pool running the passes over the nodes, or
+     * <code>null</code> to run them in the calling thread
+     */
+    void step(ForkJoinPool pool) {
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            refresh(graph);
+        } finally {
+            graph.readUnlockAll();
+        }
+
+        adjustSizes = layout.isAdjustSizes();
+        barnesHutOptimize = layout.isBarnesHutOptimize();
+        barnesHutTheta = layout.getBarnesHutTheta();
+        scalingRatio = layout.getScalingRatio();
+        gravity = layout.getGravity();
+        strongGravityMode = layout.isStrongGravityMode();
+        linLogMode = layout.isLinLogMode();
+        outboundAttractionDistribution = layout.isOutboundAttractionDistribution();
+
+        // If outboundAttractionDistribution active, compensate.
+        attractionCoefficient = outboundAttractionDistribution ? massSum / nodeCount : 1;
+
+        // If Barnes Hut active, rebuild the regions
+        if (barnesHutOptimize) {
+            tree.build(x, y, mass, nodeCount);
+        }
+
+        // Repulsion, gravity and attraction
+        int chunkCount = (nodeCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunkSwinging.length < chunkCount) {
+            chunkSwinging = new double[chunkCount];
+            chunkTraction = new double[chunkCount];
+        }
+        runChunks(pool, chunkCount, ChunkTask.FORCES);
+
+        double totalSwinging = 0d;  // How much irregular movement
+        double totalEffectiveTraction = 0d;  // Hom much useful movement
+        for (int c = 0; c < chunkCount; c++) {
+            totalSwinging += chunkSwinging[c];
+            totalEffectiveTraction += chunkTraction[c];
+        }
+        adjustSpeed(totalSwinging, totalEffectiveTraction);
+
+        // Apply forces
+        runChunks(pool, chunkCount, ChunkTask.MOVES);
+
+        iteration++;
+        if (positionsRequested || iteration % layout.getPositionsUpdateInterval() == 0) {
+            graph.readLock();
+            try {
+                writePositions();
+            } finally {
+                graph.readUnlockAll();
+            }
+        }
+    }
+
+    /**
+     * Asks for the positions to be written to the nodes at the end of the next
+     * iteration. Can be called from any thread.
+     */
+    void requestPositions() {
+        positionsRequested = true;
+    }
+
+    /**
+     * Writes the positions to the nodes. The caller should hold the graph read
+     * lock.
+     */
+    void writePositions() {
+        positionsRequested = false;
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = nodes[i];
+            if (node.x() != writtenX[i] || node.y() != writtenY[i]) {
+                //Moved from outside
+                x[i] = node.x();
+                y[i] = node.y();
+            } else {
+                node.setX(x[i]);
+                node.setY(y[i]);
+            }
+            writtenX[i] = x[i];
+            writtenY[i] = y[i];
+            fixed[i] = node.isFixed();
+            size[i] = node.size();
+        }
+    }
+
+    void destroy() {
+        if (observer != null && !observer.isDestroyed()) {
+            observer.destroy();
+        }
+        observer = null;
+    }
+
+    float[] getX() {
+        return x;
+    }
+
+    float[] getY() {
+        return y;
+    }
+
+    double[] getMass() {
+        return mass;
+    }
+
+    float[] getSize() {
+        return size;
+    }
+
+    private void refresh(Graph graph) {
+        if (observer == null || graph.getView() != view) {
+            writePositions();
+            destroy();
+            view = graph.getView();
+            observer = graphModel.createGraphObserver(graph, false);
+            rebuild(graph);
+        } else if (observer.hasGraphChanged()) {
+            writePositions();
+            rebuild(graph);
+        }
+
+        double influence = layout.getEdgeWeightInfluence();
+        if (influence != weightsInfluence) {
+            weightsInfluence = influence;
+            for (int e = 0; e < edgeWeights.length; e++) {
+                if (influence == 0) {
+                    weights[e] = 1;
+                } else if (influence == 1) {
+                    weights[e] = edgeWeights[e];
+                } else {
+                    weights[e] = Math.pow(edgeWeights[e], influence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the nodes and edges of <code>graph</code>, keeping the previous
+     * forces of the nodes still there.
+     */
+    private void rebuild(Graph graph) {
+        Node[] previousNodes = nodes;
+        int[] previousIndices = indexByStoreId(previousNodes, nodeCount);
+        double[] previousDx = dx;
+        double[] previousDy = dy;
+        double[] previousOldDx = oldDx;
+        double[] previousOldDy = oldDy;
+
+        nodes = graph.getNodes().toArray();
+        int n = nodes.length;
+        nodeCount = n;
+        massSum = 0;
+        x = new float[n];
+        y = new float[n];
+        size = new float[n];
+        mass = new double[n];
+        fixed = new boolean[n];
+        dx = new double[n];
+        dy = new double[n];
+        oldDx = new double[n];
+        oldDy = new double[n];
+        writtenX = new float[n];
+        writtenY = new float[n];
+        for (int i = 0; i < n; i++) {
+            Node node = nodes[i];
+            x[i] = node.x();
+            y[i] = node.y();
+            writtenX[i] = x[i];
+            writtenY[i] = y[i];
+            size[i] = node.size();
+            fixed[i] = node.isFixed();
+            mass[i] = 1 + graph.getDegree(node);
+            massSum += mass[i];
+
+            int storeId = node.getStoreId();
+            if (storeId < previousIndices.length && previousIndices[storeId] >= 0
+                    && previousNodes[previousIndices[storeId]] == node) {
+                int p = previousIndices[storeId];
+                dx[i] = previousDx[p];
+                dy[i] = previousDy[p];
+                oldDx[i] = previousOldDx[p];
+                oldDy[i] = previousOldDy[p];
+            }
+        }
+
+        int[] indices = indexByStoreId(nodes, n);
+        boolean isDynamicWeight = graphModel.getEdgeTable().getColumn("weight").isDynamic();
+        Interval interval = graph.getView().getTimeInterval();
+        Edge[] edges = graph.getEdges().toArray();
+        int m = edges.length;
+        edgeSources = new int[m];
+        edgeTargets = new int[m];
+        edgeWeights = new double[m];
+        weights = new double[m];
+        for (int e = 0; e < m; e++) {
+            Edge edge = edges[e];
+            edgeSources[e] = indices[edge.getSource().getStoreId()];
+            edgeTargets[e] = indices[edge.getTarget().getStoreId()];
+            edgeWeights[e] = isDynamicWeight ? edge.getWeight(interval) : edge.getWeight();
+        }
+        weightsInfluence = Double.NaN;
+
+        //Incident edges of every node, in edge order
+        incidenceOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (edgeSources[e] != edgeTargets[e]) {
+                incidenceOffsets[edgeSources[e] + 1]++;
+                incidenceOffsets[edgeTargets[e] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            incidenceOffsets[i + 1] += incidenceOffsets[i];
+        }
+        incidentEdges = new int[incidenceOffsets[n]];
+        int[] next = Arrays.copyOf(incidenceOffsets, n);
+        for (int e = 0; e < m; e++) {
+            if (edgeSources[e] != edgeTargets[e]) {
+                incidentEdges[next[edgeSources[e]]++] = e;
+                incidentEdges[next[edgeTargets[e]]++] = e;
+            }
+        }
+    }
+
+    private static int[] indexByStoreId(Node[] nodes, int count) {
+        int maxStoreId = -1;
+        for (int i = 0; i < count; i++) {
+            maxStoreId = Math.max(maxStoreId, nodes[i].getStoreId());
+        }
+        int[] indices = new int[maxStoreId + 1];
+        Arrays.fill(indices, -1);
+        for (int i = 0; i < count; i++) {
+            indices[nodes[i].getStoreId()] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Adds the repulsion of node <code>other</code> on node <code>n</code>,
+     * multiplied by <code>strength</code>.
+     */
+    void repulseNode(int n, int other, double strength) {
+        // Get the distance
+        double xDist = x[n] - x[other];
+        double yDist = y[n] - y[other];
+        double factor;
+        if (adjustSizes) {
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - size[n] - size[other];
+            if (distance > 0) {
+                // NB: factor = force / distance
+                factor = strength * scalingRatio * mass[n] * mass[other] / distance / distance;
+            } else if (distance < 0) {
+                factor = strength * 100 * scalingRatio * mass[n] * mass[other];
+            } else {
+                return;
+            }
+        } else {
+            double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
+            if (distance > 0) {
+                // NB: factor = force / distance
+                factor = strength * scalingRatio * mass[n] * mass[other] / distance / distance;
+            } else {
+                return;
+            }
+        }
+        dx[n] += xDist * factor;
+        dy[n] += yDist * factor;
+    }
+
+    /**
+     * Adds the repulsion of all the other nodes on node <code>n</code>, in one
+     * loop over the arrays. Same as calling {@link #repulseNode(int, int, double)}
+     * for every other node up to rounding, with the formulas of
+     * {@link RepulsionBatch}.
+     */
+    private void repulseAll(int n) {
+        float nodeX = x[n];
+        float nodeY = y[n];
+        double coefficient = scalingRatio * mass[n];
+        double sumX = dx[n];
+        double sumY = dy[n];
+        if (adjustSizes) {
+            double nodeSize = size[n];
+            double overlapCoefficient = 100 * coefficient;
+            for (int j = 0; j < nodeCount; j++) {
+                if (j == n) {
+                    continue;
+                }
+                double xDist = nodeX - x[j];
+                double yDist = nodeY - y[j];
+                double distance = Math.sqrt(xDist * xDist + yDist * yDist) - nodeSize - size[j];
+                double factor;
+                if (distance > 0) {
+                    factor = coefficient * mass[j] / (distance * distance);
+                } else if (distance < 0) {
+                    factor = overlapCoefficient * mass[j];
+                } else {
+                    continue;
+                }
+                sumX += xDist * factor;
+                sumY += yDist * factor;
+            }
+        } else {
+            for (int j = 0; j < nodeCount; j++) {
+                if (j == n) {
+                    continue;
+                }
+                double xDist = nodeX - x[j];
+                double yDist = nodeY - y[j];
+                double squaredDistance = xDist * xDist + yDist * yDist;
+                if (squaredDistance > 0) {
+                    double factor = coefficient * mass[j] / squaredDistance;
+                    sumX += xDist * factor;
+                    sumY += yDist * factor;
+                }
+            }
+        }
+        dx[n] = sumX;
+        dy[n] = sumY;
+    }
+
+    /**
+     * Adds the repulsion of a region of mass <code>regionMass</code> on node
+     * <code>n</code>.
+     */
+    void repulseRegion(int n, double regionMass, double massCenterX, double massCenterY) {
+        // Get the distance
+        double xDist = x[n] - massCenterX;
+        double yDist = y[n] - massCenterY;
+        double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
+
+        if (distance > 0) {
+            // NB: factor = force / distance
+            double factor = scalingRatio * mass[n] * regionMass / distance / distance;
+
+            dx[n] += xDist * factor;
+            dy[n] += yDist * factor;
+        }
+    }
+
+    private void applyGravity(int n) {
+        // Get the distance
+        double xDist = x[n];
+        double yDist = y[n];
+        double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
+
+        if (distance > 0) {
+            double g = gravity / scalingRatio;
+            // NB: factor = force / distance
+            double factor;
+            if (strongGravityMode) {
+                factor = scalingRatio * mass[n] * g;
+            } else {
+                factor = scalingRatio * mass[n] * g / distance;
+            }
+
+            dx[n] -= xDist * factor;
+            dy[n] -= yDist * factor;
+        }
+    }
+
+    /**
+     * Adds the attraction of the edges of node <code>n</code>. Each edge is
+     * computed from both ends, with the same factor.
+     */
+    private void applyAttraction(int n) {
+        for (int k = incidenceOffsets[n], end = incidenceOffsets[n + 1]; k < end; k++) {
+            int e = incidentEdges[k];
+            int n1 = edgeSources[e];
+            int other = n1 == n ? edgeTargets[e] : n1;
+
+            // Get the distance, from the other end
+            double xDist = x[n] - x[other];
+            double yDist = y[n] - y[other];
+
+            // NB: factor = force / distance
+            double factor;
+            if (adjustSizes) {
+                double distance = Math.sqrt(xDist * xDist + yDist * yDist) - size[n] - size[other];
+                if (distance <= 0) {
+                    continue;
+                }
+                factor = linLogMode ? -attractionCoefficient * weights[e] * Math.log(1 + distance) / distance : -attractionCoefficient * weights[e];
+            } else if (linLogMode) {
+                double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
+                if (distance <= 0) {
+                    continue;
+                }
+                factor = -attractionCoefficient * weights[e] * Math.log(1 + distance) / distance;
+            } else {
+                factor = -attractionCoefficient * weights[e];
+            }
+            if (outboundAttractionDistribution) {
+                factor /= mass[n1];
+            }
+
+            dx[n] += xDist * factor;
+            dy[n] += yDist * factor;
+        }
+    }
+
+    private void computeForces(int chunk, int from, int to, int[] stack, RepulsionBatch batch) {
+        double swingingSum = 0;
+        double tractionSum = 0;
+        for (int i = from; i < to; i++) {
+            oldDx[i] = dx[i];
+            oldDy[i] = dy[i];
+            dx[i] = 0;
+            dy[i] = 0;
+
+            // Repulsion
+            if (barnesHutOptimize && batch != null) {
+                batch.clear();
+                stack = tree.applyRepulsion(i, this, barnesHutTheta, stack, batch);
+                batch.sum(dx[i], dy[i], scalingRatio, mass[i], size[i], adjustSizes);
+                dx[i] = batch.getSumX();
+                dy[i] = batch.getSumY();
+            } else if (barnesHutOptimize) {
+                stack = tree.applyRepulsion(i, this, barnesHutTheta, stack, null);
+            } else if (batchKernels) {
+                repulseAll(i);
+            } else {
+                for (int j = 0; j < nodeCount; j++) {
+                    if (j != i) {
+                        repulseNode(i, j, 1);
+                    }
+                }
+            }
+
+            // Gravity
+            applyGravity(i);
+
+            // Attraction
+            applyAttraction(i);
+
+            if (!fixed[i]) {
+                double swinging = Math.sqrt(Math.pow(oldDx[i] - dx[i], 2) + Math.pow(oldDy[i] - dy[i], 2));
+                swingingSum += mass[i] * swinging;   // If the node has a burst change of direction, then it's not converging.
+                tractionSum += mass[i] * 0.5 * Math.sqrt(Math.pow(oldDx[i] + dx[i], 2) + Math.pow(oldDy[i] + dy[i], 2));
+            }
+        }
+        chunkSwinging[chunk] = swingingSum;
+        chunkTraction[chunk] = tractionSum;
+    }
+
+    private void adjustSpeed(double totalSwinging, double totalEffectiveTraction) {
+        int n = nodeCount;
+        double jitterTolerance = layout.getJitterTolerance();
+
+        // We want that swingingMovement < tolerance * convergenceMovement
+
+        // Optimize jitter tolerance
+        // The 'right' jitter tolerance for this network. Bigger networks need more tolerance. Denser networks need less tolerance. Totally empiric.
+        double estimatedOptimalJitterTolerance = 0.05 * Math.sqrt(n);
+        double minJT = Math.sqrt(estimatedOptimalJitterTolerance);
+        double maxJT = 10;
+        double jt = jitterTolerance * Math.max(minJT, Math.min(maxJT, estimatedOptimalJitterTolerance * totalEffectiveTraction / Math.pow(n, 2)));
+
+        double minSpeedEfficiency = 0.05;
+
+        // Protection against erratic behavior
+        if (totalSwinging / totalEffectiveTraction > 2.0) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.5;
+            }
+            jt = Math.max(jt, jitterTolerance);
+        }
+
+        double targetSpeed = jt * speedEfficiency * totalEffectiveTraction / totalSwinging;
+
+        // Speed efficiency is how the speed really corresponds to the swinging vs. convergence tradeoff
+        // We adjust it slowly and carefully
+        if (totalSwinging > jt * totalEffectiveTraction) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.7;
+            }
+        } else if (speed < 1000) {
+            speedEfficiency *= 1.3;
+        }
+
+        // But the speed shoudn't rise too much too quickly, since it would make the convergence drop dramatically.
+        double maxRise = 0.5;   // Max rise: 50%
+        speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
+    }
+
+    private void moveNodes(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!fixed[i]) {
+                // Adaptive auto-speed: the speed of each node is lowered
+                // when the node swings.
+                double swinging = mass[i] * Math.sqrt((oldDx[i] - dx[i]) * (oldDx[i] - dx[i]) + (oldDy[i] - dy[i]) * (oldDy[i] - dy[i]));
+                double factor;
+                if (adjustSizes) {
+                    // If nodes overlap prevention is active, it's not possible to trust the swinging mesure.
+                    factor = 0.1 * speed / (1f + Math.sqrt(speed * swinging));
+
+                    double df = Math.sqrt(Math.pow(dx[i], 2) + Math.pow(dy[i], 2));
+                    factor = Math.min(factor * df, 10.) / df;
+                } else {
+                    factor = speed / (1f + Math.sqrt(speed * swinging));
+                }
+
+                x[i] = (float) (x[i] + dx[i] * factor);
+                y[i] = (float) (y[i] + dy[i] * factor);
+            }
+        }
+    }
+
+    private void runChunks(ForkJoinPool pool, int chunkCount, int pass) {
+        if (pool == null) {
+            new ChunkTask(0, chunkCount, pass).compute();
+        } else {
+            pool.invoke(new ChunkTask(0, chunkCount, pass));
+        }
+    }
+
+    /**
+     * Runs a pass over the chunks <code>[from, to)</code>, split in halves
+     * for work stealing.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        private static final int FORCES = 0;
+        private static final int MOVES = 1;
+        private final int from;
+        private final int to;
+        private final int pass;
+
+        ChunkTask(int from, int to, int pass) {
+            this.from = from;
+            this.to = to;
+            this.pass = pass;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, middle, pass), new ChunkTask(middle, to, pass));
+                return;
+            }
+            int[] stack = new int[64];
+            RepulsionBatch batch = batchKernels ? new RepulsionBatch() : null;
+            for (int c = from; c < to; c++) {
+                int start = c * CHUNK_SIZE;
+                int end = Math.min(nodeCount, start + CHUNK_SIZE);
+                if (pass == FORCES) {
+                    computeForces(c, start, end, stack, batch);
+                } else {
+                    moveNodes(start, end);
+                }
+            }
+        }
+    }
+}
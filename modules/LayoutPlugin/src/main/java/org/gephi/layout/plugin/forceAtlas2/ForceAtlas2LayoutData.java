@@ -45,8 +45,11 @@ import org.gephi.graph.spi.LayoutData;
 
 /**
  * Data stored in Nodes and used by ForceAtlas2
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public class ForceAtlas2LayoutData implements LayoutData {
     //Data
 
@@ -47,8 +47,11 @@ import org.gephi.graph.api.Node;
  * Generates the forces on demand, here are all the formulas for attraction and
  * repulsion.
  *
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public class ForceFactory {
 
     public static ForceFactory builder = new ForceFactory();
@@ -46,8 +46,11 @@ import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
 
 /**
  *
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public class NodesThread implements Runnable {
 
     private Node[] nodes;
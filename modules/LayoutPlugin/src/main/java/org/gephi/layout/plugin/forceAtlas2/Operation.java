@@ -43,8 +43,11 @@ package org.gephi.layout.plugin.forceAtlas2;
 
 /**
  *
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public abstract class Operation {
 
     public abstract void execute();
@@ -46,8 +46,11 @@ import org.gephi.layout.plugin.forceAtlas2.ForceFactory.AttractionForce;
 
 /**
  *
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public class OperationNodeNodeAttract extends Operation {
 
     private final Node n1;
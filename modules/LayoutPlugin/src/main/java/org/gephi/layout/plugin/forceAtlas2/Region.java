@@ -50,8 +50,11 @@ import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
 /**
  * Barnes Hut optimization
  *
+ * @deprecated ForceAtlas2 no longer uses this class, it computes forces on
+ * primitive arrays. Kept for compatibility.
  * @author Mathieu Jacomy
  */
+@Deprecated
 public class Region {
 
     private double mass;
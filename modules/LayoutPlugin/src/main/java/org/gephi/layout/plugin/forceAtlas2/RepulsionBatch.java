@@ -0,0 +1,168 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import java.util.Arrays;
+
+/**
+ * Repulsion bodies of one node, gathered in flat arrays and summed in a single
+ * loop instead of one call per body. A body is another node or a Barnes Hut
+ * region, stored as its distance to the node, its mass multiplied by the
+ * strength of the force, and its size.
+ * <p>
+ * The sum divides the masses by the squared distance once, where
+ * {@link ForceAtlas2Engine#repulseNode(int, int, double)} divides twice by the
+ * distance rounded to a float. Results are the same up to rounding, for a
+ * loop without calls that is several times faster.
+ */
+final class RepulsionBatch {
+
+    //Regions have no size, and are not adjusted by size
+    private static final double REGION = -1;
+    private double[] xDists = new double[64];
+    private double[] yDists = new double[64];
+    private double[] masses = new double[64];
+    private double[] sizes = new double[64];
+    private int count;
+    //Results of the last sum
+    private double sumX;
+    private double sumY;
+
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * Adds a node at distance <code>(xDist, yDist)</code>.
+     *
+     * @param mass the node mass, multiplied by the force strength
+     * @param size the node size
+     */
+    void addNode(double xDist, double yDist, double mass, double size) {
+        add(xDist, yDist, mass, size);
+    }
+
+    /**
+     * Adds a region at distance <code>(xDist, yDist)</code> of its mass
+     * center.
+     */
+    void addRegion(double xDist, double yDist, double mass) {
+        add(xDist, yDist, mass, REGION);
+    }
+
+    /**
+     * Sums the repulsion of the bodies on a node, starting from
+     * <code>(startX, startY)</code>. The result is read with {@link #getSumX()}
+     * and {@link #getSumY()}.
+     *
+     * @param scalingRatio the scaling ratio
+     * @param nodeMass the node mass
+     * @param nodeSize the node size
+     * @param adjustSizes whether node sizes are taken into account
+     */
+    void sum(double startX, double startY, double scalingRatio, double nodeMass, double nodeSize, boolean adjustSizes) {
+        double x = startX;
+        double y = startY;
+        double coefficient = scalingRatio * nodeMass;
+        if (adjustSizes) {
+            double overlapCoefficient = 100 * coefficient;
+            for (int k = 0; k < count; k++) {
+                double xDist = xDists[k];
+                double yDist = yDists[k];
+                double squaredDistance = xDist * xDist + yDist * yDist;
+                double factor;
+                if (sizes[k] == REGION) {
+                    if (squaredDistance <= 0) {
+                        continue;
+                    }
+                    factor = coefficient * masses[k] / squaredDistance;
+                } else {
+                    double distance = Math.sqrt(squaredDistance) - nodeSize - sizes[k];
+                    if (distance > 0) {
+                        factor = coefficient * masses[k] / (distance * distance);
+                    } else if (distance < 0) {
+                        factor = overlapCoefficient * masses[k];
+                    } else {
+                        continue;
+                    }
+                }
+                x += xDist * factor;
+                y += yDist * factor;
+            }
+        } else {
+            for (int k = 0; k < count; k++) {
+                double xDist = xDists[k];
+                double yDist = yDists[k];
+                double squaredDistance = xDist * xDist + yDist * yDist;
+                if (squaredDistance > 0) {
+                    double factor = coefficient * masses[k] / squaredDistance;
+                    x += xDist * factor;
+                    y += yDist * factor;
+                }
+            }
+        }
+        sumX = x;
+        sumY = y;
+    }
+
+    double getSumX() {
+        return sumX;
+    }
+
+    double getSumY() {
+        return sumY;
+    }
+
+    private void add(double xDist, double yDist, double mass, double size) {
+        if (count == xDists.length) {
+            int capacity = count * 2;
+            xDists = Arrays.copyOf(xDists, capacity);
+            yDists = Arrays.copyOf(yDists, capacity);
+            masses = Arrays.copyOf(masses, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        xDists[count] = xDist;
+        yDists[count] = yDist;
+        masses[count] = mass;
+        sizes[count] = size;
+        count++;
+    }
+}
@@ -53,6 +53,7 @@ import org.openide.util.NbBundle;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.openide.util.Exceptions;
 
 /**
@@ -69,9 +70,13 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
     private float area;
     private double gravity;
     private double speed;
+    private boolean gridRepulsion;
+    private int threadCount;
+    private ForkJoinPool pool;
 
     public FruchtermanReingold(LayoutBuilder layoutBuilder) {
         super(layoutBuilder);
+        this.threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
@@ -79,10 +84,13 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
         speed = 1;
         area = 10000;
         gravity = 10;
+        gridRepulsion = false;
+        threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
     public void initAlgo() {
+        pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
     }
 
     @Override
@@ -105,21 +113,21 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
             float maxDisplace = (float) (Math.sqrt(AREA_MULTIPLICATOR * area) / 10f);                    // Déplacement limite : on peut le calibrer...
             float k = (float) Math.sqrt((AREA_MULTIPLICATOR * area) / (1f + nodes.length));        // La variable k, l'idée principale du layout.
 
-            for (Node N1 : nodes) {
-                for (Node N2 : nodes) {    // On fait toutes les paires de noeuds
-                    if (N1 != N2) {
-                        float xDist = N1.x() - N2.x();    // distance en x entre les deux noeuds
-                        float yDist = N1.y() - N2.y();
-                        float dist = (float) Math.sqrt(xDist * xDist + yDist * yDist);    // distance tout court
-
-                        if (dist > 0) {
-                            float repulsiveF = k * k / dist;            // Force de répulsion
-                            ForceVectorNodeLayoutData layoutData = N1.getLayoutData();
-                            layoutData.dx += xDist / dist * repulsiveF;        // on l'applique...
-                            layoutData.dy += yDist / dist * repulsiveF;
-                        }
-                    }
-                }
+            // On fait toutes les paires de noeuds, ou les paires proches avec la grille
+            float[] x = new float[nodes.length];
+            float[] y = new float[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                x[i] = nodes[i].x();
+                y[i] = nodes[i].y();
+            }
+            FruchtermanReingoldRepulsion repulsion = new FruchtermanReingoldRepulsion(x, y, k, gridRepulsion);
+            repulsion.compute(pool);
+            float[] repulsionX = repulsion.getDx();
+            float[] repulsionY = repulsion.getDy();
+            for (int i = 0; i < nodes.length; i++) {
+                ForceVectorNodeLayoutData layoutData = nodes[i].getLayoutData();
+                layoutData.dx += repulsionX[i];
+                layoutData.dy += repulsionY[i];
             }
             for (Edge E : edges) {
                 // Idem, pour tous les noeuds on applique la force d'attraction
@@ -176,6 +184,10 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
 
     @Override
     public void endAlgo() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
         graph.readLock();
         try {
             for (Node n : graph.getNodes()) {
@@ -218,6 +230,20 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
                     "fruchtermanReingold.speed.name",
                     NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.speed.desc"),
                     "getSpeed", "setSpeed"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Boolean.class,
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.gridRepulsion.name"),
+                    FRUCHTERMAN_REINGOLD,
+                    "fruchtermanReingold.gridRepulsion.name",
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.gridRepulsion.desc"),
+                    "isGridRepulsion", "setGridRepulsion"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.threads.name"),
+                    FRUCHTERMAN_REINGOLD,
+                    "fruchtermanReingold.threads.name",
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.threads.desc"),
+                    "getThreadsCount", "setThreadsCount"));
         } catch (Exception e) {
             Exceptions.printStackTrace(e);
         }
@@ -260,4 +286,37 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
     public void setSpeed(Double speed) {
         this.speed = speed;
     }
+
+    /**
+     * @return whether only nodes closer than twice the natural distance
+     * repulse each other
+     */
+    public Boolean isGridRepulsion() {
+        return gridRepulsion;
+    }
+
+    /**
+     * @param gridRepulsion whether to only repulse nodes closer than twice
+     * the natural distance
+     */
+    public void setGridRepulsion(Boolean gridRepulsion) {
+        this.gridRepulsion = gridRepulsion;
+    }
+
+    /**
+     * @return the number of threads computing the repulsion
+     */
+    public Integer getThreadsCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads computing the repulsion, which is used from
+     * the next run. Results don't depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadsCount(Integer threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
 }
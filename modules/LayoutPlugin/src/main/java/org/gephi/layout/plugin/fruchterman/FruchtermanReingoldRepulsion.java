@@ -0,0 +1,232 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.fruchterman;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Repulsion forces of {@link FruchtermanReingold}, computed on arrays of
+ * positions and in parallel over the nodes.
+ * <p>
+ * Each node sums the repulsion of every other node or, with the grid, of the
+ * nodes closer than <code>2k</code>, as in the grid variant of Fruchterman
+ * and Reingold's paper. The grid cells are <code>2k</code> wide so that
+ * these nodes are in the same or an adjacent cell. Each node only writes its
+ * own force, so results don't depend on the thread count.
+ */
+final class FruchtermanReingoldRepulsion {
+
+    //Nodes per task
+    private static final int CHUNK_SIZE = 256;
+    private final float[] x;
+    private final float[] y;
+    private final float k;
+    private final float[] dx;
+    private final float[] dy;
+    //Grid
+    private final boolean grid;
+    private float minX;
+    private float minY;
+    private float cellSize;
+    private int columns;
+    private int rows;
+    private int[] cellStarts;
+    private int[] cellNodes;
+
+    FruchtermanReingoldRepulsion(float[] x, float[] y, float k, boolean grid) {
+        this.x = x;
+        this.y = y;
+        this.k = k;
+        this.grid = grid;
+        this.dx = new float[x.length];
+        this.dy = new float[x.length];
+    }
+
+    /**
+     * Computes the forces.
+     *
+     * @param pool the pool to compute the forces on, or <code>null</code> to
+     * compute them in the calling thread
+     */
+    void compute(ForkJoinPool pool) {
+        if (x.length == 0) {
+            return;
+        }
+        if (grid) {
+            buildGrid();
+        }
+        RepulsionTask task = new RepulsionTask(0, x.length);
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    float[] getDx() {
+        return dx;
+    }
+
+    float[] getDy() {
+        return dy;
+    }
+
+    private void buildGrid() {
+        int n = x.length;
+        minX = Float.POSITIVE_INFINITY;
+        minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        // Larger cells when the nodes are scattered, so that the grid stays
+        // in proportion with the nodes
+        cellSize = 2 * k;
+        long cellCount;
+        do {
+            columns = (int) Math.min(Integer.MAX_VALUE, (long) ((maxX - minX) / cellSize) + 1);
+            rows = (int) Math.min(Integer.MAX_VALUE, (long) ((maxY - minY) / cellSize) + 1);
+            cellCount = (long) columns * rows;
+            if (cellCount > 4L * n + 16) {
+                cellSize *= 2;
+            }
+        } while (cellCount > 4L * n + 16);
+
+        // Nodes sorted by cell
+        cellStarts = new int[columns * rows + 1];
+        int[] cells = new int[n];
+        for (int i = 0; i < n; i++) {
+            cells[i] = row(y[i]) * columns + column(x[i]);
+            cellStarts[cells[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        cellNodes = new int[n];
+        int[] next = new int[columns * rows];
+        System.arraycopy(cellStarts, 0, next, 0, next.length);
+        for (int i = 0; i < n; i++) {
+            cellNodes[next[cells[i]]++] = i;
+        }
+    }
+
+    private int column(float value) {
+        return Math.min(columns - 1, (int) ((value - minX) / cellSize));
+    }
+
+    private int row(float value) {
+        return Math.min(rows - 1, (int) ((value - minY) / cellSize));
+    }
+
+    private void repulseAll(int n1) {
+        for (int n2 = 0; n2 < x.length; n2++) {
+            if (n1 != n2) {
+                repulse(n1, n2, Float.POSITIVE_INFINITY);
+            }
+        }
+    }
+
+    private void repulseNeighbors(int n1) {
+        float radius = 2 * k;
+        int column = column(x[n1]);
+        int row = row(y[n1]);
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int cell = r * columns + c;
+                for (int p = cellStarts[cell]; p < cellStarts[cell + 1]; p++) {
+                    int n2 = cellNodes[p];
+                    if (n1 != n2) {
+                        repulse(n1, n2, radius);
+                    }
+                }
+            }
+        }
+    }
+
+    private void repulse(int n1, int n2, float radius) {
+        float xDist = x[n1] - x[n2];    // distance en x entre les deux noeuds
+        float yDist = y[n1] - y[n2];
+        float dist = (float) Math.sqrt(xDist * xDist + yDist * yDist);    // distance tout court
+
+        if (dist > 0 && dist < radius) {
+            float repulsiveF = k * k / dist;            // Force de répulsion
+            dx[n1] += xDist / dist * repulsiveF;        // on l'applique...
+            dy[n1] += yDist / dist * repulsiveF;
+        }
+    }
+
+    /**
+     * Computes the forces of nodes <code>[from, to)</code>, split in halves
+     * for work stealing.
+     */
+    private class RepulsionTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+
+        RepulsionTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RepulsionTask(from, middle), new RepulsionTask(middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (grid) {
+                    repulseNeighbors(i);
+                } else {
+                    repulseAll(i);
+                }
+            }
+        }
+    }
+}
@@ -43,10 +43,13 @@ package org.gephi.layout.plugin.labelAdjust;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.TextProperties;
 import org.gephi.layout.plugin.AbstractLayout;
+import org.gephi.layout.plugin.SpatialIndex;
 import org.gephi.layout.spi.Layout;
 import org.gephi.layout.spi.LayoutBuilder;
 import org.gephi.layout.spi.LayoutProperty;
@@ -54,6 +57,12 @@ import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
 
 /**
+ * Moves nodes apart until their labels, and optionally their sizes, don't
+ * overlap anymore.
+ * <p>
+ * The nodes close enough to overlap are found with a {@link SpatialIndex}
+ * over the boxes of their labels and sizes, and each node sums the
+ * repulsion of the nodes overlapping it, in parallel.
  *
  * @author Mathieu Jacomy
  */
@@ -65,14 +74,35 @@ public class LabelAdjust extends AbstractLayout implements Layout {
     private double speed = 1;
     private boolean adjustBySize = true;
     private float radiusScale = 1.1f;
-    //Graph size
-    private float xmin;
-    private float xmax;
-    private float ymin;
-    private float ymax;
+    private int threadCount;
+    private ForkJoinPool pool;
+    //Nodes with a label, in the current iteration
+    private final SpatialIndex index = new SpatialIndex();
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] sizes = new float[0];
+    private float[] widths = new float[0];
+    private float[] heights = new float[0];
+    private float[] dx = new float[0];
+    private float[] dy = new float[0];
+    private float[] xmin = new float[0];
+    private float[] ymin = new float[0];
+    private float[] xmax = new float[0];
+    private float[] ymax = new float[0];
+    private volatile boolean someCollision;
+    private final SpatialIndex.Visitor repulsion = new SpatialIndex.Visitor() {
+
+        @Override
+        public void visit(int n2, int n1) {
+            if (repulse(n1, n2)) {
+                someCollision = true;
+            }
+        }
+    };
 
     public LabelAdjust(LayoutBuilder layoutBuilder) {
         super(layoutBuilder);
+        this.threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
@@ -80,11 +110,13 @@ public class LabelAdjust extends AbstractLayout implements Layout {
         speed = 1;
         radiusScale = 1.1f;
         adjustBySize = true;
+        threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
     public void initAlgo() {
         setConverged(false);
+        pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
     }
 
     @Override
@@ -94,93 +126,70 @@ public class LabelAdjust extends AbstractLayout implements Layout {
         try {
             Node[] nodes = graph.getNodes().toArray();
 
-            //Reset Layout Data
-            for (Node n : nodes) {
-                if (n.getLayoutData() == null || !(n.getLayoutData() instanceof LabelAdjustLayoutData)) {
-                    n.setLayoutData(new LabelAdjustLayoutData());
-                }
-                LabelAdjustLayoutData layoutData = n.getLayoutData();
-                layoutData.freeze = 0;
-                layoutData.dx = 0;
-                layoutData.dy = 0;
+            if (x.length < nodes.length) {
+                int n = nodes.length;
+                x = new float[n];
+                y = new float[n];
+                sizes = new float[n];
+                widths = new float[n];
+                heights = new float[n];
+                dx = new float[n];
+                dy = new float[n];
+                xmin = new float[n];
+                ymin = new float[n];
+                xmax = new float[n];
+                ymax = new float[n];
             }
 
-            // Get xmin, xmax, ymin, ymax
-            xmin = Float.MAX_VALUE;
-            xmax = Float.MIN_VALUE;
-            ymin = Float.MAX_VALUE;
-            ymax = Float.MIN_VALUE;
-
+            // Nodes with a label, and the rectangles they occupy (size + label)
             List<Node> correctNodes = new ArrayList<>();
             for (Node n : nodes) {
-                float x = n.x();
-                float y = n.y();
                 TextProperties t = n.getTextProperties();
                 float w = t.getWidth();
                 float h = t.getHeight();
-                float radius = n.size() / 2f;
 
                 if (w > 0 && h > 0) {
-                    // Get the rectangle occupied by the node (size + label)
-                    float nxmin = Math.min(x - w / 2, x - radius);
-                    float nxmax = Math.max(x + w / 2, x + radius);
-                    float nymin = Math.min(y - h / 2, y - radius);
-                    float nymax = Math.max(y + h / 2, y + radius);
-
-                    // Update global boundaries
-                    xmin = Math.min(this.xmin, nxmin);
-                    xmax = Math.max(this.xmax, nxmax);
-                    ymin = Math.min(this.ymin, nymin);
-                    ymax = Math.max(this.ymax, nymax);
-
+                    int i = correctNodes.size();
+                    x[i] = n.x();
+                    y[i] = n.y();
+                    sizes[i] = n.size();
+                    widths[i] = w;
+                    heights[i] = h;
+                    dx[i] = 0;
+                    dy[i] = 0;
+                    float radius = adjustBySize ? radiusScale * sizes[i] : 0;
+                    xmin[i] = Math.min(x[i] - w / 2, x[i] - radius);
+                    xmax[i] = Math.max(x[i] + w / 2, x[i] + radius);
+                    ymin[i] = Math.min(y[i] - h / 2, y[i] - radius);
+                    ymax[i] = Math.max(y[i] + h / 2, y[i] + radius);
                     correctNodes.add(n);
                 }
             }
 
-            if (correctNodes.isEmpty() || xmin == xmax || ymin == ymax) {
+            if (correctNodes.isEmpty()) {
                 return;
             }
-
-            long timeStamp = 1;
-            boolean someCollision = false;
-
-            //Add all nodes in the quadtree
-            QuadTree quadTree = new QuadTree(correctNodes.size(), (xmax - xmin) / (ymax - ymin));
-            for (Node n : correctNodes) {
-                quadTree.add(n);
-            }
-
-            //Compute repulsion - with neighbours in the 8 quadnodes around the node
-            for (Node n : correctNodes) {
-                timeStamp++;
-                LabelAdjustLayoutData layoutData = n.getLayoutData();
-                QuadNode quad = quadTree.getQuadNode(layoutData.labelAdjustQuadNode);
-
-                //Repulse with adjacent quad - but only one per pair of nodes, timestamp is guaranteeing that
-                for (Node neighbour : quadTree.getAdjacentNodes(quad.row, quad.col)) {
-                    LabelAdjustLayoutData neighborLayoutData = neighbour.getLayoutData();
-                    if (neighbour != n && neighborLayoutData.freeze < timeStamp) {
-                        boolean collision = repulse(n, neighbour);
-                        someCollision = someCollision || collision;
-                    }
-                    neighborLayoutData.freeze = timeStamp; //Use the existing freeze float variable to set timestamp
-                }
+            int count = correctNodes.size();
+            index.build(xmin, ymin, xmax, ymax, count);
+
+            //Compute repulsion - with the nodes overlapping each node
+            someCollision = false;
+            RepulsionTask task = new RepulsionTask(0, count);
+            if (pool == null) {
+                task.compute();
+            } else {
+                pool.invoke(task);
             }
 
             if (!someCollision) {
                 setConverged(true);
             } else {
                 // apply forces
-                for (Node n : correctNodes) {
-                    LabelAdjustLayoutData layoutData = n.getLayoutData();
+                for (int i = 0; i < count; i++) {
+                    Node n = correctNodes.get(i);
                     if (!n.isFixed()) {
-                        layoutData.dx *= speed;
-                        layoutData.dy *= speed;
-                        float x = n.x() + layoutData.dx;
-                        float y = n.y() + layoutData.dy;
-
-                        n.setX(x);
-                        n.setY(y);
+                        n.setX(x[i] + dx[i] * (float) speed);
+                        n.setY(y[i] + dy[i] * (float) speed);
                     }
                 }
             }
@@ -189,19 +198,20 @@ public class LabelAdjust extends AbstractLayout implements Layout {
         }
     }
 
-    private boolean repulse(Node n1, Node n2) {
+    /**
+     * N1 pushes N2, and returns whether they collide. Only changes the force
+     * of N2.
+     */
+    private boolean repulse(int n1, int n2) {
         boolean collision = false;
-        float n1x = n1.x();
-        float n1y = n1.y();
-        float n2x = n2.x();
-        float n2y = n2.y();
-        TextProperties t1 = n1.getTextProperties();
-        TextProperties t2 = n2.getTextProperties();
-        float n1w = t1.getWidth();
-        float n2w = t2.getWidth();
-        float n1h = t1.getHeight();
-        float n2h = t2.getHeight();
-        LabelAdjustLayoutData n2Data = n2.getLayoutData();
+        float n1x = x[n1];
+        float n1y = y[n1];
+        float n2x = x[n2];
+        float n2y = y[n2];
+        float n1w = widths[n1];
+        float n2w = widths[n2];
+        float n1h = heights[n1];
+        float n2h = heights[n2];
 
         double n1xmin = n1x - 0.5 * n1w;
         double n2xmin = n2x - 0.5 * n2w;
@@ -217,15 +227,15 @@ public class LabelAdjust extends AbstractLayout implements Layout {
             double xDist = n2x - n1x;
             double yDist = n2y - n1y;
             double dist = Math.sqrt(xDist * xDist + yDist * yDist);
-            boolean sphereCollision = dist < radiusScale * (n1.size() + n2.size());
+            boolean sphereCollision = dist < radiusScale * (sizes[n1] + sizes[n2]);
             if (sphereCollision) {
-                double f = 0.1 * n1.size() / dist;
+                double f = 0.1 * sizes[n1] / dist;
                 if (dist > 0) {
-                    n2Data.dx = (float) (n2Data.dx + xDist / dist * f);
-                    n2Data.dy = (float) (n2Data.dy + yDist / dist * f);
+                    dx[n2] = (float) (dx[n2] + xDist / dist * f);
+                    dy[n2] = (float) (dy[n2] + yDist / dist * f);
                 } else {
-                    n2Data.dx = (float) (n2Data.dx + 0.01 * (0.5 - Math.random()));
-                    n2Data.dy = (float) (n2Data.dy + 0.01 * (0.5 - Math.random()));
+                    dx[n2] = (float) (dx[n2] + 0.01 * (0.5 - Math.random()));
+                    dy[n2] = (float) (dy[n2] + 0.01 * (0.5 - Math.random()));
                 }
                 collision = true;
             }
@@ -240,20 +250,20 @@ public class LabelAdjust extends AbstractLayout implements Layout {
             if (labelCollisionXleft > 0 && labelCollisionXright > 0) {// Collision
                 if (upDifferential > downDifferential) {
                     // N1 pushes N2 up
-                    n2Data.dy = (float) (n2Data.dy - 0.02 * n1h * (0.8 + 0.4 * Math.random()));
+                    dy[n2] = (float) (dy[n2] - 0.02 * n1h * (0.8 + 0.4 * Math.random()));
                     collision = true;
                 } else {
                     // N1 pushes N2 down
-                    n2Data.dy = (float) (n2Data.dy + 0.02 * n1h * (0.8 + 0.4 * Math.random()));
+                    dy[n2] = (float) (dy[n2] + 0.02 * n1h * (0.8 + 0.4 * Math.random()));
                     collision = true;
                 }
                 if (labelCollisionXleft > labelCollisionXright) {
                     // N1 pushes N2 right
-                    n2Data.dx = (float) (n2Data.dx + 0.01 * (n1h * 2) * (0.8 + 0.4 * Math.random()));
+                    dx[n2] = (float) (dx[n2] + 0.01 * (n1h * 2) * (0.8 + 0.4 * Math.random()));
                     collision = true;
                 } else {
                     // N1 pushes N2 left
-                    n2Data.dx = (float) (n2Data.dx - 0.01 * (n1h * 2) * (0.8 + 0.4 * Math.random()));
+                    dx[n2] = (float) (dx[n2] - 0.01 * (n1h * 2) * (0.8 + 0.4 * Math.random()));
                     collision = true;
                 }
             }
@@ -264,6 +274,10 @@ public class LabelAdjust extends AbstractLayout implements Layout {
 
     @Override
     public void endAlgo() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
         for (Node n : graph.getNodes()) {
             n.setLayoutData(null);
         }
@@ -288,6 +302,13 @@ public class LabelAdjust extends AbstractLayout implements Layout {
                     "LabelAdjust.adjustBySize.name",
                     NbBundle.getMessage(getClass(), "LabelAdjust.adjustBySize.desc"),
                     "isAdjustBySize", "setAdjustBySize"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(getClass(), "LabelAdjust.threads.name"),
+                    LABELADJUST_CATEGORY,
+                    "LabelAdjust.threads.name",
+                    NbBundle.getMessage(getClass(), "LabelAdjust.threads.desc"),
+                    "getThreadsCount", "setThreadsCount"));
         } catch (Exception e) {
             Exceptions.printStackTrace(e);
         }
@@ -310,107 +331,45 @@ public class LabelAdjust extends AbstractLayout implements Layout {
         this.adjustBySize = adjustBySize;
     }
 
-    private static class QuadNode {
-
-        private final int index;
-        private final int row;
-        private final int col;
-        private final List<Node> nodes;
-
-        public QuadNode(int index, int row, int col) {
-            this.index = index;
-            this.row = row;
-            this.col = col;
-            this.nodes = new ArrayList<>();
-        }
-
-        public List<Node> getNodes() {
-            return nodes;
-        }
-
-        public void add(Node n) {
-            nodes.add(n);
-        }
+    public Integer getThreadsCount() {
+        return threadCount;
     }
 
-    private class QuadTree {
-
-        private final QuadNode[] quads;
-        private final int COLUMNS;
-        private final int ROWS;
-
-        public QuadTree(int numberNodes, float aspectRatio) {
-            if (aspectRatio > 0) {
-                COLUMNS = (int) Math.ceil(numberNodes / 50f);
-                ROWS = (int) Math.ceil(COLUMNS / aspectRatio);
-            } else {
-                ROWS = (int) Math.ceil(numberNodes / 50f);
-                COLUMNS = (int) Math.ceil(ROWS / aspectRatio);
-            }
-            quads = new QuadNode[COLUMNS * ROWS];
-            for (int row = 0; row < ROWS; row++) {
-                for (int col = 0; col < COLUMNS; col++) {
-                    quads[row * COLUMNS + col] = new QuadNode(row * COLUMNS + col, row, col);
-                }
-            }
-        }
+    /**
+     * Sets the number of threads computing the repulsion, which is used from
+     * the next run. Results don't depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadsCount(Integer threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
 
-        public void add(Node node) {
-            float x = node.x();
-            float y = node.y();
-            TextProperties t = node.getTextProperties();
-            float w = t.getWidth();
-            float h = t.getHeight();
-            float radius = node.size();
-
-            // Get the rectangle occupied by the node (size + label)
-            float nxmin = Math.min(x - w / 2, x - radius);
-            float nxmax = Math.max(x + w / 2, x + radius);
-            float nymin = Math.min(y - h / 2, y - radius);
-            float nymax = Math.max(y + h / 2, y + radius);
-
-            // Get the rectangle as boxes
-            int minXbox = (int) Math.floor((COLUMNS - 1) * (nxmin - xmin) / (xmax - xmin));
-            int maxXbox = (int) Math.floor((COLUMNS - 1) * (nxmax - xmin) / (xmax - xmin));
-            int minYbox = (int) Math.floor((ROWS - 1) * (((ymax - ymin) - (nymax - ymin)) / (ymax - ymin)));
-            int maxYbox = (int) Math.floor((ROWS - 1) * (((ymax - ymin) - (nymin - ymin)) / (ymax - ymin)));
-            for (int col = minXbox; col <= maxXbox && col < COLUMNS && col >= 0; col++) {
-                for (int row = minYbox; row <= maxYbox && row < ROWS && row >= 0; row++) {
-                    quads[row * COLUMNS + col].add(node);
-                }
-            }
+    /**
+     * Computes the repulsion on nodes <code>[from, to)</code>, split in halves
+     * for work stealing.
+     */
+    private class RepulsionTask extends RecursiveAction {
 
-            //Get the node center
-            int centerX = (int) Math.floor((COLUMNS - 1) * (x - xmin) / (xmax - xmin));
-            int centerY = (int) Math.floor((ROWS - 1) * (((ymax - ymin) - (y - ymin)) / (ymax - ymin)));
-            LabelAdjustLayoutData layoutData = node.getLayoutData();
-            layoutData.labelAdjustQuadNode = quads[centerY * COLUMNS + centerX].index;
-        }
+        private static final int CHUNK_SIZE = 256;
+        private final int from;
+        private final int to;
 
-        public List<Node> get(int row, int col) {
-            return quads[row * ROWS + col].getNodes();
+        RepulsionTask(int from, int to) {
+            this.from = from;
+            this.to = to;
         }
 
-        public List<Node> getAdjacentNodes(int row, int col) {
-            if (quads.length == 1) {
-                return quads[0].getNodes();
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RepulsionTask(from, middle), new RepulsionTask(middle, to));
+                return;
             }
-
-            List<Node> adjNodes = new ArrayList<>();
-            int left = Math.max(0, col - 1);
-            int top = Math.max(0, row - 1);
-            int right = Math.min(COLUMNS - 1, col + 1);
-            int bottom = Math.min(ROWS - 1, row + 1);
-            for (int i = left; i <= right; i++) {
-                for (int j = top; j <= bottom; j++) {
-                    adjNodes.addAll(quads[j * COLUMNS + i].getNodes());
-                }
+            for (int i = from; i < to; i++) {
+                index.forEachOverlap(i, repulsion);
             }
-            return adjNodes;
-        }
-
-        public QuadNode getQuadNode(int index) {
-            return quads[index];
         }
     }
 }
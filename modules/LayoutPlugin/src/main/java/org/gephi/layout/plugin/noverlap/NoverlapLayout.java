@@ -51,13 +51,18 @@ import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.ProgressTicket;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import org.gephi.graph.api.NodeIterable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.layout.plugin.SpatialIndex;
 import org.openide.util.Exceptions;
 
 /**
+ * Moves nodes apart until they don't overlap anymore.
+ * <p>
+ * The nodes close enough to overlap are found with a {@link SpatialIndex}
+ * over their bounding squares, and each node sums the repulsion of the nodes
+ * overlapping it, in parallel.
  *
  * @author Mathieu Jacomy
  */
@@ -68,13 +73,48 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
     private double speed;
     private double ratio;
     private double margin;
-    private double xmin;
-    private double xmax;
-    private double ymin;
-    private double ymax;
+    private int threadCount;
+    private ForkJoinPool pool;
+    //Nodes of the current iteration
+    private final SpatialIndex index = new SpatialIndex();
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] sizes = new float[0];
+    private double[] radii = new double[0];
+    private float[] xmin = new float[0];
+    private float[] ymin = new float[0];
+    private float[] xmax = new float[0];
+    private float[] ymax = new float[0];
+    private double[] dx = new double[0];
+    private double[] dy = new double[0];
+    private volatile boolean collision;
+    private final SpatialIndex.Visitor repulsion = new SpatialIndex.Visitor() {
+
+        @Override
+        public void visit(int n2, int n1) {
+            // Check sizes (spheric)
+            double xDist = x[n2] - x[n1];
+            double yDist = y[n2] - y[n1];
+            double dist = Math.sqrt(xDist * xDist + yDist * yDist);
+            if (dist < radii[n1] + radii[n2]) {
+                collision = true;
+                // n1 repulses n2, as strongly as it is big
+                double f = 1. + sizes[n1];
+                if (dist > 0) {
+                    dx[n2] += xDist / dist * f;
+                    dy[n2] += yDist / dist * f;
+                } else {
+                    // Same exact position, divide by zero impossible: jitter
+                    dx[n2] += 0.01 * (0.5 - Math.random());
+                    dy[n2] += 0.01 * (0.5 - Math.random());
+                }
+            }
+        }
+    };
 
     public NoverlapLayout(LayoutBuilder layoutBuilder) {
         super(layoutBuilder);
+        this.threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     @Override
@@ -82,6 +122,7 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
         this.graph = graphModel.getGraphVisible();
         setConverged(false);
         cancel = false;
+        pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
     }
 
     @Override
@@ -90,136 +131,55 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
         this.graph = graphModel.getGraphVisible();
         graph.readLock();
         try {
-            //Reset Layout Data
-            for (Node n : graph.getNodes()) {
-                if (n.getLayoutData() == null || !(n.getLayoutData() instanceof NoverlapLayoutData)) {
-                    n.setLayoutData(new NoverlapLayoutData());
-                }
-                NoverlapLayoutData layoutData = n.getLayoutData();
-                layoutData.neighbours.clear();
-                layoutData.dx = 0;
-                layoutData.dy = 0;
+            Node[] nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+            if (x.length < n) {
+                x = new float[n];
+                y = new float[n];
+                sizes = new float[n];
+                radii = new double[n];
+                dx = new double[n];
+                dy = new double[n];
+                xmin = new float[n];
+                ymin = new float[n];
+                xmax = new float[n];
+                ymax = new float[n];
             }
 
-            // Get xmin, xmax, ymin, ymax
-            this.xmin = Double.MAX_VALUE;
-            this.xmax = Double.MIN_VALUE;
-            this.ymin = Double.MAX_VALUE;
-            this.ymax = Double.MIN_VALUE;
-
-            for (Node n : graph.getNodes()) {
-                float x = n.x();
-                float y = n.y();
-                float radius = n.size();
-
-                // Get the rectangle occupied by the node
-                double nxmin = x - (radius * ratio + margin);
-                double nxmax = x + (radius * ratio + margin);
-                double nymin = y - (radius * ratio + margin);
-                double nymax = y + (radius * ratio + margin);
-
-                // Update global boundaries
-                this.xmin = Math.min(this.xmin, nxmin);
-                this.xmax = Math.max(this.xmax, nxmax);
-                this.ymin = Math.min(this.ymin, nymin);
-                this.ymax = Math.max(this.ymax, nymax);
-            }
-
-            // Secure the bounds
-            double xwidth = this.xmax - this.xmin;
-            double yheight = this.ymax - this.ymin;
-            double xcenter = (this.xmin + this.xmax) / 2;
-            double ycenter = (this.ymin + this.ymax) / 2;
-            double securityRatio = 1.1;
-            this.xmin = xcenter - securityRatio * xwidth / 2;
-            this.xmax = xcenter + securityRatio * xwidth / 2;
-            this.ymin = ycenter - securityRatio * yheight / 2;
-            this.ymax = ycenter + securityRatio * yheight / 2;
-
-            SpatialGrid grid = new SpatialGrid();
-
-            // Put nodes in their boxes
-            for (Node n : graph.getNodes()) {
-                grid.add(n);
+            // Get the squares occupied by the nodes
+            for (int i = 0; i < n; i++) {
+                Node node = nodes[i];
+                x[i] = node.x();
+                y[i] = node.y();
+                sizes[i] = node.size();
+                radii[i] = sizes[i] * ratio + margin;
+                dx[i] = 0;
+                dy[i] = 0;
+                xmin[i] = (float) (x[i] - radii[i]);
+                xmax[i] = (float) (x[i] + radii[i]);
+                ymin[i] = (float) (y[i] - radii[i]);
+                ymax[i] = (float) (y[i] + radii[i]);
             }
+            index.build(xmin, ymin, xmax, ymax, n);
 
-            // Now we have cells with nodes in it. Nodes that are in the same cell, or in adjacent cells, are tested for repulsion.
-            // But they are not repulsed several times, even if they are in several cells...
-            // So we build a relation of proximity between nodes.
-            // Build proximities
-            for (int row = 0; row < grid.countRows() && !cancel; row++) {
-                for (int col = 0; col < grid.countColumns() && !cancel; col++) {
-                    for (Node n : grid.getContent(row, col)) {
-                        NoverlapLayoutData lald = n.getLayoutData();
-
-                        // For node n in the box "box"...
-                        // We search nodes that are in the boxes that are adjacent or the same.
-                        for (int row2 = Math.max(0, row - 1); row2 <= Math.min(row + 1, grid.countRows() - 1); row2++) {
-                            for (int col2 = Math.max(0, col - 1); col2 <= Math.min(col + 1, grid.countColumns() - 1); col2++) {
-                                for (Node n2 : grid.getContent(row2, col2)) {
-                                    if (n2 != n && !lald.neighbours.contains(n2)) {
-                                        lald.neighbours.add(n2);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            // Proximities are built !
             // Apply repulsion force - along proximities...
-            NodeIterable nodesIterable = graph.getNodes();
-            for (Node n1 : nodesIterable) {
-                NoverlapLayoutData lald = n1.getLayoutData();
-                for (Node n2 : lald.neighbours) {
-                    float n1x = n1.x();
-                    float n1y = n1.y();
-                    float n2x = n2.x();
-                    float n2y = n2.y();
-                    float n1radius = n1.size();
-                    float n2radius = n2.size();
-
-                    // Check sizes (spheric)
-                    double xDist = n2x - n1x;
-                    double yDist = n2y - n1y;
-                    double dist = Math.sqrt(xDist * xDist + yDist * yDist);
-                    boolean collision = dist < (n1radius * ratio + margin) + (n2radius * ratio + margin);
-                    if (collision) {
-                        setConverged(false);
-                        // n1 repulses n2, as strongly as it is big
-                        NoverlapLayoutData layoutData = n2.getLayoutData();
-                        double f = 1. + n1.size();
-                        if (dist > 0) {
-                            layoutData.dx += xDist / dist * f;
-                            layoutData.dy += yDist / dist * f;
-                        } else {
-                            // Same exact position, divide by zero impossible: jitter
-                            layoutData.dx += 0.01 * (0.5 - Math.random());
-                            layoutData.dy += 0.01 * (0.5 - Math.random());
-                        }
-                    }
-                    if (cancel) {
-                        break;
-                    }
-                }
-                if (cancel) {
-                    nodesIterable.doBreak();
-                    break;
-                }
+            collision = false;
+            RepulsionTask task = new RepulsionTask(0, n);
+            if (pool == null) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+            if (collision) {
+                setConverged(false);
             }
 
             // apply forces
-            for (Node n : graph.getNodes()) {
-                NoverlapLayoutData layoutData = n.getLayoutData();
-                if (!n.isFixed()) {
-                    layoutData.dx *= 0.1 * speed;
-                    layoutData.dy *= 0.1 * speed;
-                    float x = n.x() + layoutData.dx;
-                    float y = n.y() + layoutData.dy;
-
-                    n.setX(x);
-                    n.setY(y);
+            for (int i = 0; i < n && !cancel; i++) {
+                Node node = nodes[i];
+                if (!node.isFixed()) {
+                    node.setX((float) (x[i] + dx[i] * 0.1 * speed));
+                    node.setY((float) (y[i] + dy[i] * 0.1 * speed));
                 }
             }
         } finally {
@@ -229,6 +189,10 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
 
     @Override
     public void endAlgo() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
         graph.readLock();
         try {
             for (Node n : graph.getNodes()) {
@@ -261,6 +225,12 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
         } catch (Exception e) {
             Exceptions.printStackTrace(e);
         }
+        try {
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class, "threads", NOVERLAP_CATEGORY, "threads", "getThreadsCount", "setThreadsCount"));
+        } catch (Exception e) {
+            Exceptions.printStackTrace(e);
+        }
         return properties.toArray(new LayoutProperty[0]);
     }
 
@@ -295,6 +265,20 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
         this.margin = margin;
     }
 
+    public Integer getThreadsCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads computing the repulsion, which is used from
+     * the next run. Results don't depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadsCount(Integer threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
     @Override
     public boolean cancel() {
         cancel = true;
@@ -305,100 +289,31 @@ public class NoverlapLayout extends AbstractLayout implements Layout, LongTask {
     public void setProgressTicket(ProgressTicket progressTicket) {
     }
 
-    private class SpatialGrid {
-
-        //Param
-        private final int COLUMNS_ROWS = 20;
-        //Data
-        private final Map<Cell, List<Node>> data = new HashMap<>();
-
-        public SpatialGrid() {
-            for (int row = 0; row < COLUMNS_ROWS; row++) {
-                for (int col = 0; col < COLUMNS_ROWS; col++) {
-                    List<Node> localnodes = new ArrayList<>();
-                    data.put(new Cell(row, col), localnodes);
-                }
-            }
-        }
-
-        public Iterable<Node> getContent(int row, int col) {
-            return data.get(new Cell(row, col));
-        }
-
-        public int countColumns() {
-            return COLUMNS_ROWS;
-        }
-
-        public int countRows() {
-            return COLUMNS_ROWS;
-        }
-
-        public void add(Node node) {
-            float x = node.x();
-            float y = node.y();
-            float radius = node.size();
-
-            // Get the rectangle occupied by the node
-            double nxmin = x - (radius * ratio + margin);
-            double nxmax = x + (radius * ratio + margin);
-            double nymin = y - (radius * ratio + margin);
-            double nymax = y + (radius * ratio + margin);
-
-            // Get the rectangle as boxes
-            int minXbox = (int) Math.floor((COLUMNS_ROWS - 1) * (nxmin - xmin) / (xmax - xmin));
-            int maxXbox = (int) Math.floor((COLUMNS_ROWS - 1) * (nxmax - xmin) / (xmax - xmin));
-            int minYbox = (int) Math.floor((COLUMNS_ROWS - 1) * (nymin - ymin) / (ymax - ymin));
-            int maxYbox = (int) Math.floor((COLUMNS_ROWS - 1) * (nymax - ymin) / (ymax - ymin));
-            for (int col = minXbox; col <= maxXbox; col++) {
-                for (int row = minYbox; row <= maxYbox; row++) {
-                    try {
-                        data.get(new Cell(row, col)).add(node);
-                    } catch (Exception e) {
-                        //Exceptions.printStackTrace(e);
-                        if (nxmin < xmin || nxmax > xmax) {
-                        }
-                        if (nymin < ymin || nymax > ymax) {
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private static class Cell {
+    /**
+     * Computes the repulsion on nodes <code>[from, to)</code>, split in halves
+     * for work stealing.
+     */
+    private class RepulsionTask extends RecursiveAction {
 
-        private final int row;
-        private final int col;
+        private static final int CHUNK_SIZE = 256;
+        private final int from;
+        private final int to;
 
-        public Cell(int row, int col) {
-            this.row = row;
-            this.col = col;
+        RepulsionTask(int from, int to) {
+            this.from = from;
+            this.to = to;
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            final Cell other = (Cell) obj;
-            if (this.row != other.row) {
-                return false;
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RepulsionTask(from, middle), new RepulsionTask(middle, to));
+                return;
             }
-            if (this.col != other.col) {
-                return false;
+            for (int i = from; i < to && !cancel; i++) {
+                index.forEachOverlap(i, repulsion);
             }
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 7;
-            hash = 11 * hash + this.row;
-            hash = 11 * hash + this.col;
-            return hash;
         }
     }
 }
@@ -47,6 +47,8 @@ import org.gephi.graph.api.Graph;
 import org.openide.util.Exceptions;
 
 /**
+ * Ends an iteration once the workers are done and their positions merged:
+ * updates the stage, the workers parameters and the graph nodes positions.
  *
  * @author Mathieu Bastian
  */
@@ -63,56 +65,17 @@ public class Combine implements Runnable {
 
     @Override
     public void run() {
-        //System.out.println("Combine results");
-
         Worker[] workers = layout.getWorkers();
 
-        //Gather positions
-        Node[] positions = null;
-        for (Worker w : workers) {
-            if (positions == null) {
-                positions = w.getPositions();
-            } else {
-                Node[] workerPositions = w.getPositions();
-                for (int i = w.getId(); i < positions.length; i += workers.length) {
-                    positions[i] = workerPositions[i];
-                }
-            }
-        }
+        //Workers positions are identical once merged
+        Node[] positions = workers[0].getPositions();
 
         //Unfix positions if necessary
         if (!control.isRealFixed()) {
-            for (Node n : positions) {
-                n.fixed = false;
-            }
-        }
-
-        //Combine density
-        for (Worker w : workers) {
-            DensityGrid densityGrid = w.getDensityGrid();
-            boolean fineDensity = w.isFineDensity();
-            boolean firstAdd = w.isFirstAdd();
-            boolean fineFirstAdd = w.isFineFirstAdd();
-            Node[] wNodes = w.getPositions();
-            for (Worker z : workers) {
-                if (w != z) {
-                    Node[] zNodes = w.getPositions();
-                    for (int i = z.getId(); i < wNodes.length; i += workers.length) {
-                        densityGrid.substract(wNodes[i], firstAdd, fineFirstAdd, fineDensity);
-                        densityGrid.add(zNodes[i], fineDensity);
-                    }
-                }
-            }
-        }
-
-        //Redistribute positions to workers
-        if (workers.length > 1) {
             for (Worker w : workers) {
-                Node[] positionsCopy = new Node[positions.length];
-                for (int i = 0; i < positions.length; i++) {
-                    positionsCopy[i] = positions[i].clone();
+                for (Node n : w.getPositions()) {
+                    n.fixed = false;
                 }
-                w.setPositions(positionsCopy);
             }
         }
 
@@ -120,7 +83,7 @@ public class Combine implements Runnable {
         boolean done = !control.udpateStage(totEnergy);
 
         //Params
-        for (Worker w : layout.getWorkers()) {
+        for (Worker w : workers) {
             control.initWorker(w);
         }
 
@@ -137,15 +100,14 @@ public class Combine implements Runnable {
 
         //Finish
         if (!layout.canAlgo() || done) {
-            for (Worker w : layout.getWorkers()) {
+            for (Worker w : workers) {
                 w.setDone(true);
             }
             layout.setRunning(false);
         }
 
-        //Synchronize with layout goAlgo()
         synchronized (lock) {
-            lock.notify();
+            lock.notifyAll();
         }
     }
 
@@ -166,6 +128,13 @@ public class Combine implements Runnable {
         return totEnergy;
     }
 
+    /**
+     * Waits until the next iteration is combined.
+     *
+     * @deprecated the layout combines the iterations itself, in
+     * {@link OpenOrdLayout#goAlgo()}
+     */
+    @Deprecated
     public void waitForIteration() {
         try {
             synchronized (lock) {
@@ -54,27 +54,23 @@ public class DensityGrid implements Cloneable {
     private static final int RADIUS = 10;              // radius for density fall-off:
     private static final int HALF_VIEW = 2000;
     private static final float VIEW_TO_GRID = 0.25f;
-    private float[][] density;
-    private float[][] fallOff;
-    private ArrayDeque<Node>[][] bins;
+    private static final int DIAM = RADIUS * 2 + 1;
+    //Row-major grids, cell (x, y) is at index y * GRID_SIZE + x
+    private float[] density;
+    private float[] fallOff;
+    //Allocated when the fine density is first used
+    private ArrayDeque<Node>[] bins;
 
     public void init() {
-        density = new float[GRID_SIZE][GRID_SIZE];
-        fallOff = new float[RADIUS * 2 + 1][RADIUS * 2 + 1];
-        bins = new ArrayDeque[GRID_SIZE][GRID_SIZE];
+        density = new float[GRID_SIZE * GRID_SIZE];
+        fallOff = new float[DIAM * DIAM];
 
         for (int i = -RADIUS; i <= RADIUS; i++) {
             for (int j = -RADIUS; j <= RADIUS; j++) {
-                fallOff[i + RADIUS][j + RADIUS] = (float) ((RADIUS - Math.abs((float) i)) / RADIUS)
+                fallOff[(i + RADIUS) * DIAM + j + RADIUS] = (float) ((RADIUS - Math.abs((float) i)) / RADIUS)
                         * (float) ((RADIUS - Math.abs((float) j)) / RADIUS);
             }
         }
-
-        /*for (int i = 0; i < GRID_SIZE; i++) {
-        for (int j = 0; j < GRID_SIZE; j++) {
-        bins[i][j] = new ArrayDeque<Node>();
-        }
-        }*/
     }
 
     public float getDensity(float nX, float nY, boolean fineDensity) {
@@ -94,9 +90,12 @@ public class DensityGrid implements Cloneable {
         }
 
         if (fineDensity) {
+            if (bins == null) {
+                return 0;
+            }
             for (int i = yGrid - 1; i <= yGrid + 1; i++) {
                 for (int j = xGrid - 1; j <= xGrid + 1; j++) {
-                    ArrayDeque<Node> deque = bins[i][j];
+                    ArrayDeque<Node> deque = bins[i * GRID_SIZE + j];
                     if (deque != null) {
                         for (Node bi : deque) {
                             xDist = nX - bi.x;
@@ -108,7 +107,7 @@ public class DensityGrid implements Cloneable {
                 }
             }
         } else {
-            density = this.density[yGrid][xGrid];
+            density = this.density[yGrid * GRID_SIZE + xGrid];
             density *= density;
         }
         return density;
@@ -140,13 +139,11 @@ public class DensityGrid implements Cloneable {
         diam = 2 * RADIUS;
 
         for (int i = 0; i <= diam; i++) {
-            int oldXGrid = xGrid;
+            int row = (yGrid + i) * GRID_SIZE + xGrid;
+            int fallOffRow = i * DIAM;
             for (int j = 0; j <= diam; j++) {
-                density[yGrid][xGrid] -= fallOff[i][j];
-                xGrid++;
+                density[row + j] -= fallOff[fallOffRow + j];
             }
-            yGrid++;
-            xGrid = oldXGrid;
         }
     }
 
@@ -170,13 +167,11 @@ public class DensityGrid implements Cloneable {
         }
 
         for (int i = 0; i <= diam; i++) {
-            int oldXGrid = xGrid;
+            int row = (yGrid + i) * GRID_SIZE + xGrid;
+            int fallOffRow = i * DIAM;
             for (int j = 0; j <= diam; j++) {
-                density[yGrid][xGrid] += fallOff[i][j];
-                xGrid++;
+                density[row + j] += fallOff[fallOffRow + j];
             }
-            yGrid++;
-            xGrid = oldXGrid;
         }
     }
 
@@ -185,7 +180,10 @@ public class DensityGrid implements Cloneable {
 
         xGrid = (int) ((n.subX + HALF_VIEW + .5) * VIEW_TO_GRID);
         yGrid = (int) ((n.subY + HALF_VIEW + .5) * VIEW_TO_GRID);
-        ArrayDeque<Node> deque = bins[yGrid][xGrid];
+        if (bins == null) {
+            return;
+        }
+        ArrayDeque<Node> deque = bins[yGrid * GRID_SIZE + xGrid];
         if (deque != null) {
             deque.pollFirst();
         }
@@ -199,10 +197,13 @@ public class DensityGrid implements Cloneable {
 
         n.subX = n.x;
         n.subY = n.y;
-        ArrayDeque<Node> deque = bins[yGrid][xGrid];
+        if (bins == null) {
+            bins = new ArrayDeque[GRID_SIZE * GRID_SIZE];
+        }
+        ArrayDeque<Node> deque = bins[yGrid * GRID_SIZE + xGrid];
         if (deque == null) {
             deque = new ArrayDeque<>();
-            bins[yGrid][xGrid] = deque;
+            bins[yGrid * GRID_SIZE + xGrid] = deque;
         }
         deque.addLast(n);
     }
@@ -210,19 +211,4 @@ public class DensityGrid implements Cloneable {
     public static float getViewSize() {
         return (VIEW_SIZE * 0.8f) - (RADIUS / 0.25f) * 2f;
     }
-
-    /*@Override
-    protected DensityGrid clone() {
-    DensityGrid densityGrid = new DensityGrid();
-    densityGrid.fallOff = this.fallOff;
-    densityGrid.density = new float[GRID_SIZE][GRID_SIZE];
-    densityGrid.bins = new ArrayDeque[GRID_SIZE][GRID_SIZE];
-    for (int i = 0; i < GRID_SIZE; i++) {
-    System.arraycopy(this.density[i], 0, densityGrid.density[i], 0, GRID_SIZE);
-    for (int j = 0; j < GRID_SIZE; j++) {
-    densityGrid.bins[i][j] = bins[i][j].clone();
-    }
-    }
-    return densityGrid;
-    }*/
 }
@@ -41,13 +41,17 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.layout.plugin.openord;
 
-import gnu.trove.iterator.TIntFloatIterator;
-import gnu.trove.map.hash.TIntFloatHashMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
@@ -83,9 +87,11 @@ public class OpenOrdLayout implements Layout, LongTask {
     private Worker[] workers;
     private Combine combine;
     private Control control;
-    private CyclicBarrier barrier;
+    private Runnable[] steps;
+    private Runnable[] merges;
     private Graph graph;
-    private boolean firstIteration = true;
+    //Threads helping the calling thread, kept between runs
+    private ThreadPoolExecutor pool;
 
     public OpenOrdLayout(LayoutBuilder builder) {
         this.builder = builder;
@@ -120,9 +126,8 @@ public class OpenOrdLayout implements Layout, LongTask {
         try {
             int numNodes = graph.getNodeCount();
 
-            //Prepare data structure - nodes and neighbors map
+            //Prepare data structure - nodes
             Node[] nodes = new Node[numNodes];
-            TIntFloatHashMap[] neighbors = new TIntFloatHashMap[numNodes];
 
             //Load nodes and edges
             TIntIntHashMap idMap = new TIntIntHashMap(numNodes, 1f);
@@ -137,24 +142,71 @@ public class OpenOrdLayout implements Layout, LongTask {
                 n.setLayoutData(layoutData);
                 idMap.put(n.getStoreId(), i);
             }
+            Edge[] edges = graph.getEdges().toArray();
+            int[] edgeSources = new int[edges.length];
+            int[] edgeTargets = new int[edges.length];
+            float[] edgeWeights = new float[edges.length];
+            int[] neighborStarts = new int[numNodes + 1];
             float highestSimilarity = Float.NEGATIVE_INFINITY;
-            for (Edge e : graph.getEdges()) {
+            for (int i = 0; i < edges.length; i++) {
+                Edge e = edges[i];
                 int source = idMap.get(e.getSource().getStoreId());
                 int target = idMap.get(e.getTarget().getStoreId());
+                edgeSources[i] = source;
+                edgeTargets[i] = target;
                 if (source != target) {        //No self-loop
                     float weight = (float) (isDynamicWeight ? e.getWeight(interval) : e.getWeight());
-                    if (neighbors[source] == null) {
-                        neighbors[source] = new TIntFloatHashMap();
-                    }
-                    if (neighbors[target] == null) {
-                        neighbors[target] = new TIntFloatHashMap();
-                    }
-                    neighbors[source].put(target, weight);
-                    neighbors[target].put(source, weight);
+                    edgeWeights[i] = weight;
+                    neighborStarts[source + 1]++;
+                    neighborStarts[target + 1]++;
                     highestSimilarity = Math.max(highestSimilarity, weight);
                 }
             }
 
+            //Neighbors in compressed rows, both ends of every edge
+            for (int i = 0; i < numNodes; i++) {
+                neighborStarts[i + 1] += neighborStarts[i];
+            }
+            int[] neighborCounts = new int[numNodes];
+            int[] neighborTargets = new int[neighborStarts[numNodes]];
+            float[] neighborWeights = new float[neighborStarts[numNodes]];
+            for (int i = 0; i < edges.length; i++) {
+                int source = edgeSources[i];
+                int target = edgeTargets[i];
+                if (source != target) {
+                    float weight = normalizeWeight(edgeWeights[i], highestSimilarity);
+                    int k = neighborStarts[source] + neighborCounts[source]++;
+                    neighborTargets[k] = target;
+                    neighborWeights[k] = weight;
+                    k = neighborStarts[target] + neighborCounts[target]++;
+                    neighborTargets[k] = source;
+                    neighborWeights[k] = weight;
+                }
+            }
+
+            //Parallel edges keep the weight of the last one
+            int[] lastRow = new int[numNodes];
+            int[] lastSlot = new int[numNodes];
+            Arrays.fill(lastRow, -1);
+            for (int i = 0; i < numNodes; i++) {
+                int start = neighborStarts[i];
+                int end = start + neighborCounts[i];
+                int count = 0;
+                for (int k = start; k < end; k++) {
+                    int target = neighborTargets[k];
+                    if (lastRow[target] == i) {
+                        neighborWeights[lastSlot[target]] = neighborWeights[k];
+                    } else {
+                        lastRow[target] = i;
+                        lastSlot[target] = start + count;
+                        neighborTargets[start + count] = target;
+                        neighborWeights[start + count] = neighborWeights[k];
+                        count++;
+                    }
+                }
+                neighborCounts[i] = count;
+            }
+
             //Reset position
             boolean someFixed = false;
             for (Node n : nodes) {
@@ -195,7 +247,6 @@ public class OpenOrdLayout implements Layout, LongTask {
             //Init control and workers
             control = new Control();
             combine = new Combine(this);
-            barrier = new CyclicBarrier(numThreads, combine);
             control.setEdgeCut(edgeCut);
             control.setRealParm(realTime);
             control.setProgressTicket(progressTicket);
@@ -204,47 +255,59 @@ public class OpenOrdLayout implements Layout, LongTask {
             control.setHighestSimilarity(highestSimilarity);
 
             workers = new Worker[numThreads];
+            steps = new Runnable[numThreads];
+            merges = new Runnable[numThreads];
             for (int i = 0; i < numThreads; ++i) {
-                workers[i] = new Worker(i, numThreads, barrier);
-                workers[i].setRandom(new Random(randSeed));
-                control.initWorker(workers[i]);
+                final Worker worker = new Worker(i, numThreads);
+                worker.setRandom(new Random(randSeed));
+                control.initWorker(worker);
+                workers[i] = worker;
+                steps[i] = worker;
+                merges[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        worker.merge(workers);
+                    }
+                };
             }
 
             //Load workers with data
-            //Deep copy of all nodes positions
-            //Deep copy of a partition of all neighbors for each workers
+            //Deep copy of all nodes positions, neighbors are shared
             for (Worker w : workers) {
                 Node[] nodesCopy = new Node[nodes.length];
                 for (int i = 0; i < nodes.length; i++) {
                     nodesCopy[i] = nodes[i].clone();
                 }
-                TIntFloatHashMap[] neighborsCopy = new TIntFloatHashMap[numNodes];
-                for (int i = 0; i < neighbors.length; i++) {
-                    if (i % numThreads == w.getId() && neighbors[i] != null) {
-                        int neighborsCount = neighbors[i].size();
-                        neighborsCopy[i] = new TIntFloatHashMap(neighborsCount, 1f);
-                        for (TIntFloatIterator itr = neighbors[i].iterator(); itr.hasNext();) {
-                            itr.advance();
-                            float weight = normalizeWeight(itr.value(), highestSimilarity);
-                            neighborsCopy[i].put(itr.key(), weight);
-                        }
-                    }
-                }
                 w.setPositions(nodesCopy);
-                w.setNeighbors(neighborsCopy);
+                w.setNeighbors(neighborStarts, neighborCounts, neighborTargets, neighborWeights);
             }
 
             //Add real nodes
-            for (Node n : nodes) {
-                if (n.fixed) {
-                    for (Worker w : workers) {
+            for (Worker w : workers) {
+                for (Node n : w.getPositions()) {
+                    if (n.fixed) {
                         w.getDensityGrid().add(n, w.isFineDensity());
                     }
                 }
             }
 
+            if (numThreads > 1 && (pool == null || pool.getMaximumPoolSize() != numThreads - 1)) {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+                pool = new ThreadPoolExecutor(numThreads - 1, numThreads - 1, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "OpenOrd worker");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+                pool.allowCoreThreadTimeOut(true);
+            }
+
             running = true;
-            firstIteration = true;
         } finally {
             graph.readUnlockAll();
         }
@@ -252,22 +315,55 @@ public class OpenOrdLayout implements Layout, LongTask {
 
     @Override
     public void goAlgo() {
-        if (firstIteration) {
-            for (int i = 0; i < numThreads; ++i) {
-                Thread t = new Thread(workers[i]);
-                t.setDaemon(true);
-                t.start();
+        if (!execute(steps) || !execute(merges)) {
+            running = false;
+            return;
+        }
+        combine.run();
+    }
+
+    /**
+     * Runs the first task in the calling thread and the others in the pool,
+     * and waits for all of them.
+     *
+     * @return <code>false</code> if the calling thread was interrupted
+     */
+    private boolean execute(Runnable[] tasks) {
+        List<Future<?>> futures = new ArrayList<>(tasks.length - 1);
+        for (int i = 1; i < tasks.length; i++) {
+            futures.add(pool.submit(tasks[i]));
+        }
+        tasks[0].run();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
             }
-            firstIteration = false;
+            throw new RuntimeException(cause);
         }
-
-        combine.waitForIteration();
+        return true;
     }
 
     @Override
     public void endAlgo() {
         running = false;
         combine = null;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     private float normalizeWeight(float weight, float highestSimilarity) {
@@ -48,6 +48,14 @@ import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
 /**
+ * Moves the nodes of one stripe of the graph, the nodes whose index modulo the
+ * number of workers is the worker id, during one iteration.
+ * <p>
+ * Each worker owns a copy of all node positions and its own density grid. The
+ * positions the other workers computed are merged into both at the end of the
+ * iteration with {@link #merge(Worker[])}. The neighbors are shared between the
+ * workers in compressed rows, each worker only modifying the rows of its
+ * stripe when it cuts edges.
  *
  * @author Mathieu Bastian
  */
@@ -60,10 +68,17 @@ public class Worker implements Runnable {
     private boolean done = false;
     //Data
     private Node[] positions;
-    private TIntFloatHashMap[] neighbors;
+    private int[] neighborStarts;
+    private int[] neighborCounts;
+    private int[] neighborTargets;
+    private float[] neighborWeights;
     private DensityGrid densityGrid;
     private boolean firstAdd = true;
     private boolean fineFirstAdd = true;
+    //Density flags of the last iteration, replayed by merge
+    private boolean mergeFirstAdd;
+    private boolean mergeFineFirstAdd;
+    private boolean mergeFineDensity;
     //Settings
     private float attraction;
     private int STAGE;
@@ -75,6 +90,22 @@ public class Worker implements Runnable {
     private boolean fineDensity;
     protected Random random;
 
+    public Worker(int id, int numThreads) {
+        this(id, numThreads, null);
+    }
+
+    /**
+     * Creates a worker that runs iterations in its own thread until it is
+     * done, waiting on <code>barrier</code> after each of them.
+     *
+     * @param id the worker id
+     * @param numThreads the number of workers
+     * @param barrier the barrier shared by all workers, whose action should
+     * merge the workers with {@link #merge(Worker[])}
+     * @deprecated the layout runs the workers one iteration at a time, use
+     * {@link #Worker(int, int)}
+     */
+    @Deprecated
     public Worker(int id, int numThreads, CyclicBarrier barrier) {
         this.barrier = barrier;
         this.id = id;
@@ -85,25 +116,12 @@ public class Worker implements Runnable {
 
     @Override
     public void run() {
+        if (barrier == null) {
+            step();
+            return;
+        }
         while (!isDone()) {
-            //System.out.println("Execute worker " + id);
-
-            //Updates nodes
-            for (int i = id; i < positions.length; i += numThreads) {
-                updateNodePos(i);
-            }
-
-            //Execute one more random if other threads manage one more node
-            if (positions.length % numThreads != 0 && id > positions.length % numThreads - 1) {
-                getNextRandom();
-                getNextRandom();
-            }
-
-            firstAdd = false;
-            if (fineDensity) {
-                fineFirstAdd = false;
-            }
-
+            step();
             try {
                 barrier.await();
             } catch (InterruptedException ex) {
@@ -114,6 +132,58 @@ public class Worker implements Runnable {
         }
     }
 
+    private void step() {
+        mergeFirstAdd = firstAdd;
+        mergeFineFirstAdd = fineFirstAdd;
+        mergeFineDensity = fineDensity;
+
+        //Updates nodes
+        for (int i = id; i < positions.length; i += numThreads) {
+            updateNodePos(i);
+        }
+
+        //Execute one more random if other threads manage one more node
+        if (positions.length % numThreads != 0 && id > positions.length % numThreads - 1) {
+            getNextRandom();
+            getNextRandom();
+        }
+
+        firstAdd = false;
+        if (fineDensity) {
+            fineFirstAdd = false;
+        }
+    }
+
+    /**
+     * Copies the positions the other workers computed in the last iteration
+     * into this worker positions and density grid. The density grid is updated
+     * the way the owner of each node updated its own, so that all grids stay
+     * identical. Workers can merge in parallel as they only read the nodes of
+     * the other stripes.
+     *
+     * @param workers all the workers, indexed by id
+     */
+    public void merge(Worker[] workers) {
+        for (Worker w : workers) {
+            if (w == this) {
+                continue;
+            }
+            Node[] ownerPositions = w.positions;
+            for (int i = w.id; i < positions.length; i += numThreads) {
+                Node n = positions[i];
+                if (n.fixed) {
+                    continue;
+                }
+                Node owner = ownerPositions[i];
+                densityGrid.substract(n, mergeFirstAdd, mergeFineFirstAdd, mergeFineDensity);
+                n.x = owner.x;
+                n.y = owner.y;
+                n.energy = owner.energy;
+                densityGrid.add(n, mergeFineDensity);
+            }
+        }
+    }
+
     private void updateNodePos(int nodeIndex) {
         Node n = positions[nodeIndex];
         if (n.fixed) {
@@ -162,26 +232,25 @@ public class Worker implements Runnable {
 
         Node n = positions[nodeIndex];
 
-        if (neighbors[nodeIndex] != null) {
-            for (TIntFloatIterator itr = neighbors[nodeIndex].iterator(); itr.hasNext();) {
-                itr.advance();
-                float weight = itr.value();
-                Node m = positions[itr.key()];
-
-                xDis = n.x - m.x;
-                yDis = n.y - m.y;
+        int start = neighborStarts[nodeIndex];
+        int end = start + neighborCounts[nodeIndex];
+        for (int k = start; k < end; k++) {
+            float weight = neighborWeights[k];
+            Node m = positions[neighborTargets[k]];
 
-                energyDistance = xDis * xDis + yDis * yDis;
-                if (STAGE < 2) {
-                    energyDistance *= energyDistance;
-                }
+            xDis = n.x - m.x;
+            yDis = n.y - m.y;
 
-                if (STAGE == 0) {
-                    energyDistance *= energyDistance;
-                }
+            energyDistance = xDis * xDis + yDis * yDis;
+            if (STAGE < 2) {
+                energyDistance *= energyDistance;
+            }
 
-                nodeEnergy += weight * attraction_factor * energyDistance;
+            if (STAGE == 0) {
+                energyDistance *= energyDistance;
             }
+
+            nodeEnergy += weight * attraction_factor * energyDistance;
         }
 
         nodeEnergy += densityGrid.getDensity(n.x, n.y, fineDensity);
@@ -195,14 +264,15 @@ public class Worker implements Runnable {
         float x = 0, y = 0;
         float damping;
 
-        TIntFloatHashMap map = neighbors[nodeIndex];
-        if (map != null) {
+        int start = neighborStarts[nodeIndex];
+        int neighborsCount = neighborCounts[nodeIndex];
+        int end = start + neighborsCount;
+        if (neighborsCount > 0) {
             Node n = positions[nodeIndex];
 
-            for (TIntFloatIterator itr = map.iterator(); itr.hasNext();) {
-                itr.advance();
-                float weight = itr.value();
-                Node m = positions[itr.key()];
+            for (int k = start; k < end; k++) {
+                float weight = neighborWeights[k];
+                Node m = positions[neighborTargets[k]];
 
                 totalWeight += weight;
                 x += weight * m.x;
@@ -228,11 +298,9 @@ public class Worker implements Runnable {
 
             float maxLength = 0;
             int maxIndex = -1;
-            int neighborsCount = map.size();
             if (neighborsCount >= minEdges) {
-                for (TIntFloatIterator itr = neighbors[nodeIndex].iterator(); itr.hasNext();) {
-                    itr.advance();
-                    Node m = positions[itr.key()];
+                for (int k = start; k < end; k++) {
+                    Node m = positions[neighborTargets[k]];
 
                     xDis = xCen - m.x;
                     yDis = yCen - m.y;
@@ -240,13 +308,16 @@ public class Worker implements Runnable {
                     dis *= Math.sqrt(neighborsCount);
                     if (dis > maxLength) {
                         maxLength = dis;
-                        maxIndex = itr.key();
+                        maxIndex = k;
                     }
                 }
             }
 
             if (maxLength > cutOffLength && maxIndex != -1) {
-                map.remove(maxIndex);
+                //Cut the edge, moving the last live neighbor in its place
+                neighborTargets[maxIndex] = neighborTargets[end - 1];
+                neighborWeights[maxIndex] = neighborWeights[end - 1];
+                neighborCounts[nodeIndex]--;
             }
         }
     }
@@ -271,10 +342,18 @@ public class Worker implements Runnable {
         return rand;
     }
 
+    /**
+     * @deprecated only used by workers created with a barrier
+     */
+    @Deprecated
     public boolean isDone() {
         return done;
     }
 
+    /**
+     * @deprecated only used by workers created with a barrier
+     */
+    @Deprecated
     public void setDone(boolean done) {
         this.done = done;
     }
@@ -283,8 +362,75 @@ public class Worker implements Runnable {
         this.positions = positions;
     }
 
+    /**
+     * Sets the neighbors of the nodes of this worker, copying the maps into
+     * rows owned by this worker.
+     *
+     * @param neighbors normalized edge weight of every neighbor, by node index
+     * @deprecated use {@link #setNeighbors(int[], int[], int[], float[])}
+     */
+    @Deprecated
     public void setNeighbors(TIntFloatHashMap[] neighbors) {
-        this.neighbors = neighbors;
+        int[] starts = new int[neighbors.length + 1];
+        for (int i = 0; i < neighbors.length; i++) {
+            starts[i + 1] = starts[i] + (neighbors[i] != null ? neighbors[i].size() : 0);
+        }
+        int[] counts = new int[neighbors.length];
+        int[] targets = new int[starts[neighbors.length]];
+        float[] weights = new float[starts[neighbors.length]];
+        for (int i = 0; i < neighbors.length; i++) {
+            if (neighbors[i] != null) {
+                for (TIntFloatIterator itr = neighbors[i].iterator(); itr.hasNext();) {
+                    itr.advance();
+                    int k = starts[i] + counts[i]++;
+                    targets[k] = itr.key();
+                    weights[k] = itr.value();
+                }
+            }
+        }
+        setNeighbors(starts, counts, targets, weights);
+    }
+
+    /**
+     * Sets the neighbors, shared by all workers. The neighbors of node
+     * <code>i</code> are at indices <code>starts[i]</code> to
+     * <code>starts[i] + counts[i]</code> of <code>targets</code> and
+     * <code>weights</code>. Cut edges are removed by decrementing the count.
+     *
+     * @param starts first neighbor index of every node
+     * @param counts neighbor count of every node
+     * @param targets neighbor node indices
+     * @param weights normalized edge weights
+     */
+    public void setNeighbors(int[] starts, int[] counts, int[] targets, float[] weights) {
+        this.neighborStarts = starts;
+        this.neighborCounts = counts;
+        this.neighborTargets = targets;
+        this.neighborWeights = weights;
+    }
+
+    /**
+     * Returns a copy of the neighbors that remain after the cut edges were
+     * removed. Modifying the maps doesn't change the worker.
+     *
+     * @return normalized edge weight of every neighbor, by node index
+     * @deprecated the neighbors are stored in compressed rows
+     */
+    @Deprecated
+    public TIntFloatHashMap[] getNeighbors() {
+        if (neighborStarts == null) {
+            return null;
+        }
+        TIntFloatHashMap[] neighbors = new TIntFloatHashMap[neighborCounts.length];
+        for (int i = 0; i < neighborCounts.length; i++) {
+            if (neighborCounts[i] > 0) {
+                neighbors[i] = new TIntFloatHashMap(neighborCounts[i], 1f);
+                for (int k = neighborStarts[i], end = k + neighborCounts[i]; k < end; k++) {
+                    neighbors[i].put(neighborTargets[k], neighborWeights[k]);
+                }
+            }
+        }
+        return neighbors;
     }
 
     public Node[] getPositions() {
@@ -307,10 +453,6 @@ public class Worker implements Runnable {
         return densityGrid;
     }
 
-    public TIntFloatHashMap[] getNeighbors() {
-        return neighbors;
-    }
-
     public void setSTAGE(int STAGE) {
         this.STAGE = STAGE;
     }
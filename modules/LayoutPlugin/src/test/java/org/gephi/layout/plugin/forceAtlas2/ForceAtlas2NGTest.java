@@ -0,0 +1,108 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.api.LayoutIteration;
+import org.gephi.layout.api.LayoutIterationListener;
+import org.gephi.layout.api.LayoutRunResult;
+import org.gephi.layout.api.LayoutRunner;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class ForceAtlas2NGTest {
+
+    @Test
+    public void testRunnerSamplesAtPositionsUpdateInterval() {
+        GraphModel graphModel = createGraphModel(50);
+        ForceAtlas2 layout = new ForceAtlas2(null);
+        LayoutRunner runner = new LayoutRunner(layout, graphModel);
+        layout.setThreadsCount(1);
+        layout.setPositionsUpdateInterval(5);
+        runner.setMaxIterations(20);
+        runner.setDisplacementThreshold(0.001);
+
+        final List<LayoutIteration> samples = new ArrayList<>();
+        runner.addIterationListener(new LayoutIterationListener() {
+
+            @Override
+            public void iterationDone(LayoutIteration iteration) {
+                if (iteration.isSampled()) {
+                    samples.add(iteration);
+                }
+            }
+        });
+        LayoutRunResult result = runner.run();
+
+        assertEquals(result.getStatus(), LayoutRunResult.Status.MAX_ITERATIONS);
+        assertEquals(samples.size(), 4);
+        for (LayoutIteration sample : samples) {
+            assertEquals(sample.getIndex() % 5, 0);
+            assertTrue(sample.getMeanDisplacement() > 0);
+        }
+    }
+
+    /**
+     * Returns a cycle of <code>nodeCount</code> nodes at random positions.
+     */
+    private static GraphModel createGraphModel(int nodeCount) {
+        GraphModel graphModel = GraphModel.Factory.newInstance();
+        Graph graph = graphModel.getUndirectedGraph();
+        Random random = new Random(42);
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = graphModel.factory().newNode(String.valueOf(i));
+            node.setX(random.nextFloat() * 1000 - 500);
+            node.setY(random.nextFloat() * 1000 - 500);
+            graph.addNode(node);
+            nodes.add(node);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            graph.addEdge(graphModel.factory().newEdge(nodes.get(i), nodes.get((i + 1) % nodeCount), false));
+        }
+        return graphModel;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+
+/**
+ * A single view moved along the timeline. Moving it to the next interval only
+ * removes the elements leaving the window and adds the entering ones, instead
+ * of filling a new view, and reports these changes to an
+ * {@link IncrementalDynamicStatistics}.
+ *
+ * @see WindowElements
+ */
+final class SlidingWindow {
+
+    private final GraphModel graphModel;
+    private final GraphView view;
+    private final Subgraph window;
+    private final WindowElements intervalElements;
+    private final IncrementalDynamicStatistics listener;
+    //Elements currently in the window
+    private List<Node> nodes = new ArrayList<>();
+    private List<Edge> edges = new ArrayList<>();
+
+    SlidingWindow(GraphModel graphModel, GraphView sourceView, IncrementalDynamicStatistics listener) {
+        this.graphModel = graphModel;
+        this.view = graphModel.createView();
+        this.window = graphModel.getGraph(view);
+        this.intervalElements = new WindowElements(graphModel, sourceView);
+        this.listener = listener;
+        if (listener != null) {
+            listener.startIncremental(view);
+        }
+    }
+
+    GraphView getView() {
+        return view;
+    }
+
+    /**
+     * Moves the window to <code>interval</code>. The caller should hold the
+     * graph write lock.
+     *
+     * @param interval the new interval
+     */
+    void moveTo(Interval interval) {
+        intervalElements.query(interval);
+        List<Node> intervalNodes = intervalElements.getNodes();
+        List<Edge> intervalEdges = intervalElements.getEdges();
+
+        //Leaving elements, edges first
+        for (Edge edge : edges) {
+            if (!intervalElements.contains(edge)) {
+                if (listener != null) {
+                    listener.edgeRemoved(edge);
+                }
+                window.removeEdge(edge);
+            }
+        }
+        for (Node node : nodes) {
+            if (!intervalElements.contains(node)) {
+                if (listener != null) {
+                    listener.nodeRemoved(node);
+                }
+                window.removeNode(node);
+            }
+        }
+
+        //Entering elements, nodes first
+        for (Node node : intervalNodes) {
+            if (!window.contains(node)) {
+                window.addNode(node);
+                if (listener != null) {
+                    listener.nodeAdded(node);
+                }
+            }
+        }
+        for (Edge edge : intervalEdges) {
+            if (!window.contains(edge)) {
+                window.addEdge(edge);
+                if (listener != null) {
+                    listener.edgeAdded(edge);
+                }
+            }
+        }
+
+        nodes = intervalNodes;
+        edges = intervalEdges;
+    }
+
+    void destroy() {
+        graphModel.destroyView(view);
+    }
+}
@@ -42,20 +42,30 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.statistics;
 
-import org.gephi.graph.api.Edge;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Interval;
-import org.gephi.graph.api.Node;
-import org.gephi.graph.api.Subgraph;
-import org.gephi.graph.api.TimeIndex;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.api.Workspace;
 import org.gephi.project.api.WorkspaceListener;
 import org.gephi.statistics.api.*;
 import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.statistics.spi.StatisticsBuilder;
 import org.gephi.utils.longtask.api.LongTaskExecutor;
@@ -65,15 +75,21 @@ import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
 import org.openide.util.Lookup;
 import org.openide.util.lookup.ServiceProvider;
+import org.openide.util.lookup.ServiceProviders;
 
 /**
  *
  * @author Mathieu Bastian
  * @author Patrick J. McSweeney
  */
-@ServiceProvider(service = StatisticsController.class)
-public class StatisticsControllerImpl implements StatisticsController {
-
+@ServiceProviders({
+    @ServiceProvider(service = StatisticsController.class)
+    ,
+    @ServiceProvider(service = BatchStatisticsController.class)})
+public class StatisticsControllerImpl implements BatchStatisticsController {
+
+    //Windows computed ahead of the one being committed, per thread
+    private static final int PENDING_WINDOWS_PER_THREAD = 4;
     private final StatisticsBuilder[] statisticsBuilders;
     private StatisticsModelImpl model;
 
@@ -164,10 +180,185 @@ public class StatisticsControllerImpl implements StatisticsController {
         }
     }
 
+    @Override
+    public void execute(final Statistics[] statistics, LongTaskListener listener) {
+        LongTaskExecutor executor = new LongTaskExecutor(true, "Statistics", 10);
+        if (listener != null) {
+            executor.setLongTaskListener(listener);
+        }
+
+        final BatchLongTask batchLongTask = new BatchLongTask(statistics);
+        executor.execute(batchLongTask, new Runnable() {
+
+            @Override
+            public void run() {
+                executeBatch(statistics, batchLongTask);
+            }
+        }, "Statistics", null);
+    }
+
+    @Override
+    public void execute(Statistics[] statistics) {
+        executeBatch(statistics, null);
+    }
+
+    private void executeBatch(Statistics[] statistics, BatchLongTask batchLongTask) {
+        List<SnapshotStatistics> snapshotStatistics = new ArrayList<>();
+        List<Statistics> otherStatistics = new ArrayList<>();
+        for (Statistics s : statistics) {
+            if (s instanceof SnapshotStatistics && !(s instanceof DynamicStatistics)) {
+                snapshotStatistics.add((SnapshotStatistics) s);
+            } else {
+                otherStatistics.add(s);
+            }
+        }
+
+        if (batchLongTask != null) {
+            batchLongTask.start(statistics.length);
+        }
+
+        if (!snapshotStatistics.isEmpty()) {
+            GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
+            GraphModel graphModel = graphController.getGraphModel();
+            if (!executeSnapshotStatistics(snapshotStatistics, graphModel, batchLongTask)) {
+                return;
+            }
+            for (SnapshotStatistics s : snapshotStatistics) {
+                model.addReport(s);
+            }
+        }
+
+        for (Statistics s : otherStatistics) {
+            if (batchLongTask != null && batchLongTask.isCancelled()) {
+                return;
+            }
+            execute(s);
+            if (batchLongTask != null) {
+                batchLongTask.progress();
+            }
+        }
+    }
+
+    /**
+     * Executes <code>statistics</code> on the visible graph of
+     * <code>graphModel</code> under a single read lock. Every statistics is
+     * prepared on this thread, which holds the lock, and then computed on its
+     * own thread from the prepared snapshots only. The results are saved
+     * under the write lock, as saving creates columns.
+     *
+     * @return <code>false</code> if cancelled, in which case nothing is saved
+     */
+    static boolean executeSnapshotStatistics(List<SnapshotStatistics> statistics, GraphModel graphModel,
+            BatchLongTask batchLongTask) {
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            GraphSnapshotCache snapshots = new GraphSnapshotCache(graphModel);
+            for (SnapshotStatistics s : statistics) {
+                s.prepare(snapshots);
+            }
+            computeAll(statistics, batchLongTask);
+            if (batchLongTask != null && batchLongTask.isCancelled()) {
+                return false;
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        graph.writeLock();
+        try {
+            for (SnapshotStatistics s : statistics) {
+                s.save(graphModel);
+            }
+        } finally {
+            graph.writeUnlock();
+        }
+        return true;
+    }
+
+    /**
+     * Computes every statistics on its own thread, as they only read the
+     * snapshots they prepared.
+     */
+    private static void computeAll(List<SnapshotStatistics> statistics, final BatchLongTask batchLongTask) {
+        if (statistics.size() == 1) {
+            statistics.get(0).compute();
+            if (batchLongTask != null) {
+                batchLongTask.progress();
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final SnapshotStatistics s : statistics) {
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    s.compute();
+                    if (batchLongTask != null) {
+                        batchLongTask.progress();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        int threadCount = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> futures;
+            try {
+                futures = executor.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            for (Future<Void> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for <code>future</code> and rethrows what the task threw.
+     */
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     private void executeDynamic(DynamicStatistics statistics, DynamicLongTask dynamicLongTask) {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
         GraphModel graphModel = graphController.getGraphModel();
+        if (executeDynamic(statistics, graphModel, dynamicLongTask)) {
+            model.addReport(statistics);
+        }
+    }
 
+    /**
+     * Executes <code>statistics</code> on every window of its bounds in the
+     * visible view of <code>graphModel</code>, in parallel when it's a
+     * {@link ParallelDynamicStatistics} with more than one thread.
+     *
+     * @return <code>false</code> if cancelled
+     */
+    static boolean executeDynamic(DynamicStatistics statistics, GraphModel graphModel,
+            DynamicLongTask dynamicLongTask) {
         double window = statistics.getWindow();
         double tick = statistics.getTick();
 
@@ -191,58 +382,121 @@ public class StatisticsControllerImpl implements StatisticsController {
         //Init
         statistics.execute(graphModel);
 
-        //Loop
-        for (double low = bounds.getLow(); low <= bounds.getHigh() - window; low += tick) {
-            double high = low + window;
+        if (statistics instanceof ParallelDynamicStatistics
+                && ((ParallelDynamicStatistics<?>) statistics).getThreadCount() > 1) {
+            if (!executeParallelDynamic((ParallelDynamicStatistics<?>) statistics, dynamicLongTask,
+                    graphModel, currentView, bounds)) {
+                return false;
+            }
+            statistics.end();
+            return true;
+        }
 
-            Graph graph = graphModel.getGraphVisible();
+        //Loop, moving a single window view from one interval to the next
+        IncrementalDynamicStatistics incrementalStatistics = statistics instanceof IncrementalDynamicStatistics
+                ? (IncrementalDynamicStatistics) statistics : null;
+        Graph graph = graphModel.getGraphVisible();
+        SlidingWindow slidingWindow;
+        graph.writeLock();
+        try {
+            slidingWindow = new SlidingWindow(graphModel, currentView, incrementalStatistics);
+        } finally {
+            graph.writeUnlock();
+        }
 
-            graph.writeLock();
-            try {
-                GraphView view = graphModel.createView();
-                Subgraph g = graphModel.getGraph(view);
+        try {
+            for (double low = bounds.getLow(); low <= bounds.getHigh() - window; low += tick) {
+                double high = low + window;
 
-                TimeIndex<Node> nodeIndex = graphModel.getNodeTimeIndex(currentView);
-                if (Double.isInfinite(nodeIndex.getMinTimestamp()) && Double.isInfinite(nodeIndex.getMaxTimestamp())) {
-                    for (Node node : graph.getNodes()) {
-                        g.addNode(node);
-                    }
-                } else {
-                    for (Node node : nodeIndex.get(new Interval(low, high))) {
-                        g.addNode(node);
-                    }
+                graph.writeLock();
+                try {
+                    slidingWindow.moveTo(new Interval(low, high));
+
+                    statistics.loop(slidingWindow.getView(), new Interval(low, high));
+                } finally {
+                    graph.writeUnlock();
+                    graph.readUnlockAll();
                 }
 
-                TimeIndex<Edge> edgeIndex = graphModel.getEdgeTimeIndex(currentView);
-                if (Double.isInfinite(edgeIndex.getMinTimestamp()) && Double.isInfinite(edgeIndex.getMaxTimestamp())) {
-                    for (Edge edge : graph.getEdges()) {
-                        if (g.contains(edge.getSource()) && g.contains(edge.getTarget())) {
-                            g.addEdge(edge);
-                        }
-                    }
-                } else {
-                    for (Edge edge : edgeIndex.get(new Interval(low, high))) {
-                        if (g.contains(edge.getSource()) && g.contains(edge.getTarget())) {
-                            g.addEdge(edge);
+                //Cancelled?
+                if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                    return false;
+                } else if (dynamicLongTask != null) {
+                    dynamicLongTask.progress();
+                }
+            }
+        } finally {
+            slidingWindow.destroy();
+        }
+        statistics.end();
+        return true;
+    }
+
+    /**
+     * Computes the windows from read-only snapshots on a pool of threads,
+     * keeping a few windows ahead of the one being committed, and commits
+     * them in interval order.
+     *
+     * @return <code>false</code> if cancelled
+     */
+    private static <T> boolean executeParallelDynamic(final ParallelDynamicStatistics<T> statistics,
+            DynamicLongTask dynamicLongTask, GraphModel graphModel, GraphView currentView, Interval bounds) {
+        double window = statistics.getWindow();
+        double tick = statistics.getTick();
+        int threadCount = statistics.getThreadCount();
+        int maxPending = threadCount * PENDING_WINDOWS_PER_THREAD;
+
+        Graph graph = graphModel.getGraphVisible();
+        WindowElements elements = new WindowElements(graphModel, currentView);
+        Deque<Interval> pendingIntervals = new ArrayDeque<>();
+        Deque<Future<T>> pendingValues = new ArrayDeque<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            double low = bounds.getLow();
+            while (low <= bounds.getHigh() - window || !pendingIntervals.isEmpty()) {
+                //Snapshots of the next windows
+                if (low <= bounds.getHigh() - window && pendingIntervals.size() < maxPending) {
+                    graph.readLock();
+                    try {
+                        for (; low <= bounds.getHigh() - window && pendingIntervals.size() < maxPending; low += tick) {
+                            final Interval interval = new Interval(low, low + window);
+                            elements.query(interval);
+                            final GraphSnapshot snapshot = GraphSnapshot.build(elements.getNodes(),
+                                    elements.getEdges(), statistics.isDirected());
+                            pendingIntervals.add(interval);
+                            pendingValues.add(executor.submit(new Callable<T>() {
+
+                                @Override
+                                public T call() {
+                                    return statistics.compute(snapshot, interval);
+                                }
+                            }));
                         }
+                    } finally {
+                        graph.readUnlock();
                     }
                 }
-                
-                statistics.loop(g.getView(), new Interval(low, high));
-            } finally {
-                graph.writeUnlock();
-                graph.readUnlockAll();
-            }
 
-            //Cancelled?
-            if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
-                return;
-            } else if (dynamicLongTask != null) {
-                dynamicLongTask.progress();
+                //Commit the oldest window
+                T values = getResult(pendingValues.poll());
+                graph.writeLock();
+                try {
+                    statistics.commit(values, pendingIntervals.poll());
+                } finally {
+                    graph.writeUnlock();
+                }
+
+                //Cancelled?
+                if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                    return false;
+                } else if (dynamicLongTask != null) {
+                    dynamicLongTask.progress();
+                }
             }
+        } finally {
+            executor.shutdownNow();
         }
-        statistics.end();
-        model.addReport(statistics);
+        return true;
     }
 
     @Override
@@ -270,7 +524,7 @@ public class StatisticsControllerImpl implements StatisticsController {
         return statModel;
     }
 
-    private static class DynamicLongTask implements LongTask {
+    static class DynamicLongTask implements LongTask {
 
         private ProgressTicket progressTicket;
         private boolean cancel = false;
@@ -310,4 +564,43 @@ public class StatisticsControllerImpl implements StatisticsController {
             return cancel;
         }
     }
+
+    static class BatchLongTask implements LongTask {
+
+        private ProgressTicket progressTicket;
+        private volatile boolean cancel = false;
+        private final Statistics[] statistics;
+
+        public BatchLongTask(Statistics[] statistics) {
+            this.statistics = statistics;
+        }
+
+        @Override
+        public boolean cancel() {
+            cancel = true;
+            for (Statistics s : statistics) {
+                if (s instanceof LongTask) {
+                    ((LongTask) s).cancel();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void setProgressTicket(ProgressTicket progressTicket) {
+            this.progressTicket = progressTicket;
+        }
+
+        public void start(int count) {
+            Progress.start(progressTicket, count);
+        }
+
+        public synchronized void progress() {
+            Progress.progress(progressTicket);
+        }
+
+        public boolean isCancelled() {
+            return cancel;
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.TimeIndex;
+
+/**
+ * Finds the elements of a view within an interval: the nodes of the interval
+ * and the edges of the interval whose both ends are in it. Elements without
+ * time belong to every interval when the whole time index has no bounds.
+ */
+final class WindowElements {
+
+    private final GraphModel graphModel;
+    private final GraphView sourceView;
+    //Elements of the last interval
+    private List<Node> nodes = new ArrayList<>();
+    private List<Edge> edges = new ArrayList<>();
+    //Generation in which an element was last found in the interval, by store id
+    private int generation;
+    private int[] nodeGenerations = new int[0];
+    private int[] edgeGenerations = new int[0];
+
+    WindowElements(GraphModel graphModel, GraphView sourceView) {
+        this.graphModel = graphModel;
+        this.sourceView = sourceView;
+    }
+
+    /**
+     * Finds the elements within <code>interval</code>. The caller should hold
+     * the graph read lock.
+     *
+     * @param interval the interval
+     */
+    void query(Interval interval) {
+        generation++;
+        Graph graph = graphModel.getGraph(sourceView);
+
+        nodes = new ArrayList<>();
+        TimeIndex<Node> nodeIndex = graphModel.getNodeTimeIndex(sourceView);
+        Iterable<Node> nodeCandidates = isUnbounded(nodeIndex) ? graph.getNodes() : nodeIndex.get(interval);
+        for (Node node : nodeCandidates) {
+            markNode(node);
+            nodes.add(node);
+        }
+
+        edges = new ArrayList<>();
+        TimeIndex<Edge> edgeIndex = graphModel.getEdgeTimeIndex(sourceView);
+        Iterable<Edge> edgeCandidates = isUnbounded(edgeIndex) ? graph.getEdges() : edgeIndex.get(interval);
+        for (Edge edge : edgeCandidates) {
+            if (contains(edge.getSource()) && contains(edge.getTarget())) {
+                markEdge(edge);
+                edges.add(edge);
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes of the last interval. The list isn't reused by the
+     * next query.
+     *
+     * @return the nodes
+     */
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the edges of the last interval. The list isn't reused by the
+     * next query.
+     *
+     * @return the edges
+     */
+    List<Edge> getEdges() {
+        return edges;
+    }
+
+    boolean contains(Node node) {
+        int id = node.getStoreId();
+        return id < nodeGenerations.length && nodeGenerations[id] == generation;
+    }
+
+    boolean contains(Edge edge) {
+        int id = edge.getStoreId();
+        return id < edgeGenerations.length && edgeGenerations[id] == generation;
+    }
+
+    private static boolean isUnbounded(TimeIndex<?> index) {
+        return Double.isInfinite(index.getMinTimestamp()) && Double.isInfinite(index.getMaxTimestamp());
+    }
+
+    private void markNode(Node node) {
+        int id = node.getStoreId();
+        if (id >= nodeGenerations.length) {
+            nodeGenerations = Arrays.copyOf(nodeGenerations, Math.max(id + 1, nodeGenerations.length * 2));
+        }
+        nodeGenerations[id] = generation;
+    }
+
+    private void markEdge(Edge edge) {
+        int id = edge.getStoreId();
+        if (id >= edgeGenerations.length) {
+            edgeGenerations = Arrays.copyOf(edgeGenerations, Math.max(id + 1, edgeGenerations.length * 2));
+        }
+        edgeGenerations[id] = generation;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * Immutable compact copy of a graph's adjacency, stored in compressed sparse
+ * row (CSR) form over contiguous node indices.
+ * <p>
+ * The neighbors of the node at index <code>i</code> are
+ * <code>targets[offsets[i]]</code> to <code>targets[offsets[i + 1] - 1]</code>,
+ * in the order the graph iterates its edges. Parallel edges are kept as
+ * repeated entries so that algorithms walking the snapshot behave exactly as
+ * if they were walking the graph. Weighted snapshots also keep the weight of
+ * every entry in <code>weights</code>, parallel to <code>targets</code>.
+ * <p>
+ * The arrays returned by the getters are the snapshot's own, for speed, and
+ * must not be modified. Snapshots don't reference the graph structure, so they
+ * can be read from any thread once built.
+ *
+ * @see #build(Graph, Map, boolean, boolean)
+ * @see GraphSnapshotCache
+ */
+public final class GraphSnapshot {
+
+    private final Node[] nodes;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+
+    private GraphSnapshot(Node[] nodes, int[] offsets, int[] targets, double[] weights) {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds a snapshot of <code>graph</code>. When <code>directed</code> is
+     * true only out-edges are recorded, otherwise every incident edge is.
+     * <p>
+     * The caller should hold the graph read lock.
+     *
+     * @param graph the graph to copy
+     * @param indicies index of every node of the graph, from 0 to
+     * <code>graph.getNodeCount() - 1</code>
+     * @param directed whether to follow out-edges only
+     * @return the snapshot
+     */
+    public static GraphSnapshot build(Graph graph, Map<Node, Integer> indicies, boolean directed) {
+        return build(graph, indicies, directed, false);
+    }
+
+    /**
+     * Builds a snapshot of <code>graph</code>, optionally recording edge
+     * weights.
+     * <p>
+     * The caller should hold the graph read lock.
+     *
+     * @param graph the graph to copy
+     * @param indicies index of every node of the graph, from 0 to
+     * <code>graph.getNodeCount() - 1</code>
+     * @param directed whether to follow out-edges only
+     * @param weighted whether to record edge weights
+     * @return the snapshot
+     */
+    public static GraphSnapshot build(Graph graph, Map<Node, Integer> indicies, boolean directed, boolean weighted) {
+        int n = graph.getNodeCount();
+        Node[] nodes = new Node[n];
+        for (Node node : graph.getNodes()) {
+            nodes[indicies.get(node)] = node;
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[Math.max(16, graph.getEdgeCount() * (directed ? 1 : 2))];
+        double[] weights = weighted ? new double[targets.length] : null;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            Node node = nodes[i];
+            EdgeIterable edges = directed ? ((DirectedGraph) graph).getOutEdges(node) : graph.getEdges(node);
+            for (Edge edge : edges) {
+                if (size == targets.length) {
+                    targets = Arrays.copyOf(targets, size + (size >> 1));
+                    if (weighted) {
+                        weights = Arrays.copyOf(weights, targets.length);
+                    }
+                }
+                if (weighted) {
+                    weights[size] = edge.getWeight(graph.getView());
+                }
+                targets[size++] = indicies.get(graph.getOpposite(node, edge));
+            }
+            offsets[i + 1] = size;
+        }
+        if (size != targets.length) {
+            targets = Arrays.copyOf(targets, size);
+            weights = weighted ? Arrays.copyOf(weights, size) : null;
+        }
+        return new GraphSnapshot(nodes, offsets, targets, weights);
+    }
+
+    /**
+     * Builds an unweighted snapshot of the subgraph made of
+     * <code>nodes</code> and <code>edges</code>, without going through a graph
+     * view. When <code>directed</code> is false every edge is recorded in the
+     * rows of both its ends, once for a self-loop, and mutual edges stay two
+     * entries.
+     * <p>
+     * The caller should hold the graph read lock.
+     *
+     * @param nodes the nodes, in snapshot order
+     * @param edges edges whose both ends are in <code>nodes</code>
+     * @param directed whether to record edges in the row of their source only
+     * @return the snapshot
+     */
+    public static GraphSnapshot build(List<Node> nodes, List<Edge> edges, boolean directed) {
+        int n = nodes.size();
+        Node[] snapshotNodes = nodes.toArray(new Node[n]);
+        HashMap<Node, Integer> indicies = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            indicies.put(snapshotNodes[i], i);
+        }
+
+        int m = edges.size();
+        int[] sources = new int[m];
+        int[] edgeTargets = new int[m];
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            Edge edge = edges.get(e);
+            int source = indicies.get(edge.getSource());
+            int target = indicies.get(edge.getTarget());
+            sources[e] = source;
+            edgeTargets[e] = target;
+            offsets[source + 1]++;
+            if (!directed && source != target) {
+                offsets[target + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] targets = new int[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int e = 0; e < m; e++) {
+            int source = sources[e];
+            int target = edgeTargets[e];
+            targets[next[source]++] = target;
+            if (!directed && source != target) {
+                targets[next[target]++] = source;
+            }
+        }
+        return new GraphSnapshot(snapshotNodes, offsets, targets, null);
+    }
+
+    /**
+     * Returns the snapshot with every adjacency entry reversed. For a directed
+     * snapshot, neighbors become in-neighbors.
+     *
+     * @return the transposed snapshot
+     */
+    public GraphSnapshot transpose() {
+        int n = nodes.length;
+        int[] counts = getIncomingCounts();
+        int[] transposedOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            transposedOffsets[i + 1] = transposedOffsets[i] + counts[i];
+        }
+        int[] transposedTargets = new int[getEntryCount()];
+        double[] transposedWeights = weights != null ? new double[getEntryCount()] : null;
+        int[] position = Arrays.copyOf(transposedOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                int p = position[targets[e]]++;
+                transposedTargets[p] = i;
+                if (transposedWeights != null) {
+                    transposedWeights[p] = weights[e];
+                }
+            }
+        }
+        return new GraphSnapshot(nodes, transposedOffsets, transposedTargets, transposedWeights);
+    }
+
+    /**
+     * Returns the snapshot with every entry also added reversed. Each node
+     * lists its own entries followed by the entries pointing to it, so a
+     * directed snapshot becomes its undirected counterpart and mutual
+     * neighbors appear twice.
+     *
+     * @return the symmetrized snapshot
+     */
+    public GraphSnapshot symmetrize() {
+        int n = nodes.length;
+        GraphSnapshot transposed = transpose();
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[getEntryCount() * 2];
+        double[] newWeights = weights != null ? new double[newTargets.length] : null;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            size = copyRow(this, i, newTargets, newWeights, size);
+            size = copyRow(transposed, i, newTargets, newWeights, size);
+            newOffsets[i + 1] = size;
+        }
+        return new GraphSnapshot(nodes, newOffsets, newTargets, newWeights);
+    }
+
+    private static int copyRow(GraphSnapshot snapshot, int i, int[] targets, double[] weights, int size) {
+        int start = snapshot.offsets[i];
+        int length = snapshot.offsets[i + 1] - start;
+        System.arraycopy(snapshot.targets, start, targets, size, length);
+        if (weights != null) {
+            System.arraycopy(snapshot.weights, start, weights, size, length);
+        }
+        return size + length;
+    }
+
+    /**
+     * Returns the snapshot without the entries of self-loops.
+     *
+     * @return the snapshot without self-loops, or this snapshot if it has
+     * none
+     */
+    public GraphSnapshot removeSelfLoops() {
+        int n = nodes.length;
+        int loops = 0;
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                if (targets[e] == i) {
+                    loops++;
+                }
+            }
+        }
+        if (loops == 0) {
+            return this;
+        }
+
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[getEntryCount() - loops];
+        double[] newWeights = weights != null ? new double[newTargets.length] : null;
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                if (targets[e] != i) {
+                    if (newWeights != null) {
+                        newWeights[size] = weights[e];
+                    }
+                    newTargets[size++] = targets[e];
+                }
+            }
+            newOffsets[i + 1] = size;
+        }
+        return new GraphSnapshot(nodes, newOffsets, newTargets, newWeights);
+    }
+
+    /**
+     * Returns the snapshot with the repeated entries of parallel edges merged
+     * into the first one, summing their weights. Each node then lists each
+     * neighbor once.
+     *
+     * @return the snapshot without repeated entries
+     */
+    public GraphSnapshot mergeParallelEntries() {
+        int n = nodes.length;
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[getEntryCount()];
+        double[] newWeights = weights != null ? new double[newTargets.length] : null;
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int start = size;
+            for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                int target = targets[e];
+                int p = position[target];
+                if (p < start) {
+                    p = size++;
+                    position[target] = p;
+                    newTargets[p] = target;
+                }
+                if (newWeights != null) {
+                    newWeights[p] += weights[e];
+                }
+            }
+            newOffsets[i + 1] = size;
+        }
+        if (size == newTargets.length) {
+            return this;
+        }
+        return new GraphSnapshot(nodes, newOffsets, Arrays.copyOf(newTargets, size),
+                newWeights != null ? Arrays.copyOf(newWeights, size) : null);
+    }
+
+    /**
+     * Returns the sum of the entry weights of every node, or its number of
+     * entries if the snapshot isn't weighted.
+     *
+     * @return the weighted degree of every node
+     */
+    public double[] getRowSums() {
+        int n = nodes.length;
+        double[] sums = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (weights != null) {
+                double sum = 0;
+                for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                    sum += weights[e];
+                }
+                sums[i] = sum;
+            } else {
+                sums[i] = offsets[i + 1] - offsets[i];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Returns the bounds of <code>count</code> row ranges with about the same
+     * number of entries, also counting one per row. Range <code>r</code> goes
+     * from row <code>bounds[r]</code> included to <code>bounds[r + 1]</code>
+     * excluded.
+     *
+     * @param count the number of ranges
+     * @return the <code>count + 1</code> range bounds
+     */
+    public int[] splitRows(int count) {
+        int n = nodes.length;
+        long total = (long) offsets[n] + n;
+        int[] bounds = new int[count + 1];
+        int row = 0;
+        for (int r = 1; r < count; r++) {
+            long target = total * r / count;
+            while (row < n && (long) offsets[row] + row < target) {
+                row++;
+            }
+            bounds[r] = row;
+        }
+        bounds[count] = n;
+        return bounds;
+    }
+
+    /**
+     * Returns the snapshot without its weights, sharing its adjacency arrays.
+     *
+     * @return the unweighted snapshot, or this snapshot if it isn't weighted
+     */
+    GraphSnapshot withoutWeights() {
+        if (weights == null) {
+            return this;
+        }
+        return new GraphSnapshot(nodes, offsets, targets, null);
+    }
+
+    /**
+     * Returns the nodes of the snapshot, each at its index.
+     *
+     * @return the nodes
+     */
+    public Node[] getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the <code>getNodeCount() + 1</code> row offsets. The entries of
+     * node <code>i</code> go from <code>offsets[i]</code> included to
+     * <code>offsets[i + 1]</code> excluded.
+     *
+     * @return the row offsets
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the index of the neighbor of every entry.
+     *
+     * @return the entry targets
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * Returns the weight of every entry.
+     *
+     * @return the entry weights, or <code>null</code> if the snapshot isn't
+     * weighted
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getEntryCount() {
+        return offsets[nodes.length];
+    }
+
+    /**
+     * Returns, for every node, how many adjacency entries point to it. This is
+     * the in-degree for directed snapshots and the degree otherwise.
+     *
+     * @return the number of entries pointing to each node
+     */
+    public int[] getIncomingCounts() {
+        int[] counts = new int[nodes.length];
+        int size = getEntryCount();
+        for (int i = 0; i < size; i++) {
+            counts[targets[i]]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+
+/**
+ * Lazily built {@link GraphSnapshot snapshots} of one graph, shared by the
+ * statistics executed together so that the graph is indexed and copied once
+ * instead of once per statistics.
+ * <p>
+ * Directed snapshots follow the out-edges of the directed graph and undirected
+ * snapshots every edge of the undirected graph. All snapshots share the node
+ * indices of {@link #getIndices()}. A snapshot is built on its first request,
+ * which reads the graph, so requests should come from the thread holding the
+ * graph read lock, in {@link SnapshotStatistics#prepare(GraphSnapshotCache)}.
+ * The snapshots can then be read from any thread.
+ *
+ * @see SnapshotStatistics
+ */
+public final class GraphSnapshotCache {
+
+    private final Graph graph;
+    private final Graph directedGraph;
+    private final Graph undirectedGraph;
+    private Map<Node, Integer> indices;
+    private final GraphSnapshot[] snapshots = new GraphSnapshot[4];
+
+    /**
+     * Creates a cache for the visible graph of <code>graphModel</code>.
+     *
+     * @param graphModel the graph model
+     */
+    public GraphSnapshotCache(GraphModel graphModel) {
+        GraphView view = graphModel.getVisibleView();
+        this.graph = graphModel.getGraph(view);
+        this.directedGraph = graphModel.getDirectedGraph(view);
+        this.undirectedGraph = graphModel.getUndirectedGraph(view);
+    }
+
+    /**
+     * Creates a cache for <code>graph</code>, which is used for directed and
+     * undirected snapshots alike.
+     *
+     * @param graph the graph
+     */
+    public GraphSnapshotCache(Graph graph) {
+        this.graph = graph;
+        this.directedGraph = graph;
+        this.undirectedGraph = graph;
+    }
+
+    /**
+     * Returns the graph, as the graph model returns it.
+     *
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the graph directed snapshots are built from.
+     *
+     * @return the directed graph
+     */
+    public Graph getDirectedGraph() {
+        return directedGraph;
+    }
+
+    /**
+     * Returns the graph undirected snapshots are built from.
+     *
+     * @return the undirected graph
+     */
+    public Graph getUndirectedGraph() {
+        return undirectedGraph;
+    }
+
+    /**
+     * Returns the index of every node, from 0 to the node count minus one,
+     * in the order the graph iterates its nodes.
+     *
+     * @return the read-only node indices
+     */
+    public synchronized Map<Node, Integer> getIndices() {
+        if (indices == null) {
+            HashMap<Node, Integer> map = new HashMap<>();
+            int index = 0;
+            for (Node node : graph.getNodes()) {
+                map.put(node, index++);
+            }
+            indices = Collections.unmodifiableMap(map);
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the snapshot of the directed or undirected graph, building it if
+     * needed. An unweighted snapshot shares the adjacency of the weighted one
+     * when that was built first.
+     *
+     * @param directed whether to follow out-edges of the directed graph only
+     * @param weighted whether to record edge weights
+     * @return the snapshot
+     */
+    public synchronized GraphSnapshot getSnapshot(boolean directed, boolean weighted) {
+        int key = (directed ? 2 : 0) + (weighted ? 1 : 0);
+        GraphSnapshot snapshot = snapshots[key];
+        if (snapshot == null) {
+            if (!weighted && snapshots[key + 1] != null) {
+                snapshot = snapshots[key + 1].withoutWeights();
+            } else {
+                Graph source = directed ? directedGraph : undirectedGraph;
+                snapshot = GraphSnapshot.build(source, getIndices(), directed, weighted);
+            }
+            snapshots[key] = snapshot;
+        }
+        return snapshot;
+    }
+}
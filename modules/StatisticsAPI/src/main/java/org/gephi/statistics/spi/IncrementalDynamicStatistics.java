@@ -0,0 +1,112 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+
+/**
+ * Dynamic statistics that can update their state from the elements entering
+ * and leaving the window, instead of recomputing from the whole window at
+ * every <code>loop()</code>.
+ * <p>
+ * When the statistics is executed by the controller, the window is a single
+ * view moved from one interval to the next, and the process becomes:
+ * <ol><li>The <code>execute()</code> method is called, as for any dynamic
+ * statistics.</li>
+ * <li>The <code>startIncremental()</code> method is called with the view,
+ * still empty.</li>
+ * <li>For every interval, the <code>edgeRemoved()</code>,
+ * <code>nodeRemoved()</code>, <code>nodeAdded()</code> and
+ * <code>edgeAdded()</code> methods are called, in this order, for the
+ * elements leaving and entering the view. The <code>loop()</code> method is
+ * then called with the view.</li>
+ * <li>The <code>end()</code> method is finally called.</li></ol>
+ * <p>
+ * Elements are removed after the notification and added before it, so the
+ * view contains the element during the call. The edges of a node always
+ * leave before it and enter after it. Implementations must keep computing
+ * from the window alone in <code>loop()</code> when
+ * <code>startIncremental()</code> wasn't called since the last
+ * <code>execute()</code>.
+ *
+ * @see DynamicStatistics
+ */
+public interface IncrementalDynamicStatistics extends DynamicStatistics {
+
+    /**
+     * Called after <code>execute()</code> when the next windows will be
+     * described by their differences.
+     *
+     * @param window the view the elements will be added to, still empty
+     */
+    public void startIncremental(GraphView window);
+
+    /**
+     * Called after <code>node</code> was added to the window.
+     *
+     * @param node the entering node
+     */
+    public void nodeAdded(Node node);
+
+    /**
+     * Called before <code>node</code> is removed from the window, once its
+     * edges are removed.
+     *
+     * @param node the leaving node
+     */
+    public void nodeRemoved(Node node);
+
+    /**
+     * Called after <code>edge</code> was added to the window.
+     *
+     * @param edge the entering edge
+     */
+    public void edgeAdded(Edge edge);
+
+    /**
+     * Called before <code>edge</code> is removed from the window.
+     *
+     * @param edge the leaving edge
+     */
+    public void edgeRemoved(Edge edge);
+}
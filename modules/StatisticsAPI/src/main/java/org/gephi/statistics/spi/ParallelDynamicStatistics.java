@@ -0,0 +1,100 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import org.gephi.graph.api.Interval;
+
+/**
+ * Dynamic statistics whose windows can be computed independently of each
+ * other, and therefore at the same time.
+ * <p>
+ * When the statistics is executed by the controller with more than one
+ * thread, the <code>loop()</code> method isn't called. Instead:
+ * <ol><li>The <code>execute()</code> method is called, as for any dynamic
+ * statistics.</li>
+ * <li>For every interval, a read-only {@link GraphSnapshot} of the window is
+ * built and the <code>compute()</code> method is called with it, on a pool of
+ * <code>getThreadCount()</code> threads.</li>
+ * <li>The <code>commit()</code> method is called with each result, in interval
+ * order, from a single thread holding the graph write lock.</li>
+ * <li>The <code>end()</code> method is finally called.</li></ol>
+ * <p>
+ * The <code>loop()</code> method is still used when the thread count is one.
+ *
+ * @param <T> the values computed for a window
+ * @see DynamicStatistics
+ */
+public interface ParallelDynamicStatistics<T> extends DynamicStatistics {
+
+    /**
+     * Returns the number of windows computed at the same time.
+     *
+     * @return the thread count, one to use <code>loop()</code>
+     */
+    public int getThreadCount();
+
+    /**
+     * Returns whether window snapshots follow edges from their source only.
+     *
+     * @return <code>true</code> for directed snapshots
+     * @see GraphSnapshot#build(java.util.List, java.util.List, boolean)
+     */
+    public boolean isDirected();
+
+    /**
+     * Computes the values of one window. This method is called concurrently
+     * for several windows, so it should neither lock nor modify the graph, nor
+     * change the statistics state.
+     *
+     * @param window the unweighted snapshot of the window
+     * @param interval the window interval
+     * @return the values to commit
+     */
+    public T compute(GraphSnapshot window, Interval interval);
+
+    /**
+     * Writes the values of one window, for instance in dynamic columns.
+     *
+     * @param values the values returned by <code>compute()</code>
+     * @param interval the window interval
+     */
+    public void commit(T values, Interval interval);
+}
@@ -0,0 +1,91 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import org.gephi.graph.api.GraphModel;
+
+/**
+ * Statistics that can compute their results from a {@link GraphSnapshotCache}
+ * shared with other statistics, and write them to the graph afterwards.
+ * <p>
+ * Executing a statistics is then a three-steps process:
+ * <ol><li>The <code>prepare()</code> method is called with the snapshots, one
+ * statistics at a time and on the thread holding the lock. It requests the
+ * snapshots it needs and reads from the graph everything else the
+ * computation uses.</li>
+ * <li>The <code>compute()</code> method is then called, possibly on another
+ * thread and at the same time as other statistics. It must only use what
+ * <code>prepare()</code> kept, and must not access the graph at all: the
+ * graph lock isn't held by this thread and a writer waiting for it would
+ * block any new reader.</li>
+ * <li>The <code>save()</code> method is finally called, one statistics at a
+ * time and on the thread holding the graph write lock, to create the columns
+ * and write the results.</li></ol>
+ * <p>
+ * Implementations still execute alone with
+ * {@link #execute(GraphModel) execute()}.
+ *
+ * @see org.gephi.statistics.api.BatchStatisticsController#execute(Statistics[])
+ */
+public interface SnapshotStatistics extends Statistics {
+
+    /**
+     * Builds the snapshots and reads the graph data needed by
+     * {@link #compute()}. Called on the thread holding the graph read lock.
+     *
+     * @param snapshots the snapshots of the graph
+     */
+    public void prepare(GraphSnapshotCache snapshots);
+
+    /**
+     * Computes the statistics results from what the last
+     * {@link #prepare(GraphSnapshotCache)} kept, without accessing the graph.
+     */
+    public void compute();
+
+    /**
+     * Writes the results of the last {@link #compute()} to the graph. Called
+     * on the thread holding the graph write lock.
+     *
+     * @param graphModel the graph model
+     */
+    public void save(GraphModel graphModel);
+}
@@ -0,0 +1,222 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+public class StatisticsControllerImplNGTest {
+
+    @Test
+    public void testExecuteSnapshotStatistics() {
+        GraphModel graphModel = createGraphModel(5);
+        EdgeCountStatistics first = new EdgeCountStatistics(null);
+        EdgeCountStatistics second = new EdgeCountStatistics(null);
+
+        boolean completed = StatisticsControllerImpl.executeSnapshotStatistics(
+                Arrays.<SnapshotStatistics>asList(first, second), graphModel, null);
+
+        assertTrue(completed);
+        assertEquals(first.savedCount, 6);
+        assertEquals(second.savedCount, 6);
+        assertEquals(first.savedNodeCount, 5);
+        assertEquals(first.prepareThread, Thread.currentThread());
+        assertEquals(second.prepareThread, Thread.currentThread());
+    }
+
+    @Test(timeOut = 10000)
+    public void testExecuteSnapshotStatisticsWithWaitingWriter() throws Exception {
+        final GraphModel graphModel = createGraphModel(5);
+        final Graph graph = graphModel.getGraph();
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+        final Thread writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writerStarted.countDown();
+                graph.writeLock();
+                try {
+                    graph.addNode(graphModel.factory().newNode("writer"));
+                } finally {
+                    graph.writeUnlock();
+                }
+            }
+        });
+
+        //Queues the writer while the first statistics is being prepared
+        EdgeCountStatistics first = new EdgeCountStatistics(new Runnable() {
+
+            @Override
+            public void run() {
+                writer.start();
+                try {
+                    writerStarted.await();
+                    while (writer.getState() != Thread.State.WAITING) {
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        EdgeCountStatistics second = new EdgeCountStatistics(null);
+        EdgeCountStatistics third = new EdgeCountStatistics(null);
+
+        boolean completed = StatisticsControllerImpl.executeSnapshotStatistics(
+                Arrays.<SnapshotStatistics>asList(first, second, third), graphModel, null);
+        writer.join();
+
+        assertTrue(completed);
+        assertEquals(first.savedCount, 6);
+        assertEquals(second.savedCount, 6);
+        assertEquals(third.savedCount, 6);
+        assertEquals(third.savedNodeCount, 5);
+        assertEquals(graph.getNodeCount(), 6);
+    }
+
+    @Test
+    public void testSaveSnapshotStatisticsWithWriteLock() {
+        GraphModel graphModel = createGraphModel(5);
+        EdgeCountStatistics statistics = new EdgeCountStatistics(null) {
+
+            @Override
+            public void save(GraphModel model) {
+                //Acquiring the write lock fails if only the read lock is held
+                Graph graph = model.getGraphVisible();
+                graph.writeLock();
+                try {
+                    model.getNodeTable().addColumn("edgecount", Integer.class);
+                } finally {
+                    graph.writeUnlock();
+                }
+                super.save(model);
+            }
+        };
+
+        boolean completed = StatisticsControllerImpl.executeSnapshotStatistics(
+                Arrays.<SnapshotStatistics>asList(statistics), graphModel, null);
+
+        assertTrue(completed);
+        assertEquals(statistics.savedCount, 6);
+        assertNotNull(graphModel.getNodeTable().getColumn("edgecount"));
+    }
+
+    /**
+     * Returns a cycle of <code>nodeCount</code> nodes, with a chord from the
+     * first to the third node.
+     */
+    private static GraphModel createGraphModel(int nodeCount) {
+        GraphModel graphModel = GraphModel.Factory.newInstance();
+        Graph graph = graphModel.getUndirectedGraph();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = graphModel.factory().newNode(String.valueOf(i));
+            graph.addNode(node);
+            nodes.add(node);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            graph.addEdge(graphModel.factory().newEdge(nodes.get(i), nodes.get((i + 1) % nodeCount), false));
+        }
+        graph.addEdge(graphModel.factory().newEdge(nodes.get(0), nodes.get(2), false));
+        return graphModel;
+    }
+
+    /**
+     * Counts the nodes of the graph and the edges of the undirected snapshot.
+     * Only <code>prepare()</code> reads the graph.
+     */
+    private static class EdgeCountStatistics implements SnapshotStatistics {
+
+        private final Runnable onPrepare;
+        private Thread prepareThread;
+        private GraphSnapshot snapshot;
+        private int nodeCount;
+        private int count;
+        private int savedCount = -1;
+        private int savedNodeCount = -1;
+
+        EdgeCountStatistics(Runnable onPrepare) {
+            this.onPrepare = onPrepare;
+        }
+
+        @Override
+        public void prepare(GraphSnapshotCache snapshots) {
+            prepareThread = Thread.currentThread();
+            if (onPrepare != null) {
+                onPrepare.run();
+            }
+            nodeCount = snapshots.getGraph().getNodes().toArray().length;
+            snapshot = snapshots.getSnapshot(false, false);
+        }
+
+        @Override
+        public void compute() {
+            count = snapshot.getEntryCount() / 2;
+            snapshot = null;
+        }
+
+        @Override
+        public void save(GraphModel graphModel) {
+            savedCount = count;
+            savedNodeCount = nodeCount;
+        }
+
+        @Override
+        public void execute(GraphModel graphModel) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getReport() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+
+/**
+ * Shortest path engine behind {@link GraphDistance}. It runs one search per
+ * source node on a {@link GraphSnapshot} and accumulates Brandes dependencies,
+ * closeness, harmonic closeness and eccentricity. Searches are breadth-first,
+ * or Dijkstra's algorithm on an indexed binary heap when the snapshot has edge
+ * weights.
+ * <p>
+ * Sources are processed in waves of <code>threadCount</code> searches that run
+ * concurrently on a fork-join pool, each worker owning its own primitive
+ * search state. The results of a wave are then added to the accumulators node
+ * by node, in source order. Floating-point additions happen in exactly the
+ * same order as a sequential run, which makes the results identical whatever
+ * the thread count.
+ * <p>
+ * Besides the per-source results, the engine can accumulate for every node
+ * the distances at which searches reached it. Running searches from a sample
+ * of sources on the transposed graph then gives estimates of every node's
+ * closeness.
+ * <p>
+ * Ref: Ulrik Brandes, A Faster Algorithm for Betweenness Centrality, in
+ * Journal of Mathematical Sociology 25(2):163-177, (2001)
+ */
+final class BrandesEngine {
+
+    private final GraphSnapshot graph;
+    private final boolean weighted;
+    private final int threadCount;
+    private final int[] predecessorOffsets;
+    //Results
+    private final double[] betweenness;
+    private final double[] closeness;
+    private final double[] harmonicCloseness;
+    private final double[] eccentricity;
+    private double[] targetDistanceSum;
+    private int[] targetCount;
+    private double[] targetHarmonicSum;
+    private double[] targetMaxDistance;
+    private double totalDistance;
+    private long totalPaths;
+    private double diameter;
+    private double radius = Integer.MAX_VALUE;
+    //Flags
+    private boolean dependencies = true;
+    private boolean targetDistances;
+    private volatile boolean canceled;
+
+    BrandesEngine(GraphSnapshot graph, int threadCount) {
+        int n = graph.getNodeCount();
+        this.graph = graph;
+        this.weighted = graph.isWeighted();
+        this.threadCount = Math.max(1, Math.min(threadCount, n));
+        this.betweenness = new double[n];
+        this.closeness = new double[n];
+        this.harmonicCloseness = new double[n];
+        this.eccentricity = new double[n];
+
+        //A node can't have more predecessors than entries pointing to it
+        int[] incoming = graph.getIncomingCounts();
+        predecessorOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            predecessorOffsets[i + 1] = predecessorOffsets[i] + incoming[i];
+        }
+    }
+
+    /**
+     * Sets whether searches accumulate Brandes dependencies into the
+     * betweenness. Enabled by default.
+     *
+     * @param dependencies whether to compute betweenness
+     */
+    void setDependencies(boolean dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Sets whether every node accumulates the distances at which searches
+     * reached it. Disabled by default.
+     *
+     * @param targetDistances whether to accumulate distances per target
+     */
+    void setTargetDistances(boolean targetDistances) {
+        this.targetDistances = targetDistances;
+        if (targetDistances && targetCount == null) {
+            int n = graph.getNodeCount();
+            targetDistanceSum = new double[n];
+            targetCount = new int[n];
+            targetHarmonicSum = new double[n];
+            targetMaxDistance = new double[n];
+        }
+    }
+
+    /**
+     * Runs a search from every node in <code>sources</code>, in order.
+     *
+     * @param sources node indices to start searches from
+     * @param progress progress ticket, advanced by one for each source
+     * @param workDone progress units already reported before this call
+     * @return <code>false</code> if the computation was canceled
+     */
+    boolean compute(int[] sources, ProgressTicket progress, int workDone) {
+        Worker[] workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker();
+        }
+
+        ForkJoinPool pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        try {
+            for (int start = 0; start < sources.length; start += threadCount) {
+                int count = Math.min(threadCount, sources.length - start);
+                if (pool != null) {
+                    pool.invoke(new WaveTask(workers, sources, start, count));
+                } else {
+                    workers[0].search(sources[start]);
+                    accumulate(workers, 1, 0, graph.getNodeCount());
+                }
+                for (int i = 0; i < count; i++) {
+                    Worker worker = workers[i];
+                    totalDistance += worker.distanceSum;
+                    totalPaths += worker.reachable;
+                    diameter = Math.max(diameter, worker.maxDistance);
+                    radius = Math.min(radius, worker.maxDistance);
+                }
+                if (canceled) {
+                    return false;
+                }
+                Progress.progress(progress, workDone + start + count);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return true;
+    }
+
+    void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * Adds the results of the last search of the first <code>count</code>
+     * workers to the accumulators of nodes <code>from</code> to
+     * <code>to</code> (exclusive).
+     */
+    private void accumulate(Worker[] workers, int count, int from, int to) {
+        for (int i = 0; i < count; i++) {
+            Worker worker = workers[i];
+            if (dependencies) {
+                double[] delta = worker.delta;
+                for (int v = from; v < to; v++) {
+                    betweenness[v] += delta[v];
+                }
+            }
+            if (targetDistances) {
+                for (int v = from; v < to; v++) {
+                    double d = weighted ? worker.weightedDistance[v] : worker.distance[v];
+                    if (d > 0 && d != Double.POSITIVE_INFINITY) {
+                        targetDistanceSum[v] += d;
+                        targetCount[v]++;
+                        targetHarmonicSum[v] += 1.0 / d;
+                        targetMaxDistance[v] = Math.max(targetMaxDistance[v], d);
+                    }
+                }
+            }
+        }
+    }
+
+    double[] getBetweenness() {
+        return betweenness;
+    }
+
+    double[] getCloseness() {
+        return closeness;
+    }
+
+    double[] getHarmonicCloseness() {
+        return harmonicCloseness;
+    }
+
+    double[] getEccentricity() {
+        return eccentricity;
+    }
+
+    double getTotalDistance() {
+        return totalDistance;
+    }
+
+    long getTotalPaths() {
+        return totalPaths;
+    }
+
+    double getDiameter() {
+        return diameter;
+    }
+
+    double getRadius() {
+        return radius;
+    }
+
+    double[] getTargetDistanceSum() {
+        return targetDistanceSum;
+    }
+
+    int[] getTargetCount() {
+        return targetCount;
+    }
+
+    double[] getTargetHarmonicSum() {
+        return targetHarmonicSum;
+    }
+
+    double[] getTargetMaxDistance() {
+        return targetMaxDistance;
+    }
+
+    /**
+     * Search state owned by a single thread. Arrays are sized once and only
+     * the entries touched by the previous search are reset.
+     */
+    private final class Worker {
+
+        //Breadth-first search state, -1 if not reached
+        private final int[] distance;
+        //Dijkstra state, infinite if not reached
+        private final double[] weightedDistance;
+        private final int[] heap;
+        private final int[] heapPosition;
+        //Common state, order holds the nodes in the order they were settled
+        private final double[] sigma;
+        private final double[] delta;
+        private final int[] order;
+        private final int[] predecessorCount;
+        private final int[] predecessors;
+        private int visited;
+        //Results of the last search
+        private double distanceSum;
+        private long reachable;
+        private double maxDistance;
+
+        Worker() {
+            int n = graph.getNodeCount();
+            if (weighted) {
+                distance = null;
+                weightedDistance = new double[n];
+                heap = new int[n];
+                heapPosition = new int[n];
+                Arrays.fill(weightedDistance, Double.POSITIVE_INFINITY);
+                Arrays.fill(heapPosition, -1);
+            } else {
+                distance = new int[n];
+                weightedDistance = null;
+                heap = null;
+                heapPosition = null;
+                Arrays.fill(distance, -1);
+            }
+            sigma = new double[n];
+            delta = new double[n];
+            order = new int[n];
+            predecessorCount = new int[n];
+            predecessors = dependencies ? new int[predecessorOffsets[n]] : null;
+        }
+
+        void search(int s) {
+            reset();
+            if (weighted) {
+                dijkstra(s);
+                weightedMetrics(s);
+            } else {
+                breadthFirst(s);
+                metrics(s);
+            }
+            if (dependencies) {
+                dependencies(s);
+            }
+        }
+
+        private void breadthFirst(int s) {
+            final int[] offsets = graph.getOffsets();
+            final int[] targets = graph.getTargets();
+
+            //The queue doubles as the stack of visited nodes
+            int head = 0;
+            int tail = 0;
+            order[tail++] = s;
+            distance[s] = 0;
+            sigma[s] = 1;
+            while (head < tail) {
+                int v = order[head++];
+                int next = distance[v] + 1;
+                for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+                    int r = targets[e];
+                    if (distance[r] < 0) {
+                        order[tail++] = r;
+                        distance[r] = next;
+                    }
+                    if (dependencies && distance[r] == next) {
+                        sigma[r] = sigma[r] + sigma[v];
+                        predecessors[predecessorOffsets[r] + predecessorCount[r]++] = v;
+                    }
+                }
+            }
+            visited = tail;
+        }
+
+        private void dijkstra(int s) {
+            final int[] offsets = graph.getOffsets();
+            final int[] targets = graph.getTargets();
+            final double[] weights = graph.getWeights();
+
+            int settled = 0;
+            weightedDistance[s] = 0;
+            sigma[s] = 1;
+            heapSize = 0;
+            push(s);
+            while (heapSize > 0) {
+                int v = poll();
+                order[settled++] = v;
+                double dv = weightedDistance[v];
+                for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+                    int r = targets[e];
+                    int position = heapPosition[r];
+                    if (position == SETTLED) {
+                        continue;
+                    }
+                    double alt = dv + weights[e];
+                    double dr = weightedDistance[r];
+                    if (alt < dr) {
+                        weightedDistance[r] = alt;
+                        if (dependencies) {
+                            sigma[r] = sigma[v];
+                            predecessorCount[r] = 0;
+                            predecessors[predecessorOffsets[r] + predecessorCount[r]++] = v;
+                        }
+                        if (position < 0) {
+                            push(r);
+                        } else {
+                            siftUp(position);
+                        }
+                    } else if (dependencies && alt == dr) {
+                        sigma[r] = sigma[r] + sigma[v];
+                        predecessors[predecessorOffsets[r] + predecessorCount[r]++] = v;
+                    }
+                }
+            }
+            visited = settled;
+        }
+
+        private void metrics(int s) {
+            //Summed in node index order
+            int n = distance.length;
+            double count = 0;
+            double sum = 0;
+            double harmonicSum = 0;
+            int max = 0;
+            for (int i = 0; i < n; i++) {
+                int d = distance[i];
+                if (d > 0) {
+                    max = Math.max(max, d);
+                    sum += d;
+                    harmonicSum += 1.0 / d;
+                    count++;
+                }
+            }
+            setMetrics(s, count, sum, harmonicSum, max);
+        }
+
+        private void weightedMetrics(int s) {
+            //Summed in node index order
+            int n = weightedDistance.length;
+            double count = 0;
+            double sum = 0;
+            double harmonicSum = 0;
+            double max = 0;
+            for (int i = 0; i < n; i++) {
+                double d = weightedDistance[i];
+                if (d > 0 && d != Double.POSITIVE_INFINITY) {
+                    max = Math.max(max, d);
+                    sum += d;
+                    harmonicSum += 1.0 / d;
+                    count++;
+                }
+            }
+            setMetrics(s, count, sum, harmonicSum, max);
+        }
+
+        private void setMetrics(int s, double count, double sum, double harmonicSum, double max) {
+            eccentricity[s] = max;
+            if (count != 0) {
+                closeness[s] = (sum == 0) ? 0 : count / sum;
+                harmonicCloseness[s] = harmonicSum / count;
+            }
+            distanceSum = sum;
+            reachable = (long) count;
+            maxDistance = max;
+        }
+
+        private void dependencies(int s) {
+            //In reverse order of discovery
+            for (int k = visited - 1; k >= 0; k--) {
+                int w = order[k];
+                double coefficient = 1 + delta[w];
+                for (int p = predecessorOffsets[w], end = p + predecessorCount[w]; p < end; p++) {
+                    int u = predecessors[p];
+                    delta[u] += (sigma[u] / sigma[w]) * coefficient;
+                }
+            }
+            //The source doesn't get betweenness from its own paths
+            delta[s] = 0;
+        }
+
+        private void reset() {
+            for (int k = 0; k < visited; k++) {
+                int v = order[k];
+                if (weighted) {
+                    weightedDistance[v] = Double.POSITIVE_INFINITY;
+                    heapPosition[v] = -1;
+                } else {
+                    distance[v] = -1;
+                }
+                sigma[v] = 0;
+                delta[v] = 0;
+                predecessorCount[v] = 0;
+            }
+            visited = 0;
+        }
+
+        //Indexed binary heap on weightedDistance, heapPosition is -1 for nodes
+        //never pushed and SETTLED for nodes already polled
+        private static final int SETTLED = -2;
+        private int heapSize;
+
+        private void push(int v) {
+            heap[heapSize] = v;
+            heapPosition[v] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private int poll() {
+            int top = heap[0];
+            heapPosition[top] = SETTLED;
+            int last = heap[--heapSize];
+            if (heapSize > 0) {
+                heap[0] = last;
+                heapPosition[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int position) {
+            int v = heap[position];
+            double key = weightedDistance[v];
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                int p = heap[parent];
+                if (weightedDistance[p] <= key) {
+                    break;
+                }
+                heap[position] = p;
+                heapPosition[p] = position;
+                position = parent;
+            }
+            heap[position] = v;
+            heapPosition[v] = position;
+        }
+
+        private void siftDown(int position) {
+            int v = heap[position];
+            double key = weightedDistance[v];
+            int half = heapSize >>> 1;
+            while (position < half) {
+                int child = 2 * position + 1;
+                int c = heap[child];
+                int right = child + 1;
+                if (right < heapSize && weightedDistance[heap[right]] < weightedDistance[c]) {
+                    child = right;
+                    c = heap[child];
+                }
+                if (key <= weightedDistance[c]) {
+                    break;
+                }
+                heap[position] = c;
+                heapPosition[c] = position;
+                position = child;
+            }
+            heap[position] = v;
+            heapPosition[v] = position;
+        }
+    }
+
+    private final class WaveTask extends RecursiveAction {
+
+        private final Worker[] workers;
+        private final int[] sources;
+        private final int start;
+        private final int count;
+
+        WaveTask(Worker[] workers, int[] sources, int start, int count) {
+            this.workers = workers;
+            this.sources = sources;
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> searches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final Worker worker = workers[i];
+                final int source = sources[start + i];
+                searches.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        worker.search(source);
+                    }
+                });
+            }
+            invokeAll(searches);
+
+            int n = graph.getNodeCount();
+            int chunk = (n + threadCount - 1) / threadCount;
+            List<RecursiveAction> reductions = new ArrayList<>(threadCount);
+            for (int from = 0; from < n; from += chunk) {
+                final int lo = from;
+                final int hi = Math.min(n, from + chunk);
+                reductions.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        accumulate(workers, count, lo, hi);
+                    }
+                });
+            }
+            invokeAll(reductions);
+        }
+    }
+}
@@ -43,20 +43,17 @@ package org.gephi.statistics.plugin;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import org.gephi.graph.api.Column;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.graph.api.NodeIterable;
 import org.gephi.graph.api.Table;
-import org.gephi.statistics.spi.Statistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
@@ -68,30 +65,12 @@ import org.jfree.data.xy.XYSeriesCollection;
 import org.openide.util.Lookup;
 
 /**
- * Ref: Matthieu Latapy, Main-memory Triangle Computations for Very Large
- * (Sparse (Power-Law)) Graphs, in Theoretical Computer Science (TCS) 407 (1-3),
- * pages 458-473, 2008
- *
- * @author pjmcswee
- */
-class Renumbering implements Comparator<EdgeWrapper> {
-
-    @Override
-    public int compare(EdgeWrapper o1, EdgeWrapper o2) {
-        if (o1.wrapper.getID() < o2.wrapper.getID()) {
-            return -1;
-        } else if (o1.wrapper.getID() > o2.wrapper.getID()) {
-            return 1;
-        } else {
-            return 0;
-        }
-    }
-}
-
-/**
+ * No longer used to count triangles, kept for the deprecated
+ * {@link ClusteringCoefficient#computeClusteringCoefficient(Graph, ArrayWrapper[], int[], double[], boolean)}.
  *
  * @author pjmcswee
  */
+@Deprecated
 class EdgeWrapper {
 
     public int count;
@@ -104,9 +83,12 @@ class EdgeWrapper {
 }
 
 /**
+ * No longer used to count triangles, kept for the deprecated
+ * {@link ClusteringCoefficient#computeClusteringCoefficient(Graph, ArrayWrapper[], int[], double[], boolean)}.
  *
  * @author pjmcswee
  */
+@Deprecated
 class ArrayWrapper implements Comparable {
 
     private EdgeWrapper[] array;
@@ -198,10 +180,18 @@ class ArrayWrapper implements Comparable {
 }
 
 /**
+ * Ref: Matthieu Latapy, Main-memory Triangle Computations for Very Large
+ * (Sparse (Power-Law)) Graphs, in Theoretical Computer Science (TCS) 407 (1-3),
+ * pages 458-473, 2008
+ * <p>
+ * Triangles are counted with the forward algorithm of the paper, see
+ * {@link TriangleCounter}. In directed mode, the coefficient of a node is the
+ * number of directed links between its neighbors, in either direction,
+ * divided by <code>k(k - 1)</code>.
  *
  * @author Patrick J. McSweeney
  */
-public class ClusteringCoefficient implements Statistics, LongTask {
+public class ClusteringCoefficient implements SnapshotStatistics, LongTask {
 
     public static final String CLUSTERING_COEFF = "clustering";
     /**
@@ -220,12 +210,16 @@ public class ClusteringCoefficient implements Statistics, LongTask {
      * Keeps track of Progress made.
      */
     private ProgressTicket progress;
+    private int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private volatile TriangleCounter counter;
     private int[] triangles;
-    private ArrayWrapper[] network;
-    private int K;
+    private Node[] nodes;
+    private int[] degrees;
     private int N;
     private double[] nodeClustering;
     private int totalTriangles;
+    //Kept by prepare() for compute()
+    private GraphSnapshot preparedSnapshot;
 
     public ClusteringCoefficient() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -251,22 +245,44 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     }
 
     public void execute(Graph graph) {
+        graph.readLock();
+        try {
+            prepare(new GraphSnapshotCache(graph));
+            compute();
+        } finally {
+            graph.readUnlock();
+        }
+        save(graph.getModel());
+    }
+
+    @Override
+    public void prepare(GraphSnapshotCache snapshots) {
         isCanceled = false;
 
-        HashMap<String, Double> resultValues;
+        Graph graph = isDirected ? snapshots.getDirectedGraph() : snapshots.getUndirectedGraph();
+        initStartValues(graph);
+        preparedSnapshot = snapshots.getSnapshot(isDirected, false);
+    }
 
-        if (isDirected) {
-            avgClusteringCoeff = bruteForce(graph);
-        } else {
-            initStartValues(graph);
-            resultValues = computeTriangles(graph, network, triangles, nodeClustering, isDirected);
-            totalTriangles = resultValues.get("triangles").intValue();
-            avgClusteringCoeff = resultValues.get("clusteringCoefficient");
+    @Override
+    public void compute() {
+        try {
+            HashMap<String, Double> resultValues = computeTriangles(preparedSnapshot,
+                    triangles, nodeClustering, isDirected);
+            setResultValues(resultValues);
+        } finally {
+            preparedSnapshot = null;
+        }
+    }
 
+    @Override
+    public void save(GraphModel graphModel) {
+        if (isCanceled) {
+            return;
         }
 
         //Set results in columns
-        Table nodeTable = graph.getModel().getNodeTable();
+        Table nodeTable = graphModel.getNodeTable();
         Column clusteringCol = nodeTable.getColumn(CLUSTERING_COEFF);
         if (clusteringCol == null) {
             clusteringCol = nodeTable.addColumn(CLUSTERING_COEFF, "Clustering Coefficient", Double.class, 0.0);
@@ -281,10 +297,10 @@ public class ClusteringCoefficient implements Statistics, LongTask {
         }
 
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
-                network[v].node.setAttribute(clusteringCol, nodeClustering[v]);
+            if (degrees[v] > 1) {
+                nodes[v].setAttribute(clusteringCol, nodeClustering[v]);
                 if (!isDirected) {
-                    network[v].node.setAttribute(triCount, triangles[v]);
+                    nodes[v].setAttribute(triCount, triangles[v]);
                 }
             }
         }
@@ -292,223 +308,203 @@ public class ClusteringCoefficient implements Statistics, LongTask {
 
     public void triangles(Graph graph) {
         initStartValues(graph);
-        HashMap<String, Double> resultValues = computeTriangles(graph, network, triangles,
-                nodeClustering, isDirected);
-        totalTriangles = resultValues.get("triangles").intValue();
-        avgClusteringCoeff = resultValues.get("clusteringCoefficient");
+        HashMap<String, Double> resultValues = computeTriangles(graph, triangles, nodeClustering, isDirected);
+        setResultValues(resultValues);
     }
 
-    public HashMap<String, Double> computeClusteringCoefficient(Graph graph, ArrayWrapper[] currentNetwork,
-            int[] currentTriangles, double[] currentNodeClustering, boolean directed) {
-        HashMap<String, Double> resultValues = new HashMap<>();
-
-        if (directed) {
-            double avClusteringCoefficient = bruteForce(graph);
-            resultValues.put("clusteringCoefficient", avClusteringCoefficient);
-            return resultValues;
-        } else {
-            initStartValues(graph);
-            resultValues = computeTriangles(graph, currentNetwork, currentTriangles, currentNodeClustering, directed);
-            return resultValues;
+    /**
+     * Computes the clustering coefficients from a snapshot, directed or not
+     * as this statistics. Node values are indexed as the snapshot nodes. The
+     * graph isn't accessed.
+     *
+     * @param snapshot the unweighted snapshot
+     */
+    public void triangles(GraphSnapshot snapshot) {
+        initStartValues(snapshot.getNodeCount());
+        HashMap<String, Double> resultValues = computeTriangles(snapshot, triangles, nodeClustering, isDirected);
+        setResultValues(resultValues);
+    }
 
+    private void setResultValues(HashMap<String, Double> resultValues) {
+        if (isCanceled) {
+            return;
         }
+        totalTriangles = resultValues.containsKey("triangles") ? resultValues.get("triangles").intValue() : 0;
+        avgClusteringCoeff = resultValues.get("clusteringCoefficient");
     }
 
-    public void initStartValues(Graph graph) {
-        N = graph.getNodeCount();
-        K = (int) Math.sqrt(N);
-        nodeClustering = new double[N];
-        network = new ArrayWrapper[N];
-        triangles = new int[N];
+    /**
+     * Computes the clustering coefficient of every node of <code>graph</code>.
+     * Node values are indexed in the order <code>graph.getNodes()</code>
+     * iterates nodes.
+     *
+     * @param graph the graph
+     * @param currentTriangles filled with the triangle count of every node, or
+     * in directed mode with the number of links between its neighbors
+     * @param currentNodeClustering filled with the coefficient of every node
+     * @param directed whether to compute the directed coefficient
+     * @return the average coefficient, under the
+     * <code>clusteringCoefficient</code> key, and in undirected mode the total
+     * triangle count, under <code>triangles</code>
+     */
+    public HashMap<String, Double> computeClusteringCoefficient(Graph graph, int[] currentTriangles,
+            double[] currentNodeClustering, boolean directed) {
+        initStartValues(graph);
+        return computeTriangles(graph, currentTriangles, currentNodeClustering, directed);
     }
 
-    public int createIndiciesMapAndInitNetwork(Graph graph, HashMap<Node, Integer> indicies, ArrayWrapper[] networks, int currentProgress) {
-        int index = 0;
-        for (Node s : graph.getNodes()) {
-            indicies.put(s, index);
-            networks[index] = new ArrayWrapper();
-            index++;
-            Progress.progress(progress, ++currentProgress);
-        }
-        return currentProgress;
+    /**
+     * Computes the clustering coefficient of every node of <code>graph</code>.
+     *
+     * @param graph the graph
+     * @param currentNetwork ignored, it isn't filled anymore
+     * @param currentTriangles filled with the triangle count of every node
+     * @param currentNodeClustering filled with the coefficient of every node
+     * @param directed whether to compute the directed coefficient
+     * @return the average coefficient and the triangle count
+     * @deprecated use
+     * {@link #computeClusteringCoefficient(Graph, int[], double[], boolean)}
+     */
+    @Deprecated
+    public HashMap<String, Double> computeClusteringCoefficient(Graph graph, ArrayWrapper[] currentNetwork,
+            int[] currentTriangles, double[] currentNodeClustering, boolean directed) {
+        return computeClusteringCoefficient(graph, currentTriangles, currentNodeClustering, directed);
     }
 
-    private int closest_in_array(ArrayWrapper[] currentNetwork, int v) {
-        int right = currentNetwork[v].length() - 1;
-
-        /* optimization for extreme cases */
-        if (right < 0) {
-            return (-1);
-        }
-        if (currentNetwork[v].get(0) >= v) {
-            return (-1);
-        }
-        if (currentNetwork[v].get(right) < v) {
-            return (right);
-        }
-        if (currentNetwork[v].get(right) == v) {
-            return (right - 1);
-        }
-
-        int left = 0, mid;
-        while (right > left) {
-            mid = (left + right) / 2;
-            if (v < currentNetwork[v].get(mid)) {
-                right = mid - 1;
-            } else if (v > currentNetwork[v].get(mid)) {
-                left = mid + 1;
-            } else {
-                return (mid - 1);
-            }
-        }
-
-        if (v > currentNetwork[v].get(right)) {
-            return (right);
-        } else {
+    public void initStartValues(Graph graph) {
+        initStartValues(graph.getNodeCount());
+    }
 
-            return right - 1;
-        }
+    private void initStartValues(int nodeCount) {
+        N = nodeCount;
+        nodeClustering = new double[N];
+        triangles = new int[N];
+        nodes = new Node[N];
+        degrees = new int[N];
     }
 
     /**
+     * Sets the number of threads counting triangles. Results don't depend on
+     * the thread count.
      *
-     * @param v - The specific node to count the triangles on.
+     * @param threadCount the number of threads, at least one
      */
-    private void newVertex(ArrayWrapper[] currentNetwork, int[] currentTrianlgles, int v, int n) {
-        int[] A = new int[n];
-
-        for (int i = currentNetwork[v].length() - 1; (i >= 0) && (currentNetwork[v].get(i) > v); i--) {
-            int neighbor = currentNetwork[v].get(i);
-            A[neighbor] = currentNetwork[v].getCount(i);
-        }
-        for (int i = currentNetwork[v].length() - 1; i >= 0; i--) {
-            int neighbor = currentNetwork[v].get(i);
-            for (int j = closest_in_array(currentNetwork, neighbor); j >= 0; j--) {
-                int next = currentNetwork[neighbor].get(j);
-                if (A[next] > 0) {
-                    currentTrianlgles[next] += currentNetwork[v].getCount(i);
-                    currentTrianlgles[v] += currentNetwork[v].getCount(i);
-                    currentTrianlgles[neighbor] += A[next];
-                }
-            }
-        }
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
     }
 
-    private void tr_link_nohigh(ArrayWrapper[] currentNetwork, int[] currentTriangles, int u, int v, int count, int k) {
-        int iu = 0, iv = 0, w;
-        while ((iu < currentNetwork[u].length()) && (iv < currentNetwork[v].length())) {
-            if (currentNetwork[u].get(iu) < currentNetwork[v].get(iv)) {
-                iu++;
-            } else if (currentNetwork[u].get(iu) > currentNetwork[v].get(iv)) {
-                iv++;
-            } else { /* neighbor in common */
+    public int getThreadCount() {
+        return threadCount;
+    }
 
-                w = currentNetwork[u].get(iu);
-                if (w >= k) {
-                    currentTriangles[w] += count;
-                }
-                iu++;
-                iv++;
+    private HashMap<String, Double> computeTriangles(Graph graph, int[] currentTriangles,
+            double[] currentNodeClustering, boolean directed) {
+        graph.readLock();
+        try {
+            HashMap<Node, Integer> indicies = new HashMap<>();
+            int index = 0;
+            for (Node node : graph.getNodes()) {
+                indicies.put(node, index++);
             }
+            GraphSnapshot snapshot = GraphSnapshot.build(graph, indicies, directed);
+            return computeTriangles(snapshot, currentTriangles, currentNodeClustering, directed);
+        } finally {
+            graph.readUnlock();
         }
     }
 
-    private HashMap<Node, EdgeWrapper> createNeighbourTable(Graph graph, Node node, HashMap<Node, Integer> indicies,
-            ArrayWrapper[] networks, boolean directed) {
+    private HashMap<String, Double> computeTriangles(GraphSnapshot snapshot, int[] currentTriangles,
+            double[] currentNodeClustering, boolean directed) {
 
-        HashMap<Node, EdgeWrapper> neighborTable = new HashMap<>();
+        HashMap<String, Double> resultValues = new HashMap<>();
+        Progress.start(progress, 3);
 
-        if (!directed) {
-            for (Edge edge : graph.getEdges(node)) {
-                Node neighbor = graph.getOpposite(node, edge);
-                neighborTable.put(neighbor, new EdgeWrapper(1, networks[indicies.get(neighbor)]));
-            }
+        //Each node lists its neighbors once, or in directed mode once per direction
+        GraphSnapshot neighbors;
+        if (directed) {
+            neighbors = snapshot.mergeParallelEntries().symmetrize();
         } else {
-            for (Node neighbor : ((DirectedGraph) graph).getPredecessors(node)) {
-                neighborTable.put(neighbor, new EdgeWrapper(1, networks[indicies.get(neighbor)]));
-            }
-
-            for (Edge out : ((DirectedGraph) graph).getOutEdges(node)) {
-                Node neighbor = out.getTarget();
-                EdgeWrapper ew = neighborTable.get(neighbor);
-                if (ew == null) {
-                    neighborTable.put(neighbor, new EdgeWrapper(1, network[indicies.get(neighbor)]));
-                } else {
-                    ew.count++;
-                }
-            }
+            neighbors = snapshot.mergeParallelEntries();
         }
-        return neighborTable;
-    }
-
-    private EdgeWrapper[] getEdges(HashMap<Node, EdgeWrapper> neighborTable) {
-
-        int i = 0;
-        EdgeWrapper[] edges = new EdgeWrapper[neighborTable.size()];
-        for (EdgeWrapper e : neighborTable.values()) {
-            edges[i] = e;
-            i++;
+        GraphSnapshot distinctNeighbors = directed ? neighbors.mergeParallelEntries() : neighbors;
+        System.arraycopy(neighbors.getNodes(), 0, nodes, 0, N);
+        for (int v = 0; v < N; v++) {
+            degrees[v] = distinctNeighbors.getOffsets()[v + 1] - distinctNeighbors.getOffsets()[v];
         }
-        return edges;
-    }
+        Progress.progress(progress, 1);
 
-    private int processNetwork(ArrayWrapper[] currentNetwork, int currentProgress) {
-        Arrays.sort(currentNetwork);
-        for (int j = 0; j < N; j++) {
-            currentNetwork[j].setID(j);
-            Progress.progress(progress, ++currentProgress);
+        TriangleCounter triangleCounter = new TriangleCounter(neighbors, threadCount);
+        counter = triangleCounter;
+        int[] counts;
+        try {
+            counts = isCanceled ? null : triangleCounter.count();
+        } finally {
+            counter = null;
         }
-
-        for (int j = 0; j < N; j++) {
-            Arrays.sort(currentNetwork[j].getArray(), new Renumbering());
-            Progress.progress(progress, ++currentProgress);
+        if (counts == null) {
+            return resultValues;
+        }
+        System.arraycopy(counts, 0, currentTriangles, 0, N);
+        if (directed) {
+            countSelfLoopLinks(neighbors, currentTriangles);
         }
-        return currentProgress;
+        Progress.progress(progress, 2);
+
+        resultValues = computeResultValues(currentTriangles, currentNodeClustering, directed);
+        Progress.progress(progress, 3);
+
+        return resultValues;
     }
 
-    private int computeRemainingTrianles(Graph graph, ArrayWrapper[] currentNetwork, int[] currentTriangles, int currentProgress) {
-        int n = graph.getNodeCount();
-        int k = (int) Math.sqrt(n);
-        for (int v = n - 1; (v >= 0) && (v >= k); v--) {
-            for (int i = closest_in_array(currentNetwork, v); i >= 0; i--) {
-                int u = currentNetwork[v].get(i);
-                if (u >= k) {
-                    tr_link_nohigh(currentNetwork, currentTriangles, u, v, currentNetwork[v].getCount(i), k);
+    /**
+     * A node with a self-loop is one of its own neighbors, so the links
+     * between it and its other neighbors also count.
+     */
+    private void countSelfLoopLinks(GraphSnapshot neighbors, int[] currentTriangles) {
+        for (int v = 0; v < N; v++) {
+            int start = neighbors.getOffsets()[v];
+            int end = neighbors.getOffsets()[v + 1];
+            int selfLoops = 0;
+            for (int e = start; e < end; e++) {
+                if (neighbors.getTargets()[e] == v) {
+                    selfLoops++;
                 }
             }
-            Progress.progress(progress, ++currentProgress);
-
-            if (isCanceled) {
-                return currentProgress;
+            if (selfLoops > 0) {
+                currentTriangles[v] += end - start - selfLoops;
             }
         }
-        return currentProgress;
     }
 
-    private HashMap<String, Double> computeResultValues(Graph graph, ArrayWrapper[] currentNetwork,
-            int[] currentTriangles, double[] currentNodeClusterig, boolean directed, int currentProgress) {
-        int n = graph.getNodeCount();
+    private HashMap<String, Double> computeResultValues(int[] currentTriangles, double[] currentNodeClustering,
+            boolean directed) {
         HashMap<String, Double> totalValues = new HashMap<>();
+        if (directed) {
+            float totalCC = 0;
+            for (int v = 0; v < N; v++) {
+                if (degrees[v] > 1) {
+                    float cc = currentTriangles[v] / (float) ((long) degrees[v] * (degrees[v] - 1));
+                    currentNodeClustering[v] = cc;
+                    totalCC += cc;
+                }
+            }
+            totalValues.put("clusteringCoefficient", (double) (totalCC / N));
+            return totalValues;
+        }
+
         int numNodesDegreeGreaterThanOne = 0;
         int trianglesNumber = 0;
         double currentClusteringCoefficient = 0;
-        for (int v = 0; v < n; v++) {
-            if (currentNetwork[v].length() > 1) {
+        for (int v = 0; v < N; v++) {
+            if (degrees[v] > 1) {
                 numNodesDegreeGreaterThanOne++;
                 double cc = currentTriangles[v];
                 trianglesNumber += currentTriangles[v];
-                cc /= (currentNetwork[v].length() * (currentNetwork[v].length() - 1));
-                if (!directed) {
-                    cc *= 2.0f;
-                }
-                currentNodeClusterig[v] = cc;
+                cc /= (double) degrees[v] * (degrees[v] - 1);
+                cc *= 2.0f;
+                currentNodeClustering[v] = cc;
                 currentClusteringCoefficient += cc;
             }
-            Progress.progress(progress, ++currentProgress);
-
-            if (isCanceled) {
-                return totalValues;
-            }
         }
         trianglesNumber /= 3;
         currentClusteringCoefficient /= numNodesDegreeGreaterThanOne;
@@ -518,171 +514,6 @@ public class ClusteringCoefficient implements Statistics, LongTask {
         return totalValues;
     }
 
-    private HashMap<String, Double> computeTriangles(Graph graph, ArrayWrapper[] currentNetwork, int[] currentTriangles,
-            double[] nodeClustering, boolean directed) {
-
-        HashMap<String, Double> resultValues = new HashMap<>();
-        int ProgressCount = 0;
-        Progress.start(progress, 7 * graph.getNodeCount());
-
-        graph.readLock();
-        try {
-            int n = graph.getNodeCount();
-
-            /**
-             * Create network for processing
-             */
-            /**
-             *         */
-            HashMap<Node, Integer> indicies = new HashMap<>();
-
-            ProgressCount = createIndiciesMapAndInitNetwork(graph, indicies, currentNetwork, ProgressCount);
-
-            int index = 0;
-            NodeIterable nodesIterable = graph.getNodes();
-            for (Node node : nodesIterable) {
-                HashMap<Node, EdgeWrapper> neighborTable = createNeighbourTable(graph, node, indicies, currentNetwork, directed);
-
-                EdgeWrapper[] edges = getEdges(neighborTable);
-                currentNetwork[index].node = node;
-                currentNetwork[index].setArray(edges);
-                index++;
-                Progress.progress(progress, ++ProgressCount);
-
-                if (isCanceled) {
-                    nodesIterable.doBreak();
-                    return resultValues;
-                }
-            }
-
-            ProgressCount = processNetwork(currentNetwork, ProgressCount);
-
-            int k = (int) Math.sqrt(n);
-
-            for (int v = 0; v < k && v < n; v++) {
-                newVertex(currentNetwork, currentTriangles, v, n);
-                Progress.progress(progress, ++ProgressCount);
-            }
-
-            /* remaining links */
-            ProgressCount = computeRemainingTrianles(graph, currentNetwork, currentTriangles, ProgressCount);
-
-            resultValues = computeResultValues(graph, currentNetwork, currentTriangles, nodeClustering, directed, ProgressCount);
-        } finally {
-            graph.readUnlock();
-        }
-
-        return resultValues;
-    }
-
-    private double bruteForce(Graph graph) {
-        //The atrributes computed by the statistics
-        Column clusteringColumn = initializeAttributeColunms(graph.getModel());
-
-        float totalCC = 0;
-
-        graph.readLock();
-        
-        try {
-            Progress.start(progress, graph.getNodeCount());
-            int node_count = 0;
-            NodeIterable nodesIterable = graph.getNodes();
-            for (Node node : nodesIterable) {
-                float nodeClusteringCoefficient = computeNodeClusteringCoefficient(graph, node, isDirected);
-
-                if (nodeClusteringCoefficient > -1) {
-
-                    saveCalculatedValue(node, clusteringColumn, nodeClusteringCoefficient);
-
-                    totalCC += nodeClusteringCoefficient;
-                }
-
-                if (isCanceled) {
-                    nodesIterable.doBreak();
-                    break;
-                }
-
-                node_count++;
-                Progress.progress(progress, node_count);
-
-            }
-            double clusteringCoeff = totalCC / graph.getNodeCount();
-            
-            return clusteringCoeff;
-        } finally {
-            graph.readUnlockAll();
-        }
-    }
-
-    private float increaseCCifNesessary(Graph graph, Node neighbor1, Node neighbor2, boolean directed, float nodeCC) {
-        if (neighbor1 == neighbor2) {
-            return nodeCC;
-        }
-        if (directed) {
-            if (graph.isAdjacent(neighbor1, neighbor2)) {
-                nodeCC++;
-            }
-            if (graph.isAdjacent(neighbor2, neighbor1)) {
-                nodeCC++;
-            }
-        } else {
-            if (graph.isAdjacent(neighbor1, neighbor2)) {
-                nodeCC++;
-            }
-        }
-        return nodeCC;
-    }
-
-    private float computeNodeClusteringCoefficient(Graph graph, Node node, boolean directed) {
-        float nodeCC = 0;
-        int neighborhood = 0;
-        NodeIterable neighbors1 = graph.getNeighbors(node);
-        for (Node neighbor1 : neighbors1) {
-            neighborhood++;
-            NodeIterable neighbors2 = graph.getNeighbors(node);
-
-            for (Node neighbor2 : neighbors2) {
-                nodeCC = increaseCCifNesessary(graph, neighbor1, neighbor2, directed, nodeCC);
-            }
-        }
-        nodeCC /= 2.0;
-
-        if (neighborhood > 1) {
-            float cc = nodeCC / (.5f * neighborhood * (neighborhood - 1));
-            if (directed) {
-                cc = nodeCC / (neighborhood * (neighborhood - 1));
-            }
-
-            return cc;
-        } else {
-            return -1.f;
-        }
-    }
-
-    private Column initializeAttributeColunms(GraphModel graphModel) {
-
-        if (graphModel == null) {
-            return null;
-        }
-        Table nodeTable = graphModel.getNodeTable();
-        Column clusteringCol = nodeTable.getColumn("clustering");
-
-        if (clusteringCol == null) {
-            clusteringCol = nodeTable.addColumn("clustering", "Clustering Coefficient", Double.class, new Double(0));
-        }
-
-        return clusteringCol;
-    }
-
-    private void saveCalculatedValue(Node node, Column clusteringColumn,
-            double nodeClusteringCoefficient) {
-
-        if (clusteringColumn == null) {
-            return;
-        }
-        node.setAttribute(clusteringColumn, nodeClusteringCoefficient);
-    }
-
     @Override
     public String getReport() {
         //distribution of values
@@ -728,7 +559,7 @@ public class ClusteringCoefficient implements Statistics, LongTask {
                     + "The Average Clustering Coefficient is the mean value of individual coefficients.<br /><br />"
                     + imageFile
                     + "<br /><br />" + "<h2> Algorithm: </h2>"
-                    + "Simple and slow brute force.<br />"
+                    + "Matthieu Latapy, <i>Main-memory Triangle Computations for Very Large (Sparse (Power-Law)) Graphs</i>, in Theoretical Computer Science (TCS) 407 (1-3), pages 458-473, 2008<br />"
                     + "</BODY> </HTML>";
         } else {
 
@@ -758,6 +589,10 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     @Override
     public boolean cancel() {
         isCanceled = true;
+        TriangleCounter running = counter;
+        if (running != null) {
+            running.cancel();
+        }
         return true;
     }
 
@@ -769,7 +604,7 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     public double[] getCoefficientReuslts() {
         double[] res = new double[N];
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
+            if (degrees[v] > 1) {
                 res[v] = nodeClustering[v];
             }
         }
@@ -779,7 +614,7 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     public double[] getTriangesReuslts() {
         double[] res = new double[N];
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
+            if (degrees[v] > 1) {
                 res[v] = triangles[v];
             }
         }
@@ -43,20 +43,22 @@ package org.gephi.statistics.plugin;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.gephi.graph.api.Column;
 import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.graph.api.NodeIterable;
 import org.gephi.graph.api.Table;
 import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.statistics.spi.GraphSnapshot;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
@@ -76,13 +78,15 @@ public class ConnectedComponents implements Statistics, LongTask {
 
     public static final String WEAKLY = "componentnumber";
     public static final String STRONG = "strongcompnum";
+    //Ranges per thread, to balance uneven ranges
+    private static final int RANGES_PER_THREAD = 4;
     private boolean isDirected;
     private ProgressTicket progress;
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     private int componentCount;
     private int stronglyCount;
     private int[] componentsSize;
-    int count;
+    private int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
     public ConnectedComponents() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -116,78 +120,109 @@ public class ConnectedComponents implements Statistics, LongTask {
 
         HashMap<Node, Integer> indices = createIndicesMap(graph);
 
-        LinkedList<LinkedList<Node>> components = computeWeaklyConnectedComponents(graph, indices);
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, false);
+        int[] components = new int[snapshot.getNodeCount()];
+        int count = computeWeaklyConnectedComponents(snapshot, components);
+        if (isCanceled) {
+            componentsSize = new int[0];
+            componentCount = 0;
+            return;
+        }
 
-        saveComputedComponents(components, componentCol);
+        saveComputedComponents(snapshot.getNodes(), components, componentCol);
 
-        fillComponentSizeList(components);
+        componentsSize = countComponentSizes(components, count);
 
-        componentCount = components.size();
+        componentCount = count;
     }
 
-    public LinkedList<LinkedList<Node>> computeWeaklyConnectedComponents(Graph graph, HashMap<Node, Integer> indices) {
-        int N = graph.getNodeCount();
-
-        //Keep track of which nodes have been seen
-        int[] color = new int[N];
-
-        Progress.start(progress, N);
-
-        int seenCount = 0;
+    /**
+     * Finds the weakly connected components of <code>graph</code>. Components
+     * are numbered from <code>0</code>, in the order of their first node
+     * index.
+     *
+     * @param graph the graph
+     * @param indices index of every node of the graph, from 0 to
+     * <code>graph.getNodeCount() - 1</code>
+     * @param components filled with the component number of every node index
+     * @return the number of components, or <code>0</code> if canceled
+     */
+    public int computeWeaklyConnectedComponents(Graph graph, HashMap<Node, Integer> indices, int[] components) {
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, false);
+        int count = computeWeaklyConnectedComponents(snapshot, components);
+        return isCanceled ? 0 : count;
+    }
 
-        LinkedList<LinkedList<Node>> components = new LinkedList<>();
-        while (seenCount < N) {
-            //The search Q
-            LinkedList<Node> Q = new LinkedList<>();
-            //The component-list
-            LinkedList<Node> component = new LinkedList<>();
+    /**
+     * @deprecated use
+     * {@link #computeWeaklyConnectedComponents(Graph, HashMap, int[])}, which
+     * doesn't build a list per component
+     */
+    @Deprecated
+    public LinkedList<LinkedList<Node>> computeWeaklyConnectedComponents(Graph graph, HashMap<Node, Integer> indices) {
+        int[] components = new int[graph.getNodeCount()];
+        int count = computeWeaklyConnectedComponents(graph, indices, components);
+        return toComponentLists(graph, indices, components, count);
+    }
 
-            //Seed the search Q
-            NodeIterable iter = graph.getNodes();
-            for (Node next : iter) {
-                if (color[indices.get(next)] == 0) {
-                    Q.add(next);
-                    iter.doBreak();
-                    break;
-                }
+    /**
+     * Unites the ends of every edge of the snapshot, with node ranges handled
+     * concurrently.
+     */
+    private int computeWeaklyConnectedComponents(final GraphSnapshot snapshot, int[] components) {
+        int n = snapshot.getNodeCount();
+        Progress.start(progress, 2);
+
+        final UnionFind sets = new UnionFind(n);
+        int rangeCount = threadCount > 1 ? Math.max(1, Math.min(n, threadCount * RANGES_PER_THREAD)) : 1;
+        final int[] ranges = snapshot.splitRows(rangeCount);
+        if (ranges.length > 2) {
+            ForkJoinPool pool = new ForkJoinPool(threadCount);
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        RecursiveAction[] tasks = new RecursiveAction[ranges.length - 1];
+                        for (int r = 0; r < tasks.length; r++) {
+                            final int from = ranges[r];
+                            final int to = ranges[r + 1];
+                            tasks[r] = new RecursiveAction() {
+                                @Override
+                                protected void compute() {
+                                    unite(snapshot, sets, from, to);
+                                }
+                            };
+                        }
+                        invokeAll(tasks);
+                    }
+                });
+            } finally {
+                pool.shutdown();
             }
+        } else {
+            unite(snapshot, sets, 0, n);
+        }
+        if (isCanceled) {
+            return 0;
+        }
+        Progress.progress(progress, 1);
 
-            //While there are more nodes to search
-            while (!Q.isEmpty()) {
-                
-                if (isCanceled) {
-                    return new LinkedList<>();
-                }
-                //Get the next Node and add it to the component list
-                Node u = Q.removeFirst();
-                component.add(u);
-                
-                color[indices.get(u)] = 2;
-
-                //Iterate over all of u's neighbors
-                EdgeIterable edgeIter = graph.getEdges(u);
-
-                //For each neighbor
-                for (Edge edge : edgeIter) {
-                    Node reachable = graph.getOpposite(u, edge);
-                    int id = indices.get(reachable);
-                    //If this neighbor is unvisited
-                    if (color[id] == 0) {
-                        //Mark it as used 
-                        color[id] = 1;
-                        //Add it to the search Q
-                        Q.addLast(reachable);
-                    }
+        int count = sets.label(components);
+        Progress.progress(progress, 2);
+        return count;
+    }
+
+    private void unite(GraphSnapshot snapshot, UnionFind sets, int from, int to) {
+        final int[] offsets = snapshot.getOffsets();
+        final int[] targets = snapshot.getTargets();
+        for (int i = from; i < to && !isCanceled; i++) {
+            for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                //Each edge is listed by both ends, uniting once is enough
+                if (targets[e] < i) {
+                    sets.union(i, targets[e]);
                 }
-                
-                seenCount++;
-                Progress.progress(progress, seenCount);
             }
-            
-            components.add(component);
         }
-        
-        return components;
     }
 
     private Column initializeWeaklyConnectedColumn(GraphModel graphModel) {
@@ -209,20 +244,43 @@ public class ConnectedComponents implements Statistics, LongTask {
         return indices;
     }
 
-    private void saveComputedComponents(LinkedList<LinkedList<Node>> components, Column componentCol) {
-        int i = 0;
-        for (LinkedList<Node> component : components) {
-            for (Node s : component) {
-                s.setAttribute(componentCol, i);
+    private void saveComputedComponents(Node[] nodes, int[] components, Column componentCol) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setAttribute(componentCol, components[i]);
+        }
+    }
+
+    private int[] countComponentSizes(int[] components, int count) {
+        int[] sizes = new int[count];
+        for (int component : components) {
+            sizes[component]++;
+        }
+        return sizes;
+    }
+
+    private LinkedList<LinkedList<Node>> toComponentLists(Graph graph, HashMap<Node, Integer> indices,
+            int[] components, int count) {
+        List<LinkedList<Node>> lists = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lists.add(new LinkedList<Node>());
+        }
+        if (count > 0) {
+            Node[] nodes = new Node[components.length];
+            for (Node node : graph.getNodes()) {
+                nodes[indices.get(node)] = node;
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                lists.get(components[i]).add(nodes[i]);
             }
-            i++;
         }
+        return new LinkedList<>(lists);
     }
 
     void fillComponentSizeList(LinkedList<LinkedList<Node>> components) {
         componentsSize = new int[components.size()];
-        for (int i = 0; i < components.size(); i++) {
-            componentsSize[i] = components.get(i).size();
+        int i = 0;
+        for (LinkedList<Node> component : components) {
+            componentsSize[i++] = component.size();
         }
     }
 
@@ -236,85 +294,121 @@ public class ConnectedComponents implements Statistics, LongTask {
     }
 
     public void stronglyConnected(DirectedGraph graph, GraphModel graphModel) {
-        count = 1;
         stronglyCount = 0;
 
         Column componentCol = initializeStronglyConnectedColumn(graphModel);
 
         HashMap<Node, Integer> indices = createIndicesMap(graph);
 
-        LinkedList<LinkedList<Node>> components = top_tarjans(graph, indices);
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, true);
+        int[] components = new int[snapshot.getNodeCount()];
+        int count = computeStronglyConnectedComponents(snapshot, components);
+        if (isCanceled) {
+            return;
+        }
 
-        saveComputedComponents(components, componentCol);
+        saveComputedComponents(snapshot.getNodes(), components, componentCol);
 
-        stronglyCount = components.size();
+        stronglyCount = count;
     }
 
-    public LinkedList<LinkedList<Node>> top_tarjans(DirectedGraph graph, HashMap<Node, Integer> indices) {
-
-        LinkedList<LinkedList<Node>> allComponents = new LinkedList<>();
-
-        count = 1;
-        stronglyCount = 0;
-
-        int N = graph.getNodeCount();
-        int[] index = new int[N];
-        int[] low_index = new int[N];
-
-        while (true) {
-            //The search Q
-            LinkedList<Node> S = new LinkedList<>();
-            //The component-list
-            //LinkedList<Node> component = new LinkedList<Node>();
-            //Seed the seach Q
-            Node first = null;
-            NodeIterable iter = graph.getNodes();
-            for (Node u : iter) {
-                if (index[indices.get(u)] == 0) {
-                    first = u;
-                    iter.doBreak();
-                    break;
-                }
-            }
-            if (first == null) {
-                return allComponents;
-            }
+    /**
+     * Finds the strongly connected components of <code>graph</code> with
+     * Tarjan's algorithm. Components are numbered from <code>0</code>, in the
+     * order the search completes them.
+     *
+     * @param graph the graph
+     * @param indices index of every node of the graph, from 0 to
+     * <code>graph.getNodeCount() - 1</code>
+     * @param components filled with the component number of every node index
+     * @return the number of components, or <code>0</code> if canceled
+     */
+    public int computeStronglyConnectedComponents(DirectedGraph graph, HashMap<Node, Integer> indices, int[] components) {
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, true);
+        int count = computeStronglyConnectedComponents(snapshot, components);
+        return isCanceled ? 0 : count;
+    }
 
-            LinkedList<LinkedList<Node>> components = new LinkedList<>();
-            components = tarjans(components, S, graph, first, index, low_index, indices);
-            for (LinkedList<Node> component : components) {
-                allComponents.add(component);
-            }
-        }
+    /**
+     * @deprecated use
+     * {@link #computeStronglyConnectedComponents(DirectedGraph, HashMap, int[])},
+     * which doesn't build a list per component
+     */
+    @Deprecated
+    public LinkedList<LinkedList<Node>> top_tarjans(DirectedGraph graph, HashMap<Node, Integer> indices) {
+        int[] components = new int[graph.getNodeCount()];
+        int count = computeStronglyConnectedComponents(graph, indices, components);
+        return toComponentLists(graph, indices, components, count);
     }
 
-    private LinkedList<LinkedList<Node>> tarjans(LinkedList<LinkedList<Node>> components, LinkedList<Node> S, DirectedGraph graph, Node f, int[] index, int[] low_index, HashMap<Node, Integer> indices) {
-        int id = indices.get(f);
-        index[id] = count;
-        low_index[id] = count;
-        count++;
-        S.addFirst(f);
-        EdgeIterable edgeIter = graph.getOutEdges(f);
-        for (Edge e : edgeIter) {
-            Node u = graph.getOpposite(f, e);
-            int x = indices.get(u);
-            if (index[x] == 0) {
-                tarjans(components, S, graph, u, index, low_index, indices);
-                low_index[id] = Math.min(low_index[x], low_index[id]);
-            } else if (S.contains(u)) {
-                low_index[id] = Math.min(low_index[id], index[x]);
+    /**
+     * Runs Tarjan's depth-first search with explicit stacks, so deep graphs
+     * can't overflow the thread stack. Roots are taken by increasing index and
+     * out-edges in snapshot order.
+     */
+    private int computeStronglyConnectedComponents(GraphSnapshot snapshot, int[] components) {
+        final int n = snapshot.getNodeCount();
+        final int[] offsets = snapshot.getOffsets();
+        final int[] targets = snapshot.getTargets();
+        Progress.start(progress, n);
+
+        //Discovery order, from 1, or 0 when not visited yet
+        int[] index = new int[n];
+        int[] lowIndex = new int[n];
+        //Next out-edge to follow, for nodes on the search path
+        int[] nextEdge = new int[n];
+        int[] path = new int[n];
+        int[] stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        int pathSize = 0;
+        int stackSize = 0;
+        int count = 0;
+        int visited = 0;
+
+        for (int root = 0; root < n && !isCanceled; root++) {
+            if (index[root] != 0) {
+                continue;
             }
-        }
-        LinkedList<Node> currentComponent = new LinkedList<>();
-        if (low_index[id] == index[id]) {
-            Node v = null;
-            while (v != f) {
-                v = S.removeFirst();
-                currentComponent.add(v);
+            index[root] = lowIndex[root] = ++visited;
+            nextEdge[root] = offsets[root];
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            path[pathSize++] = root;
+
+            while (pathSize > 0) {
+                int v = path[pathSize - 1];
+                if (nextEdge[v] < offsets[v + 1]) {
+                    int w = targets[nextEdge[v]++];
+                    if (index[w] == 0) {
+                        index[w] = lowIndex[w] = ++visited;
+                        nextEdge[w] = offsets[w];
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        path[pathSize++] = w;
+                    } else if (onStack[w]) {
+                        lowIndex[v] = Math.min(lowIndex[v], index[w]);
+                    }
+                    continue;
+                }
+
+                pathSize--;
+                if (lowIndex[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        components[w] = count;
+                    } while (w != v);
+                    count++;
+                }
+                if (pathSize > 0) {
+                    int parent = path[pathSize - 1];
+                    lowIndex[parent] = Math.min(lowIndex[parent], lowIndex[v]);
+                }
             }
-            components.add(currentComponent);
+            Progress.progress(progress, visited);
         }
-        return components;
+        return count;
     }
 
     public int getConnectedComponentsCount() {
@@ -329,6 +423,20 @@ public class ConnectedComponents implements Statistics, LongTask {
         return isDirected;
     }
 
+    /**
+     * Sets the number of threads finding weakly connected components. Results
+     * don't depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     /**
      * @return an unordered array of component sizes
      */
@@ -352,6 +460,12 @@ public class ConnectedComponents implements Statistics, LongTask {
         return maxIndex;
     }
 
+    /**
+     * @deprecated component numbers are directly in the arrays filled by
+     * {@link #computeWeaklyConnectedComponents(Graph, HashMap, int[])} and
+     * {@link #computeStronglyConnectedComponents(DirectedGraph, HashMap, int[])}
+     */
+    @Deprecated
     public int getComponentNumber(LinkedList<LinkedList<Node>> components, Node node) {
         int i = 0;
         for (LinkedList<Node> component : components) {
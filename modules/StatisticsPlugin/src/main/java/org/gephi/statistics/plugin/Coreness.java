@@ -0,0 +1,345 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.ColumnObserver;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Origin;
+import org.gephi.graph.api.Table;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.Statistics;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * Computes the coreness of every node, the largest <code>k</code> such that
+ * the node belongs to the <code>k</code>-core, the maximal subgraph where
+ * every node has degree at least <code>k</code>.
+ * <p>
+ * Degrees are those of {@link Graph#getDegree(Node)}: parallel edges count
+ * separately and self-loops count twice, like in the k-core filter. Nodes
+ * added after the statistics was executed have no coreness value. Use
+ * {@link #isUpToDate(Graph)} to know whether the column still holds the
+ * coreness of the whole graph.
+ * <p>
+ * Ref: Vladimir Batagelj and Matjaz Zaversnik, An O(m) Algorithm for Cores
+ * Decomposition of Networks, 2003
+ */
+public class Coreness implements Statistics, LongTask {
+
+    public static final String CORENESS = "coreness";
+    //Where the coreness column was last computed on the whole graph
+    private static final Map<GraphModel, CorenessState> STATES = new WeakHashMap<>();
+    private boolean isCanceled;
+    private ProgressTicket progress;
+    private int degeneracy;
+    private Map<Integer, Integer> corenessDist;
+
+    @Override
+    public void execute(GraphModel graphModel) {
+        Graph graph = graphModel.getGraphVisible();
+        execute(graph);
+    }
+
+    public void execute(Graph graph) {
+        isCanceled = false;
+        corenessDist = new HashMap<>();
+        degeneracy = 0;
+
+        Column corenessCol = initializeAttributeColunms(graph.getModel());
+
+        graph.readLock();
+        try {
+            HashMap<Node, Integer> indices = createIndicesMap(graph);
+            GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, false);
+            int[] coreness = computeCoreness(snapshot);
+            if (isCanceled) {
+                return;
+            }
+
+            for (int i = 0; i < coreness.length; i++) {
+                snapshot.getNodes()[i].setAttribute(corenessCol, coreness[i]);
+                Integer count = corenessDist.get(coreness[i]);
+                corenessDist.put(coreness[i], count == null ? 1 : count + 1);
+                degeneracy = Math.max(degeneracy, coreness[i]);
+            }
+            updateState(graph, corenessCol);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the coreness column of the model of
+     * <code>graph</code> holds the coreness of its whole graph, meaning the
+     * statistics was last executed on the main view and neither the graph
+     * nor the column changed since.
+     * <p>
+     * The coreness of a node in the whole graph is an upper bound of its
+     * coreness in any subgraph, such as the one passed to a filter.
+     *
+     * @param graph any graph of the model
+     * @return <code>true</code> if the coreness column is up to date
+     */
+    public static boolean isUpToDate(Graph graph) {
+        synchronized (STATES) {
+            CorenessState state = STATES.get(graph.getModel());
+            return state != null && state.isUpToDate();
+        }
+    }
+
+    private static void updateState(Graph graph, Column corenessCol) {
+        GraphModel graphModel = graph.getModel();
+        synchronized (STATES) {
+            CorenessState previous = STATES.remove(graphModel);
+            if (previous != null) {
+                previous.destroy();
+            }
+            if (graph.getView().isMainView()) {
+                STATES.put(graphModel, new CorenessState(graph, corenessCol));
+            }
+        }
+    }
+
+    /**
+     * Observes the main graph and the coreness column after an execution. The
+     * graph store and the column keep their observers until they are
+     * destroyed, so weak references don't keep a closed model alive.
+     */
+    private static class CorenessState {
+
+        private final WeakReference<GraphObserver> graphObserver;
+        private final WeakReference<ColumnObserver> columnObserver;
+        private boolean changed;
+
+        CorenessState(Graph graph, Column column) {
+            GraphObserver go = graph.getModel().createGraphObserver(graph, false);
+            if (go.isNew()) {
+                go.hasGraphChanged();
+            }
+            graphObserver = new WeakReference<>(go);
+            columnObserver = new WeakReference<>(column.createColumnObserver(false));
+        }
+
+        boolean isUpToDate() {
+            if (!changed) {
+                GraphObserver go = graphObserver.get();
+                ColumnObserver co = columnObserver.get();
+                changed = go == null || co == null || go.isDestroyed() || co.isDestroyed()
+                        || go.hasGraphChanged() || co.hasColumnChanged();
+            }
+            return !changed;
+        }
+
+        void destroy() {
+            GraphObserver go = graphObserver.get();
+            if (go != null && !go.isDestroyed()) {
+                go.destroy();
+            }
+            ColumnObserver co = columnObserver.get();
+            if (co != null && !co.isDestroyed()) {
+                co.destroy();
+            }
+        }
+    }
+
+    /**
+     * Computes the coreness of every node of <code>graph</code>.
+     * <p>
+     * The caller should hold the graph read lock.
+     *
+     * @param graph the graph
+     * @param indices index of every node of the graph, from 0 to
+     * <code>graph.getNodeCount() - 1</code>
+     * @return the coreness of every node index
+     */
+    public int[] computeCoreness(Graph graph, HashMap<Node, Integer> indices) {
+        return computeCoreness(GraphSnapshot.build(graph, indices, false));
+    }
+
+    public HashMap<Node, Integer> createIndicesMap(Graph graph) {
+        HashMap<Node, Integer> indices = new HashMap<>();
+        int index = 0;
+        for (Node s : graph.getNodes()) {
+            indices.put(s, index);
+            index++;
+        }
+        return indices;
+    }
+
+    /**
+     * Peels nodes by increasing degree. Nodes are kept sorted by their
+     * current degree in <code>order</code>, with <code>binStarts</code>
+     * holding where each degree starts, so that lowering the degree of a
+     * neighbor is a swap with the first node of its bin.
+     */
+    private int[] computeCoreness(GraphSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOffsets();
+        int[] targets = snapshot.getTargets();
+        Progress.start(progress, n);
+
+        int[] degree = new int[n];
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+                //Self-loops count twice
+                degree[v] += targets[e] == v ? 2 : 1;
+            }
+            maxDegree = Math.max(maxDegree, degree[v]);
+        }
+
+        int[] binStarts = new int[maxDegree + 2];
+        for (int v = 0; v < n; v++) {
+            binStarts[degree[v] + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            binStarts[d + 1] += binStarts[d];
+        }
+        int[] order = new int[n];
+        int[] position = new int[n];
+        int[] fill = Arrays.copyOf(binStarts, maxDegree + 1);
+        for (int v = 0; v < n; v++) {
+            position[v] = fill[degree[v]]++;
+            order[position[v]] = v;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int v = order[i];
+            for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+                int u = targets[e];
+                if (degree[u] > degree[v]) {
+                    int du = degree[u];
+                    int pu = position[u];
+                    int pw = binStarts[du];
+                    int w = order[pw];
+                    if (u != w) {
+                        position[u] = pw;
+                        order[pu] = w;
+                        position[w] = pu;
+                        order[pw] = u;
+                    }
+                    binStarts[du]++;
+                    degree[u]--;
+                }
+            }
+            if (isCanceled) {
+                break;
+            }
+            Progress.progress(progress, i + 1);
+        }
+        return degree;
+    }
+
+    private Column initializeAttributeColunms(GraphModel graphModel) {
+        Table nodeTable = graphModel.getNodeTable();
+        Column corenessCol = nodeTable.getColumn(CORENESS);
+        if (corenessCol == null) {
+            corenessCol = nodeTable.addColumn(CORENESS, "Coreness", Integer.class, Origin.DATA, null, true);
+        }
+        return corenessCol;
+    }
+
+    /**
+     * @return the largest coreness, the degeneracy of the graph
+     */
+    public int getDegeneracy() {
+        return degeneracy;
+    }
+
+    @Override
+    public String getReport() {
+        //Distribution series
+        XYSeries dSeries = ChartUtils.createXYSeries(corenessDist, "Coreness Distribution");
+
+        XYSeriesCollection dataset = new XYSeriesCollection();
+        dataset.addSeries(dSeries);
+
+        JFreeChart chart = ChartFactory.createXYLineChart(
+                "Coreness Distribution",
+                "Value",
+                "Count",
+                dataset,
+                PlotOrientation.VERTICAL,
+                true,
+                false,
+                false);
+        chart.removeLegend();
+        ChartUtils.decorateChart(chart);
+        ChartUtils.scaleChart(chart, dSeries, false);
+        String imageFile = ChartUtils.renderChart(chart, "coreness-distribution.png");
+
+        return "<HTML> <BODY> <h1>Coreness Report </h1> "
+                + "<hr>"
+                + "<br> <h2> Results: </h2>"
+                + "Degeneracy (largest coreness): " + degeneracy + "<br />"
+                + "<br /><br />" + imageFile
+                + "<br /><br />" + "<h2> Algorithm: </h2>"
+                + "Vladimir Batagelj and Matjaz Zaversnik, <i>An O(m) Algorithm for Cores Decomposition of Networks</i>, 2003<br />"
+                + "</BODY> </HTML>";
+    }
+
+    @Override
+    public boolean cancel() {
+        isCanceled = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progress = progressTicket;
+    }
+}
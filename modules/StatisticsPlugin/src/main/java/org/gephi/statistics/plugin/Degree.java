@@ -51,7 +51,8 @@ import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.NodeIterable;
 import org.gephi.graph.api.Table;
-import org.gephi.statistics.spi.Statistics;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
@@ -62,7 +63,7 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.openide.util.NbBundle;
 
-public class Degree implements Statistics, LongTask {
+public class Degree implements SnapshotStatistics, LongTask {
 
     public static final String INDEGREE = "indegree";
     public static final String OUTDEGREE = "outdegree";
@@ -84,6 +85,12 @@ public class Degree implements Statistics, LongTask {
     private Map<Integer, Integer> inDegreeDist;
     private Map<Integer, Integer> outDegreeDist;
     private Map<Integer, Integer> degreeDist;
+    private Graph graph;
+    private Node[] nodes;
+    private int[] inDegrees;
+    private int[] outDegrees;
+    private int[] degrees;
+    private int nodeCount;
 
     /**
      *
@@ -104,23 +111,42 @@ public class Degree implements Statistics, LongTask {
     }
 
     public void execute(Graph graph) {
-        isDirected = graph.isDirected();
-        isCanceled = false;
-
-        initializeDegreeDists();
-        initializeAttributeColunms(graph.getModel());
-
         graph.readLock();
 
         try {
-            avgDegree = calculateAverageDegree(graph, isDirected, true);
-
-            graph.setAttribute(AVERAGE_DEGREE, avgDegree);
+            prepare(new GraphSnapshotCache(graph));
+            compute();
+            save(graph.getModel());
         } finally {
             graph.readUnlockAll();
         }
     }
 
+    /**
+     * Counts the degrees, as they are read from the graph rather than from a
+     * snapshot.
+     */
+    @Override
+    public void prepare(GraphSnapshotCache snapshots) {
+        graph = snapshots.getGraph();
+        isDirected = graph.isDirected();
+        isCanceled = false;
+
+        initializeDegreeDists();
+        avgDegree = countDegrees(graph, isDirected, true);
+    }
+
+    @Override
+    public void compute() {
+    }
+
+    @Override
+    public void save(GraphModel graphModel) {
+        initializeAttributeColunms(graphModel);
+        saveDegrees(isDirected);
+        graph.setAttribute(AVERAGE_DEGREE, avgDegree);
+    }
+
     protected int calculateInDegree(DirectedGraph directedGraph, Node n) {
         return directedGraph.getInDegree(n);
     }
@@ -134,6 +160,19 @@ public class Degree implements Statistics, LongTask {
     }
 
     protected double calculateAverageDegree(Graph graph, boolean isDirected, boolean updateAttributes) {
+        double averageDegree = countDegrees(graph, isDirected, updateAttributes);
+        if (updateAttributes) {
+            saveDegrees(isDirected);
+        }
+        return averageDegree;
+    }
+
+    /**
+     * Counts the degree of every node and returns the average degree. When
+     * <code>record</code> is true, the degrees are also kept for
+     * {@link #saveDegrees(boolean)} and added to the distributions.
+     */
+    private double countDegrees(Graph graph, boolean isDirected, boolean record) {
         double averageDegree = 0;
 
         DirectedGraph directedGraph = null;
@@ -143,6 +182,14 @@ public class Degree implements Statistics, LongTask {
         }
 
         Progress.start(progress, graph.getNodeCount());
+        if (record) {
+            int n = graph.getNodeCount();
+            nodes = new Node[n];
+            inDegrees = new int[n];
+            outDegrees = new int[n];
+            degrees = new int[n];
+            nodeCount = 0;
+        }
 
         NodeIterable nodesIterable = graph.getNodes();
         for (Node n : nodesIterable) {
@@ -155,11 +202,13 @@ public class Degree implements Statistics, LongTask {
             }
             degree = calculateDegree(graph, n);
 
-            if (updateAttributes) {
-                n.setAttribute(DEGREE, degree);
+            if (record) {
+                nodes[nodeCount] = n;
+                inDegrees[nodeCount] = inDegree;
+                outDegrees[nodeCount] = outDegree;
+                degrees[nodeCount] = degree;
+                nodeCount++;
                 if (isDirected) {
-                    n.setAttribute(INDEGREE, inDegree);
-                    n.setAttribute(OUTDEGREE, outDegree);
                     updateDegreeDists(inDegree, outDegree, degree);
                 } else {
                     updateDegreeDists(degree);
@@ -181,6 +230,17 @@ public class Degree implements Statistics, LongTask {
         return averageDegree;
     }
 
+    private void saveDegrees(boolean isDirected) {
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = nodes[i];
+            n.setAttribute(DEGREE, degrees[i]);
+            if (isDirected) {
+                n.setAttribute(INDEGREE, inDegrees[i]);
+                n.setAttribute(OUTDEGREE, outDegrees[i]);
+            }
+        }
+    }
+
     private void initializeAttributeColunms(GraphModel graphModel) {
         Table nodeTable = graphModel.getNodeTable();
         if (isDirected) {
@@ -44,14 +44,12 @@ package org.gephi.statistics.plugin;
 import java.util.HashMap;
 import java.util.Map;
 import org.gephi.graph.api.Column;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.Table;
+import org.gephi.statistics.spi.GraphSnapshot;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
@@ -193,30 +191,14 @@ public class EigenvectorCentrality implements Statistics, LongTask {
         }
     }
 
-    private double computeMaxValueAndTempValues(Graph graph, HashMap<Integer, Node> indicies, HashMap<Node, Integer> invIndicies,
-            double[] tempValues, double[] centralityValues, boolean directed) {
+    private double computeMaxValueAndTempValues(SparseMultiplier neighbors, double[] tempValues, double[] products,
+            double[] centralityValues) {
 
         double max = 0.;
-        int N = graph.getNodeCount();
-
-        for (int i = 0; i < N; i++) {
-            Node u = indicies.get(i);
-            EdgeIterable iter;
-            if (directed) {
-                iter = ((DirectedGraph) graph).getInEdges(u);
-            } else {
-                iter = graph.getEdges(u);
-            }
-
-            for (Edge e : iter) {
-                Node v = graph.getOpposite(u, e);
-                Integer id = invIndicies.get(v);
-                tempValues[i] += centralityValues[id];
-            }
+        neighbors.multiply(centralityValues, products);
+        for (int i = 0; i < tempValues.length; i++) {
+            tempValues[i] += products[i];
             max = Math.max(max, tempValues[i]);
-            if (isCanceled) {
-                return max;
-            }
         }
 
         return max;
@@ -248,15 +230,23 @@ public class EigenvectorCentrality implements Statistics, LongTask {
         int N = graph.getNodeCount();
         double sumChanged = 0.;
         double[] tmp = new double[N];
+        double[] products = new double[N];
 
-        for (int s = 0; s < numIterations; s++) {
-            double max = computeMaxValueAndTempValues(graph, indicies, invIndicies, tmp, eigCentralities, directed);
-            sumChanged = updateValues(graph, tmp, eigCentralities, max);
-            if (isCanceled) {
-                return sumChanged;
+        //In-neighbors of every node
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, invIndicies, directed, false);
+        SparseMultiplier neighbors = new SparseMultiplier(directed ? snapshot.transpose() : snapshot);
+        try {
+            for (int s = 0; s < numIterations; s++) {
+                double max = computeMaxValueAndTempValues(neighbors, tmp, products, eigCentralities);
+                sumChanged = updateValues(graph, tmp, eigCentralities, max);
+                if (isCanceled) {
+                    return sumChanged;
+                }
+
+                Progress.progress(progress);
             }
-
-            Progress.progress(progress);
+        } finally {
+            neighbors.shutdown();
         }
 
         return sumChanged;
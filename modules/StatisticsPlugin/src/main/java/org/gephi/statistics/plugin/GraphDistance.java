@@ -42,13 +42,14 @@
 package org.gephi.statistics.plugin;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Random;
 import org.gephi.graph.api.*;
-import org.gephi.statistics.spi.Statistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.utils.TempDirUtils;
 import org.gephi.utils.TempDirUtils.TempDir;
 import org.gephi.utils.longtask.spi.LongTask;
@@ -68,12 +69,17 @@ import org.openide.util.Lookup;
  * @author pjmcswee
  * @author Jonny Wray
  */
-public class GraphDistance implements Statistics, LongTask {
+public class GraphDistance implements SnapshotStatistics, LongTask {
 
     public static final String BETWEENNESS = "betweenesscentrality";
     public static final String CLOSENESS = "closnesscentrality";
     public static final String HARMONIC_CLOSENESS = "harmonicclosnesscentrality";
     public static final String ECCENTRICITY = "eccentricity";
+    /**
+     * Seed of the random source sampling unless another one is set, so that
+     * approximated results are reproducible.
+     */
+    public static final long DEFAULT_SEED = 42;
     /**
      *
      */
@@ -87,11 +93,15 @@ public class GraphDistance implements Statistics, LongTask {
      *
      */
     private double[] eccentricity;
+    private Node[] nodes;
+    //Kept by prepare() for compute()
+    private GraphSnapshot preparedSnapshot;
+    private int[] preparedSources;
     /**
      *
      */
-    private int diameter;
-    private int radius;
+    private double diameter;
+    private double radius;
     /**
      *
      */
@@ -111,8 +121,19 @@ public class GraphDistance implements Statistics, LongTask {
     /**
      *
      */
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     private boolean isNormalized;
+    private boolean useEdgeWeight;
+    private int threadCount;
+    private volatile BrandesEngine engine;
+    //Approximation
+    private boolean approximate;
+    private double epsilon = 0.05;
+    private double delta = 0.1;
+    private int sampleSize;
+    private long seed;
+    private int sampledSources;
+    private double errorBound;
 
     /**
      * Gets the average shortest path length in the network
@@ -141,6 +162,8 @@ public class GraphDistance implements Statistics, LongTask {
      * Construct a GraphDistance calculator for the current graph model
      */
     public GraphDistance() {
+        threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        seed = DEFAULT_SEED;
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
         if (graphController != null && graphController.getGraphModel() != null) {
             isDirected = graphController.getGraphModel().isDirected();
@@ -163,154 +186,233 @@ public class GraphDistance implements Statistics, LongTask {
     }
 
     public void execute(Graph graph) {
-        isCanceled = false;
-
-        initializeAttributeColunms(graph.getModel());
-
         graph.readLock();
         try {
-            N = graph.getNodeCount();
+            prepare(new GraphSnapshotCache(graph));
+            compute();
+            save(graph.getModel());
+        } finally {
+            graph.readUnlock();
+        }
+
+    }
 
-            initializeStartValues();
+    @Override
+    public void prepare(GraphSnapshotCache snapshots) {
+        isCanceled = false;
 
-            HashMap<Node, Integer> indicies = createIndiciesMap(graph);
+        Graph graph = isDirected ? snapshots.getDirectedGraph() : snapshots.getUndirectedGraph();
+        N = graph.getNodeCount();
 
-            Map<String, double[]> metrics = calculateDistanceMetrics(graph, indicies, isDirected, isNormalized);
+        initializeStartValues();
 
-            eccentricity = metrics.get(ECCENTRICITY);
-            closeness = metrics.get(CLOSENESS);
-            harmonicCloseness = metrics.get(HARMONIC_CLOSENESS);
-            betweenness = metrics.get(BETWEENNESS);
+        preparedSnapshot = snapshots.getSnapshot(isDirected, useEdgeWeight);
+        preparedSources = getSources(graph, snapshots.getIndices());
+        nodes = preparedSnapshot.getNodes();
+    }
 
-            saveCalculatedValues(graph, indicies, eccentricity, betweenness, closeness, harmonicCloseness);
+    @Override
+    public void compute() {
+        Map<String, double[]> metrics;
+        try {
+            metrics = calculateDistanceMetrics(preparedSources, preparedSnapshot, isDirected, isNormalized);
         } finally {
-            graph.readUnlock();
+            preparedSnapshot = null;
+            preparedSources = null;
         }
 
+        eccentricity = metrics.get(ECCENTRICITY);
+        closeness = metrics.get(CLOSENESS);
+        harmonicCloseness = metrics.get(HARMONIC_CLOSENESS);
+        betweenness = metrics.get(BETWEENNESS);
+    }
+
+    @Override
+    public void save(GraphModel graphModel) {
+        initializeAttributeColunms(graphModel);
+        saveCalculatedValues(nodes, eccentricity, betweenness, closeness, harmonicCloseness);
     }
 
     public Map<String, double[]> calculateDistanceMetrics(Graph graph, HashMap<Node, Integer> indicies, boolean directed, boolean normalized) {
-        int n = graph.getNodeCount();
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indicies, directed, useEdgeWeight);
+        return calculateDistanceMetrics(getSources(graph, indicies), snapshot, directed, normalized);
+    }
+
+    /**
+     * Returns the indices of the nodes of <code>graph</code>, in the order the
+     * graph iterates them.
+     */
+    private int[] getSources(Graph graph, Map<Node, Integer> indicies) {
+        int[] sources = new int[graph.getNodeCount()];
+        int count = 0;
+        for (Node s : graph.getNodes()) {
+            sources[count++] = indicies.get(s);
+        }
+        return sources;
+    }
+
+    private Map<String, double[]> calculateDistanceMetrics(int[] sources, GraphSnapshot snapshot,
+            boolean directed, boolean normalized) {
+        int n = sources.length;
 
         HashMap<String, double[]> metrics = new HashMap<>();
 
-        double[] nodeEccentricity = new double[n];
-        double[] nodeBetweenness = new double[n];
-        double[] nodeCloseness = new double[n];
-        double[] nodeHarmonicCloseness = new double[n];
+        if (useEdgeWeight) {
+            for (double weight : snapshot.getWeights()) {
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Edge weights must be positive or zero, found " + weight);
+                }
+            }
+        }
+        if (approximate) {
+            int k = sampleSize > 0 ? sampleSize : getSampleSize(n, epsilon, delta);
+            if (k < n) {
+                return calculateSampledMetrics(snapshot, samplePivots(sources, k, seed), directed, normalized);
+            }
+        }
+        sampledSources = n;
+        errorBound = 0;
 
-        metrics.put(ECCENTRICITY, nodeEccentricity);
-        metrics.put(CLOSENESS, nodeCloseness);
-        metrics.put(HARMONIC_CLOSENESS, nodeHarmonicCloseness);
-        metrics.put(BETWEENNESS, nodeBetweenness);
+        Progress.start(progress, n);
 
-        Progress.start(progress, graph.getNodeCount());
-        int count = 0;
+        BrandesEngine brandes = new BrandesEngine(snapshot, threadCount);
+        boolean completed = runEngine(brandes, sources, 0);
 
-        int totalPaths = 0;
-        NodeIterable nodesIterable = graph.getNodes();
-        for (Node s : nodesIterable) {
-            Stack<Node> S = new Stack<>();
+        double[] nodeBetweenness = brandes.getBetweenness();
+        metrics.put(ECCENTRICITY, brandes.getEccentricity());
+        metrics.put(CLOSENESS, brandes.getCloseness());
+        metrics.put(HARMONIC_CLOSENESS, brandes.getHarmonicCloseness());
+        metrics.put(BETWEENNESS, nodeBetweenness);
 
-            LinkedList<Node>[] P = new LinkedList[n];
-            double[] theta = new double[n];
-            int[] d = new int[n];
+        if (!completed) {
+            return metrics;
+        }
 
-            int s_index = indicies.get(s);
+        diameter = Math.max(diameter, brandes.getDiameter());
+        radius = Math.min(radius, brandes.getRadius());
+        avgDist += brandes.getTotalDistance();
+        avgDist /= brandes.getTotalPaths();//mN * (mN - 1.0f);
 
-            setInitParametetrsForNode(s, P, theta, d, s_index, n);
+        calculateCorrection(nodeBetweenness, directed, normalized);
 
-            LinkedList<Node> Q = new LinkedList<>();
-            Q.addLast(s);
-            while (!Q.isEmpty()) {
-                Node v = Q.removeFirst();
-                S.push(v);
-                int v_index = indicies.get(v);
+        return metrics;
+    }
 
-                EdgeIterable edgeIter = getEdgeIter(graph, v, directed);
+    /**
+     * Estimates the metrics from searches started at <code>pivots</code> only.
+     * Betweenness is extrapolated from the pivots' dependencies (Brandes and
+     * Pich) and closeness from the distances between each node and the pivots
+     * (Eppstein and Wang). In directed graphs the latter come from searches on
+     * the transposed graph.
+     */
+    private Map<String, double[]> calculateSampledMetrics(GraphSnapshot snapshot, int[] pivots, boolean directed, boolean normalized) {
+        int n = snapshot.getNodeCount();
+        int k = pivots.length;
+        sampledSources = k;
+        errorBound = getErrorBound(n, k, delta);
 
-                for (Edge edge : edgeIter) {
-                    Node reachable = graph.getOpposite(v, edge);
+        HashMap<String, double[]> metrics = new HashMap<>();
+        double[] nodeEccentricity = new double[n];
+        double[] nodeCloseness = new double[n];
+        double[] nodeHarmonicCloseness = new double[n];
+        metrics.put(ECCENTRICITY, nodeEccentricity);
+        metrics.put(CLOSENESS, nodeCloseness);
+        metrics.put(HARMONIC_CLOSENESS, nodeHarmonicCloseness);
 
-                    int r_index = indicies.get(reachable);
-                    if (d[r_index] < 0) {
-                        Q.addLast(reachable);
-                        d[r_index] = d[v_index] + 1;
-                    }
-                    if (d[r_index] == (d[v_index] + 1)) {
-                        theta[r_index] = theta[r_index] + theta[v_index];
-                        P[r_index].addLast(v);
-                    }
-                }
-            }
-            double reachable = 0;
-            for (int i = 0; i < n; i++) {
-                if (d[i] > 0) {
-                    avgDist += d[i];
-                    nodeEccentricity[s_index] = (int) Math.max(nodeEccentricity[s_index], d[i]);
-                    nodeCloseness[s_index] += d[i];
-                    nodeHarmonicCloseness[s_index] += Double.isInfinite(d[i]) ? 0.0 : 1.0 / d[i];
-                    diameter = Math.max(diameter, d[i]);
-                    reachable++;
-                }
-            }
+        Progress.start(progress, directed ? 2 * k : k);
 
-            radius = (int) Math.min(nodeEccentricity[s_index], radius);
+        BrandesEngine forward = new BrandesEngine(snapshot, threadCount);
+        forward.setTargetDistances(!directed);
+        double[] nodeBetweenness = forward.getBetweenness();
+        metrics.put(BETWEENNESS, nodeBetweenness);
+        if (!runEngine(forward, pivots, 0)) {
+            return metrics;
+        }
 
-            if (reachable != 0) {
-                nodeCloseness[s_index] = (nodeCloseness[s_index] == 0) ? 0 : reachable / nodeCloseness[s_index];
-                nodeHarmonicCloseness[s_index] = nodeHarmonicCloseness[s_index] / reachable;
+        BrandesEngine backward = forward;
+        if (directed) {
+            backward = new BrandesEngine(snapshot.transpose(), threadCount);
+            backward.setDependencies(false);
+            backward.setTargetDistances(true);
+            if (!runEngine(backward, pivots, k)) {
+                return metrics;
             }
+        }
 
-            totalPaths += reachable;
-
-            double[] delta = new double[n];
-            while (!S.empty()) {
-                Node w = S.pop();
-                int w_index = indicies.get(w);
-                ListIterator<Node> iter1 = P[w_index].listIterator();
-                while (iter1.hasNext()) {
-                    Node u = iter1.next();
-                    int u_index = indicies.get(u);
-                    delta[u_index] += (theta[u_index] / theta[w_index]) * (1 + delta[w_index]);
-                }
-                if (w != s) {
-                    nodeBetweenness[w_index] += delta[w_index];
-                }
-            }
-            count++;
-            if (isCanceled) {
-                nodesIterable.doBreak();
-                return metrics;
+        double scale = (double) n / k;
+        for (int i = 0; i < n; i++) {
+            nodeBetweenness[i] *= scale;
+        }
+
+        double[] distanceSum = backward.getTargetDistanceSum();
+        int[] reached = backward.getTargetCount();
+        double[] harmonicSum = backward.getTargetHarmonicSum();
+        double[] maxDistance = backward.getTargetMaxDistance();
+        for (int i = 0; i < n; i++) {
+            if (reached[i] != 0) {
+                nodeCloseness[i] = (distanceSum[i] == 0) ? 0 : reached[i] / distanceSum[i];
+                nodeHarmonicCloseness[i] = harmonicSum[i] / reached[i];
             }
-            Progress.progress(progress, count);
+            nodeEccentricity[i] = maxDistance[i];
+            radius = Math.min(radius, maxDistance[i]);
         }
 
-        avgDist /= totalPaths;//mN * (mN - 1.0f);
+        diameter = Math.max(diameter, forward.getDiameter());
+        avgDist += forward.getTotalDistance();
+        avgDist /= forward.getTotalPaths();
 
-        calculateCorrection(graph, indicies, nodeBetweenness, directed, normalized);
+        calculateCorrection(nodeBetweenness, directed, normalized);
 
         return metrics;
     }
 
-    private void setInitParametetrsForNode(Node s, LinkedList<Node>[] P, double[] theta, int[] d, int index, int n) {
-        for (int j = 0; j < n; j++) {
-            P[j] = new LinkedList<>();
-            theta[j] = 0;
-            d[j] = -1;
+    private boolean runEngine(BrandesEngine brandes, int[] sources, int workDone) {
+        engine = brandes;
+        if (isCanceled) {
+            brandes.cancel();
+        }
+        try {
+            return brandes.compute(sources, progress, workDone);
+        } finally {
+            engine = null;
         }
-        theta[index] = 1;
-        d[index] = 0;
     }
 
-    private EdgeIterable getEdgeIter(Graph graph, Node v, boolean directed) {
-        EdgeIterable edgeIter;
-        if (directed) {
-            edgeIter = ((DirectedGraph) graph).getOutEdges(v);
-        } else {
-            edgeIter = graph.getEdges(v);
+    /**
+     * Draws <code>k</code> distinct sources uniformly at random.
+     */
+    private static int[] samplePivots(int[] sources, int k, long seed) {
+        int[] shuffled = sources.clone();
+        Random random = new Random(seed);
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(shuffled.length - i);
+            int tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        return Arrays.copyOf(shuffled, k);
+    }
+
+    /**
+     * Returns the number of sampled sources needed so that, with probability
+     * at least <code>1 - delta</code>, every normalized betweenness is
+     * estimated within <code>epsilon</code>. Follows from Hoeffding's
+     * inequality on each node's dependencies and a union bound over the nodes.
+     *
+     * @param n the number of nodes
+     * @param epsilon the maximum error
+     * @param delta the failure probability
+     * @return the number of sources to sample
+     */
+    public static int getSampleSize(int n, double epsilon, double delta) {
+        if (n == 0) {
+            return 0;
         }
-        return edgeIter;
+        return (int) Math.min(n, Math.ceil(Math.log(2.0 * n / delta) / (2 * epsilon * epsilon)));
+    }
+
+    private static double getErrorBound(int n, int k, double delta) {
+        return Math.sqrt(Math.log(2.0 * n / delta) / (2.0 * k));
     }
 
     private void initializeAttributeColunms(GraphModel graphModel) {
@@ -349,28 +451,25 @@ public class GraphDistance implements Statistics, LongTask {
         radius = Integer.MAX_VALUE;
     }
 
-    private void calculateCorrection(Graph graph, HashMap<Node, Integer> indicies,
-            double[] nodeBetweenness, boolean directed, boolean normalized) {
+    private void calculateCorrection(double[] nodeBetweenness, boolean directed, boolean normalized) {
 
-        int n = graph.getNodeCount();
+        int n = nodeBetweenness.length;
 
-        for (Node s : graph.getNodes()) {
-
-            int s_index = indicies.get(s);
+        for (int s_index = 0; s_index < n; s_index++) {
 
             if (!directed) {
                 nodeBetweenness[s_index] /= 2;
             }
             if (normalized) {
-                nodeBetweenness[s_index] /= directed ? (n - 1) * (n - 2) : (n - 1) * (n - 2) / 2;
+                nodeBetweenness[s_index] /= directed ? (n - 1.0) * (n - 2.0) : (n - 1.0) * (n - 2.0) / 2;
             }
         }
     }
 
-    private void saveCalculatedValues(Graph graph, HashMap<Node, Integer> indicies,
+    private void saveCalculatedValues(Node[] nodes,
             double[] nodeEccentricity, double[] nodeBetweenness, double[] nodeCloseness, double[] nodeHarmonicCloseness) {
-        for (Node s : graph.getNodes()) {
-            int s_index = indicies.get(s);
+        for (int s_index = 0; s_index < nodes.length; s_index++) {
+            Node s = nodes[s_index];
 
             s.setAttribute(ECCENTRICITY, nodeEccentricity[s_index]);
             s.setAttribute(CLOSENESS, nodeCloseness[s_index]);
@@ -387,6 +486,105 @@ public class GraphDistance implements Statistics, LongTask {
         return isNormalized;
     }
 
+    /**
+     * Sets whether edge weights are used as edge lengths. Shortest paths are
+     * then found with Dijkstra's algorithm instead of breadth-first searches.
+     * Weights must not be negative.
+     *
+     * @param useEdgeWeight whether to use edge weights as lengths
+     */
+    public void setUseEdgeWeight(boolean useEdgeWeight) {
+        this.useEdgeWeight = useEdgeWeight;
+    }
+
+    public boolean isUseEdgeWeight() {
+        return useEdgeWeight;
+    }
+
+    /**
+     * Sets the number of threads used to run the shortest path searches.
+     * Results don't depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets whether metrics are estimated from a sample of source nodes
+     * instead of computed from all of them.
+     *
+     * @param approximate whether to sample sources
+     */
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Sets the maximum error targeted on normalized betweenness when
+     * approximating. Ignored if a sample size is set.
+     *
+     * @param epsilon the maximum error
+     */
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * Sets the probability that the approximation error exceeds
+     * <code>epsilon</code>. Ignored if a sample size is set.
+     *
+     * @param delta the failure probability
+     */
+    public void setDelta(double delta) {
+        this.delta = delta;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    /**
+     * Sets the number of sampled sources when approximating. If zero, the
+     * sample size is derived from <code>epsilon</code> and <code>delta</code>.
+     *
+     * @param sampleSize the number of sources, or zero
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = Math.max(0, sampleSize);
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Sets the seed of the random source sampling, {@link #DEFAULT_SEED} by
+     * default. The report shows the seed of sampled results.
+     *
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
     public void setDirected(boolean isDirected) {
         this.isDirected = isDirected;
     }
@@ -454,21 +652,34 @@ public class GraphDistance implements Statistics, LongTask {
                 + "<br>"
                 + "<h2> Parameters: </h2>"
                 + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
+                + (useEdgeWeight ? "Edge lengths: edge weights<br />" : "")
+                + (sampledSources < N ? "Sampled sources: " + sampledSources + " of " + N + " (seed " + seed + ")<br />" : "")
                 + "<br /> <h2> Results: </h2>"
-                + "Diameter: " + diameter + "<br />"
-                + "Radius: " + radius + "<br />"
+                + "Diameter: " + formatDistance(diameter) + "<br />"
+                + "Radius: " + formatDistance(radius) + "<br />"
                 + "Average Path length: " + avgDist + "<br />"
+                + (sampledSources < N ? "<br />Approximation: with probability " + (1 - delta) + ", normalized betweenness values are within "
+                + errorBound + " and average distances within " + errorBound + " times the diameter of their exact value. "
+                + "Eccentricity, diameter and radius are lower bounds.<br /><br />" : "")
                 + htmlIMG1 + "<br /><br />"
                 + htmlIMG2 + "<br /><br />"
                 + htmlIMG3 + "<br /><br />"
                 + htmlIMG4
                 + "<br /><br />" + "<h2> Algorithm: </h2>"
                 + "Ulrik Brandes, <i>A Faster Algorithm for Betweenness Centrality</i>, in Journal of Mathematical Sociology 25(2):163-177, (2001)<br />"
+                + (useEdgeWeight ? "Edsger W. Dijkstra, <i>A Note on Two Problems in Connexion with Graphs</i>, in Numerische Mathematik 1:269-271, (1959)<br />" : "")
+                + (sampledSources < N ? "Ulrik Brandes, Christian Pich, <i>Centrality Estimation in Large Networks</i>, in International Journal of Bifurcation and Chaos 17(7):2303-2318, (2007)<br />"
+                + "David Eppstein, Joseph Wang, <i>Fast Approximation of Centrality</i>, in Journal of Graph Algorithms and Applications 8(1):39-45, (2004)<br />" : "")
                 + "</BODY> </HTML>";
 
         return report;
     }
 
+    private String formatDistance(double distance) {
+        //Hop counts are printed as integers
+        return useEdgeWeight ? String.valueOf(distance) : String.valueOf((int) distance);
+    }
+
     /**
      *
      * @return
@@ -476,6 +687,10 @@ public class GraphDistance implements Statistics, LongTask {
     @Override
     public boolean cancel() {
         this.isCanceled = true;
+        BrandesEngine running = engine;
+        if (running != null) {
+            running.cancel();
+        }
         return true;
     }
 
@@ -44,14 +44,12 @@ package org.gephi.statistics.plugin;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.Table;
+import org.gephi.statistics.spi.GraphSnapshot;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
@@ -140,17 +138,25 @@ public class Hits implements Statistics, LongTask {
 
         Progress.start(progress);
 
-        while (true) {
-            updateAutorithy(graph, temp_authority, hubValues, isDirected, indices);
-            updateHub(graph, temp_hubs, temp_authority, isDirected, indices);
-            boolean done = checkDiff(authorityValues, temp_authority, eps) && checkDiff(hubValues, temp_hubs, eps);
+        //Out-neighbors and in-neighbors of every node, self-loops ignored
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indices, isDirected, false).removeSelfLoops();
+        SparseMultiplier outNeighbors = new SparseMultiplier(snapshot);
+        SparseMultiplier inNeighbors = isDirected ? outNeighbors.transpose() : outNeighbors;
+        try {
+            while (true) {
+                updateAutorithy(inNeighbors, temp_authority, hubValues);
+                updateHub(outNeighbors, temp_hubs, temp_authority);
+                boolean done = checkDiff(authorityValues, temp_authority, eps) && checkDiff(hubValues, temp_hubs, eps);
 
-            System.arraycopy(temp_authority, 0, authorityValues, 0, N);
-            System.arraycopy(temp_hubs, 0, hubValues, 0, N);
+                System.arraycopy(temp_authority, 0, authorityValues, 0, N);
+                System.arraycopy(temp_hubs, 0, hubValues, 0, N);
 
-            if ((done) || (isCanceled)) {
-                break;
+                if ((done) || (isCanceled)) {
+                    break;
+                }
             }
+        } finally {
+            outNeighbors.shutdown();
         }
     }
 
@@ -170,66 +176,25 @@ public class Hits implements Statistics, LongTask {
         Arrays.fill(hubValues, 1.0);
     }
 
-    void updateAutorithy(Graph graph, double[] newValues, double[] hubValues, boolean isDirected, Map<Node, Integer> indices) {
-        double norm = 0;
-        for (Node q : indices.keySet()) {
-            double auth = 0;
-            EdgeIterable edge_iter;
-            if (isDirected) {
-                edge_iter = ((DirectedGraph) graph).getInEdges(q);
-            } else {
-                edge_iter = graph.getEdges(q);
-            }
-            for (Edge edge : edge_iter) {
-                if (!edge.isSelfLoop()) {
-                    Node p = graph.getOpposite(q, edge);
-                    auth += hubValues[indices.get(p)];
-                }
-            }
-
-            newValues[indices.get(q)] = auth;
+    void updateAutorithy(SparseMultiplier inNeighbors, double[] newValues, double[] hubValues) {
+        inNeighbors.multiply(hubValues, newValues);
+        normalize(newValues);
+    }
 
-            norm += auth * auth;
-            if (isCanceled) {
-                return;
-            }
-        }
-        norm = Math.sqrt(norm);
-        if (norm > 0) {
-            for (int i = 0; i < newValues.length; i++) {
-                newValues[i] = newValues[i] / norm;
-            }
-        }
+    void updateHub(SparseMultiplier outNeighbors, double[] newValues, double[] authValues) {
+        outNeighbors.multiply(authValues, newValues);
+        normalize(newValues);
     }
 
-    void updateHub(Graph graph, double[] newValues, double[] authValues, boolean isDirected, Map<Node, Integer> indices) {
+    private void normalize(double[] values) {
         double norm = 0;
-        for (Node p : indices.keySet()) {
-            double hub = 0;
-            EdgeIterable edge_iter;
-            if (isDirected) {
-                edge_iter = ((DirectedGraph) graph).getOutEdges(p);
-            } else {
-                edge_iter = graph.getEdges(p);
-            }
-            for (Edge edge : edge_iter) {
-                if (!edge.isSelfLoop()) {
-                    Node r = graph.getOpposite(p, edge);
-                    hub += authValues[indices.get(r)];
-                }
-            }
-
-            newValues[indices.get(p)] = hub;
-
-            norm += hub * hub;
-            if (isCanceled) {
-                return;
-            }
+        for (double value : values) {
+            norm += value * value;
         }
         norm = Math.sqrt(norm);
         if (norm > 0) {
-            for (int i = 0; i < newValues.length; i++) {
-                newValues[i] = newValues[i] / norm;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i] / norm;
             }
         }
     }
@@ -0,0 +1,711 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.statistics.spi.GraphSnapshot;
+
+/**
+ * Community detection engine behind the Leiden algorithm of
+ * {@link Modularity}. Every level of the graph is stored as primitive
+ * compressed sparse row arrays and communities as int labels, so memory stays
+ * linear in the number of nodes and edges.
+ * <p>
+ * Each level runs three phases:
+ * <ol>
+ * <li>Local moving: nodes are taken from a queue in blocks. The best
+ * community of every node of a block is evaluated concurrently against the
+ * state at the start of the block, then the moves are checked again and
+ * committed one by one, in block order. A move is only committed if it still
+ * improves the quality, and the neighbors of moved nodes are queued again.</li>
+ * <li>Refinement: every community is split into singletons which are then
+ * greedily merged into well-connected sub-communities. Communities are
+ * refined concurrently as they don't share any node.</li>
+ * <li>Aggregation: the refined sub-communities become the nodes of the next
+ * level, initially assigned to the community they were part of.</li>
+ * </ol>
+ * Blocks don't depend on the thread count, which makes the results identical
+ * whatever the number of threads.
+ * <p>
+ * Ref: V.A. Traag, L. Waltman, N.J. van Eck, From Louvain to Leiden:
+ * guaranteeing well-connected communities, in Scientific Reports 9:5233,
+ * (2019)
+ */
+final class LeidenEngine {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int EMPTY = -1;
+    private final Level graph;
+    private final double resolution;
+    private final int threadCount;
+    private final Random random;
+    private ForkJoinPool pool;
+    private int communityCount;
+    private volatile boolean canceled;
+
+    /**
+     * Creates an engine for an undirected snapshot. Self-loops are ignored and
+     * parallel entries are merged, summing their weights.
+     *
+     * @param snapshot undirected snapshot of the graph
+     * @param resolution resolution applied to the internal edge weights
+     * @param threadCount number of threads
+     * @param random source of randomness to shuffle the order nodes are
+     * visited in, or <code>null</code> to visit them in index order
+     */
+    LeidenEngine(GraphSnapshot snapshot, double resolution, int threadCount, Random random) {
+        int n = snapshot.getNodeCount();
+        this.resolution = resolution;
+        this.threadCount = Math.max(1, threadCount);
+        this.random = random;
+
+        double[] weights = snapshot.getWeights();
+        if (weights == null) {
+            weights = new double[snapshot.getEntryCount()];
+            Arrays.fill(weights, 1.0);
+        }
+        Level entries = new Level(n, snapshot.getOffsets(), snapshot.getTargets(), weights, null);
+        int[] identity = new int[n];
+        for (int i = 0; i < n; i++) {
+            identity[i] = i;
+        }
+        pool = this.threadCount > 1 ? new ForkJoinPool(this.threadCount) : null;
+        try {
+            this.graph = aggregate(entries, identity, n);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Runs the algorithm until communities don't change anymore.
+     *
+     * @return the community of every node, numbered from 0 in order of
+     * appearance, or <code>null</code> if canceled
+     */
+    int[] compute() {
+        int n = graph.n;
+        int[] membership = new int[n];
+        int[] community = new int[n];
+        for (int i = 0; i < n; i++) {
+            membership[i] = i;
+            community[i] = i;
+        }
+
+        pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        try {
+            Level level = graph;
+            while (graph.totalWeight > 0) {
+                moveNodes(level, community);
+                if (canceled) {
+                    return null;
+                }
+                int count = relabel(community);
+                if (count == level.n) {
+                    break;
+                }
+
+                int[] refined = refine(level, community, count);
+                int refinedCount = relabel(refined);
+                if (refinedCount == level.n) {
+                    //Nothing could be merged, aggregate the communities themselves
+                    refined = community;
+                    refinedCount = count;
+                }
+                if (canceled) {
+                    return null;
+                }
+
+                Level next = aggregate(level, refined, refinedCount);
+                int[] nextCommunity = new int[refinedCount];
+                for (int v = 0; v < level.n; v++) {
+                    nextCommunity[refined[v]] = community[v];
+                }
+                for (int i = 0; i < n; i++) {
+                    membership[i] = refined[membership[i]];
+                }
+                level = next;
+                community = nextCommunity;
+            }
+        } finally {
+            shutdown();
+        }
+
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = community[membership[i]];
+        }
+        communityCount = relabel(result);
+        return result;
+    }
+
+    void cancel() {
+        canceled = true;
+    }
+
+    int getCommunityCount() {
+        return communityCount;
+    }
+
+    /**
+     * Returns the modularity of <code>communities</code>, with the internal
+     * edge weights multiplied by <code>usedResolution</code>.
+     *
+     * @param communities community of every node
+     * @param usedResolution the resolution
+     * @return the modularity
+     */
+    double modularity(int[] communities, double usedResolution) {
+        int count = 0;
+        for (int c : communities) {
+            count = Math.max(count, c + 1);
+        }
+        double[] internal = new double[count];
+        double[] degrees = new double[count];
+        for (int v = 0; v < graph.n; v++) {
+            int c = communities[v];
+            degrees[c] += graph.nodeWeights[v];
+            for (int e = graph.offsets[v], end = graph.offsets[v + 1]; e < end; e++) {
+                if (communities[graph.targets[e]] == c) {
+                    internal[c] += graph.weights[e];
+                }
+            }
+        }
+        double totalWeight = graph.totalWeight / 2.0;
+        double res = 0;
+        for (int i = 0; i < count; i++) {
+            internal[i] /= 2.0;
+            res += usedResolution * (internal[i] / totalWeight) - Math.pow(degrees[i] / (2 * totalWeight), 2);
+        }
+        return res;
+    }
+
+    /**
+     * Local moving phase, moves nodes between the communities in
+     * <code>community</code> as long as it improves the quality.
+     */
+    private void moveNodes(final Level level, final int[] community) {
+        final int n = level.n;
+        final double[] communityWeight = new double[n];
+        final int[] communitySize = new int[n];
+        for (int v = 0; v < n; v++) {
+            communityWeight[community[v]] += level.nodeWeights[v];
+            communitySize[community[v]]++;
+        }
+        int[] free = new int[n];
+        int freeCount = 0;
+        for (int c = n - 1; c >= 0; c--) {
+            if (communitySize[c] == 0) {
+                free[freeCount++] = c;
+            }
+        }
+
+        //Circular queue of the nodes to visit
+        int[] queue = new int[n];
+        boolean[] queued = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            queue[i] = i;
+            queued[i] = true;
+        }
+        if (random != null) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = queue[i];
+                queue[i] = queue[j];
+                queue[j] = tmp;
+            }
+        }
+        int head = 0;
+        int size = n;
+
+        Scratch[] scratches = createScratches(n);
+        final int[] block = new int[Math.min(BLOCK_SIZE, n)];
+        final int[] proposals = new int[block.length];
+        while (size > 0 && !canceled) {
+            final int count = Math.min(block.length, size);
+            for (int i = 0; i < count; i++) {
+                int v = queue[head];
+                head = (head + 1) % n;
+                queued[v] = false;
+                block[i] = v;
+            }
+            size -= count;
+
+            //Evaluate the best moves concurrently
+            run(count, scratches, new Body() {
+                @Override
+                void run(int from, int to, Scratch scratch) {
+                    for (int i = from; i < to; i++) {
+                        proposals[i] = bestCommunity(level, block[i], community, communityWeight, communitySize, scratch);
+                    }
+                }
+            });
+
+            //Check and commit them in order
+            for (int i = 0; i < count; i++) {
+                int v = block[i];
+                int target = proposals[i];
+                int current = community[v];
+                if (target == current || (target != EMPTY && communitySize[target] == 0)) {
+                    continue;
+                }
+                double nodeWeight = level.nodeWeights[v];
+                double weightToCurrent = 0;
+                double weightToTarget = 0;
+                for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                    int c = community[level.targets[e]];
+                    if (c == current) {
+                        weightToCurrent += level.weights[e];
+                    } else if (c == target) {
+                        weightToTarget += level.weights[e];
+                    }
+                }
+                double stay = gain(weightToCurrent, nodeWeight, communityWeight[current] - nodeWeight, level.totalWeight);
+                if (target == EMPTY) {
+                    if (communitySize[current] == 1 || !(0 > stay)) {
+                        continue;
+                    }
+                    target = free[--freeCount];
+                } else if (!(gain(weightToTarget, nodeWeight, communityWeight[target], level.totalWeight) > stay)) {
+                    continue;
+                }
+
+                communityWeight[current] -= nodeWeight;
+                if (--communitySize[current] == 0) {
+                    free[freeCount++] = current;
+                }
+                communityWeight[target] += nodeWeight;
+                communitySize[target]++;
+                community[v] = target;
+
+                for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                    int u = level.targets[e];
+                    if (!queued[u] && community[u] != target) {
+                        queue[(head + size) % n] = u;
+                        queued[u] = true;
+                        size++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the community that improves the quality the most if
+     * <code>v</code> moves to it, its current community if none does or
+     * {@link #EMPTY} if <code>v</code> is better alone.
+     */
+    private int bestCommunity(Level level, int v, int[] community, double[] communityWeight, int[] communitySize, Scratch scratch) {
+        int count = scratch.collect(level, v, community);
+        int current = community[v];
+        double nodeWeight = level.nodeWeights[v];
+        double weightToCurrent = scratch.position[current] >= 0 ? scratch.weight[current] : 0;
+
+        int best = current;
+        double bestGain = gain(weightToCurrent, nodeWeight, communityWeight[current] - nodeWeight, level.totalWeight);
+        for (int i = 0; i < count; i++) {
+            int c = scratch.list[i];
+            if (c != current) {
+                double g = gain(scratch.weight[c], nodeWeight, communityWeight[c], level.totalWeight);
+                if (g > bestGain) {
+                    best = c;
+                    bestGain = g;
+                }
+            }
+        }
+        if (0 > bestGain && communitySize[current] > 1) {
+            best = EMPTY;
+        }
+        scratch.clear(count);
+        return best;
+    }
+
+    private double gain(double weightTo, double nodeWeight, double communityWeight, double totalWeight) {
+        return resolution * weightTo - nodeWeight * communityWeight / totalWeight;
+    }
+
+    /**
+     * Refinement phase, returns the label of the sub-community of every node.
+     * Labels are node indices and not contiguous.
+     */
+    private int[] refine(final Level level, final int[] community, int count) {
+        final int n = level.n;
+        final int[] communityOffsets = new int[count + 1];
+        final int[] members = groupBy(community, count, communityOffsets);
+        final double[] communityWeight = new double[count];
+        for (int v = 0; v < n; v++) {
+            communityWeight[community[v]] += level.nodeWeights[v];
+        }
+
+        final int[] refined = new int[n];
+        final double[] refinedWeight = new double[n];
+        final double[] refinedExternal = new double[n];
+        final int[] refinedSize = new int[n];
+        for (int v = 0; v < n; v++) {
+            refined[v] = v;
+            refinedWeight[v] = level.nodeWeights[v];
+            refinedSize[v] = 1;
+            for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                if (community[level.targets[e]] == community[v]) {
+                    refinedExternal[v] += level.weights[e];
+                }
+            }
+        }
+
+        run(count, createScratches(n), new Body() {
+            @Override
+            void run(int from, int to, Scratch scratch) {
+                for (int c = from; c < to && !canceled; c++) {
+                    double total = communityWeight[c];
+                    for (int k = communityOffsets[c]; k < communityOffsets[c + 1]; k++) {
+                        int v = members[k];
+                        if (refinedSize[refined[v]] > 1) {
+                            continue;
+                        }
+                        double nodeWeight = level.nodeWeights[v];
+                        double external = refinedExternal[v];
+                        if (!isWellConnected(external, nodeWeight, total, level.totalWeight)) {
+                            continue;
+                        }
+
+                        int neighbors = scratch.collect(level, v, refined, community, c);
+                        int best = v;
+                        double bestGain = Double.NEGATIVE_INFINITY;
+                        for (int i = 0; i < neighbors; i++) {
+                            int r = scratch.list[i];
+                            if (r != v && isWellConnected(refinedExternal[r], refinedWeight[r], total, level.totalWeight)) {
+                                double g = gain(scratch.weight[r], nodeWeight, refinedWeight[r], level.totalWeight);
+                                if (g >= 0 && g > bestGain) {
+                                    best = r;
+                                    bestGain = g;
+                                }
+                            }
+                        }
+                        if (best != v) {
+                            refinedExternal[best] += external - 2 * scratch.weight[best];
+                            refinedWeight[best] += nodeWeight;
+                            refinedSize[best]++;
+                            refinedSize[v] = 0;
+                            refined[v] = best;
+                        }
+                        scratch.clear(neighbors);
+                    }
+                }
+            }
+        });
+        return refined;
+    }
+
+    /**
+     * Returns whether a set of nodes of weight <code>weight</code>, linked to
+     * the rest of its community by <code>external</code>, is well connected to
+     * it.
+     */
+    private boolean isWellConnected(double external, double weight, double communityWeight, double totalWeight) {
+        return resolution * external >= weight * (communityWeight - weight) / totalWeight;
+    }
+
+    /**
+     * Aggregation phase, returns the graph whose nodes are the
+     * <code>count</code> groups in <code>labels</code>. Entries between two
+     * groups are merged and entries within a group are dropped.
+     */
+    private Level aggregate(final Level level, final int[] labels, final int count) {
+        final int[] groupOffsets = new int[count + 1];
+        final int[] members = groupBy(labels, count, groupOffsets);
+        final int[] offsets = new int[count + 1];
+        final double[] nodeWeights = new double[count];
+        Scratch[] scratches = createScratches(count);
+
+        //Count distinct neighbors first
+        run(count, scratches, new Body() {
+            @Override
+            void run(int from, int to, Scratch scratch) {
+                for (int g = from; g < to; g++) {
+                    int neighbors = scratch.collect(level, labels, members, groupOffsets[g], groupOffsets[g + 1], g);
+                    offsets[g + 1] = neighbors;
+                    scratch.clear(neighbors);
+                    double weight = 0;
+                    for (int k = groupOffsets[g]; k < groupOffsets[g + 1]; k++) {
+                        int v = members[k];
+                        weight += level.nodeWeights != null ? level.nodeWeights[v] : level.entryWeight(v);
+                    }
+                    nodeWeights[g] = weight;
+                }
+            }
+        });
+        for (int g = 0; g < count; g++) {
+            offsets[g + 1] += offsets[g];
+        }
+
+        final int[] targets = new int[offsets[count]];
+        final double[] weights = new double[offsets[count]];
+        run(count, scratches, new Body() {
+            @Override
+            void run(int from, int to, Scratch scratch) {
+                for (int g = from; g < to; g++) {
+                    int neighbors = scratch.collect(level, labels, members, groupOffsets[g], groupOffsets[g + 1], g);
+                    for (int i = 0; i < neighbors; i++) {
+                        int h = scratch.list[i];
+                        targets[offsets[g] + i] = h;
+                        weights[offsets[g] + i] = scratch.weight[h];
+                    }
+                    scratch.clear(neighbors);
+                }
+            }
+        });
+        return new Level(count, offsets, targets, weights, nodeWeights);
+    }
+
+    /**
+     * Sorts nodes by label, keeping index order within a label.
+     */
+    private static int[] groupBy(int[] labels, int count, int[] offsets) {
+        for (int label : labels) {
+            offsets[label + 1]++;
+        }
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] position = Arrays.copyOf(offsets, count);
+        int[] members = new int[labels.length];
+        for (int v = 0; v < labels.length; v++) {
+            members[position[labels[v]]++] = v;
+        }
+        return members;
+    }
+
+    /**
+     * Renumbers labels from 0 in order of first appearance.
+     *
+     * @return the number of distinct labels
+     */
+    private static int relabel(int[] labels) {
+        int[] map = new int[labels.length];
+        Arrays.fill(map, -1);
+        int count = 0;
+        for (int i = 0; i < labels.length; i++) {
+            int label = labels[i];
+            if (map[label] < 0) {
+                map[label] = count++;
+            }
+            labels[i] = map[label];
+        }
+        return count;
+    }
+
+    private Scratch[] createScratches(int n) {
+        Scratch[] scratches = new Scratch[pool != null ? threadCount : 1];
+        for (int i = 0; i < scratches.length; i++) {
+            scratches[i] = new Scratch(n);
+        }
+        return scratches;
+    }
+
+    /**
+     * Runs <code>body</code> over <code>[0, count)</code>, split in one range
+     * per thread.
+     */
+    private void run(int count, Scratch[] scratches, final Body body) {
+        if (pool == null || count < 2 * threadCount) {
+            body.run(0, count, scratches[0]);
+            return;
+        }
+        final List<RecursiveAction> tasks = new ArrayList<>(threadCount);
+        int chunk = (count + threadCount - 1) / threadCount;
+        for (int t = 0, from = 0; from < count; t++, from += chunk) {
+            final int lo = from;
+            final int hi = Math.min(count, from + chunk);
+            final Scratch scratch = scratches[t];
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    body.run(lo, hi, scratch);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private abstract static class Body {
+
+        abstract void run(int from, int to, Scratch scratch);
+    }
+
+    /**
+     * One level of the graph, in compressed sparse row form. Node weights
+     * are the sum of the weights of all entries of the nodes' members in the
+     * original graph, including the ones dropped by aggregation.
+     */
+    private static final class Level {
+
+        final int n;
+        final int[] offsets;
+        final int[] targets;
+        final double[] weights;
+        final double[] nodeWeights;
+        final double totalWeight;
+
+        Level(int n, int[] offsets, int[] targets, double[] weights, double[] nodeWeights) {
+            this.n = n;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+            this.nodeWeights = nodeWeights;
+            double total = 0;
+            if (nodeWeights != null) {
+                for (double weight : nodeWeights) {
+                    total += weight;
+                }
+            }
+            this.totalWeight = total;
+        }
+
+        /**
+         * Returns the weight of the entries of <code>v</code>, self-loops
+         * excluded.
+         */
+        double entryWeight(int v) {
+            double weight = 0;
+            for (int e = offsets[v], end = offsets[v + 1]; e < end; e++) {
+                if (targets[e] != v) {
+                    weight += weights[e];
+                }
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * Per-thread buffer accumulating weights by label.
+     */
+    private static final class Scratch {
+
+        final double[] weight;
+        final int[] position;
+        final int[] list;
+
+        Scratch(int n) {
+            weight = new double[n];
+            position = new int[n];
+            list = new int[n];
+            Arrays.fill(position, -1);
+        }
+
+        private int add(int count, int label, double w) {
+            if (position[label] < 0) {
+                position[label] = count;
+                list[count++] = label;
+            }
+            weight[label] += w;
+            return count;
+        }
+
+        /**
+         * Collects the weight from <code>v</code> to each community.
+         */
+        int collect(Level level, int v, int[] community) {
+            int count = 0;
+            for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                count = add(count, community[level.targets[e]], level.weights[e]);
+            }
+            return count;
+        }
+
+        /**
+         * Collects the weight from <code>v</code> to each sub-community of
+         * community <code>c</code>.
+         */
+        int collect(Level level, int v, int[] refined, int[] community, int c) {
+            int count = 0;
+            for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                int u = level.targets[e];
+                if (community[u] == c) {
+                    count = add(count, refined[u], level.weights[e]);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Collects the weight from the nodes <code>members[from]</code> to
+         * <code>members[to - 1]</code> to each other group.
+         */
+        int collect(Level level, int[] labels, int[] members, int from, int to, int group) {
+            int count = 0;
+            for (int k = from; k < to; k++) {
+                int v = members[k];
+                for (int e = level.offsets[v], end = level.offsets[v + 1]; e < end; e++) {
+                    int h = labels[level.targets[e]];
+                    if (h != group) {
+                        count = add(count, h, level.weights[e]);
+                    }
+                }
+            }
+            return count;
+        }
+
+        void clear(int count) {
+            for (int i = 0; i < count; i++) {
+                int label = list[i];
+                weight[label] = 0;
+                position[label] = -1;
+            }
+        }
+    }
+}
@@ -51,7 +51,9 @@ import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
 import org.gephi.graph.api.NodeIterable;
 import org.gephi.graph.api.Table;
-import org.gephi.statistics.spi.Statistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
@@ -65,17 +67,44 @@ import org.jfree.data.xy.XYSeriesCollection;
  *
  * @author pjmcswee
  */
-public class Modularity implements Statistics, LongTask {
+public class Modularity implements SnapshotStatistics, LongTask {
 
     public static final String MODULARITY_CLASS = "modularity_class";
+
+    /**
+     * Community detection algorithms.
+     */
+    public enum Algorithm {
+
+        /**
+         * Blondel et al. multi-level algorithm.
+         */
+        LOUVAIN,
+        /**
+         * Traag et al. refinement of the Louvain algorithm, which guarantees
+         * connected communities. Runs on multiple threads and uses much less
+         * memory on large graphs.
+         */
+        LEIDEN
+    }
     private ProgressTicket progress;
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     private CommunityStructure structure;
+    private Graph graph;
+    private int[] comStructure;
+    private Map<Node, Integer> comIndicies;
+    private int communityCount;
     private double modularity;
     private double modularityResolution;
     private boolean isRandomized = false;
     private boolean useWeight = true;
     private double resolution = 1.;
+    private Algorithm algorithm = Algorithm.LOUVAIN;
+    private int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private volatile LeidenEngine engine;
+    //Kept by prepare() for compute()
+    private GraphSnapshot preparedSnapshot;
+    private Map<Node, Integer> preparedIndicies;
 
     public void setRandom(boolean isRandomized) {
         this.isRandomized = isRandomized;
@@ -101,9 +130,35 @@ public class Modularity implements Statistics, LongTask {
         return resolution;
     }
 
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sets the number of threads used by the Leiden algorithm. Results don't
+     * depend on the thread count.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         this.isCanceled = true;
+        LeidenEngine running = engine;
+        if (running != null) {
+            running.cancel();
+        }
         return true;
     }
 
@@ -138,6 +193,9 @@ public class Modularity implements Statistics, LongTask {
         List<Community> communities;
         int N;
         HashMap<Integer, Community> invMap;
+        //Edges and degrees of the graph by node index, for the final modularity
+        GraphSnapshot edges;
+        int[] degrees;
 
         CommunityStructure(Graph graph) {
             this.graph = graph;
@@ -171,6 +229,12 @@ public class Modularity implements Statistics, LongTask {
                     return;
                 }
             }
+
+            edges = GraphSnapshot.build(graph, map, false, true);
+            degrees = new int[N];
+            for (Node node : graph.getNodes()) {
+                degrees[map.get(node)] = graph.getDegree(node);
+            }
             
             int[] edgeTypes = graph.getModel().getEdgeTypes();
             
@@ -480,26 +544,104 @@ public class Modularity implements Statistics, LongTask {
     }
 
     public void execute(Graph graph) {
-        isCanceled = false;
-
         graph.readLock();
         try {
+            prepare(new GraphSnapshotCache(graph));
+            compute();
+            save(graph.getModel());
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Reads the graph into the community structure, or for the Leiden
+     * algorithm into the undirected snapshot.
+     */
+    @Override
+    public void prepare(GraphSnapshotCache snapshots) {
+        isCanceled = false;
+        comStructure = null;
+        comIndicies = null;
+        structure = null;
+        preparedSnapshot = null;
+        preparedIndicies = null;
+        graph = snapshots.getUndirectedGraph();
+
+        if (algorithm == Algorithm.LEIDEN) {
+            preparedSnapshot = snapshots.getSnapshot(false, useWeight);
+            preparedIndicies = snapshots.getIndices();
+        } else {
             structure = new Modularity.CommunityStructure(graph);
-            int[] comStructure = new int[graph.getNodeCount()];
+        }
+    }
 
-            if (graph.getNodeCount() > 0) {//Fixes issue #713 Modularity Calculation Throws Exception On Empty Graph
-                HashMap<String, Double> computedModularityMetrics = computeModularity(graph, structure, comStructure, resolution, isRandomized, useWeight);
-                modularity = computedModularityMetrics.get("modularity");
-                modularityResolution = computedModularityMetrics.get("modularityResolution");
-            } else {
-                modularity = 0;
-                modularityResolution = 0;
+    @Override
+    public void compute() {
+        if (algorithm == Algorithm.LEIDEN) {
+            try {
+                executeLeiden(preparedSnapshot, preparedIndicies);
+            } finally {
+                preparedSnapshot = null;
+                preparedIndicies = null;
             }
+            return;
+        }
+        int[] communities = new int[structure.N];
+
+        if (structure.N > 0) {//Fixes issue #713 Modularity Calculation Throws Exception On Empty Graph
+            HashMap<String, Double> computedModularityMetrics = computeModularity(graph, structure, communities, resolution, isRandomized, useWeight);
+            modularity = computedModularityMetrics.get("modularity");
+            modularityResolution = computedModularityMetrics.get("modularityResolution");
+        } else {
+            modularity = 0;
+            modularityResolution = 0;
+        }
+
+        comStructure = communities;
+        comIndicies = structure.map;
+        communityCount = structure.communities.size();
+    }
+
+    @Override
+    public void save(GraphModel graphModel) {
+        if (comStructure != null) {
+            saveValues(comStructure, graph, comIndicies);
+        }
+    }
 
-            saveValues(comStructure, graph, structure);
+    private void executeLeiden(GraphSnapshot snapshot, Map<Node, Integer> indicies) {
+        Progress.start(progress);
+        if (snapshot.getNodeCount() == 0) {
+            //Still creates the column, like the Louvain algorithm
+            modularity = 0;
+            modularityResolution = 0;
+            communityCount = 0;
+            comStructure = new int[0];
+            comIndicies = indicies;
+            return;
+        }
+
+        LeidenEngine leiden = new LeidenEngine(snapshot, resolution, threadCount, isRandomized ? new Random() : null);
+        engine = leiden;
+        if (isCanceled) {
+            leiden.cancel();
+        }
+        int[] communities;
+        try {
+            communities = leiden.compute();
         } finally {
-            graph.readUnlock();
+            engine = null;
+        }
+        if (communities == null) {
+            return;
         }
+
+        modularity = leiden.modularity(communities, 1.);
+        modularityResolution = leiden.modularity(communities, resolution);
+        communityCount = leiden.getCommunityCount();
+        comStructure = communities;
+        comIndicies = indicies;
     }
 
     protected HashMap<String, Double> computeModularity(Graph graph, CommunityStructure theStructure, int[] comStructure,
@@ -549,11 +691,11 @@ public class Modularity implements Statistics, LongTask {
             }
         }
 
-        fillComStructure(graph, theStructure, comStructure);
-        double[] degreeCount = fillDegreeCount(graph, theStructure, comStructure, nodeDegrees, weighted);
+        fillComStructure(theStructure, comStructure);
+        double[] degreeCount = fillDegreeCount(theStructure, comStructure, nodeDegrees, weighted);
 
-        double computedModularity = finalQ(comStructure, degreeCount, graph, theStructure, totalWeight, 1., weighted);
-        double computedModularityResolution = finalQ(comStructure, degreeCount, graph, theStructure, totalWeight, currentResolution, weighted);
+        double computedModularity = finalQ(comStructure, degreeCount, theStructure, totalWeight, 1., weighted);
+        double computedModularityResolution = finalQ(comStructure, degreeCount, theStructure, totalWeight, currentResolution, weighted);
 
         results.put("modularity", computedModularity);
         results.put("modularityResolution", computedModularityResolution);
@@ -575,7 +717,7 @@ public class Modularity implements Statistics, LongTask {
         return bestCommunity;
     }
 
-    private int[] fillComStructure(Graph graph, CommunityStructure theStructure, int[] comStructure) {
+    private int[] fillComStructure(CommunityStructure theStructure, int[] comStructure) {
         int count = 0;
 
         for (Community com : theStructure.communities) {
@@ -590,37 +732,37 @@ public class Modularity implements Statistics, LongTask {
         return comStructure;
     }
 
-    private double[] fillDegreeCount(Graph graph, CommunityStructure theStructure, int[] comStructure, double[] nodeDegrees, boolean weighted) {
+    private double[] fillDegreeCount(CommunityStructure theStructure, int[] comStructure, double[] nodeDegrees, boolean weighted) {
         double[] degreeCount = new double[theStructure.communities.size()];
 
-        for (Node node : graph.getNodes()) {
-            int index = theStructure.map.get(node);
+        for (int index = 0; index < comStructure.length; index++) {
             if (weighted) {
                 degreeCount[comStructure[index]] += nodeDegrees[index];
             } else {
-                degreeCount[comStructure[index]] += graph.getDegree(node);
+                degreeCount[comStructure[index]] += theStructure.degrees[index];
             }
 
         }
         return degreeCount;
     }
 
-    private double finalQ(int[] struct, double[] degrees, Graph graph,
+    private double finalQ(int[] struct, double[] degrees,
             CommunityStructure theStructure, double totalWeight, double usedResolution, boolean weighted) {
 
         double res = 0;
         double[] internal = new double[degrees.length];
-        for (Node n : graph.getNodes()) {
-            int n_index = theStructure.map.get(n);
-            for (Edge edge : graph.getEdges(n)) {
-                Node neighbor = graph.getOpposite(n, edge);
-                if (n == neighbor) {
+        int[] offsets = theStructure.edges.getOffsets();
+        int[] targets = theStructure.edges.getTargets();
+        double[] weights = theStructure.edges.getWeights();
+        for (int n_index = 0; n_index < struct.length; n_index++) {
+            for (int e = offsets[n_index]; e < offsets[n_index + 1]; e++) {
+                int neigh_index = targets[e];
+                if (neigh_index == n_index) {
                     continue;
                 }
-                int neigh_index = theStructure.map.get(neighbor);
                 if (struct[neigh_index] == struct[n_index]) {
                     if (weighted) {
-                        internal[struct[neigh_index]] += edge.getWeight(graph.getView());
+                        internal[struct[neigh_index]] += weights[e];
                     } else {
                         internal[struct[neigh_index]]++;
                     }
@@ -634,14 +776,14 @@ public class Modularity implements Statistics, LongTask {
         return res;
     }
 
-    private void saveValues(int[] struct, Graph graph, CommunityStructure theStructure) {
+    private void saveValues(int[] struct, Graph graph, Map<Node, Integer> indicies) {
         Table nodeTable = graph.getModel().getNodeTable();
         Column modCol = nodeTable.getColumn(MODULARITY_CLASS);
         if (modCol == null) {
             modCol = nodeTable.addColumn(MODULARITY_CLASS, "Modularity Class", Integer.class, 0);
         }
         for (Node n : graph.getNodes()) {
-            int n_index = theStructure.map.get(n);
+            int n_index = indicies.get(n);
             n.setAttribute(modCol, struct[n_index]);
         }
     }
@@ -654,7 +796,7 @@ public class Modularity implements Statistics, LongTask {
     public String getReport() {
         //Distribution series
         Map<Integer, Integer> sizeDist = new HashMap<>();
-        for (Node n : structure.graph.getNodes()) {
+        for (Node n : graph.getNodes()) {
             Integer v = (Integer) n.getAttribute(MODULARITY_CLASS);
             if (!sizeDist.containsKey(v)) {
                 sizeDist.put(v, 0);
@@ -689,13 +831,15 @@ public class Modularity implements Statistics, LongTask {
                 + "Randomize:  " + (isRandomized ? "On" : "Off") + "<br>"
                 + "Use edge weights:  " + (useWeight ? "On" : "Off") + "<br>"
                 + "Resolution:  " + (resolution) + "<br>"
+                + "Algorithm:  " + (algorithm == Algorithm.LEIDEN ? "Leiden" : "Louvain") + "<br>"
                 + "<br> <h2> Results: </h2>"
                 + "Modularity: " + f.format(modularity) + "<br>"
                 + "Modularity with resolution: " + f.format(modularityResolution) + "<br>"
-                + "Number of Communities: " + structure.communities.size()
+                + "Number of Communities: " + communityCount
                 + "<br /><br />" + imageFile
                 + "<br /><br />" + "<h2> Algorithm: </h2>"
                 + "Vincent D Blondel, Jean-Loup Guillaume, Renaud Lambiotte, Etienne Lefebvre, <i>Fast unfolding of communities in large networks</i>, in Journal of Statistical Mechanics: Theory and Experiment 2008 (10), P1000<br />"
+                + (algorithm == Algorithm.LEIDEN ? "V.A. Traag, L. Waltman, N.J. van Eck, <i>From Louvain to Leiden: guaranteeing well-connected communities</i>, in Scientific Reports 9:5233, (2019)<br />" : "")
                 + "<br /><br />" + "<h2> Resolution: </h2>"
                 + "R. Lambiotte, J.-C. Delvenne, M. Barahona <i>Laplacian Dynamics and Multiscale Modular Structure in Networks 2009<br />"
                 + "</BODY> </HTML>";
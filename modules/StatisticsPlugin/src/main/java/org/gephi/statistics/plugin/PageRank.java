@@ -41,25 +41,19 @@
  */
 package org.gephi.statistics.plugin;
 
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import org.gephi.graph.api.Column;
 import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.graph.api.NodeIterable;
 import org.gephi.graph.api.Table;
-import org.gephi.graph.api.UndirectedGraph;
-import org.gephi.statistics.spi.Statistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.GraphSnapshotCache;
+import org.gephi.statistics.spi.SnapshotStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
@@ -75,7 +69,7 @@ import org.openide.util.Lookup;
  *
  * @author pjmcswee
  */
-public class PageRank implements Statistics, LongTask {
+public class PageRank implements SnapshotStatistics, LongTask {
 
     public static final String PAGERANK = "pageranks";
     /**
@@ -95,10 +89,18 @@ public class PageRank implements Statistics, LongTask {
      */
     private double probability = 0.85;
     private boolean useEdgeWeight = false;
+    private boolean incremental = false;
     /**
      *
      */
     private double[] pageranks;
+    private Node[] nodes;
+    private int iterations;
+    private boolean warmStarted;
+    //Kept by prepare() for compute()
+    private GraphSnapshot preparedSnapshot;
+    private int[] preparedOutDegrees;
+    private double[] preparedInitialValues;
     /**
      *
      */
@@ -135,22 +137,49 @@ public class PageRank implements Statistics, LongTask {
     }
 
     public void execute(Graph graph) {
-        isCanceled = false;
-
-        Column column = initializeAttributeColunms(graph.getModel());
-
         graph.readLock();
         try {
-            HashMap<Node, Integer> indicies = createIndiciesMap(graph);
+            prepare(new GraphSnapshotCache(graph));
+            compute();
+            save(graph.getModel());
+        } finally {
+            graph.readUnlockAll();
+        }
+    }
 
-            pageranks = calculatePagerank(graph, indicies, isDirected, useEdgeWeight, epsilon, probability);
+    @Override
+    public void prepare(GraphSnapshotCache snapshots) {
+        isCanceled = false;
+
+        Graph graph = isDirected ? snapshots.getDirectedGraph() : snapshots.getUndirectedGraph();
+        Map<Node, Integer> indicies = snapshots.getIndices();
+        Column column = graph.getModel().getNodeTable().getColumn(PAGERANK);
+
+        preparedInitialValues = incremental && column != null ? getPreviousValues(graph, column, indicies) : null;
+        preparedOutDegrees = calculateOutDegrees(graph, indicies, isDirected);
+        preparedSnapshot = snapshots.getSnapshot(isDirected, useEdgeWeight);
+        nodes = preparedSnapshot.getNodes();
+    }
 
-            saveCalculatedValues(graph, column, indicies, pageranks);
+    @Override
+    public void compute() {
+        warmStarted = preparedInitialValues != null;
+        try {
+            pageranks = calculatePagerank(preparedSnapshot, preparedOutDegrees, isDirected, useEdgeWeight,
+                    epsilon, probability, preparedInitialValues);
         } finally {
-            graph.readUnlockAll();
+            preparedSnapshot = null;
+            preparedOutDegrees = null;
+            preparedInitialValues = null;
         }
     }
 
+    @Override
+    public void save(GraphModel graphModel) {
+        Column column = initializeAttributeColunms(graphModel);
+        saveCalculatedValues(column, nodes, pageranks);
+    }
+
     private Column initializeAttributeColunms(GraphModel graphModel) {
         Table nodeTable = graphModel.getNodeTable();
         Column pagerankCol = nodeTable.getColumn(PAGERANK);
@@ -162,212 +191,146 @@ public class PageRank implements Statistics, LongTask {
         return pagerankCol;
     }
 
-    private void saveCalculatedValues(Graph graph, Column attributeColumn, HashMap<Node, Integer> indicies,
-            double[] nodePagrank) {
-        for (Node s : graph.getNodes()) {
-            int s_index = indicies.get(s);
-
-            s.setAttribute(attributeColumn, nodePagrank[s_index]);
+    private void saveCalculatedValues(Column attributeColumn, Node[] nodes, double[] nodePagrank) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setAttribute(attributeColumn, nodePagrank[i]);
         }
     }
 
-    private void setInitialValues(Graph graph, Map<Node, Integer> indicies, double[] pagerankValues, double[] weights, boolean directed, boolean useWeights) {
+    /**
+     * Reads the values of a previous run from <code>column</code>, normalized
+     * to sum to one. Nodes without a value get <code>1 / N</code> before
+     * normalization.
+     *
+     * @return the previous values, or <code>null</code> if no node has one
+     */
+    private double[] getPreviousValues(Graph graph, Column column, Map<Node, Integer> indicies) {
         final int N = graph.getNodeCount();
+        double[] values = new double[N];
+        double sum = 0;
+        boolean found = false;
         for (Node s : graph.getNodes()) {
-            final int index = indicies.get(s);
-            pagerankValues[index] = 1.0 / N;
-            if (useWeights) {
-                double sum = 0;
-                EdgeIterable eIter;
-                if (directed) {
-                    eIter = ((DirectedGraph) graph).getOutEdges(s);
-                } else {
-                    eIter = ((UndirectedGraph) graph).getEdges(s);
-                }
-                for (Edge edge : eIter) {
-                    if(!edge.isSelfLoop()){
-                        sum += edge.getWeight();
-                    }
-                }
-                weights[index] = sum;
+            Object value = s.getAttribute(column);
+            double v = value instanceof Number ? ((Number) value).doubleValue() : 0;
+            if (v > 0) {
+                found = true;
+            } else {
+                v = 1.0 / N;
             }
+            values[indicies.get(s)] = v;
+            sum += v;
+        }
+        if (!found) {
+            return null;
+        }
+        for (int i = 0; i < N; i++) {
+            values[i] /= sum;
         }
+        return values;
     }
 
-    private double calculateR(Graph graph, double[] pagerankValues, HashMap<Node, Integer> indicies, boolean directed, double prob) {
-        int N = graph.getNodeCount();
-        double r = (1.0 - prob) / N;//Initialize to damping factor
-
-        //Calculate dangling nodes (nodes without out edges) contribution to all other nodes.
-        //Necessary for all nodes page rank values sum to be 1
-        NodeIterable nodesIterable = graph.getNodes();
-        double danglingNodesRankContrib = 0;
+    private int[] calculateOutDegrees(Graph graph, Map<Node, Integer> indicies, boolean directed) {
+        int[] outDegrees = new int[graph.getNodeCount()];
         for (Node s : graph.getNodes()) {
-            int s_index = indicies.get(s);
-            int outDegree;
             if (directed) {
-                outDegree = ((DirectedGraph) graph).getOutDegree(s);
+                outDegrees[indicies.get(s)] = ((DirectedGraph) graph).getOutDegree(s);
             } else {
-                outDegree = graph.getDegree(s);
-            }
-            if (outDegree == 0) {
-                danglingNodesRankContrib += pagerankValues[s_index];
-            }
-
-            if (isCanceled) {
-                nodesIterable.doBreak();
-                break;
+                outDegrees[indicies.get(s)] = graph.getDegree(s);
             }
         }
-        danglingNodesRankContrib *= prob / N;
-        r += danglingNodesRankContrib;
-
-        return r;
+        return outDegrees;
     }
 
-    private Map<Node, Set<Node>> calculateInNeighborsPerNode(Graph graph, boolean directed) {
-        Map<Node, Set<Node>> inNeighborsPerNode = new Object2ObjectOpenHashMap<>();
-
-        NodeIterable nodesIterable = graph.getNodes();
-        for (Node node : nodesIterable) {
-            Set<Node> nodeInNeighbors = new ObjectOpenHashSet<>();
-
-            EdgeIterable edgesIterable;
-            if (directed) {
-                edgesIterable = ((DirectedGraph) graph).getInEdges(node);
-            } else {
-                edgesIterable = graph.getEdges(node);
-            }
-
-            for (Edge edge : edgesIterable) {
-                if (!edge.isSelfLoop()) {
-                    Node neighbor = graph.getOpposite(node, edge);
-                    nodeInNeighbors.add(neighbor);
-                }
-
-                if (isCanceled) {
-                    edgesIterable.doBreak();
-                    break;
-                }
-            }
-
-            inNeighborsPerNode.put(node, nodeInNeighbors);
+    private double calculateR(double[] pagerankValues, int[] outDegrees, double prob) {
+        int N = pagerankValues.length;
+        double r = (1.0 - prob) / N;//Initialize to damping factor
 
-            if (isCanceled) {
-                nodesIterable.doBreak();
-                break;
+        //Calculate dangling nodes (nodes without out edges) contribution to all other nodes.
+        //Necessary for all nodes page rank values sum to be 1
+        double danglingNodesRankContrib = 0;
+        for (int i = 0; i < N; i++) {
+            if (outDegrees[i] == 0) {
+                danglingNodesRankContrib += pagerankValues[i];
             }
         }
+        danglingNodesRankContrib *= prob / N;
+        r += danglingNodesRankContrib;
 
-        return inNeighborsPerNode;
+        return r;
     }
 
-    private Map<Node, Object2DoubleOpenHashMap<Node>> calculateInWeightPerNodeAndNeighbor(Graph graph, boolean directed, boolean useWeights) {
-        Object2ObjectOpenHashMap<Node, Object2DoubleOpenHashMap<Node>> inWeightPerNodeAndNeighbor = new Object2ObjectOpenHashMap<>();
-
-        if (useWeights) {
-            NodeIterable nodesIterable = graph.getNodes();
-            for (Node node : nodesIterable) {
-                Object2DoubleOpenHashMap<Node> inWeightPerNeighbor = new Object2DoubleOpenHashMap<>();
-                inWeightPerNeighbor.defaultReturnValue(0);
-
-                EdgeIterable edgesIterable;
-                if (directed) {
-                    edgesIterable = ((DirectedGraph) graph).getInEdges(node);
-                } else {
-                    edgesIterable = graph.getEdges(node);
-                }
-
-                for (Edge edge : edgesIterable) {
-                    if (!edge.isSelfLoop()) {
-                        Node neighbor = graph.getOpposite(node, edge);
-                        inWeightPerNeighbor.addTo(neighbor, edge.getWeight());
-                    }
-
-                    if (isCanceled) {
-                        edgesIterable.doBreak();
-                        break;
-                    }
-                }
-
-                if (isCanceled) {
-                    nodesIterable.doBreak();
-                    break;
-                }
-                
-                inWeightPerNodeAndNeighbor.put(node, inWeightPerNeighbor);
-            }
-        }
-
-        return inWeightPerNodeAndNeighbor;
+    double[] calculatePagerank(Graph graph, HashMap<Node, Integer> indicies,
+            boolean directed, boolean useWeights, double eps, double prob) {
+        return calculatePagerank(graph, indicies, directed, useWeights, eps, prob, null);
     }
 
-    private double updateValueForNode(Graph graph, Node node, double[] pagerankValues, double[] weights,
-            HashMap<Node, Integer> indicies, boolean directed, boolean useWeights, double r, double prob,
-            Map<Node, Set<Node>> inNeighborsPerNode, final Object2DoubleOpenHashMap<Node> inWeightPerNeighbor) {
-        double res = r;
-
-        double sumNeighbors = 0;
-        for (Node neighbor : inNeighborsPerNode.get(node)) {
-            int neigh_index = indicies.get(neighbor);
-
-            if (useWeights) {
-                double weight = inWeightPerNeighbor.getDouble(neighbor) / weights[neigh_index];
-                sumNeighbors += pagerankValues[neigh_index] * weight;
-            } else {
-                int outDegree;
-                if (directed) {
-                    outDegree = ((DirectedGraph) graph).getOutDegree(neighbor);
-                } else {
-                    outDegree = graph.getDegree(neighbor);
-                }
-                sumNeighbors += (pagerankValues[neigh_index] / outDegree);
-            }
-        }
-
-        res += prob * sumNeighbors;
-
-        return res;
+    /**
+     * Computes PageRank by power iteration, starting from
+     * <code>initialValues</code> if not <code>null</code> or from the uniform
+     * vector otherwise. Starting from the values of a previous run on a
+     * slightly different graph only takes a few iterations.
+     * <p>
+     * Every iteration multiplies the matrix of in-neighbors, ignoring
+     * self-loops, by the share of each node's value given to each of its
+     * out-neighbors: the value divided by its out-degree, or by its total
+     * out-weight when using edge weights.
+     */
+    double[] calculatePagerank(Graph graph, HashMap<Node, Integer> indicies,
+            boolean directed, boolean useWeights, double eps, double prob, double[] initialValues) {
+        GraphSnapshot snapshot = GraphSnapshot.build(graph, indicies, directed, useWeights);
+        int[] outDegrees = calculateOutDegrees(graph, indicies, directed);
+        return calculatePagerank(snapshot, outDegrees, directed, useWeights, eps, prob, initialValues);
     }
 
-    double[] calculatePagerank(Graph graph, HashMap<Node, Integer> indicies,
-            boolean directed, boolean useWeights, double eps, double prob) {
-        int N = graph.getNodeCount();
+    private double[] calculatePagerank(GraphSnapshot snapshot, final int[] outDegrees,
+            boolean directed, boolean useWeights, double eps, double prob, double[] initialValues) {
+        int N = snapshot.getNodeCount();
         double[] pagerankValues = new double[N];
         double[] temp = new double[N];
+        double[] shares = new double[N];
+        iterations = 0;
 
         Progress.start(progress);
-        final double[] weights = useWeights ? new double[N] : null;
-        final Map<Node, Set<Node>> inNeighborsPerNode = calculateInNeighborsPerNode(graph, directed);
-        final Map<Node, Object2DoubleOpenHashMap<Node>> inWeightPerNodeAndNeighbor = calculateInWeightPerNodeAndNeighbor(graph, directed, useWeights);
-
-        setInitialValues(graph, indicies, pagerankValues, weights, directed, useWeights);
+        GraphSnapshot outSnapshot = snapshot.removeSelfLoops();
+        GraphSnapshot inSnapshot = (directed ? outSnapshot.transpose() : outSnapshot).mergeParallelEntries();
+        final double[] weights = useWeights ? outSnapshot.getRowSums() : null;
 
-        while (true) {
-            boolean done = true;
+        Arrays.fill(pagerankValues, 1.0 / N);
+        if (initialValues != null) {
+            System.arraycopy(initialValues, 0, pagerankValues, 0, N);
+        }
 
-            double r = calculateR(graph, pagerankValues, indicies, directed, prob);
-            NodeIterable nodesIterable = graph.getNodes();
-            for (Node s : nodesIterable) {
-                int s_index = indicies.get(s);
-                temp[s_index] = updateValueForNode(graph, s, pagerankValues, weights, indicies, directed, useWeights, r, prob, inNeighborsPerNode, inWeightPerNodeAndNeighbor.get(s));
+        SparseMultiplier multiplier = new SparseMultiplier(inSnapshot);
+        try {
+            while (true) {
+                boolean done = true;
+                iterations++;
 
-                if ((temp[s_index] - pagerankValues[s_index]) / pagerankValues[s_index] >= eps) {
-                    done = false;
+                double r = calculateR(pagerankValues, outDegrees, prob);
+                for (int i = 0; i < N; i++) {
+                    shares[i] = pagerankValues[i] / (useWeights ? weights[i] : outDegrees[i]);
+                }
+                multiplier.multiply(shares, temp);
+                for (int i = 0; i < N; i++) {
+                    temp[i] = r + prob * temp[i];
+                    if ((temp[i] - pagerankValues[i]) / pagerankValues[i] >= eps) {
+                        done = false;
+                    }
                 }
 
                 if (isCanceled) {
-                    nodesIterable.doBreak();
                     return pagerankValues;
                 }
-
-            }
-            pagerankValues = temp;
-            temp = new double[N];
-            if ((done) || (isCanceled)) {
-                break;
+                //Swap buffers, the old values are overwritten by the next iteration
+                double[] swap = pagerankValues;
+                pagerankValues = temp;
+                temp = swap;
+                if (done) {
+                    break;
+                }
             }
-
+        } finally {
+            multiplier.shutdown();
         }
         return pagerankValues;
     }
@@ -425,7 +388,9 @@ public class PageRank implements Statistics, LongTask {
                 + "<h2> Parameters: </h2>"
                 + "Epsilon = " + epsilon + "<br>"
                 + "Probability = " + probability
+                + (warmStarted ? "<br>Started from previous values" : "")
                 + "<br> <h2> Results: </h2>"
+                + "Iterations = " + iterations + "<br />"
                 + imageFile
                 + "<br /><br />" + "<h2> Algorithm: </h2>"
                 + "Sergey Brin, Lawrence Page, <i>The Anatomy of a Large-Scale Hypertextual Web Search Engine</i>, in Proceedings of the seventh International Conference on the World Wide Web (WWW1998):107-117<br />"
@@ -493,4 +458,28 @@ public class PageRank implements Statistics, LongTask {
     public void setUseEdgeWeight(boolean useEdgeWeight) {
         this.useEdgeWeight = useEdgeWeight;
     }
+
+    /**
+     * Sets whether the computation starts from the values of a previous run,
+     * read from the {@link #PAGERANK} column, instead of the uniform vector.
+     * After small changes to the graph it converges in a few iterations.
+     *
+     * @param incremental whether to start from previous values
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Returns the number of iterations of the last computation.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.statistics.spi.GraphSnapshot;
+
+/**
+ * Multiplies the adjacency matrix of a {@link GraphSnapshot} by vectors, the
+ * kernel of power iteration statistics. Row <code>i</code> of the matrix
+ * holds the entries of node <code>i</code>, weighted by the snapshot weights
+ * or by one if the snapshot isn't weighted.
+ * <p>
+ * Rows are split into ranges holding about the same number of entries, which
+ * are multiplied concurrently on a fork-join pool. Every row is summed by a
+ * single thread in entry order, so results don't depend on the thread count.
+ * The pool is kept between products and released by {@link #shutdown()}. It
+ * is shared with the multiplier of the transposed matrix.
+ */
+final class SparseMultiplier {
+
+    //Ranges per thread, to balance uneven ranges
+    private static final int RANGES_PER_THREAD = 4;
+    private final GraphSnapshot matrix;
+    private final int threadCount;
+    private final int[] ranges;
+    private final ForkJoinPool pool;
+
+    SparseMultiplier(GraphSnapshot matrix) {
+        this(matrix, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    SparseMultiplier(GraphSnapshot matrix, int threadCount) {
+        this(matrix, threadCount, null);
+    }
+
+    private SparseMultiplier(GraphSnapshot matrix, int threadCount, ForkJoinPool pool) {
+        this.matrix = matrix;
+        this.threadCount = threadCount;
+        int n = matrix.getNodeCount();
+        int rangeCount = threadCount > 1 ? Math.max(1, Math.min(n, threadCount * RANGES_PER_THREAD)) : 1;
+        this.ranges = matrix.splitRows(rangeCount);
+        if (pool == null && ranges.length > 2) {
+            pool = new ForkJoinPool(threadCount);
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a multiplier of the transposed matrix, running on the same
+     * pool.
+     *
+     * @return the multiplier of the transposed matrix
+     */
+    SparseMultiplier transpose() {
+        return new SparseMultiplier(matrix.transpose(), threadCount, pool);
+    }
+
+    /**
+     * Sets <code>y = A x</code>.
+     *
+     * @param x the vector to multiply, indexed by node
+     * @param y the result, indexed by node
+     */
+    void multiply(final double[] x, final double[] y) {
+        if (pool == null || ranges.length <= 2) {
+            multiply(x, y, 0, matrix.getNodeCount());
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                RecursiveAction[] tasks = new RecursiveAction[ranges.length - 1];
+                for (int r = 0; r < tasks.length; r++) {
+                    final int from = ranges[r];
+                    final int to = ranges[r + 1];
+                    tasks[r] = new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            multiply(x, y, from, to);
+                        }
+                    };
+                }
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private void multiply(double[] x, double[] y, int from, int to) {
+        final int[] offsets = matrix.getOffsets();
+        final int[] targets = matrix.getTargets();
+        final double[] weights = matrix.getWeights();
+        if (weights != null) {
+            for (int i = from; i < to; i++) {
+                double sum = 0;
+                for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                    sum += weights[e] * x[targets[e]];
+                }
+                y[i] = sum;
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                double sum = 0;
+                for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+                    sum += x[targets[e]];
+                }
+                y[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Releases the threads of the pool.
+     */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.gephi.statistics.spi.GraphSnapshot;
+
+/**
+ * Counts the triangles around every node of a {@link GraphSnapshot} with the
+ * forward algorithm. Nodes are ranked by degree and every edge is oriented
+ * toward its higher ranked end, so that each triangle is found exactly once
+ * by intersecting the sorted oriented lists of its two lowest ranked nodes.
+ * Oriented lists hold at most the square root of twice the edge count, which
+ * keeps the intersections short on power-law graphs.
+ * <p>
+ * The snapshot must list the neighbors of each node in both directions.
+ * Repeated entries give the multiplicity of an adjacency: a triangle adds to
+ * each of its nodes the multiplicity between the two other nodes. Self-loops
+ * are ignored.
+ * <p>
+ * Nodes are split into ranges of about the same work, which are counted
+ * concurrently on a fork-join pool. A range only writes the counts of its own
+ * oriented entries, which are summed once every range is done, so results
+ * don't depend on the thread count.
+ */
+final class TriangleCounter {
+
+    //Ranges per thread, to balance uneven ranges
+    private static final int RANGES_PER_THREAD = 8;
+    private final GraphSnapshot snapshot;
+    private final int threadCount;
+    private volatile boolean canceled;
+    //Oriented adjacency, over node ranks
+    private int[] order;
+    private int[] offsets;
+    private int[] targets;
+    private int[] multiplicities;
+
+    TriangleCounter(GraphSnapshot snapshot, int threadCount) {
+        this.snapshot = snapshot;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Counts the triangles of every node.
+     *
+     * @return the multiplicity weighted triangle count of every node, or
+     * <code>null</code> if canceled
+     */
+    int[] count() {
+        orient();
+
+        int n = order.length;
+        final int[] ownCounts = new int[n];
+        final int[] entryCounts = new int[targets.length];
+        final int[] ranges = splitRanges(threadCount > 1 ? threadCount * RANGES_PER_THREAD : 1);
+        if (ranges.length > 2) {
+            ForkJoinPool pool = new ForkJoinPool(threadCount);
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        RecursiveAction[] tasks = new RecursiveAction[ranges.length - 1];
+                        for (int r = 0; r < tasks.length; r++) {
+                            final int from = ranges[r];
+                            final int to = ranges[r + 1];
+                            tasks[r] = new RecursiveAction() {
+                                @Override
+                                protected void compute() {
+                                    count(ownCounts, entryCounts, from, to);
+                                }
+                            };
+                        }
+                        invokeAll(tasks);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            count(ownCounts, entryCounts, 0, n);
+        }
+        if (canceled) {
+            return null;
+        }
+
+        int[] counts = new int[n];
+        for (int u = 0; u < n; u++) {
+            counts[order[u]] += ownCounts[u];
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                counts[order[targets[e]]] += entryCounts[e];
+            }
+        }
+        return counts;
+    }
+
+    void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * Finds the triangles whose lowest ranked node is in
+     * <code>[from, to)</code>. For a triangle <code>(u, w, x)</code> in rank
+     * order, the count of <code>u</code> goes to <code>ownCounts</code> and
+     * those of <code>w</code> and <code>x</code> to the entries of
+     * <code>u</code> pointing to them.
+     */
+    private void count(int[] ownCounts, int[] entryCounts, int from, int to) {
+        for (int u = from; u < to && !canceled; u++) {
+            int uEnd = offsets[u + 1];
+            int sum = 0;
+            for (int e = offsets[u]; e < uEnd; e++) {
+                int w = targets[e];
+                int uw = multiplicities[e];
+                int i = e + 1;
+                int j = offsets[w];
+                int wEnd = offsets[w + 1];
+                while (i < uEnd && j < wEnd) {
+                    int a = targets[i];
+                    int b = targets[j];
+                    if (a < b) {
+                        i++;
+                    } else if (a > b) {
+                        j++;
+                    } else {
+                        sum += multiplicities[j];
+                        entryCounts[e] += multiplicities[i];
+                        entryCounts[i] += uw;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            ownCounts[u] = sum;
+        }
+    }
+
+    /**
+     * Ranks nodes by increasing degree, then index, and builds the oriented
+     * adjacency where each node lists its higher ranked neighbors sorted by
+     * rank.
+     */
+    private void orient() {
+        int n = snapshot.getNodeCount();
+        int[] snapshotOffsets = snapshot.getOffsets();
+        int[] snapshotTargets = snapshot.getTargets();
+
+        //Distinct neighbors and their multiplicities, without self-loops
+        int[] distinctOffsets = new int[n + 1];
+        int[] distinctTargets = new int[snapshot.getEntryCount()];
+        int[] distinctMultiplicities = new int[distinctTargets.length];
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        int size = 0;
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            int start = size;
+            for (int e = snapshotOffsets[i], end = snapshotOffsets[i + 1]; e < end; e++) {
+                int target = snapshotTargets[e];
+                if (target == i) {
+                    continue;
+                }
+                int p = position[target];
+                if (p < start) {
+                    p = size++;
+                    position[target] = p;
+                    distinctTargets[p] = target;
+                }
+                distinctMultiplicities[p]++;
+            }
+            distinctOffsets[i + 1] = size;
+            maxDegree = Math.max(maxDegree, size - start);
+        }
+
+        //Counting sort by degree, stable so ties keep the index order
+        int[] degreeStarts = new int[maxDegree + 2];
+        for (int i = 0; i < n; i++) {
+            degreeStarts[distinctOffsets[i + 1] - distinctOffsets[i] + 1]++;
+        }
+        for (int d = 1; d < degreeStarts.length; d++) {
+            degreeStarts[d] += degreeStarts[d - 1];
+        }
+        order = new int[n];
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) {
+            int r = degreeStarts[distinctOffsets[i + 1] - distinctOffsets[i]]++;
+            order[r] = i;
+            rank[i] = r;
+        }
+
+        offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int e = distinctOffsets[i], end = distinctOffsets[i + 1]; e < end; e++) {
+                if (rank[distinctTargets[e]] > rank[i]) {
+                    offsets[rank[i] + 1]++;
+                }
+            }
+        }
+        for (int r = 0; r < n; r++) {
+            offsets[r + 1] += offsets[r];
+        }
+        targets = new int[offsets[n]];
+        multiplicities = new int[offsets[n]];
+        //Visiting nodes by increasing rank appends to every list in order
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int r = 0; r < n; r++) {
+            int i = order[r];
+            for (int e = distinctOffsets[i], end = distinctOffsets[i + 1]; e < end; e++) {
+                int lower = rank[distinctTargets[e]];
+                if (lower < r) {
+                    int p = fill[lower]++;
+                    targets[p] = r;
+                    multiplicities[p] = distinctMultiplicities[e];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bounds of <code>count</code> rank ranges with about the
+     * same intersection work.
+     */
+    private int[] splitRanges(int count) {
+        int n = order.length;
+        count = Math.max(1, Math.min(n, count));
+        long[] work = new long[n + 1];
+        for (int u = 0; u < n; u++) {
+            long w = 1;
+            for (int e = offsets[u], end = offsets[u + 1]; e < end; e++) {
+                w += end - e + offsets[targets[e] + 1] - offsets[targets[e]];
+            }
+            work[u + 1] = work[u] + w;
+        }
+        int[] bounds = new int[count + 1];
+        int u = 0;
+        for (int r = 1; r < count; r++) {
+            long target = work[n] * r / count;
+            while (u < n && work[u] < target) {
+                u++;
+            }
+            bounds[r] = u;
+        }
+        bounds[count] = n;
+        return bounds;
+    }
+}
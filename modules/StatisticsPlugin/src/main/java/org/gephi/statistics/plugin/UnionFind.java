@@ -0,0 +1,115 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint sets over the integers <code>0</code> to <code>n - 1</code>, safe
+ * for concurrent unions without locks.
+ * <p>
+ * Roots are only ever linked under a smaller root, with a compare-and-set on
+ * the parent array that fails if the root was linked in the meantime, in
+ * which case the union starts over. Finds halve their path as they go. Since
+ * parents never increase, concurrent operations can't create cycles, and the
+ * final sets don't depend on how unions interleave.
+ */
+final class UnionFind {
+
+    private final AtomicIntegerArray parents;
+
+    UnionFind(int n) {
+        parents = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parents.set(i, i);
+        }
+    }
+
+    int find(int x) {
+        while (true) {
+            int parent = parents.get(x);
+            if (parent == x) {
+                return x;
+            }
+            int grandParent = parents.get(parent);
+            if (grandParent != parent) {
+                parents.compareAndSet(x, parent, grandParent);
+            }
+            x = grandParent;
+        }
+    }
+
+    void union(int x, int y) {
+        while (true) {
+            x = find(x);
+            y = find(y);
+            if (x == y) {
+                return;
+            }
+            if (x < y) {
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+            if (parents.compareAndSet(x, x, y)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Numbers the sets from <code>0</code>, in the order of their smallest
+     * element. Must not run concurrently with unions.
+     *
+     * @param labels filled with the set number of every element
+     * @return the number of sets
+     */
+    int label(int[] labels) {
+        int n = parents.length();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int root = find(i);
+            //Roots are the smallest element of their set, so they're labeled first
+            labels[i] = root == i ? count++ : labels[root];
+        }
+        return count;
+    }
+}
@@ -46,6 +46,7 @@ import java.text.NumberFormat;
 import java.util.HashMap;
 import java.util.Map;
 import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
@@ -58,7 +59,9 @@ import org.gephi.graph.api.types.IntervalDoubleMap;
 import org.gephi.graph.api.types.TimestampDoubleMap;
 import org.gephi.statistics.plugin.ChartUtils;
 import org.gephi.statistics.plugin.ClusteringCoefficient;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.ProgressTicket;
 import org.jfree.chart.ChartFactory;
@@ -73,7 +76,8 @@ import org.openide.util.NbBundle;
  *
  * @author Mathieu Bastian
  */
-public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask {
+public class DynamicClusteringCoefficient implements IncrementalDynamicStatistics,
+        ParallelDynamicStatistics<DynamicClusteringCoefficient.WindowCoefficients>, LongTask {
 
     public static final String DYNAMIC_AVG_CLUSTERING_COEFFICIENT = "dynamic_avg_clustering";
     public static final String DYNAMIC_CLUSTERING_COEFFICIENT = "dynamic_clustering";
@@ -85,12 +89,17 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
     private boolean isDirected;
     private boolean averageOnly;
     private boolean cancel = false;
+    private int threadCount = 1;
     private ClusteringCoefficient clusteringCoefficientStat;
     //Cols
     private Column dynamicCoefficientColumn;
     //Average
     private Column dynamicAverageCoefficientColumn;
     private Map<Double, Double> averages;
+    //Incremental, undirected only: neighbor multiplicities and triangles
+    private boolean incremental;
+    private Map<Node, Map<Node, Integer>> windowNeighbors;
+    private Map<Node, Integer> windowTriangles;
 
     public DynamicClusteringCoefficient() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -104,6 +113,9 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
         this.graphModel = graphModel;
         this.isDirected = graphModel.isDirected();
         this.averages = new HashMap<>();
+        this.incremental = false;
+        this.windowNeighbors = null;
+        this.windowTriangles = null;
 
         //Attributes cols
         if (!averageOnly) {
@@ -159,6 +171,10 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
 
     @Override
     public void loop(GraphView window, Interval interval) {
+        if (incremental) {
+            loopIncremental(window, interval);
+            return;
+        }
         Graph graph;
         if (isDirected) {
             graph = graphModel.getDirectedGraph(window);
@@ -209,9 +225,194 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
         averages.put(interval.getHigh(), avg);
     }
 
+    /**
+     * Same values as {@link ClusteringCoefficient} in undirected mode, from
+     * the triangles maintained by the edge callbacks.
+     */
+    private void loopIncremental(GraphView window, Interval interval) {
+        Graph graph = graphModel.getUndirectedGraph(window);
+        TimeRepresentation tr = graphModel.getConfiguration().getTimeRepresentation();
+
+        int numNodesDegreeGreaterThanOne = 0;
+        double avg = 0;
+        for (Node n : graph.getNodes().toArray()) {
+            int degree = windowNeighbors.get(n).size();
+            double coef = 0;
+            if (degree > 1) {
+                numNodesDegreeGreaterThanOne++;
+                coef = windowTriangles.get(n);
+                coef /= (double) degree * (degree - 1);
+                coef *= 2.0f;
+                avg += coef;
+            }
+
+            if (!averageOnly) {
+                switch (tr) {
+                    case INTERVAL:
+                        n.setAttribute(dynamicCoefficientColumn, coef, new Interval(interval.getLow(), interval.getLow() + tick));
+                        break;
+                    case TIMESTAMP:
+                        n.setAttribute(dynamicCoefficientColumn, coef, interval.getLow());
+                        n.setAttribute(dynamicCoefficientColumn, coef, interval.getHigh());
+                        break;
+                }
+            }
+
+            if (cancel) {
+                break;
+            }
+        }
+        avg /= numNodesDegreeGreaterThanOne;
+
+        //Average
+        graphModel.getGraphVisible().setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getLow());
+        graphModel.getGraphVisible().setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getHigh());
+
+        averages.put(interval.getLow(), avg);
+        averages.put(interval.getHigh(), avg);
+    }
+
+    @Override
+    public WindowCoefficients compute(GraphSnapshot window, Interval interval) {
+        ClusteringCoefficient clusteringCoefficient = new ClusteringCoefficient();
+        clusteringCoefficient.setDirected(isDirected);
+        clusteringCoefficient.setThreadCount(1);
+        clusteringCoefficient.triangles(window);
+        return new WindowCoefficients(window.getNodes(), clusteringCoefficient.getCoefficientReuslts(),
+                clusteringCoefficient.getAverageClusteringCoefficient());
+    }
+
+    @Override
+    public void commit(WindowCoefficients values, Interval interval) {
+        TimeRepresentation tr = graphModel.getConfiguration().getTimeRepresentation();
+
+        //Columns
+        if (!averageOnly) {
+            for (int i = 0; i < values.nodes.length && !cancel; i++) {
+                Node n = values.nodes[i];
+                double coef = values.coefficients[i];
+
+                switch (tr) {
+                    case INTERVAL:
+                        n.setAttribute(dynamicCoefficientColumn, coef, new Interval(interval.getLow(), interval.getLow() + tick));
+                        break;
+                    case TIMESTAMP:
+                        n.setAttribute(dynamicCoefficientColumn, coef, interval.getLow());
+                        n.setAttribute(dynamicCoefficientColumn, coef, interval.getHigh());
+                        break;
+                }
+            }
+        }
+
+        //Average
+        double avg = values.average;
+        graphModel.getGraphVisible().setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getLow());
+        graphModel.getGraphVisible().setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getHigh());
+
+        averages.put(interval.getLow(), avg);
+        averages.put(interval.getHigh(), avg);
+    }
+
     @Override
     public void end() {
         clusteringCoefficientStat = null;
+        windowNeighbors = null;
+        windowTriangles = null;
+    }
+
+    @Override
+    public void startIncremental(GraphView window) {
+        //Directed coefficients are recomputed for each window
+        incremental = !isDirected;
+        if (incremental) {
+            windowNeighbors = new HashMap<>();
+            windowTriangles = new HashMap<>();
+        }
+    }
+
+    @Override
+    public void nodeAdded(Node node) {
+        if (incremental) {
+            windowNeighbors.put(node, new HashMap<Node, Integer>());
+            windowTriangles.put(node, 0);
+        }
+    }
+
+    @Override
+    public void nodeRemoved(Node node) {
+        if (incremental) {
+            windowNeighbors.remove(node);
+            windowTriangles.remove(node);
+        }
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+        if (incremental) {
+            Node source = edge.getSource();
+            Node target = edge.getTarget();
+            Map<Node, Integer> sourceNeighbors = windowNeighbors.get(source);
+            Integer count = sourceNeighbors.get(target);
+            if (count != null) {
+                //Parallel edge or self-loop already linking the pair
+                sourceNeighbors.put(target, count + 1);
+                if (source != target) {
+                    windowNeighbors.get(target).put(source, count + 1);
+                }
+            } else {
+                sourceNeighbors.put(target, 1);
+                if (source != target) {
+                    windowNeighbors.get(target).put(source, 1);
+                    updateTriangles(source, target, 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void edgeRemoved(Edge edge) {
+        if (incremental) {
+            Node source = edge.getSource();
+            Node target = edge.getTarget();
+            Map<Node, Integer> sourceNeighbors = windowNeighbors.get(source);
+            int count = sourceNeighbors.get(target);
+            if (count > 1) {
+                sourceNeighbors.put(target, count - 1);
+                if (source != target) {
+                    windowNeighbors.get(target).put(source, count - 1);
+                }
+            } else {
+                sourceNeighbors.remove(target);
+                if (source != target) {
+                    windowNeighbors.get(target).remove(source);
+                    updateTriangles(source, target, -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds <code>delta</code> to the triangles of <code>u</code>,
+     * <code>v</code> and of each of their common neighbors, when the link
+     * between <code>u</code> and <code>v</code> appears or disappears.
+     */
+    private void updateTriangles(Node u, Node v, int delta) {
+        Map<Node, Integer> uNeighbors = windowNeighbors.get(u);
+        Map<Node, Integer> vNeighbors = windowNeighbors.get(v);
+        if (uNeighbors.size() > vNeighbors.size()) {
+            Map<Node, Integer> tmp = uNeighbors;
+            uNeighbors = vNeighbors;
+            vNeighbors = tmp;
+        }
+        int common = 0;
+        for (Node w : uNeighbors.keySet()) {
+            if (w != u && w != v && vNeighbors.containsKey(w)) {
+                windowTriangles.put(w, windowTriangles.get(w) + delta);
+                common++;
+            }
+        }
+        windowTriangles.put(u, windowTriangles.get(u) + delta * common);
+        windowTriangles.put(v, windowTriangles.get(v) + delta * common);
     }
 
     @Override
@@ -248,10 +449,28 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
         this.isDirected = isDirected;
     }
 
+    @Override
     public boolean isDirected() {
         return isDirected;
     }
 
+    /**
+     * Sets the number of windows computed at the same time. Results don't
+     * depend on the thread count, but more than one thread recomputes every
+     * window from its snapshot instead of updating the triangles of the
+     * previous one. Defaults to one.
+     *
+     * @param threadCount the number of threads, at least one
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     public void setAverageOnly(boolean averageOnly) {
         this.averageOnly = averageOnly;
     }
@@ -269,4 +488,20 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
     @Override
     public void setProgressTicket(ProgressTicket progressTicket) {
     }
+
+    /**
+     * Coefficients of the nodes of one window.
+     */
+    static final class WindowCoefficients {
+
+        private final Node[] nodes;
+        private final double[] coefficients;
+        private final double average;
+
+        private WindowCoefficients(Node[] nodes, double[] coefficients, double average) {
+            this.nodes = nodes;
+            this.coefficients = coefficients;
+            this.average = average;
+        }
+    }
 }
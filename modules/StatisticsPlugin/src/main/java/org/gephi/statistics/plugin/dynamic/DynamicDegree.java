@@ -47,6 +47,7 @@ import java.util.HashMap;
 import java.util.Map;
 import org.gephi.graph.api.Column;
 import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
@@ -58,7 +59,7 @@ import org.gephi.graph.api.TimeRepresentation;
 import org.gephi.graph.api.types.IntervalIntegerMap;
 import org.gephi.graph.api.types.TimestampIntegerMap;
 import org.gephi.statistics.plugin.ChartUtils;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.ProgressTicket;
 import org.jfree.chart.ChartFactory;
@@ -73,7 +74,7 @@ import org.openide.util.NbBundle;
  *
  * @author Mathieu Bastian
  */
-public class DynamicDegree implements DynamicStatistics, LongTask {
+public class DynamicDegree implements IncrementalDynamicStatistics, LongTask {
 
     public static final String DYNAMIC_AVGDEGREE = "dynamic_avgdegree";
     public static final String DYNAMIC_INDEGREE = "dynamic_indegree";
@@ -93,6 +94,10 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
     private Column dynamicDegreeColumn;
     //Average
     private Map<Double, Double> averages;
+    //Incremental, degree, in-degree and out-degree of the nodes in the window
+    private boolean incremental;
+    private Map<Node, int[]> windowDegrees;
+    private long degreeSum;
 
     public DynamicDegree() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -106,6 +111,8 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
         this.graphModel = graphModel;
         this.isDirected = graphModel.isDirected();
         this.averages = new HashMap<>();
+        this.incremental = false;
+        this.windowDegrees = null;
 
         //Attributes cols
         if (!averageOnly) {
@@ -179,41 +186,46 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
         TimeRepresentation tr = graphModel.getConfiguration().getTimeRepresentation();
 
         long sum = 0;
-        for (Node n : graph.getNodes().toArray()) {
-            int degree = graph.getDegree(n);
-
-            if (!averageOnly) {
-                switch (tr) {
-                    case INTERVAL:
-                        n.setAttribute(dynamicDegreeColumn, degree, new Interval(interval.getLow(), interval.getLow() + tick));
-                        break;
-                    case TIMESTAMP:
-                        n.setAttribute(dynamicDegreeColumn, degree, interval.getLow());
-                        n.setAttribute(dynamicDegreeColumn, degree, interval.getHigh());
-                        break;
-                }
-
-                if (isDirected) {
-                    int indegree = directedGraph.getInDegree(n);
-                    int outdegree = directedGraph.getOutDegree(n);
-
+        if (incremental && averageOnly) {
+            sum = degreeSum;
+        } else {
+            for (Node n : graph.getNodes().toArray()) {
+                int[] degrees = incremental ? windowDegrees.get(n) : null;
+                int degree = incremental ? degrees[0] : graph.getDegree(n);
+
+                if (!averageOnly) {
                     switch (tr) {
                         case INTERVAL:
-                            n.setAttribute(dynamicInDegreeColumn, indegree, new Interval(interval.getLow(), interval.getLow() + tick));
-                            n.setAttribute(dynamicOutDegreeColumn, outdegree, new Interval(interval.getLow(), interval.getLow() + tick));
+                            n.setAttribute(dynamicDegreeColumn, degree, new Interval(interval.getLow(), interval.getLow() + tick));
                             break;
                         case TIMESTAMP:
-                            n.setAttribute(dynamicInDegreeColumn, indegree, interval.getLow());
-                            n.setAttribute(dynamicInDegreeColumn, indegree, interval.getHigh());
-                            n.setAttribute(dynamicOutDegreeColumn, outdegree, interval.getLow());
-                            n.setAttribute(dynamicOutDegreeColumn, outdegree, interval.getHigh());
+                            n.setAttribute(dynamicDegreeColumn, degree, interval.getLow());
+                            n.setAttribute(dynamicDegreeColumn, degree, interval.getHigh());
                             break;
                     }
+
+                    if (isDirected) {
+                        int indegree = incremental ? degrees[1] : directedGraph.getInDegree(n);
+                        int outdegree = incremental ? degrees[2] : directedGraph.getOutDegree(n);
+
+                        switch (tr) {
+                            case INTERVAL:
+                                n.setAttribute(dynamicInDegreeColumn, indegree, new Interval(interval.getLow(), interval.getLow() + tick));
+                                n.setAttribute(dynamicOutDegreeColumn, outdegree, new Interval(interval.getLow(), interval.getLow() + tick));
+                                break;
+                            case TIMESTAMP:
+                                n.setAttribute(dynamicInDegreeColumn, indegree, interval.getLow());
+                                n.setAttribute(dynamicInDegreeColumn, indegree, interval.getHigh());
+                                n.setAttribute(dynamicOutDegreeColumn, outdegree, interval.getLow());
+                                n.setAttribute(dynamicOutDegreeColumn, outdegree, interval.getHigh());
+                                break;
+                        }
+                    }
+                }
+                sum += degree;
+                if (cancel) {
+                    break;
                 }
-            }
-            sum += degree;
-            if (cancel) {
-                break;
             }
         }
 
@@ -227,6 +239,46 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
 
     @Override
     public void end() {
+        windowDegrees = null;
+    }
+
+    @Override
+    public void startIncremental(GraphView window) {
+        incremental = true;
+        windowDegrees = new HashMap<>();
+        degreeSum = 0;
+    }
+
+    @Override
+    public void nodeAdded(Node node) {
+        windowDegrees.put(node, new int[3]);
+    }
+
+    @Override
+    public void nodeRemoved(Node node) {
+        windowDegrees.remove(node);
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+        int[] source = windowDegrees.get(edge.getSource());
+        int[] target = windowDegrees.get(edge.getTarget());
+        source[0]++;
+        source[2]++;
+        target[0]++;
+        target[1]++;
+        degreeSum += 2;
+    }
+
+    @Override
+    public void edgeRemoved(Edge edge) {
+        int[] source = windowDegrees.get(edge.getSource());
+        int[] target = windowDegrees.get(edge.getTarget());
+        source[0]--;
+        source[2]--;
+        target[0]--;
+        target[1]--;
+        degreeSum -= 2;
     }
 
     @Override
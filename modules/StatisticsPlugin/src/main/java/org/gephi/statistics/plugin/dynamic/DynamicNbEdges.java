@@ -45,12 +45,14 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.HashMap;
 import java.util.Map;
+import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
 import org.gephi.statistics.plugin.ChartUtils;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
@@ -61,7 +63,7 @@ import org.jfree.data.xy.XYSeriesCollection;
  *
  * @author Sébastien Heymann
  */
-public class DynamicNbEdges implements DynamicStatistics {
+public class DynamicNbEdges implements IncrementalDynamicStatistics {
 
     public static final String NB_EDGES = "dynamic nbedges";
     //Data
@@ -71,11 +73,15 @@ public class DynamicNbEdges implements DynamicStatistics {
     private Interval bounds;
     //Average
     private Map<Double, Integer> counts;
+    //Incremental
+    private boolean incremental;
+    private int windowCount;
 
     @Override
     public void execute(GraphModel graphModel) {
         this.graphModel = graphModel;
         this.counts = new HashMap<>();
+        this.incremental = false;
     }
 
     @Override
@@ -120,9 +126,13 @@ public class DynamicNbEdges implements DynamicStatistics {
 
     @Override
     public void loop(GraphView window, Interval interval) {
-        Graph graph = graphModel.getGraph(window);
-
-        int count = graph.getEdgeCount();
+        int count;
+        if (incremental) {
+            count = windowCount;
+        } else {
+            Graph graph = graphModel.getGraph(window);
+            count = graph.getEdgeCount();
+        }
         
         graphModel.getGraphVisible().setAttribute(NB_EDGES, count, interval.getLow());
         graphModel.getGraphVisible().setAttribute(NB_EDGES, count, interval.getHigh());
@@ -135,6 +145,30 @@ public class DynamicNbEdges implements DynamicStatistics {
     public void end() {
     }
 
+    @Override
+    public void startIncremental(GraphView window) {
+        incremental = true;
+        windowCount = 0;
+    }
+
+    @Override
+    public void nodeAdded(Node node) {
+    }
+
+    @Override
+    public void nodeRemoved(Node node) {
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+        windowCount++;
+    }
+
+    @Override
+    public void edgeRemoved(Edge edge) {
+        windowCount--;
+    }
+
     @Override
     public void setBounds(Interval bounds) {
         this.bounds = bounds;
@@ -0,0 +1,395 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.gephi.graph.api.Configuration;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Interval;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.TimeRepresentation;
+import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.statistics.plugin.dynamic.DynamicClusteringCoefficient;
+import org.gephi.statistics.plugin.dynamic.DynamicDegree;
+import org.gephi.statistics.plugin.dynamic.DynamicNbEdges;
+import org.gephi.statistics.plugin.dynamic.DynamicNbNodes;
+import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.GraphSnapshot;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Compares the ways the controller executes the dynamic statistics on a small
+ * graph whose elements leave and re-enter the sliding window.
+ */
+public class DynamicStatisticsNGTest {
+
+    private static final Interval BOUNDS = new Interval(0, 10);
+    private static final double WINDOW = 2;
+    private static final double TICK = 1;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void testNbNodesIncrementalEqualsFullRecompute() {
+        List<Object> full = execute(new Recorder(createGraphModel(), new DynamicNbNodes(),
+                DynamicNbNodes.NB_NODES, null));
+        List<Object> incremental = execute(new IncrementalRecorder(createGraphModel(), new DynamicNbNodes(),
+                DynamicNbNodes.NB_NODES, null));
+
+        assertEquals(full.get(2), 5);
+        assertValuesEqual(incremental, full);
+    }
+
+    @Test
+    public void testNbEdgesIncrementalEqualsFullRecompute() {
+        List<Object> full = execute(new Recorder(createGraphModel(), new DynamicNbEdges(),
+                DynamicNbEdges.NB_EDGES, null));
+        List<Object> incremental = execute(new IncrementalRecorder(createGraphModel(), new DynamicNbEdges(),
+                DynamicNbEdges.NB_EDGES, null));
+
+        assertEquals(full.get(2), 6);
+        assertValuesEqual(incremental, full);
+    }
+
+    @Test
+    public void testDegreeIncrementalEqualsFullRecompute() {
+        List<Object> full = execute(new Recorder(createGraphModel(), new DynamicDegree(),
+                DynamicDegree.DYNAMIC_AVGDEGREE, DynamicDegree.DYNAMIC_DEGREE));
+        List<Object> incremental = execute(new IncrementalRecorder(createGraphModel(), new DynamicDegree(),
+                DynamicDegree.DYNAMIC_AVGDEGREE, DynamicDegree.DYNAMIC_DEGREE));
+
+        assertValuesEqual(incremental, full);
+    }
+
+    @Test
+    public void testAverageDegreeIncrementalEqualsFullRecompute() {
+        DynamicDegree fullDegree = new DynamicDegree();
+        fullDegree.setAverageOnly(true);
+        List<Object> full = execute(new Recorder(createGraphModel(), fullDegree,
+                DynamicDegree.DYNAMIC_AVGDEGREE, null));
+        DynamicDegree incrementalDegree = new DynamicDegree();
+        incrementalDegree.setAverageOnly(true);
+        List<Object> incremental = execute(new IncrementalRecorder(createGraphModel(), incrementalDegree,
+                DynamicDegree.DYNAMIC_AVGDEGREE, null));
+
+        assertValuesEqual(incremental, full);
+    }
+
+    @Test
+    public void testClusteringCoefficientIncrementalEqualsFullRecompute() {
+        List<Object> full = execute(new Recorder(createGraphModel(), createClusteringCoefficient(1),
+                DynamicClusteringCoefficient.DYNAMIC_AVG_CLUSTERING_COEFFICIENT,
+                DynamicClusteringCoefficient.DYNAMIC_CLUSTERING_COEFFICIENT));
+        List<Object> incremental = execute(new IncrementalRecorder(createGraphModel(),
+                createClusteringCoefficient(1), DynamicClusteringCoefficient.DYNAMIC_AVG_CLUSTERING_COEFFICIENT,
+                DynamicClusteringCoefficient.DYNAMIC_CLUSTERING_COEFFICIENT));
+
+        assertValuesEqual(incremental, full);
+    }
+
+    @Test
+    public void testClusteringCoefficientDefaultsToOneThread() {
+        assertEquals(new DynamicClusteringCoefficient().getThreadCount(), 1);
+    }
+
+    @Test
+    public void testClusteringCoefficientParallelEqualsSequential() {
+        GraphModel sequentialModel = createGraphModel();
+        List<Object> sequential = execute(new IncrementalRecorder(sequentialModel,
+                createClusteringCoefficient(1), DynamicClusteringCoefficient.DYNAMIC_AVG_CLUSTERING_COEFFICIENT,
+                DynamicClusteringCoefficient.DYNAMIC_CLUSTERING_COEFFICIENT));
+
+        GraphModel parallelModel = createGraphModel();
+        List<Object> parallel = execute(createParallelRecorder(parallelModel,
+                (ParallelDynamicStatistics<?>) createClusteringCoefficient(3),
+                DynamicClusteringCoefficient.DYNAMIC_AVG_CLUSTERING_COEFFICIENT,
+                DynamicClusteringCoefficient.DYNAMIC_CLUSTERING_COEFFICIENT));
+
+        assertValuesEqual(parallel, sequential);
+    }
+
+    private static DynamicClusteringCoefficient createClusteringCoefficient(int threadCount) {
+        DynamicClusteringCoefficient statistics = new DynamicClusteringCoefficient();
+        statistics.setThreadCount(threadCount);
+        return statistics;
+    }
+
+    private static List<Object> execute(Recorder recorder) {
+        recorder.setBounds(BOUNDS);
+        recorder.setWindow(WINDOW);
+        recorder.setTick(TICK);
+        assertTrue(StatisticsControllerImpl.executeDynamic(recorder, recorder.graphModel, null));
+        assertFalse(recorder.values.isEmpty());
+        return recorder.values;
+    }
+
+    private static void assertValuesEqual(List<Object> actual, List<Object> expected) {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            Object a = actual.get(i);
+            Object e = expected.get(i);
+            if (a instanceof Double && e instanceof Double) {
+                double da = (Double) a;
+                double de = (Double) e;
+                if (!(Double.isNaN(da) && Double.isNaN(de))) {
+                    assertEquals(da, de, EPSILON, "Value " + i);
+                }
+            } else {
+                assertEquals(a, e, "Value " + i);
+            }
+        }
+    }
+
+    /**
+     * Returns an undirected graph over timestamps 0.5 to 9.5. Node 2 and 4,
+     * and most edges, leave the window and enter it again later, and nodes 0
+     * and 3 have self-loops.
+     */
+    private static GraphModel createGraphModel() {
+        Configuration config = new Configuration();
+        config.setTimeRepresentation(TimeRepresentation.TIMESTAMP);
+        GraphModel graphModel = GraphModel.Factory.newInstance(config);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        Node n0 = addNode(graphModel, "0", 0.5, 1.5, 2.5, 3.5, 4.5, 5.5, 6.5, 7.5, 8.5, 9.5);
+        Node n1 = addNode(graphModel, "1", 0.5, 1.5, 2.5, 3.5, 4.5, 5.5, 6.5, 7.5, 8.5, 9.5);
+        Node n2 = addNode(graphModel, "2", 0.5, 1.5, 2.5, 6.5, 7.5);
+        Node n3 = addNode(graphModel, "3", 1.5, 2.5, 3.5, 4.5, 5.5, 6.5, 7.5, 8.5);
+        Node n4 = addNode(graphModel, "4", 3.5, 4.5, 8.5, 9.5);
+
+        addEdge(graphModel, n0, n1, 0.5, 1.5, 2.5, 3.5, 4.5, 5.5, 6.5, 7.5, 8.5, 9.5);
+        addEdge(graphModel, n0, n2, 0.5, 1.5, 6.5);
+        addEdge(graphModel, n1, n2, 1.5, 2.5, 7.5);
+        addEdge(graphModel, n0, n3, 2.5, 3.5, 4.5, 5.5);
+        addEdge(graphModel, n1, n3, 3.5, 7.5, 8.5);
+        addEdge(graphModel, n2, n3, 1.5, 6.5, 7.5);
+        addEdge(graphModel, n3, n4, 4.5, 8.5);
+        addEdge(graphModel, n0, n4, 3.5, 8.5, 9.5);
+        addEdge(graphModel, n3, n3, 2.5, 3.5, 7.5);
+        addEdge(graphModel, n0, n0, 4.5, 5.5, 6.5);
+        assertEquals(graph.getEdgeCount(), 10);
+        return graphModel;
+    }
+
+    private static Node addNode(GraphModel graphModel, String id, double... timestamps) {
+        Node node = graphModel.factory().newNode(id);
+        graphModel.getUndirectedGraph().addNode(node);
+        for (double timestamp : timestamps) {
+            node.addTimestamp(timestamp);
+        }
+        return node;
+    }
+
+    private static void addEdge(GraphModel graphModel, Node source, Node target, double... timestamps) {
+        Edge edge = graphModel.factory().newEdge(source, target, false);
+        graphModel.getUndirectedGraph().addEdge(edge);
+        for (double timestamp : timestamps) {
+            edge.addTimestamp(timestamp);
+        }
+    }
+
+    private static <T> ParallelRecorder<T> createParallelRecorder(GraphModel graphModel,
+            ParallelDynamicStatistics<T> statistics, String graphAttribute, String nodeColumn) {
+        return new ParallelRecorder<>(graphModel, statistics, graphAttribute, nodeColumn);
+    }
+
+    /**
+     * Executes a dynamic statistics as a plain one, so every window is
+     * recomputed in <code>loop()</code>, and records the values written for
+     * each window.
+     */
+    private static class Recorder implements DynamicStatistics {
+
+        protected final GraphModel graphModel;
+        protected final DynamicStatistics statistics;
+        private final String graphAttribute;
+        private final String nodeColumn;
+        private final List<Object> values = new ArrayList<>();
+
+        Recorder(GraphModel graphModel, DynamicStatistics statistics, String graphAttribute, String nodeColumn) {
+            this.graphModel = graphModel;
+            this.statistics = statistics;
+            this.graphAttribute = graphAttribute;
+            this.nodeColumn = nodeColumn;
+        }
+
+        /**
+         * Records the graph value and the node values at the window start,
+         * just written for this window.
+         */
+        protected void record(Interval interval) {
+            values.add(graphModel.getGraphVisible().getAttribute(graphAttribute, interval.getLow()));
+            if (nodeColumn != null) {
+                for (Node node : graphModel.getGraph().getNodes().toArray()) {
+                    values.add(node.getAttribute(nodeColumn, interval.getLow()));
+                }
+            }
+        }
+
+        @Override
+        public void execute(GraphModel graphModel) {
+            statistics.execute(graphModel);
+        }
+
+        @Override
+        public void loop(GraphView window, Interval interval) {
+            statistics.loop(window, interval);
+            record(interval);
+        }
+
+        @Override
+        public void end() {
+            statistics.end();
+        }
+
+        @Override
+        public void setBounds(Interval bounds) {
+            statistics.setBounds(bounds);
+        }
+
+        @Override
+        public void setWindow(double window) {
+            statistics.setWindow(window);
+        }
+
+        @Override
+        public void setTick(double tick) {
+            statistics.setTick(tick);
+        }
+
+        @Override
+        public double getWindow() {
+            return statistics.getWindow();
+        }
+
+        @Override
+        public double getTick() {
+            return statistics.getTick();
+        }
+
+        @Override
+        public Interval getBounds() {
+            return statistics.getBounds();
+        }
+
+        @Override
+        public String getReport() {
+            return "";
+        }
+    }
+
+    /**
+     * Executes an incremental statistics on the sliding window.
+     */
+    private static class IncrementalRecorder extends Recorder implements IncrementalDynamicStatistics {
+
+        IncrementalRecorder(GraphModel graphModel, IncrementalDynamicStatistics statistics, String graphAttribute,
+                String nodeColumn) {
+            super(graphModel, statistics, graphAttribute, nodeColumn);
+        }
+
+        @Override
+        public void startIncremental(GraphView window) {
+            ((IncrementalDynamicStatistics) statistics).startIncremental(window);
+        }
+
+        @Override
+        public void nodeAdded(Node node) {
+            ((IncrementalDynamicStatistics) statistics).nodeAdded(node);
+        }
+
+        @Override
+        public void nodeRemoved(Node node) {
+            ((IncrementalDynamicStatistics) statistics).nodeRemoved(node);
+        }
+
+        @Override
+        public void edgeAdded(Edge edge) {
+            ((IncrementalDynamicStatistics) statistics).edgeAdded(edge);
+        }
+
+        @Override
+        public void edgeRemoved(Edge edge) {
+            ((IncrementalDynamicStatistics) statistics).edgeRemoved(edge);
+        }
+    }
+
+    /**
+     * Executes a parallel statistics from window snapshots, when its thread
+     * count is more than one.
+     */
+    private static class ParallelRecorder<T> extends Recorder implements ParallelDynamicStatistics<T> {
+
+        private final ParallelDynamicStatistics<T> parallelStatistics;
+
+        ParallelRecorder(GraphModel graphModel, ParallelDynamicStatistics<T> statistics, String graphAttribute,
+                String nodeColumn) {
+            super(graphModel, statistics, graphAttribute, nodeColumn);
+            this.parallelStatistics = statistics;
+        }
+
+        @Override
+        public int getThreadCount() {
+            return parallelStatistics.getThreadCount();
+        }
+
+        @Override
+        public boolean isDirected() {
+            return parallelStatistics.isDirected();
+        }
+
+        @Override
+        public T compute(GraphSnapshot window, Interval interval) {
+            return parallelStatistics.compute(window, interval);
+        }
+
+        @Override
+        public void commit(T values, Interval interval) {
+            parallelStatistics.commit(values, interval);
+            record(interval);
+        }
+    }
+}
@@ -4,6 +4,7 @@
  */
 package org.gephi.statistics.plugin;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import org.gephi.graph.api.DirectedGraph;
 import org.gephi.graph.api.Edge;
@@ -14,6 +15,7 @@ import org.gephi.graph.api.Node;
 import org.gephi.graph.api.UndirectedGraph;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.impl.ProjectControllerImpl;
+import org.gephi.statistics.spi.GraphSnapshot;
 import org.openide.util.Lookup;
 import static org.testng.Assert.*;
 import org.testng.annotations.AfterMethod;
@@ -481,4 +483,54 @@ public class ClusteringCoefficientNGTest {
 
         assertTrue(Math.abs(avClusteringCoefficient - res) < diff);
     }
+
+    @Test
+    public void testThreadCountGivesIdenticalResults() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(10);
+        Graph graph = graphModel.getGraph();
+
+        ClusteringCoefficient cc = new ClusteringCoefficient();
+        cc.setDirected(false);
+        int[] triangles = new int[10];
+        double[] nodeClustering = new double[10];
+        cc.setThreadCount(1);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(graph, triangles, nodeClustering, false);
+
+        int[] parallelTriangles = new int[10];
+        double[] parallelNodeClustering = new double[10];
+        cc.setThreadCount(4);
+        HashMap<String, Double> parallelResults = cc.computeClusteringCoefficient(graph, parallelTriangles, parallelNodeClustering, false);
+
+        double totalTriangles = parallelResults.get("triangles");
+
+        assertEquals(triangles[0], 36);
+        assertEquals(parallelTriangles, triangles);
+        assertEquals(parallelNodeClustering, nodeClustering);
+        assertEquals(totalTriangles, 120.0);
+        assertEquals(parallelResults, results);
+    }
+
+    @Test
+    public void testEdgeListSnapshotGivesIdenticalResults() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(6);
+        Graph graph = graphModel.getGraph();
+        Node[] nodes = graph.getNodes().toArray();
+        graph.removeEdge(graph.getEdge(nodes[0], nodes[1]));
+        graph.removeEdge(graph.getEdge(nodes[2], nodes[3]));
+
+        ClusteringCoefficient cc = new ClusteringCoefficient();
+        cc.setDirected(false);
+        int[] triangles = new int[6];
+        double[] nodeClustering = new double[6];
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(graph, triangles, nodeClustering, false);
+
+        ClusteringCoefficient snapshotCc = new ClusteringCoefficient();
+        snapshotCc.setDirected(false);
+        snapshotCc.triangles(GraphSnapshot.build(Arrays.asList(nodes),
+                Arrays.asList(graph.getEdges().toArray()), false));
+        double avClusteringCoefficient = results.get("clusteringCoefficient");
+
+        assertEquals(snapshotCc.getCoefficientReuslts(), nodeClustering);
+        assertEquals(snapshotCc.getAverageClusteringCoefficient(), avClusteringCoefficient);
+    }
 }
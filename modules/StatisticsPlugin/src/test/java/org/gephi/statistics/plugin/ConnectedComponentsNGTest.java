@@ -511,4 +511,36 @@ public class ConnectedComponentsNGTest {
 
         assertEquals(giantComponent, componentNumber5);
     }
+
+    @Test
+    public void testWeaklyConnectedComponentsWithSeveralThreads() {
+        GraphModel graphModel = GraphGenerator.generatePathUndirectedGraph(1000);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        graph.removeNode(graph.getNode("500"));
+
+        ConnectedComponents c = new ConnectedComponents();
+        c.setThreadCount(4);
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] components = new int[graph.getNodeCount()];
+        int count = c.computeWeaklyConnectedComponents(graph, indices, components);
+
+        assertEquals(count, 2);
+        assertEquals(components[indices.get(graph.getNode("0"))], 0);
+        assertEquals(components[indices.get(graph.getNode("499"))], 0);
+        assertEquals(components[indices.get(graph.getNode("501"))], 1);
+        assertEquals(components[indices.get(graph.getNode("999"))], 1);
+    }
+
+    @Test
+    public void testDeepCyclicGraphStronglyConnectedComponents() {
+        GraphModel graphModel = GraphGenerator.generateCyclicDirectedGraph(100000);
+        DirectedGraph graph = graphModel.getDirectedGraph();
+
+        ConnectedComponents c = new ConnectedComponents();
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] components = new int[graph.getNodeCount()];
+        int count = c.computeStronglyConnectedComponents(graph, indices, components);
+
+        assertEquals(count, 1);
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ Copyright 2008-2017 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2017 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2017 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.HashMap;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.impl.ProjectControllerImpl;
+import org.openide.util.Lookup;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CorenessNGTest {
+
+    private ProjectController pc;
+
+    @BeforeClass
+    public void setUp() {
+        pc = Lookup.getDefault().lookup(ProjectControllerImpl.class);
+    }
+
+    @BeforeMethod
+    public void initialize() {
+        pc.newProject();
+    }
+
+    @AfterMethod
+    public void clean() {
+        pc.closeCurrentProject();
+    }
+
+    @Test
+    public void testNullGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateNullUndirectedGraph(3);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] coreness = c.computeCoreness(graph, indices);
+
+        assertEquals(coreness, new int[]{0, 0, 0});
+    }
+
+    @Test
+    public void testCompleteGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(5);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] coreness = c.computeCoreness(graph, indices);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(coreness[i], 4);
+        }
+    }
+
+    @Test
+    public void testStarGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(6);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] coreness = c.computeCoreness(graph, indices);
+
+        for (Node node : graph.getNodes()) {
+            assertEquals(coreness[indices.get(node)], 1);
+        }
+    }
+
+    @Test
+    public void testCliqueWithTailCoreness() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Node node3 = graph.getNode("3");
+        Node node4 = graphModel.factory().newNode("4");
+        Node node5 = graphModel.factory().newNode("5");
+        Edge edge34 = graphModel.factory().newEdge(node3, node4, false);
+        Edge edge45 = graphModel.factory().newEdge(node4, node5, false);
+        graph.addNode(node4);
+        graph.addNode(node5);
+        graph.addEdge(edge34);
+        graph.addEdge(edge45);
+
+        Coreness c = new Coreness();
+        HashMap<Node, Integer> indices = c.createIndicesMap(graph);
+        int[] coreness = c.computeCoreness(graph, indices);
+
+        assertEquals(coreness[indices.get(graph.getNode("0"))], 3);
+        assertEquals(coreness[indices.get(node3)], 3);
+        assertEquals(coreness[indices.get(node4)], 1);
+        assertEquals(coreness[indices.get(node5)], 1);
+    }
+
+    @Test
+    public void testDegeneracy() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(6);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        c.execute(graph);
+
+        assertEquals(c.getDegeneracy(), 5);
+        Node node = graph.getNode("2");
+        assertEquals(node.getAttribute(Coreness.CORENESS), 5);
+    }
+
+    @Test
+    public void testUpToDate() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        Graph graph = graphModel.getGraph();
+        assertFalse(Coreness.isUpToDate(graph));
+
+        Coreness c = new Coreness();
+        c.execute(graph);
+
+        assertTrue(Coreness.isUpToDate(graph));
+        GraphView view = graphModel.copyView(graph.getView());
+        assertTrue(Coreness.isUpToDate(graphModel.getGraph(view)));
+    }
+
+    @Test
+    public void testNotUpToDateAfterGraphChange() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        c.execute(graph);
+        graph.removeEdge(graph.getEdge(graph.getNode("0"), graph.getNode("1")));
+
+        assertFalse(Coreness.isUpToDate(graph));
+        assertFalse(Coreness.isUpToDate(graph));
+
+        c.execute(graph);
+        assertTrue(Coreness.isUpToDate(graph));
+    }
+
+    @Test
+    public void testNotUpToDateAfterColumnChange() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        c.execute(graph);
+        graph.getNode("0").setAttribute(Coreness.CORENESS, 0);
+
+        assertFalse(Coreness.isUpToDate(graph));
+    }
+
+    @Test
+    public void testNotUpToDateOnSubgraph() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        Graph graph = graphModel.getGraph();
+
+        Coreness c = new Coreness();
+        c.execute(graph);
+        GraphView view = graphModel.createView();
+        Subgraph subgraph = graphModel.getGraph(view);
+        subgraph.fill();
+        subgraph.removeNode(subgraph.getNode("0"));
+        c.execute(subgraph);
+
+        assertFalse(Coreness.isUpToDate(graph));
+        assertFalse(Coreness.isUpToDate(subgraph));
+    }
+}
@@ -473,4 +473,97 @@ public class EigenvectorCentralityNGTest {
         assertEquals(ec1, 0.0);
         assertEquals(ec4, 1.0);
     }
+
+    @Test
+    public void testKiteUndirectedGraphEigenvectorCentralityValues() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        Node node3 = graphModel.factory().newNode("2");
+        Node node4 = graphModel.factory().newNode("3");
+
+        undirectedGraph.addNode(node1);
+        undirectedGraph.addNode(node2);
+        undirectedGraph.addNode(node3);
+        undirectedGraph.addNode(node4);
+
+        Edge edge12 = graphModel.factory().newEdge(node1, node2, false);
+        Edge edge13 = graphModel.factory().newEdge(node1, node3, false);
+        Edge edge23 = graphModel.factory().newEdge(node2, node3, false);
+        Edge edge24 = graphModel.factory().newEdge(node2, node4, false);
+        Edge edge34 = graphModel.factory().newEdge(node3, node4, false);
+
+        undirectedGraph.addEdge(edge12);
+        undirectedGraph.addEdge(edge13);
+        undirectedGraph.addEdge(edge23);
+        undirectedGraph.addEdge(edge24);
+        undirectedGraph.addEdge(edge34);
+
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        EigenvectorCentrality ec = new EigenvectorCentrality();
+
+        double[] centralities = new double[4];
+
+        HashMap<Integer, Node> indicies = new HashMap();
+        HashMap<Node, Integer> invIndicies = new HashMap();
+
+        ec.fillIndiciesMaps(graph, centralities, indicies, invIndicies);
+
+        ec.calculateEigenvectorCentrality(graph, centralities, indicies, invIndicies, false, 100);
+
+        //Principal eigenvector (a, 1, 1, a), with a = 2 / lambda and
+        //lambda = (1 + sqrt(17)) / 2
+        double a = 4 / (1 + Math.sqrt(17));
+
+        assertEquals(centralities[invIndicies.get(node1)], a, 1e-4);
+        assertEquals(centralities[invIndicies.get(node2)], 1.0, 1e-4);
+        assertEquals(centralities[invIndicies.get(node3)], 1.0, 1e-4);
+        assertEquals(centralities[invIndicies.get(node4)], a, 1e-4);
+    }
+
+    @Test
+    public void testDirectedGraphEigenvectorCentralityValues() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+        DirectedGraph directedGraph = graphModel.getDirectedGraph();
+
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        Node node3 = graphModel.factory().newNode("2");
+
+        directedGraph.addNode(node1);
+        directedGraph.addNode(node2);
+        directedGraph.addNode(node3);
+
+        Edge edge12 = graphModel.factory().newEdge(node1, node2);
+        Edge edge23 = graphModel.factory().newEdge(node2, node3);
+        Edge edge31 = graphModel.factory().newEdge(node3, node1);
+        Edge edge32 = graphModel.factory().newEdge(node3, node2);
+
+        directedGraph.addEdge(edge12);
+        directedGraph.addEdge(edge23);
+        directedGraph.addEdge(edge31);
+        directedGraph.addEdge(edge32);
+
+        DirectedGraph graph = graphModel.getDirectedGraph();
+        EigenvectorCentrality ec = new EigenvectorCentrality();
+
+        double[] centralities = new double[3];
+
+        HashMap<Integer, Node> indicies = new HashMap();
+        HashMap<Node, Integer> invIndicies = new HashMap();
+
+        ec.fillIndiciesMaps(graph, centralities, indicies, invIndicies);
+
+        ec.calculateEigenvectorCentrality(graph, centralities, indicies, invIndicies, true, 100);
+
+        //From in-neighbors, (1 / rho^2, 1, 1 / rho) with rho the real root
+        //of x^3 = x + 1
+        double rho = 1.324717957244746;
+
+        assertEquals(centralities[invIndicies.get(node1)], 1 / (rho * rho), 1e-3);
+        assertEquals(centralities[invIndicies.get(node2)], 1.0, 1e-3);
+        assertEquals(centralities[invIndicies.get(node3)], 1 / rho, 1e-3);
+    }
 }
@@ -41,7 +41,9 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.statistics.plugin;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import org.gephi.graph.api.DirectedGraph;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.GraphController;
@@ -2060,4 +2062,174 @@ public class GraphDistanceNGTest {
         assertEquals(harmonic[index1], (1.0 + 1.0/2.0)/2.0, TOLERANCE);
         assertEquals(harmonic[index4], 1.0, TOLERANCE);
     }
+
+    @Test
+    public void testThreadCountGivesIdenticalResults() {
+        GraphModel graphModel = GraphGenerator.generateCyclicUndirectedGraph(12);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+        undirectedGraph.addEdge(graphModel.factory().newEdge(undirectedGraph.getNode("0"), undirectedGraph.getNode("5"), false));
+        undirectedGraph.addEdge(graphModel.factory().newEdge(undirectedGraph.getNode("2"), undirectedGraph.getNode("9"), false));
+        undirectedGraph.addEdge(graphModel.factory().newEdge(undirectedGraph.getNode("3"), undirectedGraph.getNode("7"), false));
+
+        GraphDistance sequential = new GraphDistance();
+        sequential.setThreadCount(1);
+        sequential.initializeStartValues();
+        HashMap<Node, Integer> indicies = sequential.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> expected = sequential.calculateDistanceMetrics(undirectedGraph, indicies, false, true);
+
+        GraphDistance parallel = new GraphDistance();
+        parallel.setThreadCount(4);
+        parallel.initializeStartValues();
+        Map<String, double[]> actual = parallel.calculateDistanceMetrics(undirectedGraph, indicies, false, true);
+
+        for (String metric : expected.keySet()) {
+            assertTrue(Arrays.equals(expected.get(metric), actual.get(metric)), metric);
+        }
+        assertEquals(parallel.getPathLength(), sequential.getPathLength());
+        assertEquals(parallel.getDiameter(), sequential.getDiameter());
+        assertEquals(parallel.getRadius(), sequential.getRadius());
+    }
+
+    @Test
+    public void testSampledCompleteGraph() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(10);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        GraphDistance d = new GraphDistance();
+        d.setApproximate(true);
+        d.setSampleSize(4);
+        d.setSeed(42);
+        d.initializeStartValues();
+        HashMap<Node, Integer> indicies = d.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> metrics = d.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        for (Node node : undirectedGraph.getNodes()) {
+            int index = indicies.get(node);
+            assertEquals(metrics.get(GraphDistance.BETWEENNESS)[index], 0.0, TOLERANCE);
+            assertEquals(metrics.get(GraphDistance.CLOSENESS)[index], 1.0, TOLERANCE);
+            assertEquals(metrics.get(GraphDistance.HARMONIC_CLOSENESS)[index], 1.0, TOLERANCE);
+        }
+        assertEquals(d.getPathLength(), 1.0, TOLERANCE);
+    }
+
+    @Test
+    public void testSampledStarGraphBetweenness() {
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(8);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        GraphDistance d = new GraphDistance();
+        d.setApproximate(true);
+        d.setSampleSize(3);
+        d.setSeed(7);
+        d.initializeStartValues();
+        HashMap<Node, Integer> indicies = d.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> metrics = d.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        double[] betweenness = metrics.get(GraphDistance.BETWEENNESS);
+        int center = indicies.get(undirectedGraph.getNode("0"));
+        for (int i = 0; i < betweenness.length; i++) {
+            if (i != center) {
+                assertEquals(betweenness[i], 0.0, TOLERANCE);
+            }
+        }
+        assertTrue(betweenness[center] > 0);
+    }
+
+    @Test
+    public void testSampledDefaultSeedReproducible() {
+        GraphModel graphModel = GraphGenerator.generatePathUndirectedGraph(30);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        double[][] results = new double[2][];
+        for (int run = 0; run < 2; run++) {
+            GraphDistance d = new GraphDistance();
+            assertEquals(d.getSeed(), GraphDistance.DEFAULT_SEED);
+            d.setApproximate(true);
+            d.setSampleSize(5);
+            d.initializeStartValues();
+            HashMap<Node, Integer> indicies = d.createIndiciesMap(undirectedGraph);
+            results[run] = d.calculateDistanceMetrics(undirectedGraph, indicies, false, true).get(GraphDistance.BETWEENNESS);
+        }
+        assertEquals(results[1], results[0]);
+    }
+
+    @Test
+    public void testSampledNormalizedBetweennessLargeGraph() {
+        //(n - 1) * (n - 2) overflows an int
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(50000);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        GraphDistance d = new GraphDistance();
+        d.setApproximate(true);
+        d.setSampleSize(5);
+        d.initializeStartValues();
+        HashMap<Node, Integer> indicies = d.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> metrics = d.calculateDistanceMetrics(undirectedGraph, indicies, false, true);
+
+        //Every sampled leaf estimates the exact value, 1, the center estimates 0
+        double centerBetweenness = metrics.get(GraphDistance.BETWEENNESS)[indicies.get(undirectedGraph.getNode("0"))];
+        assertTrue(centerBetweenness >= 0.79 && centerBetweenness <= 1.01, "betweenness " + centerBetweenness);
+    }
+
+    @Test
+    public void testSampleSizeCoversSmallGraphs() {
+        assertEquals(GraphDistance.getSampleSize(0, 0.05, 0.1), 0);
+        assertEquals(GraphDistance.getSampleSize(100, 0.05, 0.1), 100);
+        assertTrue(GraphDistance.getSampleSize(1000000, 0.05, 0.1) < 1000000);
+    }
+
+    @Test
+    public void testWeightedCyclicGraphAvoidsHeavyEdge() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        Node node3 = graphModel.factory().newNode("2");
+        Node node4 = graphModel.factory().newNode("3");
+        undirectedGraph.addNode(node1);
+        undirectedGraph.addNode(node2);
+        undirectedGraph.addNode(node3);
+        undirectedGraph.addNode(node4);
+        Edge edge12 = graphModel.factory().newEdge(node1, node2, 0, 10, false);
+        Edge edge23 = graphModel.factory().newEdge(node2, node3, false);
+        Edge edge34 = graphModel.factory().newEdge(node3, node4, false);
+        Edge edge41 = graphModel.factory().newEdge(node4, node1, false);
+        undirectedGraph.addEdge(edge12);
+        undirectedGraph.addEdge(edge23);
+        undirectedGraph.addEdge(edge34);
+        undirectedGraph.addEdge(edge41);
+
+        GraphDistance d = new GraphDistance();
+        d.setUseEdgeWeight(true);
+        d.initializeStartValues();
+        HashMap<Node, Integer> indicies = d.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> metrics = d.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        double[] betweenness = metrics.get(GraphDistance.BETWEENNESS);
+        double[] closeness = metrics.get(GraphDistance.CLOSENESS);
+        assertEquals(betweenness[indicies.get(node1)], 0.0, TOLERANCE);
+        assertEquals(betweenness[indicies.get(node2)], 0.0, TOLERANCE);
+        assertEquals(betweenness[indicies.get(node3)], 2.0, TOLERANCE);
+        assertEquals(betweenness[indicies.get(node4)], 2.0, TOLERANCE);
+        assertEquals(closeness[indicies.get(node1)], 0.5, TOLERANCE);
+        assertEquals(d.getDiameter(), 3.0, TOLERANCE);
+        assertEquals(d.getRadius(), 2.0, TOLERANCE);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeWeightIsRejected() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+        DirectedGraph directedGraph = graphModel.getDirectedGraph();
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        directedGraph.addNode(node1);
+        directedGraph.addNode(node2);
+        directedGraph.addEdge(graphModel.factory().newEdge(node1, node2, 0, -1, true));
+
+        GraphDistance d = new GraphDistance();
+        d.setUseEdgeWeight(true);
+        d.initializeStartValues();
+        HashMap<Node, Integer> indicies = d.createIndiciesMap(directedGraph);
+        d.calculateDistanceMetrics(directedGraph, indicies, true, false);
+    }
 }
@@ -543,6 +543,113 @@ public class HitsNGTest {
         assertEquals(authority[index3], 0.6280);
         assertEquals(authority[index4], 0.6280);
     }
+
+    @Test
+    public void testTransitiveTriangleDirectedGraphHits() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+
+        DirectedGraph directedGraph = graphModel.getDirectedGraph();
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        Node node3 = graphModel.factory().newNode("2");
+
+        directedGraph.addNode(node1);
+        directedGraph.addNode(node2);
+        directedGraph.addNode(node3);
+
+        Edge edge12 = graphModel.factory().newEdge(node1, node2);
+        Edge edge13 = graphModel.factory().newEdge(node1, node3);
+        Edge edge23 = graphModel.factory().newEdge(node2, node3);
+
+        directedGraph.addEdge(edge12);
+        directedGraph.addEdge(edge13);
+        directedGraph.addEdge(edge23);
+
+        DirectedGraph graph = graphModel.getDirectedGraph();
+        Hits hit = new Hits();
+
+        double[] authority = new double[3];
+        double[] hubs = new double[3];
+
+        HashMap<Node, Integer> indices = hit.createIndicesMap(graph);
+
+        hit.calculateHits(graph, hubs, authority, indices, true, EPSILON);
+
+        int index1 = indices.get(node1);
+        int index2 = indices.get(node2);
+        int index3 = indices.get(node3);
+
+        //Authorities of 1 and 2 are (1, phi) normalized, with phi the golden ratio
+        double phi = (1 + Math.sqrt(5)) / 2;
+        double low = 1 / Math.sqrt(1 + phi * phi);
+        double high = phi / Math.sqrt(1 + phi * phi);
+
+        assertEquals(hubs[index1], high);
+        assertEquals(hubs[index2], low);
+        assertEquals(hubs[index3], 0);
+
+        assertEquals(authority[index1], 0);
+        assertEquals(authority[index2], low);
+        assertEquals(authority[index3], high);
+    }
+
+    @Test
+    public void testKiteUndirectedGraphHits() {
+        GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
+
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+        Node node1 = graphModel.factory().newNode("0");
+        Node node2 = graphModel.factory().newNode("1");
+        Node node3 = graphModel.factory().newNode("2");
+        Node node4 = graphModel.factory().newNode("3");
+
+        undirectedGraph.addNode(node1);
+        undirectedGraph.addNode(node2);
+        undirectedGraph.addNode(node3);
+        undirectedGraph.addNode(node4);
+
+        Edge edge12 = graphModel.factory().newEdge(node1, node2, false);
+        Edge edge13 = graphModel.factory().newEdge(node1, node3, false);
+        Edge edge23 = graphModel.factory().newEdge(node2, node3, false);
+        Edge edge24 = graphModel.factory().newEdge(node2, node4, false);
+        Edge edge34 = graphModel.factory().newEdge(node3, node4, false);
+
+        undirectedGraph.addEdge(edge12);
+        undirectedGraph.addEdge(edge13);
+        undirectedGraph.addEdge(edge23);
+        undirectedGraph.addEdge(edge24);
+        undirectedGraph.addEdge(edge34);
+
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Hits hit = new Hits();
+
+        double[] authority = new double[4];
+        double[] hubs = new double[4];
+
+        HashMap<Node, Integer> indices = hit.createIndicesMap(graph);
+
+        hit.calculateHits(graph, hubs, authority, indices, false, EPSILON);
+
+        int index1 = indices.get(node1);
+        int index2 = indices.get(node2);
+        int index3 = indices.get(node3);
+        int index4 = indices.get(node4);
+
+        //Principal eigenvector (a, 1, 1, a) normalized, with a = 2 / lambda
+        //and lambda = (1 + sqrt(17)) / 2
+        double a = 4 / (1 + Math.sqrt(17));
+        double norm = Math.sqrt(2 + 2 * a * a);
+
+        assertEquals(hubs[index1], a / norm);
+        assertEquals(hubs[index2], 1 / norm);
+        assertEquals(hubs[index3], 1 / norm);
+        assertEquals(hubs[index4], a / norm);
+
+        assertEquals(authority[index1], a / norm);
+        assertEquals(authority[index2], 1 / norm);
+        assertEquals(authority[index3], 1 / norm);
+        assertEquals(authority[index4], a / norm);
+    }
     
     private void assertEquals(double a, double b){
         Assert.assertEquals(a, b, EPSILON);
@@ -299,4 +299,73 @@ public class ModularityNGTest {
         assertEquals(class7, class8);
         assertNotEquals(class4, class5);
     }
+
+    @Test
+    public void testLeidenBarbellGraph() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+        Node[] nodes = new Node[4];
+        for (int i = 0; i < 4; i++) {
+            Node currentNode = graphModel.factory().newNode(((Integer) (i + 4)).toString());
+            nodes[i] = currentNode;
+            undirectedGraph.addNode(currentNode);
+        }
+        for (int i = 0; i < 3; i++) {
+            for (int j = i + 1; j < 4; j++) {
+                Edge currentEdge = graphModel.factory().newEdge(nodes[i], nodes[j], false);
+                undirectedGraph.addEdge(currentEdge);
+            }
+        }
+        Edge currentEdge = graphModel.factory().newEdge(undirectedGraph.getNode("0"), undirectedGraph.getNode("5"), false);
+        undirectedGraph.addEdge(currentEdge);
+
+        Modularity mod = new Modularity();
+        mod.setAlgorithm(Modularity.Algorithm.LEIDEN);
+        mod.execute(graphModel);
+
+        Object class0 = undirectedGraph.getNode("0").getAttribute(Modularity.MODULARITY_CLASS);
+        Object class4 = undirectedGraph.getNode("4").getAttribute(Modularity.MODULARITY_CLASS);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(undirectedGraph.getNode(String.valueOf(i)).getAttribute(Modularity.MODULARITY_CLASS), class0);
+            assertEquals(undirectedGraph.getNode(String.valueOf(i + 4)).getAttribute(Modularity.MODULARITY_CLASS), class4);
+        }
+        assertNotEquals(class0, class4);
+        assertEquals(mod.getModularity(), 12. / 13. - 0.5, 0.0001);
+    }
+
+    @Test
+    public void testLeidenThreadCountGivesIdenticalResults() {
+        GraphModel graphModel = GraphGenerator.generateCyclicUndirectedGraph(40);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        Modularity sequential = new Modularity();
+        sequential.setAlgorithm(Modularity.Algorithm.LEIDEN);
+        sequential.setThreadCount(1);
+        sequential.execute(graphModel);
+        HashMap<Node, Object> expected = new HashMap<>();
+        for (Node node : undirectedGraph.getNodes()) {
+            expected.put(node, node.getAttribute(Modularity.MODULARITY_CLASS));
+        }
+
+        Modularity parallel = new Modularity();
+        parallel.setAlgorithm(Modularity.Algorithm.LEIDEN);
+        parallel.setThreadCount(4);
+        parallel.execute(graphModel);
+        for (Node node : undirectedGraph.getNodes()) {
+            assertEquals(node.getAttribute(Modularity.MODULARITY_CLASS), expected.get(node));
+        }
+        assertEquals(parallel.getModularity(), sequential.getModularity());
+    }
+
+    @Test
+    public void testLeidenEmptyGraphCreatesColumn() {
+        GraphModel graphModel = GraphGenerator.generateNullUndirectedGraph(0);
+
+        Modularity mod = new Modularity();
+        mod.setAlgorithm(Modularity.Algorithm.LEIDEN);
+        mod.execute(graphModel);
+
+        assertNotNull(graphModel.getNodeTable().getColumn(Modularity.MODULARITY_CLASS));
+        assertEquals(mod.getModularity(), 0.0);
+    }
 }
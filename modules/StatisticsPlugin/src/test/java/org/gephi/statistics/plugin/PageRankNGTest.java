@@ -50,6 +50,7 @@ import org.gephi.graph.api.Node;
 import org.gephi.graph.api.UndirectedGraph;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.impl.ProjectControllerImpl;
+import org.gephi.statistics.spi.GraphSnapshotCache;
 import org.openide.util.Lookup;
 import static org.testng.Assert.*;
 import org.testng.annotations.AfterMethod;
@@ -484,4 +485,56 @@ public class PageRankNGTest {
         assertTrue(pr1 < pr2);
         assertTrue(pr1 < pr6);
     }
+
+    @Test
+    public void testIncrementalPageRankStartsFromPreviousValues() {
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(5);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        PageRank pr = new PageRank();
+        pr.setDirected(false);
+        pr.execute(graph);
+        int coldIterations = pr.getIterations();
+        double center = (Double) graph.getNode("0").getAttribute(PageRank.PAGERANK);
+
+        PageRank incremental = new PageRank();
+        incremental.setDirected(false);
+        incremental.setIncremental(true);
+        incremental.execute(graph);
+
+        assertTrue(incremental.getIterations() < coldIterations);
+        assertEquals((Double) graph.getNode("0").getAttribute(PageRank.PAGERANK), center, 0.001);
+    }
+
+    @Test
+    public void testComputeOnSharedSnapshots() {
+        GraphModel graphModel = GraphGenerator.generateCyclicDirectedGraph(6);
+        DirectedGraph graph = graphModel.getDirectedGraph();
+        Edge edge03 = graphModel.factory().newEdge(graph.getNode("0"), graph.getNode("3"));
+        graph.addEdge(edge03);
+
+        PageRank pr = new PageRank();
+        pr.setDirected(true);
+        pr.execute(graph);
+        double[] expected = new double[6];
+        for (int i = 0; i < 6; i++) {
+            expected[i] = (Double) graph.getNode("" + i).getAttribute(PageRank.PAGERANK);
+        }
+
+        PageRank shared = new PageRank();
+        shared.setDirected(true);
+        GraphDistance distance = new GraphDistance();
+        distance.setDirected(true);
+        GraphSnapshotCache snapshots = new GraphSnapshotCache(graphModel);
+        shared.prepare(snapshots);
+        distance.prepare(snapshots);
+        shared.compute();
+        distance.compute();
+        shared.save(graphModel);
+
+        for (int i = 0; i < 6; i++) {
+            double value = (Double) graph.getNode("" + i).getAttribute(PageRank.PAGERANK);
+            assertEquals(value, expected[i]);
+        }
+    }
 }
@@ -66,6 +66,14 @@ public class ModularityPanel extends javax.swing.JPanel {
     public void setUseWeight(boolean useWeight) {
         useWeightCheckbox.setSelected(useWeight);
     }
+
+    public boolean isLeiden() {
+        return leidenCheckbox.isSelected();
+    }
+
+    public void setLeiden(boolean leiden) {
+        leidenCheckbox.setSelected(leiden);
+    }
     
     public double resolution() {
         try {
@@ -93,10 +101,12 @@ public class ModularityPanel extends javax.swing.JPanel {
         desriptionLabel = new org.jdesktop.swingx.JXLabel();
         header = new org.jdesktop.swingx.JXHeader();
         useWeightCheckbox = new javax.swing.JCheckBox();
+        leidenCheckbox = new javax.swing.JCheckBox();
         resolutionTextField = new javax.swing.JTextField();
         jLabel1 = new javax.swing.JLabel();
         labelEdgeWeight = new javax.swing.JLabel();
         labelRandomize = new javax.swing.JLabel();
+        labelLeiden = new javax.swing.JLabel();
         labelResolution = new org.jdesktop.swingx.JXLabel();
 
         randomizeCheckbox.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.randomizeCheckbox.text")); // NOI18N
@@ -111,6 +121,8 @@ public class ModularityPanel extends javax.swing.JPanel {
 
         useWeightCheckbox.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.useWeightCheckbox.text")); // NOI18N
 
+        leidenCheckbox.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.leidenCheckbox.text")); // NOI18N
+
         resolutionTextField.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.resolutionTextField.text")); // NOI18N
         resolutionTextField.setToolTipText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.resolutionTextField.toolTipText")); // NOI18N
 
@@ -124,6 +136,10 @@ public class ModularityPanel extends javax.swing.JPanel {
         labelRandomize.setForeground(new java.awt.Color(102, 102, 102));
         labelRandomize.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.labelRandomize.text")); // NOI18N
 
+        labelLeiden.setFont(labelLeiden.getFont().deriveFont(labelLeiden.getFont().getSize()-1f));
+        labelLeiden.setForeground(new java.awt.Color(102, 102, 102));
+        labelLeiden.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.labelLeiden.text")); // NOI18N
+
         labelResolution.setForeground(new java.awt.Color(102, 102, 102));
         labelResolution.setLineWrap(true);
         labelResolution.setText(org.openide.util.NbBundle.getMessage(ModularityPanel.class, "ModularityPanel.labelResolution.text")); // NOI18N
@@ -149,6 +165,10 @@ public class ModularityPanel extends javax.swing.JPanel {
                                 .addComponent(randomizeCheckbox)
                                 .addGap(25, 25, 25)
                                 .addComponent(labelRandomize, javax.swing.GroupLayout.DEFAULT_SIZE, 386, Short.MAX_VALUE))
+                            .addGroup(layout.createSequentialGroup()
+                                .addComponent(leidenCheckbox)
+                                .addGap(25, 25, 25)
+                                .addComponent(labelLeiden, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                             .addGroup(layout.createSequentialGroup()
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                     .addComponent(useWeightCheckbox)
@@ -172,6 +192,10 @@ public class ModularityPanel extends javax.swing.JPanel {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(useWeightCheckbox)
                     .addComponent(labelEdgeWeight))
+                .addGap(15, 15, 15)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(leidenCheckbox)
+                    .addComponent(labelLeiden))
                 .addGap(18, 18, 18)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
                     .addGroup(layout.createSequentialGroup()
@@ -188,8 +212,10 @@ public class ModularityPanel extends javax.swing.JPanel {
     private org.jdesktop.swingx.JXHeader header;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel labelEdgeWeight;
+    private javax.swing.JLabel labelLeiden;
     private javax.swing.JLabel labelRandomize;
     private org.jdesktop.swingx.JXLabel labelResolution;
+    private javax.swing.JCheckBox leidenCheckbox;
     private javax.swing.JCheckBox randomizeCheckbox;
     private javax.swing.JTextField resolutionTextField;
     private javax.swing.JCheckBox useWeightCheckbox;
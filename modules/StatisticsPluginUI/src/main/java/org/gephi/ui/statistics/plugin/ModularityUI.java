@@ -69,6 +69,7 @@ public class ModularityUI implements StatisticsUI {
             settings.load(mod);
             panel.setRandomize(mod.getRandom());
             panel.setUseWeight(mod.getUseWeight());
+            panel.setLeiden(mod.getAlgorithm() == Modularity.Algorithm.LEIDEN);
             panel.setResolution(mod.getResolution());
         }
     }
@@ -78,6 +79,7 @@ public class ModularityUI implements StatisticsUI {
         if (panel != null) {
             mod.setRandom(panel.isRandomize());
             mod.setUseWeight(panel.useWeight());
+            mod.setAlgorithm(panel.isLeiden() ? Modularity.Algorithm.LEIDEN : Modularity.Algorithm.LOUVAIN);
             mod.setResolution(panel.resolution());
             settings.save(mod);
         }
@@ -120,15 +122,18 @@ public class ModularityUI implements StatisticsUI {
 
         private boolean randomize = true;
         private boolean useWeight = true;
+        private Modularity.Algorithm algorithm = Modularity.Algorithm.LOUVAIN;
 
         private void save(Modularity stat) {
             this.randomize = stat.getRandom();
             this.useWeight = stat.getUseWeight();
+            this.algorithm = stat.getAlgorithm();
         }
 
         private void load(Modularity stat) {
             stat.setRandom(randomize);
             stat.setUseWeight(useWeight);
+            stat.setAlgorithm(algorithm);
         }
     }
 }